@@ -19,7 +19,7 @@ rm -f core.jar
 echo "Compilando archivos Java..."
 
 # Compilar todos los archivos .java
-javac -d bin src/Main.java src/math/*.java src/nn/*.java src/data/*.java src/concurrent/*.java
+javac -d bin src/Main.java src/math/*.java src/nn/*.java src/data/*.java src/concurrent/*.java src/server/*.java src/distributed/*.java
 
 if [ $? -eq 0 ]; then
     echo "✓ Compilación exitosa"
@@ -34,6 +34,14 @@ if [ $? -eq 0 ]; then
     
     if [ $? -eq 0 ]; then
         echo "✓ JAR creado exitosamente: core.jar"
+        
+        # Archivo CDS para arranque rápido (executor.js lo usa si existe)
+        echo "Generando archivo CDS (core.jsa)..."
+        if java -jar core.jar cds core.jsa > /dev/null 2>&1; then
+            echo "✓ Archivo CDS creado: core.jsa"
+        else
+            echo "  Archivo CDS omitido (requiere JDK 13+)"
+        fi
         echo ""
         echo "=== INSTRUCCIONES DE USO ==="
         echo "1. Entrenamiento:"
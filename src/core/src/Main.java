@@ -1,7 +1,44 @@
 import nn.NeuralNetwork;
+import nn.QuantizedNetwork;
+import nn.OutputHead;
+import nn.Activation;
+import nn.ConvStack;
+import nn.LayerSpec;
+import nn.PipelineExecutor;
+import nn.Warmup;
+import nn.MappedModel;
+import nn.Pruning;
+import data.DataGenerator;
 import data.DataLoader;
 import data.TrainingData;
+import data.Preprocessor;
+import data.RowReader;
+import data.BinaryRowWriter;
+import data.WorkloadGenerator;
+import concurrent.BatchScorer;
 import concurrent.MultiThreadTrainer;
+import concurrent.ComputeScheduler;
+import concurrent.HyperparameterSearch;
+import concurrent.ParallelEvaluator;
+import concurrent.TrainingCheckpoint;
+import concurrent.TrainingConfig;
+import server.PredictionServer;
+import server.TrainingDaemon;
+import distributed.DistributedTrainer;
+import distributed.GradientCompressor;
+import distributed.RingAllReduce;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * P4 - Ingeniero de Datos y Concurrencia
@@ -10,6 +47,9 @@ import concurrent.MultiThreadTrainer;
  */
 public class Main {
     
+    // Salida descartada de los entrenamientos del daemon
+    private static final java.io.PrintStream QUIET = new java.io.PrintStream(java.io.OutputStream.nullOutputStream());
+    
     public static void main(String[] args) {
         if (args.length < 1) {
             printUsage();
@@ -24,7 +64,8 @@ public class Main {
                 System.err.println("ERROR: Comando info no requiere argumentos adicionales");
                 System.exit(1);
             }
-        } else if (args.length < 2) {
+        } else if (args.length < 2 && !command.equals("serve") && !command.equals("warmup")
+                   && !command.equals("cds") && !command.equals("daemon")) {
             printUsage();
             System.exit(1);
         }
@@ -34,9 +75,49 @@ public class Main {
                 case "train":
                     handleTrain(args);
                     break;
+                case "tune":
+                    handleTune(args);
+                    break;
+                case "train-dist":
+                    handleTrainDist(args);
+                    break;
+                case "finetune":
+                    handleFinetune(args);
+                    break;
                 case "predict":
                     handlePredict(args);
                     break;
+                case "score":
+                    handleScore(args);
+                    break;
+                case "convert":
+                    handleConvert(args);
+                    break;
+                case "generate":
+                    DataGenerator.generateWorkload(args[1], WorkloadGenerator.fromArgs(args, 2));
+                    System.out.println("Status: SUCCESS");
+                    break;
+                case "quantize":
+                    handleQuantize(args);
+                    break;
+                case "prune":
+                    handlePrune(args);
+                    break;
+                case "mmap":
+                    handleMmap(args);
+                    break;
+                case "serve":
+                    handleServe(args);
+                    break;
+                case "daemon":
+                    handleDaemon(args);
+                    break;
+                case "warmup":
+                    handleWarmup(args);
+                    break;
+                case "cds":
+                    handleCds(args);
+                    break;
                 case "info":
                     printSystemInfo();
                     break;
@@ -54,115 +135,1018 @@ public class Main {
     
     /**
      * Maneja el comando de entrenamiento
-     * Uso: java -jar core.jar train <input_path> <model_id>
+     * Uso: java -jar core.jar train <input_path> <model_id> [opciones]
+     * Opciones: --epochs N --lr X --batch N --val F --patience N
+     *           --optimizer sgd|momentum|nesterov|adam|adamw --momentum X --weight-decay X
+     *           --schedule constant|step|cosine --lr-step N --lr-gamma X
+     *           --resume --checkpoint-every SEC --head auto|sigmoid|softmax
+     *           --layers 128:relu,64:tanh --activation relu|leakyrelu|tanh|sigmoid
+     *           --conv 8x5:relu,pool2 --input-shape 28x28x1
+     *           --threads N --pipeline S --micro-batches M
+     *           --prune S --prune-scope global|layer
+     *           --normalize auto|minmax|standard|maxabs|none
+     *           --sparse (entradas dispersas; automático con .libsvm/.svm)
      */
     private static void handleTrain(String[] args) throws Exception {
         if (args.length < 3) {
             System.err.println("ERROR: Faltan argumentos para train");
-            System.err.println("Uso: java -jar core.jar train <input_path> <model_id>");
+            System.err.println("Uso: java -jar core.jar train <input_path> <model_id> [opciones]");
             System.exit(1);
         }
         
         String inputPath = args[1];
         String modelId = args[2];
+        Map<String, String> options = parseOptions(args, 3);
+        
+        TrainingConfig config = buildConfig(options, modelId).setDatasetId(datasetId(inputPath, options));
         System.out.println("[TRAIN] Iniciando con dataset: " + inputPath);
         System.out.println("[TRAIN] Modelo ID: " + modelId);
         
         // P4 Tarea 4.2: Gestión de I/O - Leer y normalizar datos
         DataLoader loader = new DataLoader();
-        TrainingData data = loader.loadTrainingData(inputPath);
+        loader.setNormalization(options.getOrDefault("normalize", "auto"));
+        TrainingData data = loadDataset(loader, inputPath, null, options);
         System.out.println("[TRAIN] Datos cargados: " + data.getSize() + " ejemplos");
         
+        // Holdout de validación para early stopping
+        TrainingData[] split = data.split(config.getValidationSplit(), config.getSeed());
+        TrainingData trainSet = split[0];
+        TrainingData validationSet = split[1];
+        if (validationSet != null) {
+            System.out.println("[TRAIN] Split: " + trainSet.getSize() + " entrenamiento, "
+                               + validationSet.getSize() + " validación");
+        }
+        
         // Configuración de la red neuronal (colaboración con P3)
-        int[] layers = {data.getInputSize(), 64, 32, data.getOutputSize()};
-        NeuralNetwork nn = new NeuralNetwork(layers);
+        NeuralNetwork nn = buildNetwork(options, data, true);
         
         // P4 Tarea 4.1: Multi-threading para entrenamiento
         System.out.println("[TRAIN] Iniciando entrenamiento multi-thread...");
-        MultiThreadTrainer trainer = new MultiThreadTrainer(nn);
-        trainer.train(data, 10, 0.01, 32); // epochs, learning rate, batch size
+        System.out.println("[TRAIN] Configuración: " + config);
+        MultiThreadTrainer trainer = new MultiThreadTrainer(nn, config.getThreads());
+        trainer.train(trainSet, validationSet, config);
         System.out.println("[TRAIN] Entrenamiento completado");
         
-        // Calcular precisión
-        int correct = 0;
-        for (int i = 0; i < data.getSize(); i++) {
-            TrainingData.DataPair pair = data.getExample(i);
-            double[] output = nn.predict(pair.input);
-            
-            int predicted = 0;
-            double maxVal = output[0];
-            for (int j = 1; j < output.length; j++) {
-                if (output[j] > maxVal) {
-                    maxVal = output[j];
-                    predicted = j;
+        // Calcular precisión (evaluación paralela en un solo pase)
+        // sobre la validación si existe, si no sobre el entrenamiento
+        TrainingData evalSet = validationSet != null ? validationSet : trainSet;
+        ParallelEvaluator.Result result = new ParallelEvaluator(nn, ComputeScheduler.shared(), config.getThreads())
+                .evaluate(evalSet);
+        System.out.printf("[TRAIN] Final Loss: %.6f%n", result.getLoss());
+        System.out.printf("[TRAIN] Final Accuracy: %.4f%n", result.getAccuracy());
+        result.print("[TRAIN]");
+
+        // Guardar modelo (P3 proporciona la serialización)
+        String modelPath = "models/" + modelId + ".bin";
+        System.out.println("[TRAIN] Guardando modelo en: " + modelPath);
+        nn.saveModel(modelPath);
+        System.out.println("[TRAIN] Modelo guardado exitosamente");
+        
+        // El trabajo terminó: el checkpoint ya no es necesario
+        Files.deleteIfExists(config.getCheckpointPath());
+        
+        System.out.println("Status: SUCCESS");
+    }
+    
+    /**
+     * Maneja el comando de búsqueda de hiperparámetros
+     * Uso: java -jar core.jar tune <input_path> <model_id> [--trials N] [--parallel P]
+     *                              [--min-epochs R] [--eta E] [opciones de train]
+     * Cualquier opción de train admite alternativas "a|b|c" o un rango
+     * "min..max"; por defecto se buscan --lr 0.001..0.1, --batch 16|32|64 y
+     * --layers 32|64,32|128,64. El dataset se carga una sola vez y los
+     * trials lo comparten en memoria; ASHA corta los peores en los epochs
+     * R, R*E, R*E^2... Guarda el mejor modelo en models/<model_id>.bin.
+     */
+    private static void handleTune(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("ERROR: Faltan argumentos para tune");
+            System.err.println("Uso: java -jar core.jar tune <input_path> <model_id> [--trials N] [--parallel P] [opciones]");
+            System.exit(1);
+        }
+        
+        String inputPath = args[1];
+        String modelId = args[2];
+        Map<String, String> options = parseOptions(args, 3);
+        int trials = intOption(options, "trials", 12);
+        int parallel = intOption(options, "parallel", Math.min(trials, ComputeScheduler.shared().getParallelism()));
+        int minEpochs = intOption(options, "min-epochs", 1);
+        int eta = intOption(options, "eta", 3);
+        long seed = options.containsKey("seed") ? Long.parseLong(options.get("seed")) : 42;
+        for (String key : new String[]{"trials", "parallel", "min-epochs", "eta"}) {
+            options.remove(key);
+        }
+        // Espacio por defecto; 9 epochs = escalones en 1 y 3 con eta 3
+        options.putIfAbsent("lr", "0.001..0.1");
+        options.putIfAbsent("batch", "16|32|64");
+        options.putIfAbsent("layers", "32|64,32|128,64");
+        options.putIfAbsent("epochs", "9");
+        
+        TrainingConfig base = buildConfig(sampleFree(options), modelId);
+        DataLoader loader = new DataLoader();
+        loader.setNormalization(options.getOrDefault("normalize", "auto"));
+        TrainingData data = loadDataset(loader, inputPath, null, options);
+        TrainingData[] split = data.split(base.getValidationSplit(), base.getSeed());
+        System.out.println("[TUNE] Datos cargados una vez: " + data.getSize() + " ejemplos ("
+                           + split[0].getSize() + " entrenamiento, "
+                           + (split[1] != null ? split[1].getSize() : 0) + " validación)");
+        
+        HyperparameterSearch search = new HyperparameterSearch(split[0], split[1], parallel, minEpochs, eta);
+        System.out.println("[TUNE] " + trials + " trials, " + parallel + " a la vez con "
+                           + search.getThreadsPerTrial() + " threads cada uno; ASHA desde el epoch "
+                           + minEpochs + ", eta " + eta);
+        long start = System.nanoTime();
+        List<HyperparameterSearch.Trial> results = search.run(options, trials, seed,
+            new HyperparameterSearch.TrialFactory() {
+                @Override
+                public NeuralNetwork network(Map<String, String> trial) {
+                    return buildNetwork(trial, data, false);
                 }
-            }
-            
-            int actual = 0;
-            maxVal = pair.output[0];
-            for (int j = 1; j < pair.output.length; j++) {
-                if (pair.output[j] > maxVal) {
-                    maxVal = pair.output[j];
-                    actual = j;
+                
+                @Override
+                public TrainingConfig config(Map<String, String> trial) {
+                    return buildConfig(trial, modelId);
                 }
+            });
+        double seconds = (System.nanoTime() - start) / 1e9;
+        
+        System.out.println("[TUNE] Trial  Val Loss  Accuracy  Epochs  Hiperparámetros  (*: cortado por ASHA)");
+        int epochs = 0;
+        for (HyperparameterSearch.Trial trial : results) {
+            epochs += trial.getEpochs();
+            if (trial.getError() != null) {
+                System.out.printf("[TUNE] %5d  error: %s%n", trial.getId(), trial.getError());
+                continue;
             }
-            
-            if (predicted == actual) {
-                correct++;
-            }
+            System.out.printf(java.util.Locale.ROOT, "[TUNE] %5d  %8.6f  %8.4f  %6d%s  %s%n", trial.getId(),
+                              trial.getLoss(), trial.getAccuracy(), trial.getEpochs(),
+                              trial.isStopped() ? "*" : " ", trial.describe());
         }
-        double accuracy = (double) correct / data.getSize();
-        System.out.printf("[TRAIN] Final Accuracy: %.4f%n", accuracy);
-
-        // Guardar modelo (P3 proporciona la serialización)
+        HyperparameterSearch.Trial best = results.get(0);
+        if (best.getError() != null) {
+            throw new IllegalStateException("Todos los trials fallaron");
+        }
+        System.out.printf(java.util.Locale.ROOT, "[TUNE] %d trials en %.1f s (%d epochs entrenados, %.0f trials/hora)%n",
+                          trials, seconds, epochs, trials * 3600 / seconds);
+        System.out.println("[TUNE] Mejor configuración: " + best.describe());
+        
+        String modelPath = "models/" + modelId + ".bin";
+        best.getNetwork().saveModel(modelPath);
+        System.out.printf(java.util.Locale.ROOT, "[TUNE] Mejor modelo (trial %d, Val Accuracy %.4f) guardado en: %s%n",
+                          best.getId(), best.getAccuracy(), modelPath);
+        System.out.println("Status: SUCCESS");
+    }
+    
+    /**
+     * Las opciones sin los espacios de búsqueda (para validar las fijas)
+     */
+    private static Map<String, String> sampleFree(Map<String, String> options) {
+        Map<String, String> fixed = new HashMap<>(options);
+        fixed.values().removeIf(v -> v.contains("|") || v.contains(".."));
+        return fixed;
+    }
+    
+    /**
+     * Maneja el comando de entrenamiento distribuido (un proceso por nodo)
+     * Uso: java -jar core.jar train-dist <input_path> <model_id> --rank R --world W
+     *                                    --peers host:puerto,... [--sync-every K]
+     *                                    [--compress none|fp16|bf16|int8|topk[:fracción]] [opciones de train]
+     * Todos los procesos leen el mismo dataset; cada uno entrena con su parte
+     * y los parámetros se promedian por all-reduce en anillo. Solo el rank 0
+     * guarda el modelo.
+     */
+    private static void handleTrainDist(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("ERROR: Faltan argumentos para train-dist");
+            System.err.println("Uso: java -jar core.jar train-dist <input_path> <model_id> --rank R --world W --peers h:p,...");
+            System.exit(1);
+        }
+        
+        String inputPath = args[1];
+        String modelId = args[2];
+        Map<String, String> options = parseOptions(args, 3);
+        int rank = intOption(options, "rank", 0);
+        int world = intOption(options, "world", 1);
+        int syncEvery = intOption(options, "sync-every", 4);
+        GradientCompressor compressor = GradientCompressor.parse(options.getOrDefault("compress", "none"));
+        List<InetSocketAddress> peers = parsePeers(options.getOrDefault("peers", ""));
+        
+        TrainingConfig config = buildConfig(options, modelId);
+        System.out.println("[TRAIN] Iniciando con dataset: " + inputPath);
+        System.out.println("[TRAIN] Modelo ID: " + modelId);
+        System.out.println("[DIST] Rank " + rank + " de " + world + ", peers: " + options.getOrDefault("peers", ""));
+        
+        DataLoader loader = new DataLoader();
+        loader.setNormalization(options.getOrDefault("normalize", "auto"));
+        TrainingData data = loadDataset(loader, inputPath, null, options);
+        System.out.println("[TRAIN] Datos cargados: " + data.getSize() + " ejemplos");
+        
+        // Misma semilla en todos los procesos: mismo split de validación
+        TrainingData[] split = data.split(config.getValidationSplit(), config.getSeed());
+        TrainingData trainSet = split[0];
+        TrainingData validationSet = split[1];
+        NeuralNetwork nn = buildNetwork(options, data, true);
+        
+        // Identificador del trabajo: procesos con otra red u otro dataset no entran en el anillo.
+        // Solo se combinan cadenas y números (el hash de un enum cambia entre JVMs)
+        long jobId = nn.describeArchitecture().hashCode() * 31L * 31L
+                     + Objects.hash(modelId, data.getSize(), world, compressor.toString());
+        
+        try (RingAllReduce ring = RingAllReduce.connect(rank, world, peers, jobId,
+                                                         intOption(options, "connect-timeout", 60) * 1000)) {
+            System.out.println("[DIST] Anillo formado");
+            System.out.println("[TRAIN] Configuración: " + config);
+            System.out.println("[DIST] Compresión: " + compressor);
+            new DistributedTrainer(nn, ring, syncEvery, compressor).train(trainSet, validationSet, config);
+        }
+        System.out.println("[TRAIN] Entrenamiento completado");
+        
+        if (rank != 0) {
+            System.out.println("Status: SUCCESS");
+            return;
+        }
+        TrainingData evalSet = validationSet != null ? validationSet : trainSet;
+        ParallelEvaluator.Result result = new ParallelEvaluator(nn, ComputeScheduler.shared(), config.getThreads())
+                .evaluate(evalSet);
+        System.out.printf("[TRAIN] Final Loss: %.6f%n", result.getLoss());
+        System.out.printf("[TRAIN] Final Accuracy: %.4f%n", result.getAccuracy());
+        result.print("[TRAIN]");
+        
         String modelPath = "models/" + modelId + ".bin";
         System.out.println("[TRAIN] Guardando modelo en: " + modelPath);
         nn.saveModel(modelPath);
         System.out.println("[TRAIN] Modelo guardado exitosamente");
+        System.out.println("Status: SUCCESS");
+    }
+    
+    /**
+     * Maneja el comando finetune: continúa el entrenamiento de un modelo
+     * existente solo con datos nuevos
+     * Uso: java -jar core.jar finetune <model_id> <delta_path> [--replay <old_path>]
+     *                                  [--replay-size N] [opciones de train]
+     * Los datos se normalizan con el preprocesamiento guardado en el modelo
+     * (no se recalcula con el delta). --replay mezcla una muestra uniforme
+     * del dataset anterior para no olvidar lo aprendido. El modelo se
+     * publica de forma atómica al terminar.
+     */
+    private static void handleFinetune(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("ERROR: Faltan argumentos para finetune");
+            System.err.println("Uso: java -jar core.jar finetune <model_id> <delta_path> [--replay <old_path>] [opciones]");
+            System.exit(1);
+        }
+        
+        String modelId = args[1];
+        String deltaPath = args[2];
+        Map<String, String> options = parseOptions(args, 3);
+        
+        String modelPath = "models/" + modelId + ".bin";
+        NeuralNetwork nn = NeuralNetwork.loadModel(modelPath);
+        int[] layers = nn.getLayers();
+        System.out.println("[FINETUNE] Modelo: " + modelPath + " " + Arrays.toString(layers));
+        
+        // Menos epochs por defecto que un entrenamiento completo
+        TrainingConfig config = buildConfig(options, modelId + ".finetune");
+        String replayId = options.containsKey("replay")
+                ? "|replay " + datasetId(options.get("replay"), options) + " " + options.getOrDefault("replay-size", "1000")
+                : "";
+        config.setDatasetId(datasetId(deltaPath, options) + replayId);
+        if (!options.containsKey("epochs")) {
+            config.setEpochs(5);
+        }
+        
+        DataLoader loader = new DataLoader();
+        Preprocessor preprocessor = nn.getPreprocessor();
+        if (preprocessor == null) {
+            System.err.println("WARNING: el modelo no guarda su normalización; se ajusta con los datos nuevos");
+        } else {
+            System.out.println("[FINETUNE] Normalización del modelo: " + preprocessor);
+        }
+        TrainingData data = loadDataset(loader, deltaPath, preprocessor, options);
+        // Entradas del modelo: con convoluciones, las de la imagen (no layers[0])
+        if (data.getInputSize() != nn.getInputSize() || data.getOutputSize() != layers[layers.length - 1]) {
+            throw new IllegalArgumentException(String.format(
+                "Los datos nuevos tienen %d entradas y %d salidas, el modelo espera %d y %d",
+                data.getInputSize(), data.getOutputSize(), nn.getInputSize(), layers[layers.length - 1]));
+        }
+        if (preprocessor == null) {
+            nn.setPreprocessor(data.getPreprocessor());
+        }
+        System.out.println("[FINETUNE] Datos nuevos: " + data.getSize() + " ejemplos");
+        TrainingData delta = data;
+        
+        if (options.containsKey("replay")) {
+            TrainingData replay = loader.sampleTrainingData(options.get("replay"), nn.getPreprocessor(),
+                                                            intOption(options, "replay-size", 1000), config.getSeed());
+            data = data.concat(replay);
+            System.out.println("[FINETUNE] Con muestra del dataset anterior: " + data.getSize() + " ejemplos");
+        }
+        
+        TrainingData[] split = data.split(config.getValidationSplit(), config.getSeed());
+        TrainingData trainSet = split[0];
+        TrainingData validationSet = split[1];
+        
+        ParallelEvaluator evaluator = new ParallelEvaluator(nn, ComputeScheduler.shared(), config.getThreads());
+        ParallelEvaluator.Result before = evaluator.evaluate(delta);
+        
+        System.out.println("[FINETUNE] Configuración: " + config);
+        MultiThreadTrainer trainer = new MultiThreadTrainer(nn, config.getThreads());
+        trainer.train(trainSet, validationSet, config);
+        
+        ParallelEvaluator.Result after = evaluator.evaluate(delta);
+        System.out.printf("[FINETUNE] Datos nuevos - Loss: %.6f -> %.6f, Accuracy: %.4f -> %.4f%n",
+                          before.getLoss(), after.getLoss(), before.getAccuracy(), after.getAccuracy());
+        
+        // Publicación atómica: ModelCache y predict ven el modelo anterior o el nuevo
+        nn.saveModel(modelPath);
+        Files.deleteIfExists(config.getCheckpointPath());
+        if (Files.exists(Paths.get("models", modelId + ".q8"))) {
+            System.err.println("WARNING: models/" + modelId + ".q8 corresponde al modelo anterior; "
+                               + "volver a ejecutar quantize");
+        }
         
         System.out.println("Status: SUCCESS");
     }
     
+    /**
+     * "host:puerto,host:puerto,..." en orden de rank
+     */
+    private static List<InetSocketAddress> parsePeers(String value) {
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (String peer : value.split(",")) {
+            peer = peer.trim();
+            if (peer.isEmpty()) continue;
+            int colon = peer.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Peer inválido (se espera host:puerto): " + peer);
+            }
+            peers.add(InetSocketAddress.createUnresolved(peer.substring(0, colon),
+                                                         Integer.parseInt(peer.substring(colon + 1))));
+        }
+        return peers;
+    }
+    
+    /**
+     * Configuración de entrenamiento a partir de las opciones de train/train-dist
+     */
+    private static TrainingConfig buildConfig(Map<String, String> options, String modelId) {
+        TrainingConfig config = new TrainingConfig();
+        config.setEpochs(intOption(options, "epochs", config.getEpochs()))
+              .setLearningRate(doubleOption(options, "lr", config.getLearningRate()))
+              .setBatchSize(intOption(options, "batch", config.getBatchSize()))
+              .setOptimizer(options.getOrDefault("optimizer", config.getOptimizer()))
+              .setMomentum(doubleOption(options, "momentum", config.getMomentum()))
+              .setWeightDecay(doubleOption(options, "weight-decay", config.getWeightDecay()))
+              .setSchedule(options.getOrDefault("schedule", config.getSchedule()))
+              .setScheduleStep(intOption(options, "lr-step", config.getScheduleStep()))
+              .setScheduleGamma(doubleOption(options, "lr-gamma", config.getScheduleGamma()))
+              .setValidationSplit(doubleOption(options, "val", config.getValidationSplit()))
+              .setPatience(intOption(options, "patience", config.getPatience()))
+              .setCheckpointPath(Paths.get("models", "checkpoints", modelId + ".ckpt"))
+              .setCheckpointIntervalSeconds(intOption(options, "checkpoint-every",
+                                                      config.getCheckpointIntervalSeconds()))
+              .setResume(options.containsKey("resume"))
+              .setThreads(intOption(options, "threads", config.getThreads()))
+              .setPipelineStages(intOption(options, "pipeline", config.getPipelineStages()))
+              .setMicroBatches(intOption(options, "micro-batches", 0))
+              .setPruneSparsity(doubleOption(options, "prune", 0.0))
+              .setPruneGlobal(pruneScope(options));
+        return config;
+    }
+    
+    /**
+     * Identidad de un dataset para los checkpoints: el archivo (ruta, tamaño,
+     * fecha) y las opciones que cambian los ejemplos o el split
+     */
+    private static String datasetId(String path, Map<String, String> options) {
+        boolean sparse = options.containsKey("sparse") || DataLoader.isSparseFormat(path);
+        return TrainingCheckpoint.fingerprint(path)
+               + "|" + options.getOrDefault("normalize", "auto") + (sparse ? "|sparse" : "")
+               + "|val " + options.getOrDefault("val", "default");
+    }
+    
+    /**
+     * Carga el dataset con entradas dispersas si se pide --sparse o el
+     * archivo es libsvm (.libsvm, .svm), densas en otro caso
+     */
+    private static TrainingData loadDataset(DataLoader loader, String path, Preprocessor preprocessor,
+                                            Map<String, String> options) throws IOException {
+        if (options.containsKey("sparse") || DataLoader.isSparseFormat(path)) {
+            return loader.loadSparseTrainingData(path, preprocessor);
+        }
+        return loader.loadTrainingData(path, preprocessor);
+    }
+    
+    /**
+     * Red según --layers/--activation/--head (y --conv/--input-shape) para
+     * las dimensiones del dataset (verbose: mostrar la arquitectura)
+     */
+    private static NeuralNetwork buildNetwork(Map<String, String> options, TrainingData data, boolean verbose) {
+        // Capas ocultas configurables: --layers 128:relu,64:tanh (por defecto 64,32 ReLU)
+        Activation defaultActivation = Activation.parse(options.getOrDefault("activation", "relu"));
+        LayerSpec spec = LayerSpec.parse(options.getOrDefault("layers", LayerSpec.DEFAULT), defaultActivation);
+        // auto: softmax + cross-entropy para multiclase, sigmoid + MSE para salida única
+        String headName = options.getOrDefault("head", "auto");
+        OutputHead head = headName.equalsIgnoreCase("auto")
+                ? (data.getOutputSize() > 1 ? OutputHead.SOFTMAX : OutputHead.SIGMOID)
+                : OutputHead.parse(headName);
+        if (head == OutputHead.SOFTMAX && data.getOutputSize() < 2) {
+            throw new IllegalArgumentException("La salida softmax requiere al menos 2 clases");
+        }
+        NeuralNetwork nn;
+        if (options.containsKey("conv")) {
+            // Convoluciones sobre la imagen (por defecto cuadrada de un canal) delante de las capas densas
+            ConvStack conv = ConvStack.parse(options.get("conv"), options.get("input-shape"),
+                                             data.getInputSize(), defaultActivation);
+            nn = spec.build(conv, data.getOutputSize(), head);
+            if (verbose) {
+                System.out.println("[TRAIN] Convolución: " + conv);
+            }
+        } else {
+            nn = spec.build(data.getInputSize(), data.getOutputSize(), head);
+        }
+        // La normalización del dataset viaja con el modelo
+        nn.setPreprocessor(data.getPreprocessor());
+        if (verbose) {
+            System.out.println("[TRAIN] Capas ocultas: " + spec);
+            System.out.println("[TRAIN] Capa de salida: " + head.name().toLowerCase());
+        }
+        return nn;
+    }
+    
     /**
      * Maneja el comando de predicción
-     * Uso: java -jar core.jar predict <model_id> <input_data>
+     * Uso: java -jar core.jar predict <model_id> <input_data> [--int8]
      */
     private static void handlePredict(String[] args) throws Exception {
         if (args.length < 3) {
             System.err.println("ERROR: Faltan argumentos para predict");
-            System.err.println("Uso: java -jar core.jar predict <model_id> <input_data>");
+            System.err.println("Uso: java -jar core.jar predict <model_id> <input_data> [--int8]");
             System.exit(1);
         }
         
         String modelId = args[1];
         String inputData = args[2];
+        boolean int8 = parseOptions(args, 3).containsKey("int8");
         
         System.err.println("Model ID: " + modelId);
         
-        // Cargar modelo
+        // P4 Tarea 4.2: Parsear input (la normalización del modelo está plegada en su primera capa)
+        DataLoader loader = new DataLoader();
+        double[] input = loader.parseInputVector(inputData);
+        
+        // Cargar modelo y realizar predicción
+        double[] output;
+        if (int8) {
+            QuantizedNetwork qnn = QuantizedNetwork.load("models/" + modelId + ".q8");
+            output = qnn.predict(input);
+        } else {
+            NeuralNetwork nn = NeuralNetwork.loadForInference("models/" + modelId + ".bin");
+            output = nn.predict(input);
+        }
+        
+        // Clase y confianza: argmax, o umbral 0.5 con una sola salida (igual que score y serve)
+        int predictedClass = NeuralNetwork.classIndex(output);
+        double confidence = NeuralNetwork.confidence(output, predictedClass);
+        
+        // Formatear salida: "Prediccion: X (YY.YY% confianza)"
+        System.out.printf("Prediccion: %d (%.2f%% confianza)%n", predictedClass, confidence * 100);
+        System.err.println("Status: SUCCESS");
+    }
+    
+    /**
+     * Maneja el comando score: inferencia masiva sobre un archivo por streaming
+     * Uso: java -jar core.jar score <model_id> <input.csv|.bin> <output.csv|.bin>
+     *                               [--full] [--int8] [--label auto|first|last|none]
+     *                               [--batch N] [--threads N] [--pipeline S]
+     * Las entradas van crudas, igual que en predict: la normalización del
+     * modelo está plegada en su primera capa. Si el archivo trae
+     * una columna de etiqueta se descarta para la inferencia y se reporta
+     * la accuracy.
+     */
+    private static void handleScore(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("ERROR: Faltan argumentos para score");
+            System.err.println("Uso: java -jar core.jar score <model_id> <input.csv|.bin> <output.csv|.bin> [opciones]");
+            System.exit(1);
+        }
+        
+        String modelId = args[1];
+        String inputPath = args[2];
+        String outputPath = args[3];
+        Map<String, String> options = parseOptions(args, 4);
+        int threads = intOption(options, "threads", 0);
+        int chunkRows = intOption(options, "batch", 4096);
+        int stages = intOption(options, "pipeline", 1);
+        
+        int[] layers;
+        int inputSize;
+        BatchScorer.BatchModel model;
+        PipelineExecutor pipeline = null;
+        if (options.containsKey("int8")) {
+            QuantizedNetwork qnn = QuantizedNetwork.load("models/" + modelId + ".q8");
+            layers = qnn.getLayers();
+            inputSize = layers[0];
+            model = BatchScorer.parallel(qnn, ComputeScheduler.shared(), threads);
+        } else {
+            NeuralNetwork nn = NeuralNetwork.loadForInference("models/" + modelId + ".bin");
+            layers = nn.getLayers();
+            inputSize = nn.getInputSize();
+            if (stages > 1) {
+                PipelineExecutor executor = new PipelineExecutor(nn, stages);
+                int microBatch = Math.max(1, chunkRows / (4 * stages));
+                model = (rows, count) -> executor.predict(Arrays.copyOf(rows, count), microBatch);
+                pipeline = executor;
+                System.out.println("[SCORE] Pipeline: " + executor.describeStages());
+            } else {
+                model = BatchScorer.parallel(nn, ComputeScheduler.shared(), threads);
+            }
+        }
+        int outputSize = layers[layers.length - 1];
+        
+        try (RowReader reader = RowReader.open(inputPath)) {
+            BatchScorer.LabelColumn label = labelColumn(options.getOrDefault("label", "auto"),
+                                                        reader.columns(), inputSize, inputPath);
+            System.out.println("[SCORE] Entrada: " + inputPath + " (" + reader.columns() + " columnas, etiqueta: "
+                               + label.name().toLowerCase() + ")");
+            BatchScorer scorer = new BatchScorer(model, inputSize, outputSize, chunkRows, options.containsKey("full"));
+            BatchScorer.Result result = scorer.score(reader, label, outputPath);
+            
+            System.out.printf("[SCORE] Filas: %d en %.2fs (%.0f filas/s) -> %s%n",
+                              result.rows, result.seconds, result.rowsPerSecond(), outputPath);
+            if (result.labeled > 0) {
+                System.out.printf("[SCORE] Accuracy: %.4f (%d/%d)%n",
+                                  result.accuracy(), result.correct, result.labeled);
+            }
+        } finally {
+            if (pipeline != null) {
+                pipeline.close();
+            }
+        }
+        System.out.println("Status: SUCCESS");
+    }
+    
+    /**
+     * Columna de etiqueta según --label; auto la detecta por el número de
+     * columnas, en la misma posición que DataLoader (primera en MNIST/Fashion)
+     */
+    private static BatchScorer.LabelColumn labelColumn(String mode, int columns, int inputSize, String path) {
+        switch (mode.toLowerCase()) {
+            case "none":
+                return BatchScorer.LabelColumn.NONE;
+            case "first":
+                return BatchScorer.LabelColumn.FIRST;
+            case "last":
+                return BatchScorer.LabelColumn.LAST;
+            case "auto":
+                if (columns != inputSize + 1) {
+                    return BatchScorer.LabelColumn.NONE;
+                }
+                String fileName = Paths.get(path).getFileName().toString().toLowerCase();
+                return fileName.contains("mnist") || fileName.contains("fashion")
+                        ? BatchScorer.LabelColumn.FIRST : BatchScorer.LabelColumn.LAST;
+            default:
+                throw new IllegalArgumentException("--label debe ser auto, first, last o none");
+        }
+    }
+    
+    /**
+     * Maneja el comando convert: CSV numérico -> formato binario de filas
+     * Uso: java -jar core.jar convert <input.csv> <output.bin>
+     */
+    private static void handleConvert(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("ERROR: Faltan argumentos para convert");
+            System.err.println("Uso: java -jar core.jar convert <input.csv> <output.bin>");
+            System.exit(1);
+        }
+        
+        long start = System.nanoTime();
+        try (RowReader reader = RowReader.open(args[1]);
+             BinaryRowWriter writer = new BinaryRowWriter(args[2], reader.columns())) {
+            double[] row = new double[reader.columns()];
+            while (reader.next(row)) {
+                writer.write(row);
+            }
+            System.out.printf("[CONVERT] %d filas x %d columnas -> %s (%.2fs)%n",
+                              writer.getRows(), reader.columns(), args[2], (System.nanoTime() - start) / 1e9);
+        }
+        System.out.println("Status: SUCCESS");
+    }
+    
+    /**
+     * Maneja el comando serve: servidor de predicción de larga vida
+     * Uso: java -jar core.jar serve [--port N] [--max-connections N] [--queue N]
+     *                               [--queue-timeout MS] [--idle-timeout SEC]
+     *                               [--warmup MS] [--warmup-models N]
+     */
+    private static void handleServe(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args, 1);
+        int port = intOption(options, "port", 7000);
+        int maxConnections = intOption(options, "max-connections", 1024);
+        int queue = intOption(options, "queue", 4 * ComputeScheduler.shared().getParallelism());
+        int queueTimeoutMs = intOption(options, "queue-timeout", 100);
+        int idleTimeoutSec = intOption(options, "idle-timeout", 300);
+        
+        PredictionServer server = new PredictionServer(port, "models", maxConnections, queue,
+                                                       queueTimeoutMs, idleTimeoutSec * 1000);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close, "serve-shutdown"));
+        server.warmup(intOption(options, "warmup", 500), intOption(options, "warmup-models", 8));
+        server.serve();
+    }
+    
+    /**
+     * Maneja el comando daemon: entrenamientos en una JVM de larga vida
+     * Uso: java -jar core.jar daemon [--port 7200] [--cores N] [--datasets N] [--warmup MS]
+     * Recibe trabajos "train" por un socket local (ver TrainingDaemon), los
+     * ejecuta en esta JVM con un presupuesto global de núcleos y conserva
+     * los datasets parseados entre trabajos.
+     */
+    private static void handleDaemon(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args, 1);
+        int port = intOption(options, "port", 7200);
+        int cores = intOption(options, "cores", ComputeScheduler.shared().getParallelism());
+        int maxDatasets = intOption(options, "datasets", 4);
+        long warmupMillis = intOption(options, "warmup", 500);
+        
+        TrainingDaemon daemon = new TrainingDaemon(port, cores, maxDatasets, Main::runDaemonJob);
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::close, "daemon-shutdown"));
+        if (warmupMillis > 0) {
+            // Forward y backward compilados antes del primer trabajo
+            System.out.println("[DAEMON] Warm-up: " + Warmup.run(new int[]{784, 128, 64, 10},
+                new Activation[]{Activation.RELU, Activation.RELU}, OutputHead.SOFTMAX, warmupMillis));
+        }
+        daemon.serve();
+    }
+    
+    /**
+     * Un trabajo "train" del daemon: lo mismo que handleTrain, con el dataset
+     * de la caché del daemon, los threads reservados para el trabajo y sin
+     * salida por consola (el progreso va en los eventos del trabajo)
+     */
+    private static String runDaemonJob(TrainingDaemon.Job job) throws Exception {
+        String[] args = job.getArgs();
+        String inputPath = args[1];
+        String modelId = args[2];
+        Map<String, String> options = parseOptions(args, 3);
+        TrainingConfig config = buildConfig(options, modelId)
+                .setThreads(job.getThreads())
+                .setDatasetId(datasetId(inputPath, options));
+        
+        String normalization = options.getOrDefault("normalize", "auto");
+        boolean sparse = options.containsKey("sparse") || DataLoader.isSparseFormat(inputPath);
+        TrainingData data = job.getDatasets().get(inputPath, normalization + (sparse ? "|sparse" : ""), () -> {
+            DataLoader loader = new DataLoader();
+            loader.setNormalization(normalization);
+            loader.setLog(job.getLog());
+            return loadDataset(loader, inputPath, null, options);
+        });
+        TrainingData[] split = data.split(config.getValidationSplit(), config.getSeed());
+        
+        NeuralNetwork nn = buildNetwork(options, data, false);
+        MultiThreadTrainer trainer = new MultiThreadTrainer(nn, job.getThreads(), QUIET);
+        trainer.setListener(job);
+        trainer.train(split[0], split[1], config);
+        if (job.isCancelled()) {
+            throw new java.util.concurrent.CancellationException();
+        }
+        
+        TrainingData evalSet = split[1] != null ? split[1] : split[0];
+        ParallelEvaluator.Result result = new ParallelEvaluator(nn, ComputeScheduler.shared(), job.getThreads())
+                .evaluate(evalSet);
+        String modelPath = "models/" + modelId + ".bin";
+        nn.saveModel(modelPath, job.getLog());
+        Files.deleteIfExists(config.getCheckpointPath());
+        return String.format(java.util.Locale.ROOT, "accuracy=%.4f loss=%.6f model=%s",
+                             result.getAccuracy(), result.getLoss(), modelPath);
+    }
+    
+    /**
+     * Maneja el comando warmup: calienta el JIT con la forma de un modelo
+     * Uso: java -jar core.jar warmup [model_id] [--millis MS]
+     * Sin modelo usa la forma MNIST 784-128-64-10. Es también la ejecución
+     * de entrenamiento del archivo CDS (comando cds).
+     */
+    private static void handleWarmup(String[] args) throws Exception {
+        boolean hasModel = args.length > 1 && !args[1].startsWith("--");
+        Map<String, String> options = parseOptions(args, hasModel ? 2 : 1);
+        long millis = intOption(options, "millis", 1000);
+        
+        Warmup.Result result;
+        if (hasModel) {
+            NeuralNetwork nn = NeuralNetwork.loadForInference("models/" + args[1] + ".bin");
+            // Carga también el parser de entrada que usa predict
+            new DataLoader().parseInputVector(String.join(",", Collections.nCopies(nn.getInputSize(), "0")));
+            result = Warmup.run(nn, millis);
+        } else {
+            result = Warmup.run(new int[]{784, 128, 64, 10},
+                                new Activation[]{Activation.RELU, Activation.RELU}, OutputHead.SOFTMAX, millis);
+        }
+        System.out.println("[WARMUP] " + result);
+        System.out.println("Status: SUCCESS");
+    }
+    
+    /**
+     * Maneja el comando mmap: exporta models/<model_id>.wmap, los pesos en un
+     * formato que se mapea en memoria sin deserializar (ver MappedModel)
+     * Uso: java -jar core.jar mmap <model_id>
+     * Desde entonces predict, score y serve mapean ese archivo mientras no
+     * sea anterior al .bin: todos los procesos del nodo comparten una sola
+     * copia física de los pesos (la caché de páginas del sistema).
+     */
+    private static void handleMmap(String[] args) throws Exception {
+        String modelId = args[1];
+        String modelPath = "models/" + modelId + ".bin";
+        String mappedPath = MappedModel.pathFor(modelPath);
+        
+        long start = System.nanoTime();
+        NeuralNetwork nn = NeuralNetwork.loadModel(modelPath);
+        nn.foldPreprocessor();
+        long deserializeNanos = System.nanoTime() - start;
+        MappedModel.export(nn, mappedPath);
+        System.out.println("[MMAP] Archivo: " + mappedPath + " (" + Files.size(Paths.get(mappedPath)) / 1024 + " KB)");
+        
+        // Comprobar que la copia mapeada predice lo mismo
+        start = System.nanoTime();
+        NeuralNetwork mapped = MappedModel.load(mappedPath);
+        long mapNanos = System.nanoTime() - start;
+        double[] probe = new double[nn.getInputSize()];
+        java.util.Random random = new java.util.Random(42);
+        for (int i = 0; i < probe.length; i++) {
+            probe[i] = random.nextDouble();
+        }
+        if (!Arrays.equals(nn.predict(probe), mapped.predict(probe))) {
+            throw new IllegalStateException("La copia mapeada no coincide con el modelo");
+        }
+        System.out.printf(java.util.Locale.ROOT, "[MMAP] Carga: deserializar %.2f ms, mapear %.2f ms%n",
+                          deserializeNanos / 1e6, mapNanos / 1e6);
+        System.out.println("Status: SUCCESS");
+    }
+    
+    /**
+     * Maneja el comando cds: genera un archivo de Class Data Sharing para core.jar
+     * Uso: java -jar core.jar cds [archivo.jsa] [--model model_id] [--millis MS]
+     * Lanza "warmup" en una JVM hija con -XX:ArchiveClassesAtExit (JDK 13+),
+     * así el archivo contiene las clases ya verificadas y parseadas que usa
+     * el core, y después mide el arranque en frío con y sin el archivo.
+     * Uso del archivo: java -XX:SharedArchiveFile=core.jsa -jar core.jar ...
+     */
+    private static void handleCds(String[] args) throws Exception {
+        boolean hasArchive = args.length > 1 && !args[1].startsWith("--");
+        Map<String, String> options = parseOptions(args, hasArchive ? 2 : 1);
+        
+        Path jar = Paths.get(Main.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        if (!jar.toString().endsWith(".jar")) {
+            throw new IllegalStateException("cds requiere ejecutar desde core.jar (java -jar core.jar cds)");
+        }
+        Path archive = hasArchive ? Paths.get(args[1]) : jar.resolveSibling("core.jsa");
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String modelId = options.get("model");
+        
+        List<String> training = new ArrayList<>(Arrays.asList(
+            java, "-XX:ArchiveClassesAtExit=" + archive.toAbsolutePath(), "-jar", jar.toString(), "warmup"));
+        if (modelId != null) {
+            training.add(modelId);
+        }
+        training.add("--millis");
+        training.add(options.getOrDefault("millis", "500"));
+        
+        System.out.println("[CDS] Generando " + archive + "...");
+        Process process = new ProcessBuilder(training).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        if (process.waitFor() != 0 || !Files.exists(archive)) {
+            throw new IllegalStateException("No se pudo generar el archivo CDS (requiere JDK 13+)");
+        }
+        System.out.println("[CDS] Archivo: " + archive + " (" + Files.size(archive) / 1024 + " KB)");
+        
+        // Arranque en frío: predict si hay modelo, si no info
+        List<String> probe = new ArrayList<>(Arrays.asList("-jar", jar.toString()));
+        if (modelId != null) {
+            int inputSize = NeuralNetwork.loadModel("models/" + modelId + ".bin").getInputSize();
+            probe.addAll(Arrays.asList("predict", modelId, String.join(",", Collections.nCopies(inputSize, "0"))));
+        } else {
+            probe.add("info");
+        }
+        long cold = measureStartup(java, null, probe);
+        long shared = measureStartup(java, "-XX:SharedArchiveFile=" + archive.toAbsolutePath(), probe);
+        System.out.printf("[CDS] Arranque en frío (%s): sin archivo %.0f ms, con archivo %.0f ms (%.0f%% menos)%n",
+                          probe.get(2), cold / 1e6, shared / 1e6, 100.0 * (cold - shared) / cold);
+        System.out.println("Status: SUCCESS");
+    }
+    
+    /**
+     * Mejor de 3 ejecuciones (tiempo de pared) de java [flag] args
+     */
+    private static long measureStartup(String java, String flag, List<String> args) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        if (flag != null) {
+            command.add(flag);
+        }
+        command.addAll(args);
+        
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            if (process.waitFor() != 0) {
+                throw new IllegalStateException("Falló la medición: " + String.join(" ", command));
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+    
+    /**
+     * Maneja el comando de cuantización int8
+     * Uso: java -jar core.jar quantize <model_id> <calibration_path> [muestras]
+     * Genera models/<model_id>.q8 y reporta la diferencia de accuracy
+     * frente al modelo en punto flotante sobre el dataset de calibración.
+     */
+    private static void handleQuantize(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("ERROR: Faltan argumentos para quantize");
+            System.err.println("Uso: java -jar core.jar quantize <model_id> <calibration_path> [muestras]");
+            System.exit(1);
+        }
+        
+        String modelId = args[1];
+        String dataPath = args[2];
+        int samples = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        
         String modelPath = "models/" + modelId + ".bin";
         NeuralNetwork nn = NeuralNetwork.loadModel(modelPath);
+        // Entradas tal como las recibe predict: crudas si el modelo guarda su normalización
+        DataLoader loader = new DataLoader();
+        TrainingData data = nn.getPreprocessor() != null
+                ? loader.loadTrainingData(dataPath, Preprocessor.identity(nn.getInputSize()))
+                : loader.loadTrainingData(dataPath);
+        System.out.println("[QUANTIZE] Calibrando con " + Math.min(samples, data.getSize()) + " ejemplos");
+        
+        QuantizedNetwork qnn = QuantizedNetwork.quantize(nn, data, samples);
+        nn.foldPreprocessor();
+        String qPath = "models/" + modelId + ".q8";
+        qnn.save(qPath);
+        
+        // Reporte de accuracy: float vs int8
+        int floatCorrect = 0;
+        int int8Correct = 0;
+        int agree = 0;
+        long floatNanos = 0;
+        long int8Nanos = 0;
+        for (int i = 0; i < data.getSize(); i++) {
+            TrainingData.DataPair pair = data.getExample(i);
+            int actual = NeuralNetwork.classIndex(pair.output);
+            
+            long t0 = System.nanoTime();
+            int floatClass = nn.predictClass(pair.input);
+            long t1 = System.nanoTime();
+            int int8Class = qnn.predictClass(pair.input);
+            long t2 = System.nanoTime();
+            
+            floatNanos += t1 - t0;
+            int8Nanos += t2 - t1;
+            if (floatClass == actual) floatCorrect++;
+            if (int8Class == actual) int8Correct++;
+            if (floatClass == int8Class) agree++;
+        }
+        int n = data.getSize();
+        double floatAcc = (double) floatCorrect / n;
+        double int8Acc = (double) int8Correct / n;
+        
+        System.out.printf("[QUANTIZE] Accuracy float: %.4f%n", floatAcc);
+        System.out.printf("[QUANTIZE] Accuracy int8:  %.4f%n", int8Acc);
+        System.out.printf("[QUANTIZE] Delta: %+.4f (coincidencia de clase: %.2f%%)%n",
+                          int8Acc - floatAcc, 100.0 * agree / n);
+        System.out.printf("[QUANTIZE] Latencia media: float %.1f us, int8 %.1f us%n",
+                          floatNanos / 1000.0 / n, int8Nanos / 1000.0 / n);
+        System.out.printf("[QUANTIZE] Tamaño: %s %d bytes -> %s %d bytes%n",
+                          modelPath, new java.io.File(modelPath).length(),
+                          qPath, new java.io.File(qPath).length());
+        long floatBytes = 8L * nn.getParameterCount();
+        System.out.printf("[QUANTIZE] Parámetros en memoria: float %d bytes -> int8 %d bytes (%.1fx menos)%n",
+                          floatBytes, qnn.getSizeBytes(), (double) floatBytes / qnn.getSizeBytes());
+        System.out.println("Status: SUCCESS");
+    }
+    
+    /**
+     * Maneja el comando de poda por magnitud
+     * Uso: java -jar core.jar prune <model_id> <data_path> [--sparsity 0.8] [--scope global|layer]
+     *                               [--levels 0,0.5,0.8,0.9] [--output id]
+     * Mide accuracy y latencia de predict en cada nivel de poda (partiendo
+     * siempre de los pesos originales) y guarda el modelo podado a --sparsity
+     * en models/<output>.bin (por defecto <model_id>_pruned). Sin reentrenar:
+     * para sparsity altas conviene la poda gradual de train --prune.
+     */
+    private static void handlePrune(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("ERROR: Faltan argumentos para prune");
+            System.err.println("Uso: java -jar core.jar prune <model_id> <data_path> [--sparsity 0.8] [--scope global|layer]");
+            System.exit(1);
+        }
         
-        // P4 Tarea 4.2: Parsear y normalizar input
+        String modelId = args[1];
+        String dataPath = args[2];
+        Map<String, String> options = parseOptions(args, 3);
+        double target = doubleOption(options, "sparsity", 0.8);
+        boolean global = pruneScope(options);
+        String outputId = options.getOrDefault("output", modelId + "_pruned");
+        
+        String modelPath = "models/" + modelId + ".bin";
+        NeuralNetwork nn = NeuralNetwork.loadModel(modelPath);
+        // Se poda y se guarda la red sin plegar: se evalúa con su propia normalización
         DataLoader loader = new DataLoader();
-        double[] input = loader.parseInputVector(inputData);
+        TrainingData data = nn.getPreprocessor() != null
+                ? loader.loadTrainingData(dataPath, nn.getPreprocessor())
+                : loader.loadTrainingData(dataPath);
+        System.out.println("[PRUNE] Modelo: " + modelPath + " " + Arrays.toString(nn.getLayers())
+                           + " - " + data.getSize() + " ejemplos, poda " + (global ? "global" : "por capa"));
         
-        // Realizar predicción
-        double[] output = nn.predict(input);
+        List<Double> levels = new ArrayList<>();
+        for (String level : options.getOrDefault("levels", "0,0.5,0.7,0.8,0.9,0.95").split(",")) {
+            levels.add(Double.parseDouble(level.trim()));
+        }
+        if (!levels.contains(target)) {
+            levels.add(target);
+            Collections.sort(levels);
+        }
         
-        // Encontrar el índice con mayor probabilidad (argmax)
-        int predictedClass = 0;
-        double maxProbability = output[0];
-        for (int i = 1; i < output.length; i++) {
-            if (output[i] > maxProbability) {
-                maxProbability = output[i];
-                predictedClass = i;
+        double[] original = nn.snapshotParameters(null);
+        // Compilar predict antes de medir el primer nivel
+        for (int i = 0; i < Math.min(500, data.getSize()); i++) {
+            nn.predictClass(data.getExample(i).input);
+        }
+        System.out.println("[PRUNE] Sparsity  Accuracy  Latencia  Densidad por capa");
+        for (double level : levels) {
+            nn.restoreParameters(original);
+            double[] densities = Pruning.prune(nn, level, global);
+            // Kernel disperso en las capas que lo usarían al cargar para inferencia
+            nn.compressSparseLayers(Pruning.SPARSE_KERNEL_DENSITY);
+            int correct = 0;
+            long nanos = 0;
+            for (int i = 0; i < data.getSize(); i++) {
+                TrainingData.DataPair pair = data.getExample(i);
+                long t0 = System.nanoTime();
+                int predicted = nn.predictClass(pair.input);
+                nanos += System.nanoTime() - t0;
+                if (predicted == NeuralNetwork.classIndex(pair.output)) correct++;
             }
+            System.out.printf(java.util.Locale.ROOT, "[PRUNE] %8.2f  %8.4f  %6.1f us  %s%n", level,
+                              (double) correct / data.getSize(), nanos / 1000.0 / data.getSize(),
+                              Pruning.format(densities));
         }
         
-        // Formatear salida: "Prediccion: X (YY.YY% confianza)"
-        System.out.printf("Prediccion: %d (%.2f%% confianza)%n", predictedClass, maxProbability * 100);
-        System.err.println("Status: SUCCESS");
+        nn.restoreParameters(original);
+        Pruning.prune(nn, target, global);
+        String outputPath = "models/" + outputId + ".bin";
+        nn.saveModel(outputPath);
+        System.out.printf("[PRUNE] Tamaño: %s %d bytes -> %s %d bytes (sparsity %.2f)%n",
+                          modelPath, new java.io.File(modelPath).length(),
+                          outputPath, new java.io.File(outputPath).length(), target);
+        System.out.println("Status: SUCCESS");
+    }
+    
+    /**
+     * --scope / --prune-scope: global (por defecto) o layer
+     */
+    private static boolean pruneScope(Map<String, String> options) {
+        String scope = options.getOrDefault("scope", options.getOrDefault("prune-scope", "global"));
+        switch (scope.toLowerCase()) {
+            case "global":
+                return true;
+            case "layer":
+                return false;
+            default:
+                throw new IllegalArgumentException("Alcance de poda inválido: " + scope + " (global|layer)");
+        }
+    }
+    
+    /**
+     * Parsea opciones "--clave valor" (o "--flag" sin valor) desde args[start]
+     */
+    private static Map<String, String> parseOptions(String[] args, int start) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = start; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Opción inválida: " + args[i]);
+            }
+            String key = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(key, args[++i]);
+            } else {
+                options.put(key, "true");
+            }
+        }
+        return options;
+    }
+    
+    private static int intOption(Map<String, String> options, String key, int defaultValue) {
+        return options.containsKey(key) ? Integer.parseInt(options.get(key)) : defaultValue;
+    }
+    
+    private static double doubleOption(Map<String, String> options, String key, double defaultValue) {
+        return options.containsKey(key) ? Double.parseDouble(options.get(key)) : defaultValue;
     }
     
     /**
@@ -181,8 +1165,42 @@ public class Main {
      */
     private static void printUsage() {
         System.out.println("Uso del programa:");
-        System.out.println("  java -jar core.jar train <input_path> <model_id>");
-        System.out.println("  java -jar core.jar predict <model_id> <input_data>");
+        System.out.println("  java -jar core.jar train <input_path> <model_id> [opciones]");
+        System.out.println("      --epochs N  --lr X  --batch N  --val F  --patience N");
+        System.out.println("      --optimizer sgd|momentum|nesterov|adam|adamw  --momentum X  --weight-decay X");
+        System.out.println("      --schedule constant|step|cosine  --lr-step N  --lr-gamma X");
+        System.out.println("      --resume  --checkpoint-every SEC  --head auto|sigmoid|softmax");
+        System.out.println("      --layers 128:relu,64:tanh  --activation relu|leakyrelu|tanh|sigmoid");
+        System.out.println("      --conv 8x5:relu,pool2  --input-shape 28x28x1  (capas convolucionales delante)");
+        System.out.println("      --threads N  (0 = todos; tamaño del pool: -Dcore.threads o CORE_THREADS)");
+        System.out.println("      --pipeline S  --micro-batches M  (capas repartidas en S etapas)");
+        System.out.println("      --prune S  --prune-scope global|layer  (poda gradual: fracción S de pesos a cero)");
+        System.out.println("      --normalize auto|minmax|standard|maxabs|none  (se guarda en el modelo)");
+        System.out.println("      --sparse  (entradas dispersas CSR; automático con .libsvm/.svm)");
+        System.out.println("  java -jar core.jar tune <input_path> <model_id> [--trials 12] [--parallel P]");
+        System.out.println("      [--min-epochs 1] [--eta 3] [opciones de train con a|b|c o min..max]");
+        System.out.println("      (búsqueda en paralelo con ASHA; por defecto --lr 0.001..0.1 --batch 16|32|64)");
+        System.out.println("  java -jar core.jar train-dist <input_path> <model_id> --rank R --world W --peers h:p,h:p,...");
+        System.out.println("      [--sync-every K] [--connect-timeout SEC] [--compress none|fp16|bf16|int8|topk[:F]]");
+        System.out.println("      [opciones de train]");
+        System.out.println("  java -jar core.jar finetune <model_id> <delta_path> [--replay <old_path>] [--replay-size N]");
+        System.out.println("      [opciones de train]  (5 epochs por defecto)");
+        System.out.println("  java -jar core.jar predict <model_id> <input_data> [--int8]");
+        System.out.println("  java -jar core.jar generate <salida.csv|.bin|.libsvm> [--rows N] [--features F] [--classes K]");
+        System.out.println("      [--sparsity S] [--mnist] [--seed S] [--threads T]  (dataset sintético, en paralelo)");
+        System.out.println("  java -jar core.jar prune <model_id> <data_path> [--sparsity 0.8] [--scope global|layer]");
+        System.out.println("      [--levels 0,0.5,0.8,0.9] [--output id]  (poda por magnitud, pesos en CSR)");
+        System.out.println("  java -jar core.jar mmap <model_id>  (pesos mapeados en memoria, compartidos entre procesos)");
+        System.out.println("  java -jar core.jar score <model_id> <input.csv|.bin> <output.csv|.bin>");
+        System.out.println("      [--full] [--int8] [--label auto|first|last|none] [--batch N] [--threads N] [--pipeline S]");
+        System.out.println("  java -jar core.jar convert <input.csv> <output.bin>");
+        System.out.println("  java -jar core.jar quantize <model_id> <calibration_path> [muestras]");
+        System.out.println("  java -jar core.jar serve [--port 7000] [--max-connections N] [--queue N]");
+        System.out.println("      [--queue-timeout MS] [--idle-timeout SEC] [--warmup MS] [--warmup-models N]");
+        System.out.println("  java -jar core.jar daemon [--port 7200] [--cores N] [--datasets N] [--warmup MS]");
+        System.out.println("      (entrenamientos en una JVM de larga vida: SUBMIT/WATCH/CANCEL por socket local)");
+        System.out.println("  java -jar core.jar warmup [model_id] [--millis MS]");
+        System.out.println("  java -jar core.jar cds [archivo.jsa] [--model model_id]  (arranque rápido, JDK 13+)");
         System.out.println("  java -jar core.jar info");
         System.out.println();
         System.out.println("Ejemplos:");
@@ -0,0 +1,423 @@
+package concurrent;
+
+import data.BinaryRowWriter;
+import data.RowReader;
+import nn.NeuralNetwork;
+import nn.QuantizedNetwork;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Scoring masivo de un archivo: lectura, inferencia y escritura por streaming.
+ *
+ * Tres etapas solapadas sobre un número fijo de bloques de filas que se
+ * reciclan (memoria acotada sea cual sea el tamaño del archivo):
+ *
+ *   thread "score-reader"  parsea filas en un bloque libre
+ *   thread que llama       inferencia del bloque en paralelo (scheduler)
+ *   thread "score-writer"  escribe clase, confianza y opcionalmente el
+ *                          vector de salida, y devuelve el bloque
+ *
+ * Las filas salen en el mismo orden en que entran.
+ */
+public class BatchScorer {
+    
+    /**
+     * Modelo por lotes: salidas de rows[0..count)
+     */
+    @FunctionalInterface
+    public interface BatchModel {
+        double[][] predict(double[][] rows, int count);
+    }
+    
+    /**
+     * Columna de etiqueta en la entrada (se descarta para la inferencia y
+     * se usa para calcular accuracy)
+     */
+    public enum LabelColumn { NONE, FIRST, LAST }
+    
+    // Bloques en circulación: uno leyendo, uno calculando, uno escribiendo
+    private static final int CHUNKS = 3;
+    
+    // Ejemplos por sub-batch de la inferencia paralela
+    private static final int GRAIN = 256;
+    
+    private final BatchModel model;
+    private final int inputSize;
+    private final int outputSize;
+    private final int chunkRows;
+    private final boolean fullOutput;
+    
+    public BatchScorer(BatchModel model, int inputSize, int outputSize, int chunkRows, boolean fullOutput) {
+        if (chunkRows < 1) {
+            throw new IllegalArgumentException("El tamaño de bloque debe ser >= 1");
+        }
+        this.model = model;
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        this.chunkRows = chunkRows;
+        this.fullOutput = fullOutput;
+    }
+    
+    /**
+     * predictBatch en sub-batches de GRAIN ejemplos repartidos en el scheduler
+     */
+    public static BatchModel parallel(NeuralNetwork network, ComputeScheduler scheduler, int maxThreads) {
+        return (rows, count) -> {
+            double[][] outputs = new double[count][];
+            scheduler.parallelFor(0, count, GRAIN, maxThreads, (from, to) -> {
+                for (int start = from; start < to; start += GRAIN) {
+                    int end = Math.min(to, start + GRAIN);
+                    double[][] part = network.predictBatch(rows, start, end);
+                    System.arraycopy(part, 0, outputs, start, part.length);
+                }
+            });
+            return outputs;
+        };
+    }
+    
+    /**
+     * Inferencia int8 fila a fila repartida en el scheduler
+     */
+    public static BatchModel parallel(QuantizedNetwork network, ComputeScheduler scheduler, int maxThreads) {
+        return (rows, count) -> {
+            double[][] outputs = new double[count][];
+            scheduler.parallelFor(0, count, GRAIN, maxThreads, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    outputs[i] = network.predict(rows[i]);
+                }
+            });
+            return outputs;
+        };
+    }
+    
+    /**
+     * Procesa todas las filas de reader y escribe el resultado en outputPath
+     * (CSV, o binario si termina en .bin)
+     */
+    public Result score(RowReader reader, LabelColumn labelColumn, String outputPath) throws Exception {
+        int expected = inputSize + (labelColumn == LabelColumn.NONE ? 0 : 1);
+        if (reader.columns() != expected) {
+            throw new IllegalArgumentException(String.format(
+                "La entrada tiene %d columnas y el modelo espera %d%s", reader.columns(), inputSize,
+                labelColumn == LabelColumn.NONE ? "" : " + etiqueta"));
+        }
+        
+        BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(CHUNKS);
+        BlockingQueue<Chunk> parsed = new ArrayBlockingQueue<>(CHUNKS);
+        BlockingQueue<Chunk> scored = new ArrayBlockingQueue<>(CHUNKS);
+        for (int i = 0; i < CHUNKS; i++) {
+            free.add(new Chunk(chunkRows, inputSize));
+        }
+        
+        long start = System.nanoTime();
+        Stage readerStage = new Stage("score-reader", () -> readAll(reader, labelColumn, free, parsed));
+        Stage writerStage;
+        boolean completed = false;
+        try (RowSink sink = openSink(outputPath)) {
+            writerStage = new Stage("score-writer", () -> writeAll(sink, free, scored));
+            readerStage.start();
+            writerStage.start();
+            
+            try {
+                while (true) {
+                    Chunk chunk = parsed.take();
+                    if (chunk.count > 0) {
+                        chunk.outputs = model.predict(chunk.rows, chunk.count);
+                    }
+                    scored.put(chunk);
+                    if (chunk.last) {
+                        break;
+                    }
+                }
+                completed = true;
+            } catch (InterruptedException e) {
+                // Una etapa falló e interrumpió este thread: su error se relanza abajo
+            } finally {
+                if (!completed) {
+                    readerStage.interrupt();
+                    writerStage.interrupt();
+                }
+                readerStage.await();
+                writerStage.await();
+            }
+        }
+        Thread.interrupted();
+        readerStage.rethrow();
+        writerStage.rethrow();
+        if (!completed) {
+            throw new InterruptedException("Scoring interrumpido");
+        }
+        return writerStage.result(System.nanoTime() - start);
+    }
+    
+    private Object readAll(RowReader reader, LabelColumn labelColumn, BlockingQueue<Chunk> free,
+                           BlockingQueue<Chunk> parsed) throws Exception {
+        double[] raw = labelColumn == LabelColumn.NONE ? null : new double[inputSize + 1];
+        int offset = labelColumn == LabelColumn.FIRST ? 1 : 0;
+        boolean done = false;
+        while (!done) {
+            Chunk chunk = free.take();
+            chunk.count = 0;
+            chunk.outputs = null;
+            chunk.labeled = raw != null;
+            while (chunk.count < chunkRows) {
+                int i = chunk.count;
+                if (raw == null) {
+                    done = !reader.next(chunk.rows[i]);
+                } else {
+                    done = !reader.next(raw);
+                    if (!done) {
+                        System.arraycopy(raw, offset, chunk.rows[i], 0, inputSize);
+                        chunk.labels[i] = raw[labelColumn == LabelColumn.FIRST ? 0 : inputSize];
+                    }
+                }
+                if (done) {
+                    break;
+                }
+                chunk.count++;
+            }
+            chunk.last = done;
+            parsed.put(chunk);
+        }
+        return null;
+    }
+    
+    private Result writeAll(RowSink sink, BlockingQueue<Chunk> free, BlockingQueue<Chunk> scored) throws Exception {
+        long rows = 0;
+        long labeled = 0;
+        long correct = 0;
+        while (true) {
+            Chunk chunk = scored.take();
+            for (int i = 0; i < chunk.count; i++) {
+                double[] output = chunk.outputs[i];
+                int predicted = NeuralNetwork.classIndex(output);
+                sink.write(predicted, NeuralNetwork.confidence(output, predicted), output);
+                if (chunk.labeled) {
+                    labeled++;
+                    if (predicted == labelClass(chunk.labels[i])) correct++;
+                }
+            }
+            rows += chunk.count;
+            if (chunk.last) {
+                break;
+            }
+            free.put(chunk);
+        }
+        return new Result(rows, labeled, correct, 0);
+    }
+    
+    /**
+     * Clase de una etiqueta: índice de clase, o umbral 0.5 con salida única
+     * (misma convención que DataLoader)
+     */
+    private int labelClass(double label) {
+        return outputSize == 1 ? (label >= 0.5 ? 1 : 0) : (int) label;
+    }
+    
+    private RowSink openSink(String path) throws IOException {
+        if (path.toLowerCase().endsWith(".bin")) {
+            return new BinarySink(path, fullOutput ? 2 + outputSize : 2);
+        }
+        return new CsvSink(path);
+    }
+    
+    /**
+     * Bloque de filas reutilizable
+     */
+    private static class Chunk {
+        final double[][] rows;
+        final double[] labels;
+        double[][] outputs;
+        int count;
+        boolean labeled;
+        boolean last;
+        
+        Chunk(int capacity, int columns) {
+            this.rows = new double[capacity][columns];
+            this.labels = new double[capacity];
+        }
+    }
+    
+    /**
+     * Thread de una etapa. Si falla guarda el error e interrumpe al thread
+     * que la creó, que cancela las demás etapas.
+     */
+    private static class Stage extends Thread {
+        private final StageBody body;
+        private final Thread owner = Thread.currentThread();
+        private volatile Object result;
+        private volatile Exception error;
+        
+        Stage(String name, StageBody body) {
+            super(name);
+            this.body = body;
+            setDaemon(true);
+        }
+        
+        @Override
+        public void run() {
+            try {
+                result = body.run();
+            } catch (InterruptedException e) {
+                // cancelada por el thread que la creó
+            } catch (Exception e) {
+                error = e;
+                owner.interrupt();
+            }
+        }
+        
+        /**
+         * Espera a que termine aunque llegue una interrupción
+         */
+        void await() {
+            while (isAlive()) {
+                try {
+                    join();
+                } catch (InterruptedException e) {
+                    // la etapa que falló ya está registrada en su error
+                }
+            }
+        }
+        
+        void rethrow() throws Exception {
+            if (error != null) {
+                throw error;
+            }
+        }
+        
+        Result result(long nanos) {
+            Result r = (Result) result;
+            return new Result(r.rows, r.labeled, r.correct, nanos / 1e9);
+        }
+    }
+    
+    @FunctionalInterface
+    private interface StageBody {
+        Object run() throws Exception;
+    }
+    
+    private interface RowSink extends Closeable {
+        void write(int predicted, double confidence, double[] output) throws IOException;
+    }
+    
+    /**
+     * CSV "class,confidence[,out_0,...]" con formato decimal propio: sin
+     * String.format ni objetos por fila
+     */
+    private class CsvSink implements RowSink {
+        private final Writer out;
+        private final StringBuilder line = new StringBuilder(64);
+        
+        CsvSink(String path) throws IOException {
+            this.out = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(Paths.get(path)), StandardCharsets.US_ASCII), 1 << 16);
+            line.append("class,confidence");
+            if (fullOutput) {
+                for (int k = 0; k < outputSize; k++) {
+                    line.append(",out_").append(k);
+                }
+            }
+            line.append('\n');
+            out.append(line);
+        }
+        
+        @Override
+        public void write(int predicted, double confidence, double[] output) throws IOException {
+            line.setLength(0);
+            line.append(predicted).append(',');
+            appendFixed(line, confidence);
+            if (fullOutput) {
+                for (double v : output) {
+                    line.append(',');
+                    appendFixed(line, v);
+                }
+            }
+            line.append('\n');
+            out.append(line);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+    
+    private class BinarySink implements RowSink {
+        private final BinaryRowWriter out;
+        private final double[] row;
+        
+        BinarySink(String path, int columns) throws IOException {
+            this.out = new BinaryRowWriter(path, columns);
+            this.row = new double[columns];
+        }
+        
+        @Override
+        public void write(int predicted, double confidence, double[] output) throws IOException {
+            row[0] = predicted;
+            row[1] = confidence;
+            if (fullOutput) {
+                System.arraycopy(output, 0, row, 2, output.length);
+            }
+            out.write(row);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+    
+    /**
+     * Escribe v con 6 decimales fijos
+     */
+    static void appendFixed(StringBuilder sb, double v) {
+        if (Double.isNaN(v) || Double.isInfinite(v) || Math.abs(v) >= 1e12) {
+            sb.append(v);
+            return;
+        }
+        long scaled = Math.round(Math.abs(v) * 1e6);
+        if (v < 0 && scaled != 0) {
+            sb.append('-');
+        }
+        sb.append(scaled / 1_000_000).append('.');
+        long frac = scaled % 1_000_000;
+        for (long p = 100_000; p > frac && p > 1; p /= 10) {
+            sb.append('0');
+        }
+        sb.append(frac);
+    }
+    
+    /**
+     * Resumen del scoring
+     */
+    public static class Result {
+        public final long rows;
+        public final long labeled;
+        public final long correct;
+        public final double seconds;
+        
+        Result(long rows, long labeled, long correct, double seconds) {
+            this.rows = rows;
+            this.labeled = labeled;
+            this.correct = correct;
+            this.seconds = seconds;
+        }
+        
+        public double accuracy() {
+            return labeled == 0 ? 0 : (double) correct / labeled;
+        }
+        
+        public double rowsPerSecond() {
+            return seconds > 0 ? rows / seconds : 0;
+        }
+    }
+}
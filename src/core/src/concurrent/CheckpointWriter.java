@@ -0,0 +1,71 @@
+package concurrent;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Escribe checkpoints en un thread de fondo para no detener el entrenamiento.
+ * Si llega un snapshot mientras otro se está escribiendo, solo se conserva
+ * el más reciente (los intermedios se descartan).
+ */
+public class CheckpointWriter implements AutoCloseable {
+    
+    private final Path path;
+    private final ExecutorService io;
+    private final AtomicReference<TrainingCheckpoint> pending = new AtomicReference<>();
+    
+    public CheckpointWriter(Path path) {
+        this.path = path;
+        this.io = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "checkpoint-writer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+    
+    /**
+     * Encola un snapshot para escritura asíncrona
+     */
+    public void submit(TrainingCheckpoint checkpoint) {
+        if (pending.getAndSet(checkpoint) == null) {
+            io.submit(this::drain);
+        }
+    }
+    
+    private void drain() {
+        TrainingCheckpoint checkpoint = pending.getAndSet(null);
+        if (checkpoint == null) {
+            return;
+        }
+        try {
+            checkpoint.write(path);
+        } catch (IOException e) {
+            System.err.println("WARNING: No se pudo escribir el checkpoint " + path + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Espera a que se escriban los snapshots pendientes
+     */
+    public void flush() {
+        try {
+            io.submit(this::drain).get(60, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("WARNING: Checkpoint no completado: " + e.getMessage());
+        }
+    }
+    
+    public Path getPath() {
+        return path;
+    }
+    
+    @Override
+    public void close() {
+        flush();
+        io.shutdown();
+    }
+}
@@ -0,0 +1,190 @@
+package concurrent;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scheduler de cómputo compartido por todo el core.
+ *
+ * Un único ForkJoinPool de larga vida (threads daemon "compute-N") en lugar
+ * de crear un pool por llamada. El trabajo se reparte en rangos contiguos
+ * con un grano mínimo, no una tarea por fila: cada thread recorre un bloque
+ * consecutivo de memoria y el coste de planificación queda amortizado.
+ *
+ * Cada trabajo puede limitar cuántos threads usa (maxThreads), para que
+ * varios entrenamientos en la misma JVM compartan el pool sin sobresuscribir
+ * la máquina. El límite de un entrenamiento se fija para su thread con
+ * {@link #setThreadLimit(int)} y alcanza también a las operaciones que
+ * no reciben maxThreads (los GEMM de trainStep). Una operación lanzada
+ * desde un worker del pool se ejecuta en ese worker: ya es una de las
+ * partes de un trabajo limitado. El tamaño del pool se fija con -Dcore.threads o la variable
+ * de entorno CORE_THREADS (por defecto, todos los núcleos); para fijar el
+ * proceso a un socket concreto se usa taskset/numactl junto con ese valor.
+ */
+public final class ComputeScheduler {
+    
+    private static final ComputeScheduler SHARED = new ComputeScheduler(defaultParallelism());
+    
+    // Límite de threads del trabajo que se ejecuta en cada thread (0 = sin límite)
+    private static final ThreadLocal<Integer> THREAD_LIMIT = ThreadLocal.withInitial(() -> 0);
+    
+    private final ForkJoinPool pool;
+    
+    public ComputeScheduler(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism debe ser >= 1");
+        }
+        AtomicInteger ids = new AtomicInteger();
+        this.pool = new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("compute-" + ids.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }, null, false);
+    }
+    
+    /**
+     * Scheduler compartido del proceso
+     */
+    public static ComputeScheduler shared() {
+        return SHARED;
+    }
+    
+    private static int defaultParallelism() {
+        String value = System.getProperty("core.threads", System.getenv("CORE_THREADS"));
+        if (value != null && !value.trim().isEmpty()) {
+            try {
+                int threads = Integer.parseInt(value.trim());
+                if (threads >= 1) {
+                    return threads;
+                }
+            } catch (NumberFormatException e) {
+                // valor inválido: se usan todos los núcleos
+            }
+            System.err.println("WARNING: core.threads inválido (" + value + "), usando todos los núcleos");
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+    
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+    
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+    
+    /**
+     * Threads que puede usar un trabajo: maxThreads <= 0 significa todos los
+     * del pool, reducidos al límite del thread actual; 1 dentro de un worker
+     */
+    public int effectiveThreads(int maxThreads) {
+        if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool) {
+            return 1;
+        }
+        int threads = pool.getParallelism();
+        if (maxThreads > 0) {
+            threads = Math.min(threads, maxThreads);
+        }
+        int limit = THREAD_LIMIT.get();
+        return limit > 0 ? Math.min(threads, limit) : threads;
+    }
+    
+    /**
+     * Limita a maxThreads (<= 0: sin límite) los threads que usan las
+     * operaciones lanzadas desde el thread actual. Devuelve el límite
+     * anterior, que se restaura con otra llamada en un finally.
+     */
+    public static int setThreadLimit(int maxThreads) {
+        int previous = THREAD_LIMIT.get();
+        THREAD_LIMIT.set(Math.max(0, maxThreads));
+        return previous;
+    }
+    
+    /**
+     * Ejecuta una tarea en el pool (directamente si ya estamos en uno de sus workers)
+     */
+    public <T> T invoke(ForkJoinTask<T> task) {
+        if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool) {
+            return task.invoke();
+        }
+        return pool.invoke(task);
+    }
+    
+    /**
+     * Ejecuta body sobre [from, to) repartido en rangos contiguos de al menos
+     * grain elementos, usando como mucho maxThreads threads (<= 0: todos).
+     * Vuelve cuando terminan todos los rangos.
+     */
+    public void parallelFor(int from, int to, int grain, int maxThreads, RangeBody body) {
+        int n = to - from;
+        if (n <= 0) {
+            return;
+        }
+        int threads = effectiveThreads(maxThreads);
+        int chunks = Math.min(threads, Math.max(1, n / Math.max(1, grain)));
+        if (chunks == 1) {
+            // Un solo rango en el thread que llama: lo que lance dentro
+            // (los GEMM de predictBatch) respeta también maxThreads
+            int previousLimit = setThreadLimit(threads);
+            try {
+                body.run(from, to);
+            } finally {
+                setThreadLimit(previousLimit);
+            }
+            return;
+        }
+        
+        RangeAction[] actions = new RangeAction[chunks];
+        for (int c = 0; c < chunks; c++) {
+            int start = from + (int) ((long) n * c / chunks);
+            int end = from + (int) ((long) n * (c + 1) / chunks);
+            actions[c] = new RangeAction(body, start, end);
+        }
+        invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected void compute() {
+                invokeAll(actions);
+            }
+        });
+    }
+    
+    /**
+     * parallelFor con todos los threads del pool
+     */
+    public void parallelFor(int from, int to, int grain, RangeBody body) {
+        parallelFor(from, to, grain, 0, body);
+    }
+    
+    /**
+     * Cuerpo de un parallelFor: procesa el rango [from, to)
+     */
+    @FunctionalInterface
+    public interface RangeBody {
+        void run(int from, int to);
+    }
+    
+    private static class RangeAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final RangeBody body;
+        private final int from;
+        private final int to;
+        
+        RangeAction(RangeBody body, int from, int to) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            body.run(from, to);
+        }
+    }
+}
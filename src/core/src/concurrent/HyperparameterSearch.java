@@ -0,0 +1,344 @@
+package concurrent;
+
+import nn.NeuralNetwork;
+import data.TrainingData;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Búsqueda de hiperparámetros con varios trials entrenando a la vez en el
+ * mismo proceso.
+ *
+ * Todos los trials comparten el dataset ya cargado y normalizado (solo se
+ * lee: cada uno baraja su propio vector de índices) y el mismo split de
+ * validación, así que se comparan en igualdad de condiciones. Cada trial
+ * se entrena en su propio thread y usa como mucho su parte de los threads
+ * del scheduler compartido, en los GEMM del entrenamiento y al evaluar.
+ *
+ * Los trials malos se cortan con ASHA (successive halving asíncrono): en
+ * cada escalón (minEpochs, minEpochs * eta, minEpochs * eta^2...) un trial
+ * sigue solo si su loss de validación está en la mejor fracción 1/eta de
+ * las registradas hasta ese momento en el escalón. Nadie espera a los
+ * demás: los threads liberados pasan al siguiente trial.
+ */
+public final class HyperparameterSearch {
+    
+    private static final PrintStream QUIET = new PrintStream(OutputStream.nullOutputStream());
+    
+    /**
+     * Construye la red y la configuración de un trial a partir de sus opciones
+     */
+    public interface TrialFactory {
+        NeuralNetwork network(Map<String, String> options);
+        
+        TrainingConfig config(Map<String, String> options);
+    }
+    
+    /**
+     * Un trial: valores muestreados y resultado
+     */
+    public static final class Trial {
+        private final int id;
+        private final Map<String, String> options;
+        private final Map<String, String> sampled;
+        private NeuralNetwork network;
+        private int epochs;
+        private boolean stopped;
+        private double loss = Double.NaN;
+        private double accuracy = Double.NaN;
+        private String error;
+        
+        private Trial(int id, Map<String, String> options, Map<String, String> sampled) {
+            this.id = id;
+            this.options = options;
+            this.sampled = sampled;
+        }
+        
+        public int getId() {
+            return id;
+        }
+        
+        /**
+         * Opciones completas del trial (las fijas y las muestreadas)
+         */
+        public Map<String, String> getOptions() {
+            return options;
+        }
+        
+        /**
+         * Solo los hiperparámetros muestreados
+         */
+        public Map<String, String> getSampled() {
+            return sampled;
+        }
+        
+        public NeuralNetwork getNetwork() {
+            return network;
+        }
+        
+        /**
+         * Epochs entrenados
+         */
+        public int getEpochs() {
+            return epochs;
+        }
+        
+        /**
+         * true si ASHA lo cortó en un escalón
+         */
+        public boolean isStopped() {
+            return stopped;
+        }
+        
+        /**
+         * Loss de validación con los pesos finales (los del mejor epoch)
+         */
+        public double getLoss() {
+            return loss;
+        }
+        
+        public double getAccuracy() {
+            return accuracy;
+        }
+        
+        /**
+         * Mensaje del error si el trial falló, null si terminó
+         */
+        public String getError() {
+            return error;
+        }
+        
+        /**
+         * Hiperparámetros muestreados como opciones de train ("--lr 0.01 --batch 32")
+         */
+        public String describe() {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, String> e : sampled.entrySet()) {
+                if (sb.length() > 0) sb.append(' ');
+                sb.append("--").append(e.getKey()).append(' ').append(e.getValue());
+            }
+            return sb.toString();
+        }
+    }
+    
+    private final TrainingData train;
+    private final TrainingData validation;
+    private final int parallel;
+    private final int threadsPerTrial;
+    private final int minEpochs;
+    private final int eta;
+    // Losses registradas en cada escalón de ASHA
+    private final List<List<Double>> rungs = new ArrayList<>();
+    
+    /**
+     * parallel trials a la vez; cada uno con una parte igual de los threads
+     * del scheduler compartido (al menos uno)
+     */
+    public HyperparameterSearch(TrainingData train, TrainingData validation, int parallel, int minEpochs, int eta) {
+        if (validation == null) {
+            throw new IllegalArgumentException("La búsqueda necesita un conjunto de validación (--val > 0)");
+        }
+        if (parallel < 1 || minEpochs < 1 || eta < 2) {
+            throw new IllegalArgumentException("Se requiere parallel >= 1, min-epochs >= 1 y eta >= 2");
+        }
+        this.train = train;
+        this.validation = validation;
+        this.parallel = parallel;
+        this.threadsPerTrial = Math.max(1, ComputeScheduler.shared().getParallelism() / parallel);
+        this.minEpochs = minEpochs;
+        this.eta = eta;
+    }
+    
+    public int getThreadsPerTrial() {
+        return threadsPerTrial;
+    }
+    
+    /**
+     * Opciones de count trials muestreadas de options con la semilla seed
+     */
+    private static List<Map<String, String>> sample(Map<String, String> options, int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Map<String, String>> trials = new ArrayList<>();
+        for (int t = 0; t < count; t++) {
+            Map<String, String> trial = new LinkedHashMap<>(options);
+            // Orden de claves fijo: la misma semilla da los mismos trials
+            for (Map.Entry<String, String> e : new TreeMap<>(options).entrySet()) {
+                String value = e.getValue();
+                if (value.contains("|")) {
+                    String[] choices = value.split("\\|");
+                    trial.put(e.getKey(), choices[random.nextInt(choices.length)].trim());
+                } else if (value.contains("..")) {
+                    trial.put(e.getKey(), sampleRange(e.getKey(), value, random));
+                }
+            }
+            trials.add(trial);
+        }
+        return trials;
+    }
+    
+    private static boolean isSearched(String value) {
+        return value.contains("|") || value.contains("..");
+    }
+    
+    private static String sampleRange(String key, String range, SplittableRandom random) {
+        String[] bounds = range.split("\\.\\.", -1);
+        double min;
+        double max;
+        try {
+            min = Double.parseDouble(bounds[0].trim());
+            max = Double.parseDouble(bounds[1].trim());
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Rango inválido para --" + key + ": " + range + " (min..max)");
+        }
+        if (bounds.length != 2 || min > max) {
+            throw new IllegalArgumentException("Rango inválido para --" + key + ": " + range + " (min..max)");
+        }
+        double u = random.nextDouble();
+        double value = min > 0
+                ? Math.exp(Math.log(min) + u * (Math.log(max) - Math.log(min)))
+                : min + u * (max - min);
+        boolean integers = !bounds[0].contains(".") && !bounds[1].contains(".")
+                           && !bounds[0].toLowerCase().contains("e") && !bounds[1].toLowerCase().contains("e");
+        return integers ? Long.toString(Math.round(value)) : String.format(Locale.ROOT, "%.3g", value);
+    }
+    
+    /**
+     * Entrena count trials (parallel a la vez) muestreados de options con la
+     * semilla seed y devuelve sus resultados ordenados de mejor a peor loss
+     * de validación; los fallidos al final.
+     *
+     * Cada valor de options es fijo, una lista de alternativas "a|b|c" o un
+     * rango "min..max" (log-uniforme si ambos son positivos; enteros si
+     * ambos lo son, p. ej. batch 16..128).
+     */
+    public List<Trial> run(Map<String, String> options, int count, long seed,
+                           TrialFactory factory) throws InterruptedException {
+        List<Map<String, String>> trialOptions = sample(options, count, seed);
+        List<Trial> trials = new ArrayList<>();
+        for (int t = 0; t < count; t++) {
+            Map<String, String> sampled = new LinkedHashMap<>();
+            for (String key : new TreeMap<>(options).keySet()) {
+                if (isSearched(options.get(key))) {
+                    sampled.put(key, trialOptions.get(t).get(key));
+                }
+            }
+            trials.add(new Trial(t + 1, trialOptions.get(t), sampled));
+        }
+        
+        AtomicInteger ids = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallel, r -> {
+            Thread thread = new Thread(r, "tune-trial-" + ids.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Trial trial : trials) {
+                futures.add(executor.submit(() -> runTrial(trial, factory)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error en un trial: " + e.getCause(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        trials.sort(Comparator.comparing((Trial t) -> t.error != null).thenComparingDouble(t -> t.loss));
+        return trials;
+    }
+    
+    private void runTrial(Trial trial, TrialFactory factory) {
+        try {
+            TrainingConfig config = factory.config(trial.options)
+                    .setThreads(threadsPerTrial)
+                    .setCheckpointPath(null);
+            NeuralNetwork network = factory.network(trial.options);
+            System.out.printf("[TUNE] Trial %d: %s%n", trial.id, trial.describe());
+            
+            MultiThreadTrainer trainer = new MultiThreadTrainer(network, threadsPerTrial, QUIET);
+            trainer.setListener((epoch, epochs, loss, val) -> {
+                trial.epochs = epoch;
+                return onEpoch(trial, epoch, epochs, val.getLoss());
+            });
+            trainer.train(train, validation, config);
+            
+            ParallelEvaluator.Result result = new ParallelEvaluator(network, ComputeScheduler.shared(),
+                                                                    threadsPerTrial).evaluate(validation);
+            trial.network = network;
+            trial.loss = result.getLoss();
+            trial.accuracy = result.getAccuracy();
+            System.out.printf(Locale.ROOT, "[TUNE] Trial %d %s en el epoch %d - Val Loss: %.6f - Val Accuracy: %.4f%n",
+                              trial.id, trial.stopped ? "cortado" : "terminado", trial.epochs,
+                              trial.loss, trial.accuracy);
+        } catch (RuntimeException e) {
+            trial.error = e.getMessage();
+            System.out.println("WARNING: Trial " + trial.id + " falló: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Decisión de ASHA al final de un epoch: true si el trial sigue. Un
+     * trial que diverge (loss NaN o infinita) se corta en el acto y no
+     * entra en los escalones: no cuenta frente a los demás.
+     */
+    private boolean onEpoch(Trial trial, int epoch, int epochs, double loss) {
+        if (!Double.isFinite(loss)) {
+            trial.stopped = true;
+            return false;
+        }
+        int rung = rungOf(epoch);
+        if (rung < 0 || epoch >= epochs) {
+            return true;
+        }
+        boolean promoted = promote(rung, loss);
+        if (!promoted) {
+            trial.stopped = true;
+        }
+        return promoted;
+    }
+    
+    /**
+     * Escalón de ASHA que termina en epoch (minEpochs * eta^k), -1 si no es uno
+     */
+    private int rungOf(int epoch) {
+        int rung = 0;
+        for (long milestone = minEpochs; milestone <= epoch; milestone *= eta, rung++) {
+            if (milestone == epoch) {
+                return rung;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Registra loss en el escalón; sigue si está entre las ceil(n / eta)
+     * mejores de las n registradas (el primero en llegar siempre sigue)
+     */
+    private synchronized boolean promote(int rung, double loss) {
+        while (rungs.size() <= rung) {
+            rungs.add(new ArrayList<>());
+        }
+        List<Double> results = rungs.get(rung);
+        results.add(loss);
+        int better = 0;
+        for (double other : results) {
+            if (other < loss) better++;
+        }
+        return better < (results.size() + eta - 1) / eta;
+    }
+}
@@ -1,8 +1,19 @@
 package concurrent;
 
+import nn.LearningRateSchedule;
 import nn.NeuralNetwork;
+import nn.Optimizer;
+import nn.PipelineExecutor;
+import nn.Pruning;
 import data.TrainingData;
-import java.util.concurrent.*;
+import math.Gemm;
+import math.Matrix;
+import math.SparseVector;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
 
 /**
  * P4 - Tarea 4.1: Multi-threading
@@ -11,163 +22,392 @@ import java.util.concurrent.*;
  */
 public class MultiThreadTrainer {
     
+    // Ejemplos mínimos por rango en predictParallel
+    private static final int PREDICT_GRAIN = 64;
+    // Multiplicaciones mínimas por rango en las operaciones matriciales
+    private static final long MIN_TASK_WORK = 1 << 15;
+    
     private final NeuralNetwork network;
+    private final ComputeScheduler scheduler;
     private final int numThreads;
-    private final ExecutorService executor;
+    private Optimizer optimizer;
+    private PipelineExecutor pipeline;
+    private int microBatches;
+    private final PrintStream log;
+    private TrainingListener listener;
     
     public MultiThreadTrainer(NeuralNetwork network) {
+        // Usar todos los núcleos del scheduler compartido
+        this(network, 0);
+    }
+    
+    /**
+     * maxThreads limita los threads del scheduler compartido que usa este
+     * entrenamiento (<= 0: todos)
+     */
+    public MultiThreadTrainer(NeuralNetwork network, int maxThreads) {
+        this(network, maxThreads, System.out);
+    }
+    
+    /**
+     * Con los mensajes de progreso en log (varios entrenamientos a la vez
+     * en el mismo proceso: tune, daemon)
+     */
+    public MultiThreadTrainer(NeuralNetwork network, int maxThreads, PrintStream log) {
         this.network = network;
-        // Usar todos los núcleos disponibles
-        this.numThreads = Runtime.getRuntime().availableProcessors();
-        this.executor = Executors.newFixedThreadPool(numThreads);
+        this.scheduler = ComputeScheduler.shared();
+        this.numThreads = scheduler.effectiveThreads(maxThreads);
+        this.log = log;
         
-        System.out.println("MultiThreadTrainer inicializado con " + numThreads + " threads");
+        log.println("MultiThreadTrainer inicializado con " + numThreads + " threads");
+        log.println("Threads: " + numThreads + " (pool compartido: " + scheduler.getParallelism() + ")");
+    }
+    
+    /**
+     * Observador del progreso por epoch (null = ninguno)
+     */
+    public void setListener(TrainingListener listener) {
+        this.listener = listener;
     }
     
     /**
      * Entrena la red neuronal usando todos los núcleos del CPU
      */
     public void train(TrainingData data, int epochs, double learningRate, int batchSize) {
+        TrainingConfig config = new TrainingConfig()
+            .setEpochs(epochs)
+            .setLearningRate(learningRate)
+            .setBatchSize(batchSize)
+            .setValidationSplit(0);
+        train(data, null, config);
+    }
+    
+    /**
+     * Entrena con un conjunto de validación opcional.
+     * Al final de cada epoch se evalúa la validación en paralelo; si la loss
+     * no mejora en config.getPatience() epochs se detiene el entrenamiento y
+     * se restauran los pesos del mejor epoch.
+     * 
+     * Si config tiene ruta de checkpoint, el estado se guarda periódicamente
+     * en segundo plano (y al recibir SIGTERM), y con config.isResume() el
+     * entrenamiento continúa desde el último checkpoint compatible.
+     * 
+     * Con config.getPipelineStages() > 1 cada batch se entrena con el
+     * pipeline de capas: un paso por batch con el gradiente sumado de sus
+     * ejemplos, repartido en micro-batches entre las etapas.
+     * 
+     * Todas las operaciones del entrenamiento (también los GEMM de cada
+     * trainStep) usan como mucho los threads de este trainer.
+     */
+    public void train(TrainingData data, TrainingData validation, TrainingConfig config) {
+        int previousLimit = ComputeScheduler.setThreadLimit(numThreads);
+        try {
+            trainLimited(data, validation, config);
+        } finally {
+            ComputeScheduler.setThreadLimit(previousLimit);
+        }
+    }
+    
+    private void trainLimited(TrainingData data, TrainingData validation, TrainingConfig config) {
         long startTime = System.currentTimeMillis();
+        int epochs = config.getEpochs();
+        int batchSize = config.getBatchSize();
+        int numBatches = (int) Math.ceil((double) data.getSize() / batchSize);
+        
+        ParallelEvaluator evaluator = validation != null
+                ? new ParallelEvaluator(network, scheduler, numThreads) : null;
+        optimizer = config.createOptimizer();
+        LearningRateSchedule schedule = config.createSchedule();
+        TrainingCheckpoint state = loadOrCreateState(data, config);
         
-        for (int epoch = 0; epoch < epochs; epoch++) {
-            // Mezclar datos para cada epoch
-            data.shuffle();
-            
-            // Dividir en batches
-            TrainingData[] batches = data.splitIntoBatches(batchSize);
-            
-            // Entrenar cada batch en paralelo
-            double totalLoss = trainBatchesParallel(batches, learningRate);
-            
-            // Mostrar progreso
-            double avgLoss = totalLoss / batches.length;
-            long elapsed = (System.currentTimeMillis() - startTime) / 1000;
-            System.out.printf("%d/%d - Loss: %.6f - Tiempo: %ds%n", 
-                              epoch + 1, epochs, avgLoss, elapsed);
-            System.out.flush(); // Asegurar que se imprima inmediatamente
+        CheckpointWriter writer = null;
+        Thread shutdownHook = null;
+        if (config.getCheckpointPath() != null) {
+            CheckpointWriter w = new CheckpointWriter(config.getCheckpointPath());
+            writer = w;
+            // SIGTERM (timeout del executor.js): guardar el estado del último batch completo
+            shutdownHook = new Thread(() -> {
+                w.submit(snapshot(state));
+                w.flush();
+            }, "checkpoint-on-exit");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
         }
+        long checkpointIntervalMs = config.getCheckpointIntervalSeconds() * 1000L;
+        long lastCheckpoint = System.currentTimeMillis();
         
-        long totalTime = (System.currentTimeMillis() - startTime) / 1000;
-        System.out.println("Entrenamiento completado en " + totalTime + " segundos");
+        int[] order = new int[data.getSize()];
+        if (config.getPipelineStages() > 1) {
+            pipeline = new PipelineExecutor(network, config.getPipelineStages());
+            microBatches = Math.min(config.getMicroBatches(), batchSize);
+            log.println("[PIPELINE] Etapas: " + pipeline.getStageCount() + " " + pipeline.describeStages()
+                        + ", micro-batches por batch: " + microBatches);
+        }
         
-        // Cerrar executor
-        executor.shutdown();
         try {
-            if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
-                executor.shutdownNow();
+            for (int epoch = state.epoch; epoch < epochs; epoch++) {
+                if (config.getPatience() > 0 && state.epochsWithoutImprovement >= config.getPatience()) {
+                    break;
+                }
+                
+                // Orden del epoch derivado de (semilla, epoch): reproducible al reanudar
+                shuffleOrder(order, state.seed, epoch);
+                optimizer.setLearningRate(schedule.rate(config.getLearningRate(), epoch, epochs));
+                
+                // Entrenar los batches en orden; el cursor marca el último batch completo
+                boolean cancelled = false;
+                for (int b = state.batchCursor; b < numBatches; b++) {
+                    if (listener != null && listener.stopRequested()) {
+                        cancelled = true;
+                        break;
+                    }
+                    int from = b * batchSize;
+                    int to = Math.min(from + batchSize, order.length);
+                    synchronized (this) {
+                        state.epochLoss += trainSingleBatch(data, order, from, to);
+                        state.batchCursor = b + 1;
+                    }
+                    
+                    if (writer != null && System.currentTimeMillis() - lastCheckpoint >= checkpointIntervalMs) {
+                        writer.submit(snapshot(state));
+                        lastCheckpoint = System.currentTimeMillis();
+                    }
+                }
+                if (cancelled) {
+                    log.println("Entrenamiento detenido en el epoch " + (epoch + 1) + ", batch " + state.batchCursor);
+                    if (writer != null) {
+                        writer.submit(snapshot(state));
+                    }
+                    break;
+                }
+                
+                // Poda gradual: sube la fracción de pesos a cero antes de validar
+                boolean pruning = false;
+                if (config.getPruneSparsity() > 0) {
+                    double sparsity = Pruning.gradualSparsity(config.getPruneSparsity(), epoch + 1, epochs);
+                    double[] densities;
+                    synchronized (this) {
+                        densities = Pruning.prune(network, sparsity, config.isPruneGlobal());
+                    }
+                    log.printf("[PRUNE] Sparsity: %.3f - Densidad por capa: %s%n",
+                               sparsity, Pruning.format(densities));
+                    pruning = sparsity < config.getPruneSparsity();
+                }
+                
+                // Mostrar progreso
+                double avgLoss = state.epochLoss / numBatches;
+                long elapsed = (System.currentTimeMillis() - startTime) / 1000;
+                boolean stop = false;
+                
+                ParallelEvaluator.Result val = null;
+                if (evaluator == null) {
+                    log.printf("%d/%d - Loss: %.6f - Tiempo: %ds%n", 
+                               epoch + 1, epochs, avgLoss, elapsed);
+                    log.flush(); // Asegurar que se imprima inmediatamente
+                } else {
+                    val = evaluator.evaluate(validation);
+                    log.printf("%d/%d - Loss: %.6f - Val Loss: %.6f - Val Accuracy: %.4f - Tiempo: %ds%n",
+                               epoch + 1, epochs, avgLoss, val.getLoss(), val.getAccuracy(), elapsed);
+                    log.flush();
+                    
+                    // Mientras la poda sube, la loss empeora a propósito: no cuenta
+                    // para early stopping ni como mejor epoch
+                    synchronized (this) {
+                        if (pruning) {
+                            state.epochsWithoutImprovement = 0;
+                        } else if (val.getLoss() < state.bestLoss * (1 - config.getMinDelta())) {
+                            state.bestLoss = val.getLoss();
+                            state.bestEpoch = epoch + 1;
+                            state.bestParameters = network.snapshotParameters(null);
+                            state.epochsWithoutImprovement = 0;
+                        } else if (config.getPatience() > 0
+                                   && ++state.epochsWithoutImprovement >= config.getPatience()) {
+                            log.println("Early stopping: sin mejora en " + config.getPatience() + " epochs");
+                            stop = true;
+                        }
+                    }
+                }
+                
+                if (listener != null && !listener.onEpoch(epoch + 1, epochs, avgLoss, val)) {
+                    stop = true;
+                }
+                
+                synchronized (this) {
+                    state.epoch = epoch + 1;
+                    state.batchCursor = 0;
+                    state.epochLoss = 0;
+                }
+                if (writer != null) {
+                    writer.submit(snapshot(state));
+                    lastCheckpoint = System.currentTimeMillis();
+                }
+                if (stop) {
+                    break;
+                }
+            }
+        } finally {
+            if (pipeline != null) {
+                pipeline.close();
+                pipeline = null;
             }
-        } catch (InterruptedException e) {
-            executor.shutdownNow();
+            if (writer != null) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(shutdownHook);
+                    writer.close();
+                } catch (IllegalStateException e) {
+                    // La JVM ya se está cerrando: el hook escribe el último estado
+                }
+            }
+        }
+        
+        if (state.bestParameters.length > 0) {
+            network.restoreParameters(state.bestParameters);
+            log.printf("Restaurando pesos del mejor epoch (%d, Val Loss: %.6f)%n",
+                       state.bestEpoch, state.bestLoss);
         }
+        
+        long totalTime = (System.currentTimeMillis() - startTime) / 1000;
+        log.println("Entrenamiento completado en " + totalTime + " segundos");
     }
     
     /**
-     * Entrena múltiples batches en paralelo usando threads
+     * Estado inicial: el del checkpoint si se pidió reanudar y es compatible,
+     * o uno nuevo desde el epoch 0
      */
-    private double trainBatchesParallel(TrainingData[] batches, double learningRate) {
-        CountDownLatch latch = new CountDownLatch(batches.length);
-        AtomicDouble totalLoss = new AtomicDouble(0.0);
+    private TrainingCheckpoint loadOrCreateState(TrainingData data, TrainingConfig config) {
+        TrainingCheckpoint state = new TrainingCheckpoint();
+        state.layers = network.getLayers().clone();
+        state.datasetSize = data.getSize();
+        state.architecture = network.describeArchitecture();
+        state.optimizer = config.getOptimizer().toLowerCase();
+        state.dataset = config.getDatasetId();
+        state.seed = config.getSeed();
         
-        // Crear una tarea de entrenamiento para cada batch
-        for (int i = 0; i < batches.length; i++) {
-            final int batchIndex = i;
-            final TrainingData batch = batches[i];
-            
-            executor.submit(() -> {
-                try {
-                    if (batch != null && batch.getSize() > 0) {
-                        double batchLoss = trainSingleBatch(batch, learningRate);
-                        totalLoss.add(batchLoss);
+        Path path = config.getCheckpointPath();
+        if (config.isResume() && path != null && Files.exists(path)) {
+            try {
+                TrainingCheckpoint checkpoint = TrainingCheckpoint.read(path);
+                if (checkpoint.matches(state)) {
+                    double[] initial = network.snapshotParameters(null);
+                    try {
+                        network.restoreParameters(checkpoint.parameters);
+                        optimizer.importState(checkpoint.optimizerState);
+                        log.println("Reanudando desde checkpoint: epoch " + (checkpoint.epoch + 1)
+                                    + ", batch " + checkpoint.batchCursor);
+                        return checkpoint;
+                    } catch (RuntimeException e) {
+                        network.restoreParameters(initial);
+                        optimizer = config.createOptimizer();
                     }
-                } catch (Exception e) {
-                    System.err.println("Error en batch " + batchIndex + ": " + e.getMessage());
-                } finally {
-                    latch.countDown();
                 }
-            });
+                log.println("WARNING: Checkpoint incompatible con el modelo, optimizador o dataset, "
+                            + "entrenando desde cero");
+            } catch (IOException e) {
+                log.println("WARNING: No se pudo leer el checkpoint (" + e.getMessage()
+                            + "), entrenando desde cero");
+            }
+        } else if (config.isResume()) {
+            log.println("No hay checkpoint previo, entrenando desde cero");
         }
-        
-        // Esperar a que todos los batches terminen
-        try {
-            latch.await();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("Entrenamiento interrumpido");
+        return state;
+    }
+    
+    /**
+     * Copia consistente del estado entre dos batches (los parámetros se copian
+     * como buffers planos; la escritura a disco la hace el CheckpointWriter)
+     */
+    private synchronized TrainingCheckpoint snapshot(TrainingCheckpoint state) {
+        TrainingCheckpoint copy = new TrainingCheckpoint();
+        copy.layers = state.layers;
+        copy.datasetSize = state.datasetSize;
+        copy.architecture = state.architecture;
+        copy.optimizer = state.optimizer;
+        copy.dataset = state.dataset;
+        copy.epoch = state.epoch;
+        copy.batchCursor = state.batchCursor;
+        copy.epochLoss = state.epochLoss;
+        copy.seed = state.seed;
+        copy.bestLoss = state.bestLoss;
+        copy.bestEpoch = state.bestEpoch;
+        copy.epochsWithoutImprovement = state.epochsWithoutImprovement;
+        copy.bestParameters = state.bestParameters;
+        copy.parameters = network.snapshotParameters(null);
+        copy.optimizerState = optimizer.exportState();
+        return copy;
+    }
+    
+    /**
+     * Permutación de los índices para un epoch (Fisher-Yates con semilla fija).
+     * Todos los procesos de un entrenamiento distribuido obtienen la misma.
+     */
+    public static void shuffleOrder(int[] order, long seed, int epoch) {
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Random rand = new Random(seed * 1_000_003L + epoch);
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
         }
-        
-        return totalLoss.get();
     }
     
     /**
-     * Entrena un solo batch
+     * Entrena un solo batch: los ejemplos order[from..to).
+     * Las entradas dispersas se entrenan sin densificar salvo con el
+     * pipeline, que trabaja con filas densas.
      */
-    private synchronized double trainSingleBatch(TrainingData batch, double learningRate) {
+    private synchronized double trainSingleBatch(TrainingData data, int[] order, int from, int to) {
         double batchLoss = 0.0;
-        int batchSize = batch.getSize();
-        
-        // Acumular gradientes para todo el batch
-        for (int i = 0; i < batchSize; i++) {
-            TrainingData.DataPair example = batch.getExample(i);
-            if (example != null && example.input != null && example.output != null) {
-                double loss = network.trainStep(example.input, example.output, learningRate);
-                batchLoss += loss;
+        double[][] outputs = data.getOutputs();
+        if (data.isSparse() && pipeline == null) {
+            SparseVector[] sparse = data.getSparseInputs();
+            for (int i = from; i < to; i++) {
+                int idx = order[i];
+                batchLoss += network.trainStep(sparse[idx], outputs[idx], optimizer);
             }
+            return batchLoss / (to - from);
+        }
+        
+        double[][] inputs = data.getInputs();
+        if (pipeline != null) {
+            return pipeline.trainBatch(inputs, outputs, order, from, to, microBatches, optimizer) / (to - from);
         }
         
-        return batchLoss / batchSize;
+        for (int i = from; i < to; i++) {
+            int idx = order[i];
+            batchLoss += network.trainStep(inputs[idx], outputs[idx], optimizer);
+        }
+        
+        return batchLoss / (to - from);
     }
     
     /**
      * Realiza predicciones en paralelo para múltiples inputs
+     * (bloques contiguos de ejemplos, cada uno como un batch)
      */
     public double[][] predictParallel(double[][] inputs) {
-        int numInputs = inputs.length;
-        double[][] outputs = new double[numInputs][];
-        
-        CountDownLatch latch = new CountDownLatch(numInputs);
-        
-        for (int i = 0; i < numInputs; i++) {
-            final int index = i;
-            executor.submit(() -> {
-                try {
-                    outputs[index] = network.predict(inputs[index]);
-                } finally {
-                    latch.countDown();
-                }
-            });
-        }
-        
-        try {
-            latch.await();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-        
+        double[][] outputs = new double[inputs.length][];
+        scheduler.parallelFor(0, inputs.length, PREDICT_GRAIN, numThreads, (from, to) -> {
+            double[][] batch = network.predictBatch(inputs, from, to);
+            System.arraycopy(batch, 0, outputs, from, batch.length);
+        });
         return outputs;
     }
     
     /**
-     * Clase auxiliar para sumar doubles de forma atómica
+     * Predicciones con el pipeline de capas: stages etapas, micro-batches de
+     * microBatch ejemplos (scoring de muchos ejemplos sin réplicas de los pesos)
      */
-    private static class AtomicDouble {
-        private volatile double value;
-        
-        public AtomicDouble(double initialValue) {
-            this.value = initialValue;
-        }
-        
-        public synchronized void add(double delta) {
-            this.value += delta;
-        }
-        
-        public synchronized double get() {
-            return value;
+    public double[][] predictPipeline(double[][] inputs, int stages, int microBatch) {
+        try (PipelineExecutor executor = new PipelineExecutor(network, stages)) {
+            return executor.predict(inputs, microBatch);
         }
     }
     
     /**
-     * Calcula la matriz de forma paralela dividiendo por filas
+     * Calcula la matriz de forma paralela con el GEMM fork/join
+     * (bloques de filas, columnas y de la dimensión común)
      * Útil para operaciones matriciales grandes
      */
     public static double[][] parallelMatrixMultiply(double[][] A, double[][] B, int numThreads) {
@@ -175,40 +415,11 @@ public class MultiThreadTrainer {
             throw new IllegalArgumentException("Dimensiones incompatibles para multiplicación");
         }
         
-        int rows = A.length;
-        int cols = B[0].length;
-        int common = A[0].length;
-        
-        double[][] result = new double[rows][cols];
-        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
-        CountDownLatch latch = new CountDownLatch(rows);
-        
-        // Cada thread calcula algunas filas del resultado
-        for (int i = 0; i < rows; i++) {
-            final int row = i;
-            executor.submit(() -> {
-                try {
-                    for (int j = 0; j < cols; j++) {
-                        double sum = 0.0;
-                        for (int k = 0; k < common; k++) {
-                            sum += A[row][k] * B[k][j];
-                        }
-                        result[row][j] = sum;
-                    }
-                } finally {
-                    latch.countDown();
-                }
-            });
-        }
-        
-        try {
-            latch.await();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-        
-        executor.shutdown();
-        return result;
+        Matrix a = new Matrix(A);
+        Matrix b = new Matrix(B);
+        Matrix c = new Matrix(A.length, B[0].length);
+        Gemm.multiply(a.getBuffer(), b.getBuffer(), c.getBuffer(), A.length, B.length, B[0].length, numThreads);
+        return c.getData();
     }
     
     /**
@@ -221,29 +432,14 @@ public class MultiThreadTrainer {
         int cols = matrix[0].length;
         double[][] result = new double[rows][cols];
         
-        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
-        CountDownLatch latch = new CountDownLatch(rows);
-        
-        for (int i = 0; i < rows; i++) {
-            final int row = i;
-            executor.submit(() -> {
-                try {
-                    for (int j = 0; j < cols; j++) {
-                        result[row][j] = function.applyAsDouble(matrix[row][j]);
-                    }
-                } finally {
-                    latch.countDown();
+        int grain = Math.max(1, (int) (MIN_TASK_WORK / Math.max(1, cols)));
+        ComputeScheduler.shared().parallelFor(0, rows, grain, numThreads, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                for (int j = 0; j < cols; j++) {
+                    result[i][j] = function.applyAsDouble(matrix[i][j]);
                 }
-            });
-        }
-        
-        try {
-            latch.await();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-        
-        executor.shutdown();
+            }
+        });
         return result;
     }
 }
@@ -0,0 +1,230 @@
+package concurrent;
+
+import nn.NeuralNetwork;
+import data.TrainingData;
+import math.SparseVector;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * P4 - Evaluación paralela
+ * Calcula loss, accuracy, matriz de confusión y precision/recall por clase
+ * en una sola pasada fork/join sobre un rango de índices del dataset.
+ * Cada hoja procesa un bloque de ejemplos como un único batch (una hoja
+ * por thread permitido), y un rango [from, to) permite evaluar un split
+ * de validación sin copiar datos.
+ */
+public class ParallelEvaluator {
+    
+    // Ejemplos mínimos por hoja del fork/join (un batch por hoja)
+    private static final int LEAF_SIZE = 256;
+    
+    private final NeuralNetwork network;
+    private final ComputeScheduler scheduler;
+    private final int threads;
+    
+    public ParallelEvaluator(NeuralNetwork network) {
+        this(network, ComputeScheduler.shared(), 0);
+    }
+    
+    /**
+     * maxThreads limita los threads del scheduler usados por evaluación (<= 0: todos)
+     */
+    public ParallelEvaluator(NeuralNetwork network, ComputeScheduler scheduler, int maxThreads) {
+        this.network = network;
+        this.scheduler = scheduler;
+        this.threads = scheduler.effectiveThreads(maxThreads);
+    }
+    
+    /**
+     * Evalúa todo el dataset
+     */
+    public Result evaluate(TrainingData data) {
+        return evaluate(data, 0, data.getSize());
+    }
+    
+    /**
+     * Evalúa los ejemplos [from, to) del dataset
+     */
+    public Result evaluate(TrainingData data, int from, int to) {
+        if (from < 0 || to > data.getSize() || from >= to) {
+            throw new IllegalArgumentException(
+                String.format("Rango de evaluación inválido: [%d, %d) de %d", from, to, data.getSize()));
+        }
+        int numClasses = data.getOutputSize() == 1 ? 2 : data.getOutputSize();
+        // Una hoja por thread permitido, de al menos LEAF_SIZE ejemplos
+        int parts = Math.max(1, Math.min(threads, (to - from) / LEAF_SIZE));
+        EvalTask task = new EvalTask(data, from, to, numClasses, parts);
+        Partial partial;
+        int previousLimit = ComputeScheduler.setThreadLimit(threads);
+        try {
+            partial = parts == 1 ? task.computeLeaf() : scheduler.invoke(task);
+        } finally {
+            ComputeScheduler.setThreadLimit(previousLimit);
+        }
+        return new Result(partial.lossSum / (to - from), partial.confusion);
+    }
+    
+    /**
+     * Tarea recursiva: divide el rango en parts hojas y combina los parciales
+     */
+    private class EvalTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+        
+        private final TrainingData data;
+        private final int from;
+        private final int to;
+        private final int numClasses;
+        private final int parts;
+        
+        EvalTask(TrainingData data, int from, int to, int numClasses, int parts) {
+            this.data = data;
+            this.from = from;
+            this.to = to;
+            this.numClasses = numClasses;
+            this.parts = parts;
+        }
+        
+        @Override
+        protected Partial compute() {
+            if (parts == 1) {
+                return computeLeaf();
+            }
+            int leftParts = parts / 2;
+            int mid = from + (int) ((long) (to - from) * leftParts / parts);
+            EvalTask left = new EvalTask(data, from, mid, numClasses, leftParts);
+            EvalTask right = new EvalTask(data, mid, to, numClasses, parts - leftParts);
+            left.fork();
+            Partial result = right.compute();
+            result.merge(left.join());
+            return result;
+        }
+        
+        private Partial computeLeaf() {
+            Partial partial = new Partial(numClasses);
+            double[][] targets = data.getOutputs();
+            double[][] predictions;
+            if (data.isSparse()) {
+                // Filas dispersas: una a una, sin densificar el bloque
+                SparseVector[] inputs = data.getSparseInputs();
+                predictions = new double[to - from][];
+                for (int i = from; i < to; i++) {
+                    predictions[i - from] = network.predict(inputs[i]);
+                }
+            } else {
+                predictions = network.predictBatch(data.getInputs(), from, to);
+            }
+            
+            for (int j = 0; j < predictions.length; j++) {
+                double[] target = targets[from + j];
+                partial.lossSum += network.computeLoss(predictions[j], target);
+                int actual = NeuralNetwork.classIndex(target);
+                int predicted = NeuralNetwork.classIndex(predictions[j]);
+                partial.confusion[actual][predicted]++;
+            }
+            return partial;
+        }
+    }
+    
+    /**
+     * Acumulador parcial de una rama del fork/join
+     */
+    private static class Partial {
+        double lossSum;
+        final long[][] confusion;
+        
+        Partial(int numClasses) {
+            this.confusion = new long[numClasses][numClasses];
+        }
+        
+        void merge(Partial other) {
+            lossSum += other.lossSum;
+            for (int i = 0; i < confusion.length; i++) {
+                for (int j = 0; j < confusion.length; j++) {
+                    confusion[i][j] += other.confusion[i][j];
+                }
+            }
+        }
+    }
+    
+    /**
+     * Resultado de una evaluación.
+     * confusion[real][predicha] cuenta los ejemplos de cada par de clases.
+     */
+    public static class Result {
+        private final double loss;
+        private final long[][] confusion;
+        private final long total;
+        private final long correct;
+        
+        Result(double loss, long[][] confusion) {
+            this.loss = loss;
+            this.confusion = confusion;
+            long t = 0;
+            long c = 0;
+            for (int i = 0; i < confusion.length; i++) {
+                for (int j = 0; j < confusion.length; j++) {
+                    t += confusion[i][j];
+                }
+                c += confusion[i][i];
+            }
+            this.total = t;
+            this.correct = c;
+        }
+        
+        public double getLoss() {
+            return loss;
+        }
+        
+        public double getAccuracy() {
+            return total == 0 ? 0.0 : (double) correct / total;
+        }
+        
+        public long[][] getConfusionMatrix() {
+            return confusion;
+        }
+        
+        public int getNumClasses() {
+            return confusion.length;
+        }
+        
+        /**
+         * Precision de la clase c: aciertos / veces que se predijo c
+         */
+        public double getPrecision(int c) {
+            long predicted = 0;
+            for (int i = 0; i < confusion.length; i++) {
+                predicted += confusion[i][c];
+            }
+            return predicted == 0 ? 0.0 : (double) confusion[c][c] / predicted;
+        }
+        
+        /**
+         * Recall de la clase c: aciertos / ejemplos reales de c
+         */
+        public double getRecall(int c) {
+            long actual = 0;
+            for (int j = 0; j < confusion.length; j++) {
+                actual += confusion[c][j];
+            }
+            return actual == 0 ? 0.0 : (double) confusion[c][c] / actual;
+        }
+        
+        /**
+         * Imprime la matriz de confusión y las métricas por clase
+         */
+        public void print(String prefix) {
+            System.out.println(prefix + " Matriz de confusión (fila = real, columna = predicha):");
+            for (long[] row : confusion) {
+                StringBuilder sb = new StringBuilder(prefix).append("  ");
+                for (long count : row) {
+                    sb.append(String.format("%7d", count));
+                }
+                System.out.println(sb);
+            }
+            for (int c = 0; c < confusion.length; c++) {
+                System.out.printf("%s  Clase %d - Precision: %.4f - Recall: %.4f%n",
+                                  prefix, c, getPrecision(c), getRecall(c));
+            }
+        }
+    }
+}
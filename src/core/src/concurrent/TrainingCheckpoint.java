@@ -0,0 +1,165 @@
+package concurrent;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Arrays;
+
+/**
+ * Estado completo de un entrenamiento en curso, suficiente para reanudarlo:
+ * parámetros, estado del optimizador, epoch, cursor de batch, semilla del
+ * barajado y estado del early stopping.
+ *
+ * Formato binario propio (DataOutputStream). La escritura va a un archivo
+ * temporal que luego se renombra, así un proceso interrumpido nunca deja un
+ * checkpoint a medias.
+ */
+public class TrainingCheckpoint {
+    
+    private static final int MAGIC = 0x434B5054; // "CKPT"
+    private static final int VERSION = 2;
+    
+    // Identificación del trabajo: el checkpoint solo se reanuda con los mismos
+    // datos, arquitectura (capas, activaciones, salida, convoluciones) y optimizador
+    int[] layers;
+    int datasetSize;
+    String architecture = "";
+    String optimizer = "";
+    String dataset = "";
+    
+    // Posición
+    int epoch;
+    int batchCursor;
+    double epochLoss;   // suma de las loss de los batches ya completados en el epoch
+    long seed;
+    
+    // Early stopping
+    double bestLoss = Double.POSITIVE_INFINITY;
+    int bestEpoch;
+    int epochsWithoutImprovement;
+    
+    double[] parameters;
+    double[] bestParameters = new double[0];
+    double[] optimizerState = new double[0];
+    
+    /**
+     * Comprueba si el checkpoint corresponde al mismo trabajo que other
+     * (arquitectura, optimizador y dataset)
+     */
+    public boolean matches(TrainingCheckpoint other) {
+        return Arrays.equals(layers, other.layers) && datasetSize == other.datasetSize
+               && architecture.equals(other.architecture) && optimizer.equals(other.optimizer)
+               && dataset.equals(other.dataset);
+    }
+    
+    /**
+     * Huella de un archivo de datos: ruta canónica, tamaño y fecha de modificación
+     */
+    public static String fingerprint(String path) {
+        File file = new File(path);
+        try {
+            return file.getCanonicalPath() + "|" + file.length() + "|" + file.lastModified();
+        } catch (IOException e) {
+            return file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+        }
+    }
+    
+    public int getEpoch() {
+        return epoch;
+    }
+    
+    public int getBatchCursor() {
+        return batchCursor;
+    }
+    
+    /**
+     * Escribe el checkpoint de forma atómica (archivo temporal + rename)
+     */
+    public void write(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(layers.length);
+            for (int size : layers) {
+                out.writeInt(size);
+            }
+            out.writeInt(datasetSize);
+            out.writeUTF(architecture);
+            out.writeUTF(optimizer);
+            out.writeUTF(dataset);
+            out.writeInt(epoch);
+            out.writeInt(batchCursor);
+            out.writeDouble(epochLoss);
+            out.writeLong(seed);
+            out.writeDouble(bestLoss);
+            out.writeInt(bestEpoch);
+            out.writeInt(epochsWithoutImprovement);
+            writeArray(out, parameters);
+            writeArray(out, bestParameters);
+            writeArray(out, optimizerState);
+        }
+        
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * Lee un checkpoint escrito con {@link #write(Path)}
+     */
+    public static TrainingCheckpoint read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Checkpoint inválido: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Versión de checkpoint no soportada: " + version);
+            }
+            
+            TrainingCheckpoint c = new TrainingCheckpoint();
+            c.layers = new int[in.readInt()];
+            for (int i = 0; i < c.layers.length; i++) {
+                c.layers[i] = in.readInt();
+            }
+            c.datasetSize = in.readInt();
+            c.architecture = in.readUTF();
+            c.optimizer = in.readUTF();
+            c.dataset = in.readUTF();
+            c.epoch = in.readInt();
+            c.batchCursor = in.readInt();
+            c.epochLoss = in.readDouble();
+            c.seed = in.readLong();
+            c.bestLoss = in.readDouble();
+            c.bestEpoch = in.readInt();
+            c.epochsWithoutImprovement = in.readInt();
+            c.parameters = readArray(in);
+            c.bestParameters = readArray(in);
+            c.optimizerState = readArray(in);
+            return c;
+        }
+    }
+    
+    private static void writeArray(DataOutputStream out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (double v : values) {
+            out.writeDouble(v);
+        }
+    }
+    
+    private static double[] readArray(DataInputStream in) throws IOException {
+        double[] values = new double[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readDouble();
+        }
+        return values;
+    }
+}
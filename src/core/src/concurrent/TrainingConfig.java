@@ -0,0 +1,351 @@
+package concurrent;
+
+import nn.LearningRateSchedule;
+import nn.Optimizer;
+import java.nio.file.Path;
+
+/**
+ * Parámetros de un entrenamiento.
+ * Los valores por defecto reproducen la configuración histórica del CLI
+ * (10 epochs, learning rate 0.01, batch 32) más un holdout de validación
+ * con early stopping.
+ */
+public class TrainingConfig {
+    
+    private int epochs = 10;
+    private double learningRate = 0.01;
+    private int batchSize = 32;
+    
+    // Optimizador y planificación del learning rate
+    private String optimizer = "sgd";
+    private double momentum = 0.9;
+    private double weightDecay = 0.01;
+    private String schedule = "constant";
+    private int scheduleStep = 5;
+    private double scheduleGamma = 0.5;
+    
+    // Early stopping
+    private double validationSplit = 0.1;
+    private int patience = 3;
+    private double minDelta = 1e-3;
+    private long seed = 42;
+    
+    // Checkpoints
+    private Path checkpointPath;
+    private int checkpointIntervalSeconds = 30;
+    private boolean resume;
+    private String datasetId = "";
+    
+    // Threads del scheduler compartido que puede usar el entrenamiento (0 = todos)
+    private int threads;
+    
+    // Pipeline de capas (0 o 1 = desactivado) y micro-batches por batch (0 = 4 por etapa)
+    private int pipelineStages;
+    private int microBatches;
+    
+    // Poda gradual por magnitud (0 = sin poda)
+    private double pruneSparsity;
+    private boolean pruneGlobal = true;
+    
+    public int getEpochs() {
+        return epochs;
+    }
+    
+    public TrainingConfig setEpochs(int epochs) {
+        if (epochs < 1) {
+            throw new IllegalArgumentException("epochs debe ser >= 1");
+        }
+        this.epochs = epochs;
+        return this;
+    }
+    
+    public double getLearningRate() {
+        return learningRate;
+    }
+    
+    public TrainingConfig setLearningRate(double learningRate) {
+        if (learningRate <= 0) {
+            throw new IllegalArgumentException("learning rate debe ser > 0");
+        }
+        this.learningRate = learningRate;
+        return this;
+    }
+    
+    public int getBatchSize() {
+        return batchSize;
+    }
+    
+    public TrainingConfig setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch size debe ser >= 1");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+    
+    public String getOptimizer() {
+        return optimizer;
+    }
+    
+    /**
+     * Optimizador: sgd, momentum, nesterov, adam, adamw
+     */
+    public TrainingConfig setOptimizer(String optimizer) {
+        this.optimizer = optimizer;
+        return this;
+    }
+    
+    public double getMomentum() {
+        return momentum;
+    }
+    
+    public TrainingConfig setMomentum(double momentum) {
+        this.momentum = momentum;
+        return this;
+    }
+    
+    public double getWeightDecay() {
+        return weightDecay;
+    }
+    
+    /**
+     * Weight decay desacoplado (solo AdamW)
+     */
+    public TrainingConfig setWeightDecay(double weightDecay) {
+        this.weightDecay = weightDecay;
+        return this;
+    }
+    
+    public String getSchedule() {
+        return schedule;
+    }
+    
+    /**
+     * Planificación del learning rate: constant, step, cosine
+     */
+    public TrainingConfig setSchedule(String schedule) {
+        this.schedule = schedule;
+        return this;
+    }
+    
+    public int getScheduleStep() {
+        return scheduleStep;
+    }
+    
+    /**
+     * Epochs entre reducciones del learning rate (schedule step)
+     */
+    public TrainingConfig setScheduleStep(int scheduleStep) {
+        this.scheduleStep = scheduleStep;
+        return this;
+    }
+    
+    public double getScheduleGamma() {
+        return scheduleGamma;
+    }
+    
+    /**
+     * Factor de reducción del learning rate (schedule step)
+     */
+    public TrainingConfig setScheduleGamma(double scheduleGamma) {
+        this.scheduleGamma = scheduleGamma;
+        return this;
+    }
+    
+    /**
+     * Crea el optimizador configurado
+     */
+    public Optimizer createOptimizer() {
+        return Optimizer.create(optimizer, learningRate, momentum, weightDecay);
+    }
+    
+    /**
+     * Crea la planificación de learning rate configurada
+     */
+    public LearningRateSchedule createSchedule() {
+        return LearningRateSchedule.create(schedule, scheduleStep, scheduleGamma);
+    }
+    
+    public double getValidationSplit() {
+        return validationSplit;
+    }
+    
+    /**
+     * Fracción del dataset reservada para validación (0 desactiva early stopping)
+     */
+    public TrainingConfig setValidationSplit(double validationSplit) {
+        if (validationSplit < 0 || validationSplit >= 1) {
+            throw new IllegalArgumentException("validation split debe estar en [0, 1)");
+        }
+        this.validationSplit = validationSplit;
+        return this;
+    }
+    
+    public int getPatience() {
+        return patience;
+    }
+    
+    /**
+     * Epochs sin mejora de la loss de validación antes de detener (0 = nunca)
+     */
+    public TrainingConfig setPatience(int patience) {
+        if (patience < 0) {
+            throw new IllegalArgumentException("patience debe ser >= 0");
+        }
+        this.patience = patience;
+        return this;
+    }
+    
+    public double getMinDelta() {
+        return minDelta;
+    }
+    
+    /**
+     * Mejora relativa mínima de la loss de validación para contar como
+     * progreso (1e-3 = la loss debe bajar al menos un 0.1%)
+     */
+    public TrainingConfig setMinDelta(double minDelta) {
+        this.minDelta = minDelta;
+        return this;
+    }
+    
+    public long getSeed() {
+        return seed;
+    }
+    
+    public TrainingConfig setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+    
+    public Path getCheckpointPath() {
+        return checkpointPath;
+    }
+    
+    /**
+     * Archivo de checkpoint (null desactiva los checkpoints)
+     */
+    public TrainingConfig setCheckpointPath(Path checkpointPath) {
+        this.checkpointPath = checkpointPath;
+        return this;
+    }
+    
+    public int getCheckpointIntervalSeconds() {
+        return checkpointIntervalSeconds;
+    }
+    
+    /**
+     * Segundos mínimos entre checkpoints periódicos (además del fin de cada epoch)
+     */
+    public TrainingConfig setCheckpointIntervalSeconds(int checkpointIntervalSeconds) {
+        if (checkpointIntervalSeconds < 0) {
+            throw new IllegalArgumentException("intervalo de checkpoint debe ser >= 0");
+        }
+        this.checkpointIntervalSeconds = checkpointIntervalSeconds;
+        return this;
+    }
+    
+    public boolean isResume() {
+        return resume;
+    }
+    
+    /**
+     * Continuar desde el checkpoint existente si es compatible
+     */
+    public TrainingConfig setResume(boolean resume) {
+        this.resume = resume;
+        return this;
+    }
+    
+    public String getDatasetId() {
+        return datasetId;
+    }
+    
+    /**
+     * Identidad del dataset (archivo, tamaño, fecha, normalización...): un
+     * checkpoint solo se reanuda con los mismos datos
+     */
+    public TrainingConfig setDatasetId(String datasetId) {
+        this.datasetId = datasetId == null ? "" : datasetId;
+        return this;
+    }
+    
+    public int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * Máximo de threads del scheduler compartido para este entrenamiento (0 = todos)
+     */
+    public TrainingConfig setThreads(int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("threads debe ser >= 0");
+        }
+        this.threads = threads;
+        return this;
+    }
+    
+    public int getPipelineStages() {
+        return pipelineStages;
+    }
+    
+    /**
+     * Etapas del pipeline de capas (ver PipelineExecutor); 0 o 1 = sin pipeline
+     */
+    public TrainingConfig setPipelineStages(int pipelineStages) {
+        if (pipelineStages < 0) {
+            throw new IllegalArgumentException("pipeline debe ser >= 0");
+        }
+        this.pipelineStages = pipelineStages;
+        return this;
+    }
+    
+    /**
+     * Micro-batches en que se divide cada batch con pipeline (0 = 4 por etapa)
+     */
+    public int getMicroBatches() {
+        return microBatches > 0 ? microBatches : 4 * pipelineStages;
+    }
+    
+    public TrainingConfig setMicroBatches(int microBatches) {
+        if (microBatches < 0) {
+            throw new IllegalArgumentException("micro-batches debe ser >= 0");
+        }
+        this.microBatches = microBatches;
+        return this;
+    }
+    
+    public double getPruneSparsity() {
+        return pruneSparsity;
+    }
+    
+    /**
+     * Fracción de pesos a cero al final del entrenamiento (ver nn.Pruning);
+     * sube por epochs y se alcanza al 75% de ellos. 0 = sin poda
+     */
+    public TrainingConfig setPruneSparsity(double pruneSparsity) {
+        if (pruneSparsity < 0 || pruneSparsity >= 1) {
+            throw new IllegalArgumentException("prune debe estar en [0, 1)");
+        }
+        this.pruneSparsity = pruneSparsity;
+        return this;
+    }
+    
+    public boolean isPruneGlobal() {
+        return pruneGlobal;
+    }
+    
+    /**
+     * Umbral de poda común a todas las capas (true) o por capa (false)
+     */
+    public TrainingConfig setPruneGlobal(boolean pruneGlobal) {
+        this.pruneGlobal = pruneGlobal;
+        return this;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("epochs=%d, lr=%s, batch=%d, optimizer=%s, schedule=%s, val=%s, patience=%d",
+                             epochs, learningRate, batchSize, optimizer, schedule, validationSplit, patience);
+    }
+}
@@ -0,0 +1,25 @@
+package concurrent;
+
+/**
+ * Observador de un entrenamiento de MultiThreadTrainer: recibe el progreso
+ * al final de cada epoch y puede detenerlo (búsqueda de hiperparámetros,
+ * cancelación de trabajos del daemon).
+ */
+@FunctionalInterface
+public interface TrainingListener {
+    
+    /**
+     * Al terminar el epoch (1..epochs) con la loss media de entrenamiento y
+     * el resultado de la validación (null sin validación). Devuelve false
+     * para detener el entrenamiento; se restauran los pesos del mejor epoch.
+     */
+    boolean onEpoch(int epoch, int epochs, double loss, ParallelEvaluator.Result validation);
+    
+    /**
+     * Se consulta entre batches: true detiene el entrenamiento sin esperar
+     * al final del epoch (el checkpoint guarda el último batch completo)
+     */
+    default boolean stopRequested() {
+        return false;
+    }
+}
@@ -0,0 +1,93 @@
+package data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lectura secuencial del formato de BinaryRowWriter. Sin parseo de texto:
+ * cada fila es una copia de floats desde un buffer directo.
+ */
+public class BinaryRowReader implements RowReader {
+    
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int columns;
+    private final long rows;
+    private long read;
+    
+    public BinaryRowReader(String path) throws IOException {
+        try {
+            this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            throw new NoSuchFileException("Archivo no encontrado: " + path);
+        }
+        try {
+            ByteBuffer header = ByteBuffer.allocate(BinaryRowWriter.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            header.flip();
+            if (header.remaining() < BinaryRowWriter.HEADER_BYTES || header.getInt() != BinaryRowWriter.MAGIC) {
+                throw new IOException("No es un archivo de filas binario: " + path);
+            }
+            int version = header.getInt();
+            if (version != BinaryRowWriter.VERSION) {
+                throw new IOException("Versión de archivo binario no soportada: " + version);
+            }
+            this.columns = header.getInt();
+            this.rows = header.getLong();
+            if (columns <= 0 || rows < 0) {
+                throw new IOException("Cabecera binaria inválida: " + path);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.buffer = ByteBuffer.allocateDirect(Math.max(1 << 16, columns * Float.BYTES))
+                                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.limit(0);
+    }
+    
+    @Override
+    public int columns() {
+        return columns;
+    }
+    
+    /**
+     * Filas declaradas en la cabecera
+     */
+    public long rows() {
+        return rows;
+    }
+    
+    @Override
+    public boolean next(double[] row) throws IOException {
+        if (read >= rows) {
+            return false;
+        }
+        int bytes = columns * Float.BYTES;
+        if (buffer.remaining() < bytes) {
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Archivo binario truncado en la fila " + read);
+                }
+            }
+            buffer.flip();
+        }
+        for (int i = 0; i < columns; i++) {
+            row[i] = buffer.getFloat();
+        }
+        read++;
+        return true;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
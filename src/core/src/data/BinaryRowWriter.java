@@ -0,0 +1,72 @@
+package data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Escritura de filas en formato binario compacto.
+ *
+ * Cabecera (little-endian): magic "CROW", versión (int), columnas (int),
+ * filas (long). Después las filas seguidas como float32 little-endian.
+ * El número de filas se escribe al cerrar, así no hace falta conocerlo
+ * de antemano.
+ */
+public class BinaryRowWriter implements Closeable {
+    
+    static final int MAGIC = 0x574f5243; // "CROW" en little-endian
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 4 + 4 + 4 + 8;
+    
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int columns;
+    private long rows;
+    
+    public BinaryRowWriter(String path, int columns) throws IOException {
+        this.columns = columns;
+        this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(Math.max(1 << 16, columns * Float.BYTES))
+                                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(columns).putLong(0);
+    }
+    
+    public void write(double[] row) throws IOException {
+        if (buffer.remaining() < columns * Float.BYTES) {
+            flush();
+        }
+        for (int i = 0; i < columns; i++) {
+            buffer.putFloat((float) row[i]);
+        }
+        rows++;
+    }
+    
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    public long getRows() {
+        return rows;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            ByteBuffer count = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            count.putLong(rows).flip();
+            channel.write(count, HEADER_BYTES - Long.BYTES);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package data;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lector de CSV numérico por streaming.
+ *
+ * Trabaja directamente sobre los bytes del archivo (buffer de 64 KB) en
+ * lugar de String.split + Double.parseDouble por campo: sin objetos por
+ * fila ni por campo. Los números decimales habituales (signo, dígitos,
+ * punto, exponente) se convierten con el camino rápido exacto: mantisa de
+ * hasta 2^53 por una potencia de 10 exacta (|exp| <= 22). Cualquier otro
+ * formato (muchos dígitos, NaN, ...) pasa por Double.parseDouble, así el
+ * resultado es siempre el mismo que con el parser estándar.
+ *
+ * Las líneas vacías se ignoran; la primera línea se trata como cabecera
+ * si no es numérica. Todas las filas deben tener el mismo número de columnas.
+ */
+public class CsvRowReader implements RowReader {
+    
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+    
+    private final InputStream in;
+    private byte[] buf = new byte[1 << 16];
+    private int pos;
+    private int limit;
+    private boolean eof;
+    
+    // Línea actual: [lineStart, lineEnd) del buffer
+    private int lineStart;
+    private int lineEnd;
+    private long lineNumber;
+    
+    private final int columns;
+    private double[] pending;   // primera fila, leída para conocer las columnas
+    
+    public CsvRowReader(String path) throws IOException {
+        try {
+            this.in = new FileInputStream(path);
+        } catch (FileNotFoundException e) {
+            throw new FileNotFoundException("Archivo no encontrado: " + path);
+        }
+        try {
+            if (!nextLine()) {
+                throw new IOException("Archivo vacío: " + path);
+            }
+            int count = countFields();
+            double[] first = new double[count];
+            try {
+                parseLine(first);
+            } catch (NumberFormatException e) {
+                // Cabecera: la fila de datos es la siguiente
+                if (!nextLine()) {
+                    throw new IOException("El archivo solo tiene cabecera: " + path);
+                }
+                count = countFields();
+                first = new double[count];
+                parseLine(first);
+            }
+            this.columns = count;
+            this.pending = first;
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+    
+    @Override
+    public int columns() {
+        return columns;
+    }
+    
+    @Override
+    public boolean next(double[] row) throws IOException {
+        if (pending != null) {
+            System.arraycopy(pending, 0, row, 0, columns);
+            pending = null;
+            return true;
+        }
+        if (!nextLine()) {
+            return false;
+        }
+        int count = countFields();
+        if (count != columns) {
+            throw new IOException("Línea " + lineNumber + ": " + count + " columnas, se esperaban " + columns);
+        }
+        try {
+            parseLine(row);
+        } catch (NumberFormatException e) {
+            throw new IOException("Línea " + lineNumber + ": valor no numérico (" + e.getMessage() + ")");
+        }
+        return true;
+    }
+    
+    /**
+     * Avanza a la siguiente línea no vacía; false al final del archivo
+     */
+    private boolean nextLine() throws IOException {
+        while (true) {
+            int nl = -1;
+            for (int i = pos; i < limit; i++) {
+                if (buf[i] == '\n') {
+                    nl = i;
+                    break;
+                }
+            }
+            if (nl < 0 && !eof) {
+                fill();
+                continue;
+            }
+            if (nl < 0 && pos >= limit) {
+                return false;
+            }
+            lineStart = pos;
+            lineEnd = nl < 0 ? limit : nl;
+            pos = nl < 0 ? limit : nl + 1;
+            lineNumber++;
+            
+            while (lineEnd > lineStart && buf[lineEnd - 1] <= ' ') {
+                lineEnd--;
+            }
+            while (lineStart < lineEnd && buf[lineStart] <= ' ') {
+                lineStart++;
+            }
+            if (lineEnd > lineStart) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Lee más bytes conservando la línea incompleta (el buffer crece si una
+     * línea no cabe)
+     */
+    private void fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buf.length) {
+            byte[] bigger = new byte[buf.length * 2];
+            System.arraycopy(buf, 0, bigger, 0, limit);
+            buf = bigger;
+        }
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            eof = true;
+        } else {
+            limit += n;
+        }
+    }
+    
+    private int countFields() {
+        int count = 1;
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (buf[i] == ',') count++;
+        }
+        return count;
+    }
+    
+    private void parseLine(double[] row) {
+        int field = 0;
+        int start = lineStart;
+        for (int i = lineStart; i <= lineEnd; i++) {
+            if (i == lineEnd || buf[i] == ',') {
+                row[field++] = parseField(start, i);
+                start = i + 1;
+            }
+        }
+    }
+    
+    /**
+     * Convierte buf[start, end) a double
+     */
+    private double parseField(int start, int end) {
+        while (start < end && buf[start] <= ' ') start++;
+        while (end > start && buf[end - 1] <= ' ') end--;
+        
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+            negative = buf[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significant = 0;
+        int exponent = 0;
+        boolean digits = false;
+        boolean truncated = false;
+        while (i < end && buf[i] >= '0' && buf[i] <= '9') {
+            if (significant < 18) {
+                mantissa = mantissa * 10 + (buf[i] - '0');
+                if (mantissa != 0) significant++;
+            } else {
+                truncated = true;
+            }
+            i++;
+            digits = true;
+        }
+        if (i < end && buf[i] == '.') {
+            i++;
+            while (i < end && buf[i] >= '0' && buf[i] <= '9') {
+                if (significant < 18) {
+                    mantissa = mantissa * 10 + (buf[i] - '0');
+                    if (mantissa != 0) significant++;
+                    exponent--;
+                } else {
+                    truncated = true;
+                }
+                i++;
+                digits = true;
+            }
+        }
+        if (digits && i < end && (buf[i] == 'e' || buf[i] == 'E')) {
+            i++;
+            boolean expNegative = false;
+            if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+                expNegative = buf[i] == '-';
+                i++;
+            }
+            int exp = 0;
+            boolean expDigits = false;
+            while (i < end && buf[i] >= '0' && buf[i] <= '9') {
+                if (exp < 10000) exp = exp * 10 + (buf[i] - '0');
+                i++;
+                expDigits = true;
+            }
+            if (!expDigits) {
+                return slowParse(start, end);
+            }
+            exponent += expNegative ? -exp : exp;
+        }
+        if (!digits || i != end || truncated) {
+            return slowParse(start, end);
+        }
+        
+        double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if (mantissa <= (1L << 53) && exponent >= -22 && exponent <= 22) {
+            value = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+        } else {
+            return slowParse(start, end);
+        }
+        return negative ? -value : value;
+    }
+    
+    private double slowParse(int start, int end) {
+        return Double.parseDouble(new String(buf, start, end - start, StandardCharsets.US_ASCII));
+    }
+    
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -17,6 +17,9 @@ public class DataGenerator {
             System.out.println("  - linear: Relación lineal simple (100 ejemplos)");
             System.out.println("  - circles: Clasificación de círculos concéntricos (500 ejemplos)");
             System.out.println("  - large: Dataset grande para pruebas de estrés (10000 ejemplos)");
+            System.out.println("  - workload <salida.csv|.bin|.libsvm> [--rows N] [--features F] [--classes K]");
+            System.out.println("             [--sparsity S] [--mnist] [--seed S] [--threads T]");
+            System.out.println("             Dataset sintético de cualquier tamaño, en paralelo y reproducible");
             return;
         }
         
@@ -36,6 +39,13 @@ public class DataGenerator {
                 case "large":
                     generateLarge();
                     break;
+                case "workload":
+                    if (args.length < 2) {
+                        System.err.println("Falta el archivo de salida");
+                        return;
+                    }
+                    generateWorkload(args[1], WorkloadGenerator.fromArgs(args, 2));
+                    break;
                 default:
                     System.err.println("Tipo desconocido: " + tipo);
             }
@@ -169,4 +179,19 @@ public class DataGenerator {
         System.out.printf("✓ Dataset grande generado (10000 ejemplos) en %.2f segundos%n", 
                          elapsedTime / 1000.0);
     }
+    
+    /**
+     * Genera un dataset sintético configurable (ver WorkloadGenerator)
+     */
+    public static void generateWorkload(String filename, WorkloadGenerator generator) throws IOException {
+        // DataLoader decide la columna de la etiqueta por el nombre del archivo
+        if (!DataLoader.isSparseFormat(filename) && generator.isImage() != DataLoader.isImageFormat(filename)) {
+            System.err.println(generator.isImage()
+                ? "WARNING: sin mnist ni fashion en el nombre, train leerá la etiqueta en la última columna"
+                : "WARNING: con mnist o fashion en el nombre, train leerá la etiqueta en la primera columna (usar --mnist)");
+        }
+        System.out.println("Generando dataset sintético: " + filename);
+        WorkloadGenerator.Result result = generator.generate(filename);
+        System.out.println("✓ Dataset sintético generado: " + result);
+    }
 }
@@ -1,8 +1,10 @@
 package data;
 
+import math.SparseVector;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.function.BiConsumer;
 
 /**
  * P4 - Tarea 4.2: Gestión de I/O
@@ -12,24 +14,289 @@ public class DataLoader {
     
     private static final String DELIMITER = ",";
     
+    // Con más clases, las etiquetas enteras no se toman como índices de clase
+    private static final int MAX_CLASSES = 10_000;
+    
+    // Normalización que se ajusta al cargar: auto, minmax, standard o none
+    private String normalization = "auto";
+    private PrintStream log = System.out;
+    
+    /**
+     * Normalización a ajustar cuando no se recibe un Preprocessor
+     * (ver Preprocessor.fit)
+     */
+    public void setNormalization(String normalization) {
+        this.normalization = normalization;
+    }
+    
+    /**
+     * Destino de los mensajes de carga (System.out por defecto)
+     */
+    public void setLog(PrintStream log) {
+        this.log = log;
+    }
+    
     /**
      * Carga datos de entrenamiento desde un archivo CSV
      * Formato esperado: feature1,feature2,...,label
      * Soporta imágenes 28x28 (784 features + 1 label = 785 columnas)
+     * y el formato binario de BinaryRowWriter (.bin, como el de generate)
+     * con la etiqueta en la misma columna.
+     * Etiquetas enteras mayores que 1 son clases: salida one-hot (ver LabelStats).
+     * La normalización se ajusta con estos datos y queda en el
+     * TrainingData (getPreprocessor) para guardarla con el modelo.
      */
     public TrainingData loadTrainingData(String filePath) throws IOException {
-        File file = new File(filePath);
-        if (!file.exists()) {
-            throw new FileNotFoundException("Archivo no encontrado: " + filePath);
+        return loadTrainingData(filePath, null);
+    }
+    
+    /**
+     * Carga datos normalizando con un preprocesamiento ya ajustado (el
+     * guardado en el modelo); con null se ajusta con estos mismos datos
+     */
+    public TrainingData loadTrainingData(String filePath, Preprocessor preprocessor) throws IOException {
+        File file = openDataset(filePath);
+        boolean isImageDataset = isImageDataset(file);
+        
+        List<double[]> inputs = new ArrayList<>();
+        List<double[]> outputs = new ArrayList<>();
+        readExamples(file, isImageDataset, (input, output) -> {
+            inputs.add(input);
+            outputs.add(output);
+        });
+        
+        if (inputs.isEmpty()) {
+            throw new IOException("No se pudieron cargar datos del archivo");
         }
         
-        // Detectar tipo de dataset
-        String fileName = file.getName().toLowerCase();
-        boolean isImageDataset = fileName.contains("mnist") || fileName.contains("fashion");
+        // Convertir listas a arrays
+        double[][] inputArray = inputs.toArray(new double[0][]);
+        double[][] outputArray = outputs.toArray(new double[0][]);
+        if (!isImageDataset) {
+            outputArray = LabelStats.of(outputArray).apply(outputArray, log);
+        }
+        return normalize(inputArray, outputArray, isImageDataset, preprocessor);
+    }
+    
+    /**
+     * Carga un dataset guardando las entradas dispersas (solo los no-ceros).
+     * Formatos:
+     *   .libsvm / .svm  "etiqueta índice:valor ..." con índices desde 1
+     *   CSV             el mismo formato que loadTrainingData
+     * Etiquetas libsvm: -1, 0 y 1 dan una salida binaria (-1 pasa a 0); con
+     * etiquetas mayores, one-hot de (máxima + 1) clases.
+     * La normalización solo escala, sin desplazar (ver Preprocessor.fitSparse).
+     */
+    public TrainingData loadSparseTrainingData(String filePath, Preprocessor preprocessor) throws IOException {
+        File file = openDataset(filePath);
+        boolean isImageDataset = isImageDataset(file);
+        int features = preprocessor != null ? preprocessor.getFeatures() : 0;
         
-        List<double[]> inputs = new ArrayList<>();
+        List<SparseVector> inputs = new ArrayList<>();
         List<double[]> outputs = new ArrayList<>();
+        if (isSparseFormat(filePath)) {
+            readLibsvm(file, features, inputs, outputs);
+        } else {
+            readExamples(file, isImageDataset, (input, output) -> {
+                inputs.add(SparseVector.fromDense(input));
+                outputs.add(output);
+            });
+        }
+        
+        if (inputs.isEmpty()) {
+            throw new IOException("No se pudieron cargar datos del archivo");
+        }
+        
+        SparseVector[] inputArray = inputs.toArray(new SparseVector[0]);
+        double[][] outputArray = outputs.toArray(new double[0][]);
+        if (!isImageDataset && !isSparseFormat(filePath)) {
+            outputArray = LabelStats.of(outputArray).apply(outputArray, log);
+        }
+        features = inputArray[0].size();
+        if (preprocessor == null) {
+            preprocessor = Preprocessor.fitSparse(inputArray, features, normalization, isImageDataset);
+        }
+        preprocessor.applyAll(inputArray);
+        
+        TrainingData data = new TrainingData(inputArray, outputArray);
+        data.setPreprocessor(preprocessor);
+        double nnz = data.averageNonZeros();
+        log.printf(Locale.ROOT, "Datos dispersos: %.1f no-ceros por fila de %d features (%.1f%%)%n",
+                   nnz, features, 100.0 * nnz / features);
+        return data;
+    }
+    
+    /**
+     * Extensión de los formatos dispersos por línea (libsvm / svmlight)
+     */
+    public static boolean isSparseFormat(String filePath) {
+        String name = filePath.toLowerCase();
+        return name.endsWith(".libsvm") || name.endsWith(".svm") || name.endsWith(".svmlight");
+    }
+    
+    /**
+     * Lee un archivo libsvm. features fija la dimensión (la del modelo); con
+     * 0 se toma el mayor índice del archivo.
+     */
+    private void readLibsvm(File file, int features, List<SparseVector> inputs,
+                            List<double[]> outputs) throws IOException {
+        List<int[]> rowIndices = new ArrayList<>();
+        List<double[]> rowValues = new ArrayList<>();
+        List<Double> labels = new ArrayList<>();
+        int maxIndex = 0;
         
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            String line;
+            int lineCount = 0;
+            while ((line = br.readLine()) != null) {
+                lineCount++;
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                
+                try {
+                    String[] parts = line.split("\\s+");
+                    int[] indices = new int[parts.length - 1];
+                    double[] values = new double[parts.length - 1];
+                    int nnz = 0;
+                    for (int i = 1; i < parts.length; i++) {
+                        int colon = parts[i].indexOf(':');
+                        if (colon < 0 || parts[i].startsWith("qid:")) continue;
+                        int index = Integer.parseInt(parts[i].substring(0, colon)) - 1;
+                        if (index < 0 || (nnz > 0 && index <= indices[nnz - 1])) {
+                            throw new NumberFormatException("índices no crecientes desde 1");
+                        }
+                        double value = Double.parseDouble(parts[i].substring(colon + 1));
+                        if (value == 0) continue;
+                        indices[nnz] = index;
+                        values[nnz++] = value;
+                    }
+                    double label = Double.parseDouble(parts[0]);
+                    if (nnz > 0) {
+                        maxIndex = Math.max(maxIndex, indices[nnz - 1] + 1);
+                    }
+                    rowIndices.add(Arrays.copyOf(indices, nnz));
+                    rowValues.add(Arrays.copyOf(values, nnz));
+                    labels.add(label);
+                } catch (NumberFormatException e) {
+                    System.err.println("WARNING: Parse error at line " + lineCount + ": " + e.getMessage());
+                }
+            }
+        }
+        
+        if (features == 0) {
+            features = maxIndex;
+        } else if (maxIndex > features) {
+            throw new IOException(String.format("El archivo tiene el índice %d y el modelo %d features",
+                                                maxIndex, features));
+        }
+        
+        // Binaria (-1/0/1) o multiclase (0..K-1 o 1..K como índices)
+        boolean binary = true;
+        int maxLabel = 0;
+        for (double label : labels) {
+            if (label != Math.rint(label) || label < -1) {
+                throw new IOException("Etiqueta libsvm no soportada: " + label + " (se esperan clases enteras)");
+            }
+            binary &= label <= 1;
+            maxLabel = Math.max(maxLabel, (int) label);
+        }
+        for (int i = 0; i < labels.size(); i++) {
+            double label = labels.get(i);
+            double[] output;
+            if (binary) {
+                output = new double[]{label > 0 ? 1.0 : 0.0};
+            } else {
+                if (label < 0) {
+                    throw new IOException("Etiqueta negativa en un dataset multiclase: " + label);
+                }
+                output = new double[maxLabel + 1];
+                output[(int) label] = 1.0;
+            }
+            inputs.add(new SparseVector(features, rowIndices.get(i), rowValues.get(i)));
+            outputs.add(output);
+        }
+    }
+    
+    /**
+     * Muestra uniforme de como mucho sampleSize ejemplos del archivo, en una
+     * sola pasada y con memoria acotada por la muestra (reservoir sampling)
+     */
+    public TrainingData sampleTrainingData(String filePath, Preprocessor preprocessor,
+                                           int sampleSize, long seed) throws IOException {
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException("El tamaño de la muestra debe ser >= 1");
+        }
+        File file = openDataset(filePath);
+        boolean isImageDataset = isImageDataset(file);
+        
+        double[][] inputs = new double[sampleSize][];
+        double[][] outputs = new double[sampleSize][];
+        Random random = new Random(seed);
+        long[] seen = {0};
+        // Las clases se deciden con todas las etiquetas, no solo las de la muestra
+        LabelStats labels = new LabelStats();
+        readExamples(file, isImageDataset, (input, output) -> {
+            if (!isImageDataset) {
+                labels.add(output[0]);
+            }
+            long n = seen[0]++;
+            // El ejemplo n reemplaza a uno de la muestra con probabilidad sampleSize / (n + 1)
+            long slot = n < sampleSize ? n : (long) (random.nextDouble() * (n + 1));
+            if (slot < sampleSize) {
+                inputs[(int) slot] = input;
+                outputs[(int) slot] = output;
+            }
+        });
+        
+        int count = (int) Math.min(seen[0], sampleSize);
+        if (count == 0) {
+            throw new IOException("No se pudieron cargar datos del archivo");
+        }
+        log.println("Muestra: " + count + " de " + seen[0] + " ejemplos");
+        double[][] sample = Arrays.copyOf(outputs, count);
+        if (!isImageDataset) {
+            sample = labels.apply(sample, log);
+        }
+        return normalize(Arrays.copyOf(inputs, count), sample, isImageDataset, preprocessor);
+    }
+    
+    private File openDataset(String filePath) throws IOException {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            throw new FileNotFoundException("Archivo no encontrado: " + filePath);
+        }
+        return file;
+    }
+    
+    /**
+     * MNIST/Fashion: etiqueta en la primera columna, one-hot de 10 clases y
+     * escala de píxeles. Se reconoce por el nombre del archivo (contiene
+     * mnist o fashion); con cualquier otro nombre la etiqueta es la última
+     * columna.
+     */
+    public static boolean isImageFormat(String filePath) {
+        String fileName = new File(filePath).getName().toLowerCase();
+        return fileName.contains("mnist") || fileName.contains("fashion");
+    }
+    
+    private boolean isImageDataset(File file) {
+        return isImageFormat(file.getPath());
+    }
+    
+    /**
+     * Recorre el CSV (o el .bin) y entrega cada ejemplo (entrada sin
+     * normalizar, salida)
+     */
+    private void readExamples(File file, boolean isImageDataset,
+                              BiConsumer<double[], double[]> consumer) throws IOException {
+        if (file.getName().toLowerCase().endsWith(".bin")) {
+            readBinaryExamples(file, isImageDataset, consumer);
+            return;
+        }
         try (BufferedReader br = new BufferedReader(new FileReader(file))) {
             String line;
             boolean firstLine = true;
@@ -58,7 +325,7 @@ public class DataLoader {
                     
                     // Log para datasets de imágenes 28x28
                     if (isImageDataset && lineCount == 1 && parts.length == 785) {
-                        System.out.println("Dataset de imágenes detectado");
+                        log.println("Dataset de imágenes detectado");
                     }
                     
                     double[] input = new double[parts.length - 1];
@@ -78,96 +345,123 @@ public class DataLoader {
                         labelValue = Double.parseDouble(parts[parts.length - 1].trim());
                     }
                     
-                    double[] output;
-                    if (isImageDataset) {
-                        // One-Hot Encoding para MNIST/Fashion (10 clases)
-                        output = new double[10];
-                        int labelIndex = (int) labelValue;
-                        if (labelIndex >= 0 && labelIndex < 10) {
-                            output[labelIndex] = 1.0;
-                        }
-                    } else {
-                        output = new double[]{labelValue};
-                    }
-                    
-                    inputs.add(input);
-                    outputs.add(output);
+                    consumer.accept(input, labelOutput(labelValue, isImageDataset));
                     
                 } catch (NumberFormatException e) {
                     System.err.println("WARNING: Parse error at line " + lineCount + ": " + e.getMessage());
                 }
             }
         }
-        
-        if (inputs.isEmpty()) {
-            throw new IOException("No se pudieron cargar datos del archivo");
+    }
+    
+    /**
+     * Formato binario de BinaryRowWriter: la etiqueta en la misma columna que
+     * en CSV (primera en MNIST/Fashion, última en el resto)
+     */
+    private void readBinaryExamples(File file, boolean isImageDataset,
+                                    BiConsumer<double[], double[]> consumer) throws IOException {
+        try (BinaryRowReader reader = new BinaryRowReader(file.getPath())) {
+            int columns = reader.columns();
+            if (columns < 2) {
+                throw new IOException("El archivo binario necesita al menos una feature y la etiqueta");
+            }
+            if (isImageDataset && columns == 785) {
+                log.println("Dataset de imágenes detectado");
+            }
+            double[] row = new double[columns];
+            while (reader.next(row)) {
+                double[] input = isImageDataset ? Arrays.copyOfRange(row, 1, columns)
+                                                : Arrays.copyOf(row, columns - 1);
+                double labelValue = isImageDataset ? row[0] : row[columns - 1];
+                consumer.accept(input, labelOutput(labelValue, isImageDataset));
+            }
         }
-        
-        // Convertir listas a arrays
-        double[][] inputArray = inputs.toArray(new double[0][]);
-        double[][] outputArray = outputs.toArray(new double[0][]);
-        
-        // NORMALIZACIÓN DE DATOS
+    }
+    
+    private static double[] labelOutput(double labelValue, boolean isImageDataset) {
         if (isImageDataset) {
-            // escalar [0, 255] -> [0, 1]
-            for (int i = 0; i < inputArray.length; i++) {
-                for (int j = 0; j < inputArray[0].length; j++) {
-                    if (inputArray[i][j] > 1.0) {
-                        inputArray[i][j] /= 255.0;
-                    }
-                }
+            // One-Hot Encoding para MNIST/Fashion (10 clases)
+            double[] output = new double[10];
+            int labelIndex = (int) labelValue;
+            if (labelIndex >= 0 && labelIndex < 10) {
+                output[labelIndex] = 1.0;
             }
-        } else {
-            // Para otros datos, usar Min-Max
-            inputArray = normalizeData(inputArray);
-        }
-        // Los outputs ya son 0 o 1 (One-Hot), no necesitan normalización
-        // outputArray = normalizeData(outputArray); 
-
-        if (inputArray[0].length == 784) {
-            System.out.println("Formato compatible");
+            return output;
         }
-        
-        return new TrainingData(inputArray, outputArray);
+        return new double[]{labelValue};
     }
     
     /**
-     * Normaliza los datos usando Min-Max Normalization
-     * Escala todos los valores al rango [0, 1]
+     * Etiquetas de la última columna de un dataset genérico. Como en libsvm:
+     * si todas son enteras >= 0 y alguna es mayor que 1 son índices de clase
+     * y la salida pasa a one-hot de (máxima + 1) clases (una salida sigmoid
+     * no puede aprender etiquetas > 1). Si no, se deja una salida.
      */
-    private double[][] normalizeData(double[][] data) {
-        if (data.length == 0) return data;
-        
-        int features = data[0].length;
-        double[] min = new double[features];
-        double[] max = new double[features];
+    private static final class LabelStats {
+        private boolean classIndices = true;
+        private double max;
         
-        // Inicializar min y max
-        Arrays.fill(min, Double.MAX_VALUE);
-        Arrays.fill(max, Double.MIN_VALUE);
+        static LabelStats of(double[][] outputs) {
+            LabelStats stats = new LabelStats();
+            for (double[] output : outputs) {
+                stats.add(output[0]);
+            }
+            return stats;
+        }
         
-        // Encontrar min y max para cada feature
-        for (double[] row : data) {
-            for (int i = 0; i < features; i++) {
-                if (row[i] < min[i]) min[i] = row[i];
-                if (row[i] > max[i]) max[i] = row[i];
+        void add(double label) {
+            if (label < 0 || label != Math.rint(label)) {
+                classIndices = false;
             }
+            max = Math.max(max, label);
         }
         
-        // Normalizar
-        double[][] normalized = new double[data.length][features];
-        for (int i = 0; i < data.length; i++) {
-            for (int j = 0; j < features; j++) {
-                if (max[j] - min[j] != 0) {
-                    normalized[i][j] = (data[i][j] - min[j]) / (max[j] - min[j]);
-                } else {
-                    normalized[i][j] = 0.5; // Si todos los valores son iguales
-                }
+        /**
+         * Número de clases, o 0 si las etiquetas no son índices de clase
+         */
+        int classes() {
+            return classIndices && max > 1 && max < MAX_CLASSES ? (int) max + 1 : 0;
+        }
+        
+        /**
+         * outputs ({etiqueta} por ejemplo) en one-hot si son clases
+         */
+        double[][] apply(double[][] outputs, PrintStream log) {
+            int classes = classes();
+            if (classes == 0) {
+                return outputs;
             }
+            double[][] oneHot = new double[outputs.length][classes];
+            for (int i = 0; i < outputs.length; i++) {
+                oneHot[i][(int) outputs[i][0]] = 1.0;
+            }
+            log.println("Etiquetas de clase 0-" + (classes - 1) + ": salida one-hot de " + classes + " clases");
+            return oneHot;
+        }
+    }
+    
+    /**
+     * NORMALIZACIÓN DE DATOS: por defecto escala [0, 255] -> [0, 1] para
+     * imágenes y Min-Max para el resto (ver Preprocessor)
+     */
+    private TrainingData normalize(double[][] inputArray, double[][] outputArray, boolean isImageDataset,
+                                   Preprocessor preprocessor) {
+        if (preprocessor == null) {
+            preprocessor = Preprocessor.fit(inputArray, isImageDataset, normalization);
+        }
+        preprocessor.applyAll(inputArray);
+        if (preprocessor.getKind().equals("minmax") || preprocessor.getKind().equals("standard")) {
+            log.println("Datos normalizados: " + inputArray.length + " ejemplos");
+        }
+        // Los outputs ya son 0 o 1 (One-Hot), no necesitan normalización
+        
+        if (inputArray[0].length == 784) {
+            log.println("Formato compatible");
         }
         
-        System.out.println("Datos normalizados: " + data.length + " ejemplos");
-        return normalized;
+        TrainingData data = new TrainingData(inputArray, outputArray);
+        data.setPreprocessor(preprocessor);
+        return data;
     }
     
     /**
@@ -234,6 +528,6 @@ public class DataLoader {
             writer.write(content);
         }
         
-        System.out.println("Archivo escrito: " + filePath);
+        log.println("Archivo escrito: " + filePath);
     }
 }
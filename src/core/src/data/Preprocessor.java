@@ -0,0 +1,271 @@
+package data;
+
+import java.io.Serializable;
+import math.SparseVector;
+
+/**
+ * Normalización de entradas ajustada con el dataset de entrenamiento.
+ *
+ * Se guarda dentro del modelo para aplicar exactamente la misma
+ * transformación a los datos nuevos (finetune) en lugar de recalcularla
+ * con ellos. Todas las variantes son afines por feature:
+ *
+ *   x' = x * scale[j] + shift[j]
+ *
+ *   minmax   (x - min) / (max - min); features constantes -> 0.5
+ *   standard (x - media) / desviación; features constantes -> 0
+ *   pixel    x / 255 si el dataset tiene valores > 1 (imágenes)
+ *   maxabs   x / max|x|; sin desplazamiento, conserva los ceros (datos dispersos)
+ *   none     identidad
+ *
+ * Por ser afín se puede plegar en la primera capa de la red
+ * (NeuralNetwork.foldPreprocessor): la inferencia recibe los datos crudos
+ * sin ninguna pasada extra.
+ */
+public class Preprocessor implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final String kind;
+    private final double[] scale;
+    private final double[] shift;
+    
+    public Preprocessor(String kind, double[] scale, double[] shift) {
+        if (scale.length != shift.length) {
+            throw new IllegalArgumentException("scale y shift deben tener el mismo tamaño");
+        }
+        this.kind = kind;
+        this.scale = scale;
+        this.shift = shift;
+    }
+    
+    /**
+     * Sin transformación (para cargar datos crudos)
+     */
+    public static Preprocessor identity(int features) {
+        double[] scale = new double[features];
+        java.util.Arrays.fill(scale, 1.0);
+        return new Preprocessor("none", scale, new double[features]);
+    }
+    
+    /**
+     * Ajusta la normalización por defecto de DataLoader: escala de píxeles
+     * para imágenes, min-max por feature para el resto
+     */
+    public static Preprocessor fit(double[][] inputs, boolean image) {
+        return fit(inputs, image, "auto");
+    }
+    
+    /**
+     * Ajusta la normalización indicada: auto, minmax, standard, maxabs o none
+     */
+    public static Preprocessor fit(double[][] inputs, boolean image, String method) {
+        int features = inputs[0].length;
+        double[] scale = new double[features];
+        double[] shift = new double[features];
+        
+        switch (method.toLowerCase()) {
+            case "auto":
+                break;
+            case "minmax":
+                image = false;
+                break;
+            case "standard":
+                return fitStandard(inputs, scale, shift);
+            case "maxabs":
+                for (double[] row : inputs) {
+                    for (int j = 0; j < features; j++) {
+                        scale[j] = Math.max(scale[j], Math.abs(row[j]));
+                    }
+                }
+                return maxAbs(scale);
+            case "none":
+                return identity(features);
+            default:
+                throw new IllegalArgumentException("Normalización desconocida: " + method
+                                                   + " (usar auto, minmax, standard, maxabs, none)");
+        }
+        
+        if (image) {
+            double max = 0;
+            for (double[] row : inputs) {
+                for (double v : row) {
+                    max = Math.max(max, v);
+                }
+            }
+            // Datos ya en [0, 1]: identidad
+            java.util.Arrays.fill(scale, max > 1.0 ? 1.0 / 255.0 : 1.0);
+            return new Preprocessor("pixel", scale, shift);
+        }
+        
+        double[] min = new double[features];
+        double[] max = new double[features];
+        java.util.Arrays.fill(min, Double.POSITIVE_INFINITY);
+        java.util.Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        for (double[] row : inputs) {
+            for (int j = 0; j < features; j++) {
+                if (row[j] < min[j]) min[j] = row[j];
+                if (row[j] > max[j]) max[j] = row[j];
+            }
+        }
+        for (int j = 0; j < features; j++) {
+            double range = max[j] - min[j];
+            if (range != 0) {
+                scale[j] = 1.0 / range;
+                shift[j] = -min[j] / range;
+            } else {
+                // Si todos los valores son iguales
+                shift[j] = 0.5;
+            }
+        }
+        return new Preprocessor("minmax", scale, shift);
+    }
+    
+    /**
+     * Ajusta la normalización de un dataset disperso. Solo se admiten
+     * transformaciones sin desplazamiento (un shift distinto de cero
+     * convertiría los ceros en valores): auto equivale a la escala de
+     * píxeles en imágenes y a maxabs en el resto.
+     */
+    public static Preprocessor fitSparse(SparseVector[] inputs, int features, String method, boolean image) {
+        switch (method.toLowerCase()) {
+            case "auto":
+                if (image) {
+                    double max = 0;
+                    for (SparseVector row : inputs) {
+                        for (double v : row.getValues()) {
+                            max = Math.max(max, v);
+                        }
+                    }
+                    double[] scale = new double[features];
+                    java.util.Arrays.fill(scale, max > 1.0 ? 1.0 / 255.0 : 1.0);
+                    return new Preprocessor("pixel", scale, new double[features]);
+                }
+                break;
+            case "maxabs":
+                break;
+            case "none":
+                return identity(features);
+            default:
+                throw new IllegalArgumentException("Normalización no admitida con datos dispersos: " + method
+                                                   + " (usar auto, maxabs, none)");
+        }
+        double[] maxAbs = new double[features];
+        for (SparseVector row : inputs) {
+            int[] indices = row.getIndices();
+            double[] values = row.getValues();
+            for (int k = 0; k < indices.length; k++) {
+                maxAbs[indices[k]] = Math.max(maxAbs[indices[k]], Math.abs(values[k]));
+            }
+        }
+        return maxAbs(maxAbs);
+    }
+    
+    /**
+     * Convierte el máximo absoluto por feature en su factor (en el lugar);
+     * las features siempre a cero se dejan igual
+     */
+    private static Preprocessor maxAbs(double[] max) {
+        for (int j = 0; j < max.length; j++) {
+            max[j] = max[j] > 0 ? 1.0 / max[j] : 1.0;
+        }
+        return new Preprocessor("maxabs", max, new double[max.length]);
+    }
+    
+    private static Preprocessor fitStandard(double[][] inputs, double[] scale, double[] shift) {
+        int features = scale.length;
+        double[] mean = new double[features];
+        double[] m2 = new double[features];
+        // Welford: media y varianza en una pasada, estable numéricamente
+        long n = 0;
+        for (double[] row : inputs) {
+            n++;
+            for (int j = 0; j < features; j++) {
+                double delta = row[j] - mean[j];
+                mean[j] += delta / n;
+                m2[j] += delta * (row[j] - mean[j]);
+            }
+        }
+        for (int j = 0; j < features; j++) {
+            double std = Math.sqrt(m2[j] / n);
+            if (std > 0) {
+                scale[j] = 1.0 / std;
+                shift[j] = -mean[j] / std;
+            }
+        }
+        return new Preprocessor("standard", scale, shift);
+    }
+    
+    /**
+     * Aplica la transformación a una fila (en el lugar)
+     */
+    public void apply(double[] row) {
+        if (row.length != scale.length) {
+            throw new IllegalArgumentException(String.format(
+                "Preprocesamiento para %d features, recibidas %d", scale.length, row.length));
+        }
+        for (int j = 0; j < row.length; j++) {
+            row[j] = row[j] * scale[j] + shift[j];
+        }
+    }
+    
+    /**
+     * Aplica la transformación a todas las filas (en el lugar)
+     */
+    public void applyAll(double[][] rows) {
+        for (double[] row : rows) {
+            apply(row);
+        }
+    }
+    
+    /**
+     * Aplica la transformación a filas dispersas (en el lugar, solo los
+     * no-ceros). Requiere una transformación sin desplazamiento.
+     */
+    public void applyAll(SparseVector[] rows) {
+        for (double s : shift) {
+            if (s != 0) {
+                throw new IllegalArgumentException("El preprocesamiento " + kind
+                                                   + " desplaza los valores: no se puede aplicar a datos dispersos");
+            }
+        }
+        for (SparseVector row : rows) {
+            if (row.size() != scale.length) {
+                throw new IllegalArgumentException(String.format(
+                    "Preprocesamiento para %d features, recibidas %d", scale.length, row.size()));
+            }
+            int[] indices = row.getIndices();
+            double[] values = row.getValues();
+            for (int k = 0; k < indices.length; k++) {
+                values[k] *= scale[indices[k]];
+            }
+        }
+    }
+    
+    /**
+     * Factor por feature (copia)
+     */
+    public double[] getScale() {
+        return scale.clone();
+    }
+    
+    /**
+     * Desplazamiento por feature (copia)
+     */
+    public double[] getShift() {
+        return shift.clone();
+    }
+    
+    public String getKind() {
+        return kind;
+    }
+    
+    public int getFeatures() {
+        return scale.length;
+    }
+    
+    @Override
+    public String toString() {
+        return kind + " (" + scale.length + " features)";
+    }
+}
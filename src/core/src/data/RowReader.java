@@ -0,0 +1,31 @@
+package data;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Lectura secuencial de filas numéricas sin cargar el archivo en memoria.
+ * Cada llamada a next() rellena un buffer que aporta quien llama, así el
+ * coste por fila es constante y no se crean objetos por fila.
+ */
+public interface RowReader extends Closeable {
+    
+    /**
+     * Columnas de cada fila
+     */
+    int columns();
+    
+    /**
+     * Lee la siguiente fila en row (al menos columns() posiciones).
+     * Devuelve false al llegar al final.
+     */
+    boolean next(double[] row) throws IOException;
+    
+    /**
+     * Abre un archivo según su extensión: .bin (formato binario de
+     * BinaryRowWriter) o CSV para cualquier otra
+     */
+    static RowReader open(String path) throws IOException {
+        return path.toLowerCase().endsWith(".bin") ? new BinaryRowReader(path) : new CsvRowReader(path);
+    }
+}
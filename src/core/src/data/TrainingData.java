@@ -1,34 +1,124 @@
 package data;
 
+import math.SparseVector;
+
 /**
  * Estructura de datos para almacenar ejemplos de entrenamiento
+ * 
+ * Las entradas se guardan densas (double[] por fila) o dispersas
+ * (SparseVector por fila, ver {@link #isSparse()}). Con entradas dispersas
+ * getInputs() las densifica la primera vez que se pide, para el código que
+ * solo trabaja con filas densas (pipeline, entrenamiento distribuido).
  */
 public class TrainingData {
-    private final double[][] inputs;
+    private double[][] inputs;   // null hasta densificar si las entradas son dispersas
+    private final SparseVector[] sparseInputs;
     private final double[][] outputs;
+    private Preprocessor preprocessor;   // normalización aplicada al cargar (solo el dataset completo)
     
     public TrainingData(double[][] inputs, double[][] outputs) {
         if (inputs.length != outputs.length) {
             throw new IllegalArgumentException("El número de inputs debe coincidir con outputs");
         }
         this.inputs = inputs;
+        this.sparseInputs = null;
+        this.outputs = outputs;
+    }
+    
+    /**
+     * Dataset con entradas dispersas
+     */
+    public TrainingData(SparseVector[] inputs, double[][] outputs) {
+        if (inputs.length != outputs.length) {
+            throw new IllegalArgumentException("El número de inputs debe coincidir con outputs");
+        }
+        this.sparseInputs = inputs;
         this.outputs = outputs;
     }
     
-    public double[][] getInputs() {
+    public synchronized double[][] getInputs() {
+        if (inputs == null) {
+            inputs = new double[sparseInputs.length][];
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = sparseInputs[i].toDense();
+            }
+        }
         return inputs;
     }
     
+    public boolean isSparse() {
+        return sparseInputs != null;
+    }
+    
+    /**
+     * Entradas dispersas (null si el dataset es denso)
+     */
+    public SparseVector[] getSparseInputs() {
+        return sparseInputs;
+    }
+    
+    /**
+     * Media de valores distintos de cero por fila (dataset disperso)
+     */
+    public double averageNonZeros() {
+        if (sparseInputs == null || sparseInputs.length == 0) {
+            return getInputSize();
+        }
+        long nnz = 0;
+        for (SparseVector row : sparseInputs) {
+            nnz += row.nnz();
+        }
+        return (double) nnz / sparseInputs.length;
+    }
+    
     public double[][] getOutputs() {
         return outputs;
     }
     
+    public Preprocessor getPreprocessor() {
+        return preprocessor;
+    }
+    
+    public void setPreprocessor(Preprocessor preprocessor) {
+        this.preprocessor = preprocessor;
+    }
+    
+    /**
+     * Une dos datasets (solo referencias a las filas)
+     */
+    public TrainingData concat(TrainingData other) {
+        if (other.getSize() > 0 && getSize() > 0
+                && (other.getInputSize() != getInputSize() || other.getOutputSize() != getOutputSize())) {
+            throw new IllegalArgumentException("Los datasets tienen dimensiones distintas");
+        }
+        double[][] allOutputs = java.util.Arrays.copyOf(outputs, outputs.length + other.outputs.length);
+        System.arraycopy(other.outputs, 0, allOutputs, outputs.length, other.outputs.length);
+        TrainingData data;
+        if (isSparse() && other.isSparse()) {
+            SparseVector[] allInputs = java.util.Arrays.copyOf(sparseInputs, sparseInputs.length
+                                                               + other.sparseInputs.length);
+            System.arraycopy(other.sparseInputs, 0, allInputs, sparseInputs.length, other.sparseInputs.length);
+            data = new TrainingData(allInputs, allOutputs);
+        } else {
+            double[][] mine = getInputs();
+            double[][] theirs = other.getInputs();
+            double[][] allInputs = java.util.Arrays.copyOf(mine, mine.length + theirs.length);
+            System.arraycopy(theirs, 0, allInputs, mine.length, theirs.length);
+            data = new TrainingData(allInputs, allOutputs);
+        }
+        data.setPreprocessor(preprocessor);
+        return data;
+    }
+    
     public int getSize() {
-        return inputs.length;
+        return outputs.length;
     }
     
     public int getInputSize() {
-        return inputs.length > 0 ? inputs[0].length : 0;
+        if (outputs.length == 0) {
+            return 0;
+        }
+        return isSparse() ? sparseInputs[0].size() : inputs[0].length;
     }
     
     public int getOutputSize() {
@@ -39,10 +129,11 @@ public class TrainingData {
      * Obtiene un ejemplo específico
      */
     public DataPair getExample(int index) {
-        if (index < 0 || index >= inputs.length) {
+        if (index < 0 || index >= outputs.length) {
             throw new IndexOutOfBoundsException("Índice fuera de rango: " + index);
         }
-        return new DataPair(inputs[index], outputs[index]);
+        double[] input = inputs != null ? inputs[index] : sparseInputs[index].toDense();
+        return new DataPair(input, outputs[index]);
     }
     
     /**
@@ -55,34 +146,85 @@ public class TrainingData {
         for (int i = 0; i < numBatches; i++) {
             int start = i * batchSize;
             int end = Math.min(start + batchSize, getSize());
-            int size = end - start;
-            
-            double[][] batchInputs = new double[size][];
-            double[][] batchOutputs = new double[size][];
-            
-            for (int j = 0; j < size; j++) {
-                batchInputs[j] = inputs[start + j];
-                batchOutputs[j] = outputs[start + j];
-            }
-            
-            batches[i] = new TrainingData(batchInputs, batchOutputs);
+            batches[i] = select(null, start, end);
         }
         
         return batches;
     }
     
+    /**
+     * Separa un conjunto de validación (holdout).
+     * Retorna {entrenamiento, validación}; ambos comparten las filas con este
+     * dataset (solo se copian referencias, no los datos).
+     * Si el holdout queda vacío la validación es null.
+     */
+    public TrainingData[] split(double validationFraction, long seed) {
+        int size = getSize();
+        int validationSize = (int) (size * validationFraction);
+        if (validationSize <= 0 || validationSize >= size) {
+            return new TrainingData[]{this, null};
+        }
+        
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        java.util.Random rand = new java.util.Random(seed);
+        for (int i = size - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        
+        int trainSize = size - validationSize;
+        return new TrainingData[]{
+            select(order, 0, trainSize),
+            select(order, trainSize, size)
+        };
+    }
+    
+    /**
+     * Filas order[from..to) (o from..to si order es null), compartiendo las
+     * filas con este dataset
+     */
+    private TrainingData select(int[] order, int from, int to) {
+        int size = to - from;
+        double[][] selectedOutputs = new double[size][];
+        double[][] selectedInputs = isSparse() ? null : new double[size][];
+        SparseVector[] selectedSparse = isSparse() ? new SparseVector[size] : null;
+        for (int i = 0; i < size; i++) {
+            int idx = order != null ? order[from + i] : from + i;
+            selectedOutputs[i] = outputs[idx];
+            if (isSparse()) {
+                selectedSparse[i] = sparseInputs[idx];
+            } else {
+                selectedInputs[i] = inputs[idx];
+            }
+        }
+        return isSparse() ? new TrainingData(selectedSparse, selectedOutputs)
+                          : new TrainingData(selectedInputs, selectedOutputs);
+    }
+    
     /**
      * Mezcla aleatoriamente los datos (útil para entrenamiento)
      */
     public void shuffle() {
         java.util.Random rand = new java.util.Random();
-        for (int i = inputs.length - 1; i > 0; i--) {
+        for (int i = outputs.length - 1; i > 0; i--) {
             int j = rand.nextInt(i + 1);
             
             // Swap inputs
-            double[] tempInput = inputs[i];
-            inputs[i] = inputs[j];
-            inputs[j] = tempInput;
+            if (inputs != null) {
+                double[] tempInput = inputs[i];
+                inputs[i] = inputs[j];
+                inputs[j] = tempInput;
+            }
+            if (sparseInputs != null) {
+                SparseVector tempSparse = sparseInputs[i];
+                sparseInputs[i] = sparseInputs[j];
+                sparseInputs[j] = tempSparse;
+            }
             
             // Swap outputs
             double[] tempOutput = outputs[i];
@@ -0,0 +1,544 @@
+package data;
+
+import concurrent.ComputeScheduler;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Generador paralelo de datasets sintéticos para benchmarks.
+ *
+ * Las filas se generan por bloques en el pool de cómputo compartido. Cada
+ * bloque tiene su propio generador aleatorio derivado de (semilla, bloque),
+ * así el archivo es idéntico con cualquier número de threads. Cada clase
+ * tiene un centro (o, en modo imagen, un mapa de probabilidad de tinta por
+ * píxel) fijado por la semilla: los datos se pueden aprender.
+ *
+ * Formatos según la extensión de salida:
+ *   .bin             formato binario de BinaryRowWriter (cada bloque se
+ *                    escribe en paralelo en su posición del archivo)
+ *   .libsvm / .svm   "etiqueta índice:valor ..." (solo no-ceros; multiclase)
+ *   otro             CSV con cabecera
+ * En CSV y libsvm los bloques se formatean en paralelo y se escriben en orden.
+ * La etiqueta va en la primera columna en modo imagen (como MNIST) y en la
+ * última en el resto. DataLoader reconoce el modo imagen por el nombre del
+ * archivo (DataLoader.isImageFormat: contiene mnist o fashion), así que un
+ * archivo --mnist debe llamarse así para entrenar con él. Con más de 2
+ * clases train usa salida one-hot (etiquetas enteras, ver DataLoader).
+ */
+public class WorkloadGenerator {
+    
+    // Bytes aproximados por bloque (filas por bloque según el ancho)
+    private static final int BLOCK_BYTES = 1 << 22;
+    
+    private long rows = 100_000;
+    private int features = 20;
+    private int classes = 2;
+    private double sparsity = 0.0;
+    private long seed = 42;
+    private boolean image;
+    private int threads;
+    
+    public WorkloadGenerator setRows(long rows) {
+        if (rows < 1) {
+            throw new IllegalArgumentException("rows debe ser >= 1");
+        }
+        this.rows = rows;
+        return this;
+    }
+    
+    public WorkloadGenerator setFeatures(int features) {
+        if (features < 1) {
+            throw new IllegalArgumentException("features debe ser >= 1");
+        }
+        this.features = features;
+        return this;
+    }
+    
+    public WorkloadGenerator setClasses(int classes) {
+        if (classes < 2) {
+            throw new IllegalArgumentException("classes debe ser >= 2");
+        }
+        this.classes = classes;
+        return this;
+    }
+    
+    /**
+     * Fracción media de features a cero en cada fila, en [0, 1)
+     */
+    public WorkloadGenerator setSparsity(double sparsity) {
+        if (sparsity < 0 || sparsity >= 1) {
+            throw new IllegalArgumentException("sparsity debe estar en [0, 1)");
+        }
+        this.sparsity = sparsity;
+        return this;
+    }
+    
+    public WorkloadGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+    
+    /**
+     * Modo MNIST: 784 píxeles enteros 0-255, 10 clases, ~80% de ceros
+     * (se puede cambiar después con setClasses/setSparsity)
+     */
+    public WorkloadGenerator setImage(boolean image) {
+        this.image = image;
+        if (image) {
+            features = 784;
+            classes = 10;
+            sparsity = 0.8;
+        }
+        return this;
+    }
+    
+    public boolean isImage() {
+        return image;
+    }
+    
+    /**
+     * Threads del pool compartido (<= 0: todos)
+     */
+    public WorkloadGenerator setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+    
+    /**
+     * Configuración desde opciones de línea de comandos a partir de args[from]:
+     * --rows N --features F --classes K --sparsity S --seed S --threads T --mnist
+     */
+    public static WorkloadGenerator fromArgs(String[] args, int from) {
+        WorkloadGenerator generator = new WorkloadGenerator();
+        for (int i = from; i < args.length; i++) {
+            if (args[i].equals("--mnist")) {
+                generator.setImage(true);
+            }
+        }
+        for (int i = from; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--mnist")) {
+                continue;
+            }
+            if (!option.startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Opción inválida: " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--rows":
+                    generator.setRows(parseCount(value));
+                    break;
+                case "--features":
+                    generator.setFeatures(Integer.parseInt(value));
+                    break;
+                case "--classes":
+                    generator.setClasses(Integer.parseInt(value));
+                    break;
+                case "--sparsity":
+                    generator.setSparsity(Double.parseDouble(value));
+                    break;
+                case "--seed":
+                    generator.setSeed(Long.parseLong(value));
+                    break;
+                case "--threads":
+                    generator.setThreads(Integer.parseInt(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Opción desconocida: " + option);
+            }
+        }
+        return generator;
+    }
+    
+    /**
+     * Número con sufijo opcional k, m o g (10m = 10.000.000)
+     */
+    private static long parseCount(String value) {
+        String v = value.trim().toLowerCase();
+        long factor = 1;
+        char last = v.charAt(v.length() - 1);
+        if (last == 'k' || last == 'm' || last == 'g') {
+            factor = last == 'k' ? 1_000L : last == 'm' ? 1_000_000L : 1_000_000_000L;
+            v = v.substring(0, v.length() - 1);
+        }
+        return Long.parseLong(v) * factor;
+    }
+    
+    /**
+     * Genera el dataset en path (formato según la extensión)
+     */
+    public Result generate(String path) throws IOException {
+        String lower = path.toLowerCase();
+        Model model = new Model();
+        int blockRows = (int) Math.max(64, Math.min(65_536, BLOCK_BYTES / (8L * (features + 1))));
+        long blocks = (rows + blockRows - 1) / blockRows;
+        if (blocks > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Demasiadas filas: " + rows);
+        }
+        
+        long start = System.nanoTime();
+        long bytes;
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (lower.endsWith(".bin")) {
+                bytes = writeBinary(channel, model, blockRows, (int) blocks);
+            } else {
+                boolean libsvm = DataLoader.isSparseFormat(path);
+                bytes = writeText(channel, model, blockRows, (int) blocks, libsvm);
+            }
+        }
+        return new Result(rows, bytes, (System.nanoTime() - start) / 1e9);
+    }
+    
+    /**
+     * Binario: tamaño de fila fijo, cada bloque va directo a su posición
+     */
+    private long writeBinary(FileChannel channel, Model model, int blockRows, int blocks) throws IOException {
+        int columns = features + 1;
+        ByteBuffer header = ByteBuffer.allocate(BinaryRowWriter.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(BinaryRowWriter.MAGIC).putInt(BinaryRowWriter.VERSION).putInt(columns).putLong(rows).flip();
+        writeFully(channel, header, 0);
+        
+        long rowBytes = (long) columns * Float.BYTES;
+        Progress progress = new Progress(blocks);
+        IOException[] failure = new IOException[1];
+        ComputeScheduler.shared().parallelFor(0, blocks, 1, threads, (from, to) -> {
+            double[] row = new double[features];
+            ByteBuffer buffer = ByteBuffer.allocate((int) (blockRows * rowBytes)).order(ByteOrder.LITTLE_ENDIAN);
+            for (int b = from; b < to; b++) {
+                long first = (long) b * blockRows;
+                int count = (int) Math.min(blockRows, rows - first);
+                SplittableRandom random = blockRandom(b);
+                buffer.clear();
+                for (int r = 0; r < count; r++) {
+                    int label = model.next(random, row);
+                    if (image) buffer.putFloat(label);
+                    for (double v : row) {
+                        buffer.putFloat((float) v);
+                    }
+                    if (!image) buffer.putFloat(label);
+                }
+                buffer.flip();
+                try {
+                    writeFully(channel, buffer, BinaryRowWriter.HEADER_BYTES + first * rowBytes);
+                } catch (IOException e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                    return;
+                }
+                progress.blockDone();
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return BinaryRowWriter.HEADER_BYTES + rows * rowBytes;
+    }
+    
+    /**
+     * CSV / libsvm: los bloques se formatean en paralelo (como mucho threads
+     * a la vez) y este thread los escribe en orden mientras se generan los siguientes
+     */
+    private long writeText(FileChannel channel, Model model, int blockRows, int blocks,
+                           boolean libsvm) throws IOException {
+        ComputeScheduler scheduler = ComputeScheduler.shared();
+        int window = scheduler.effectiveThreads(threads);
+        long position = 0;
+        if (!libsvm) {
+            position += writeFully(channel, ByteBuffer.wrap(csvHeader()), 0);
+        }
+        
+        Progress progress = new Progress(blocks);
+        ArrayDeque<Future<TextBuffer>> pending = new ArrayDeque<>();
+        int next = 0;
+        try {
+            while (next < blocks || !pending.isEmpty()) {
+                while (next < blocks && pending.size() < window) {
+                    int b = next++;
+                    pending.add(scheduler.getPool().submit(() -> formatBlock(model, b, blockRows, libsvm)));
+                }
+                TextBuffer text = pending.poll().get();
+                position += writeFully(channel, ByteBuffer.wrap(text.bytes, 0, text.length), position);
+                progress.blockDone();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Generación interrumpida", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error generando un bloque: " + e.getCause(), e.getCause());
+        } finally {
+            for (Future<TextBuffer> future : pending) {
+                future.cancel(true);
+            }
+        }
+        return position;
+    }
+    
+    private TextBuffer formatBlock(Model model, int block, int blockRows, boolean libsvm) {
+        long first = (long) block * blockRows;
+        int count = (int) Math.min(blockRows, rows - first);
+        SplittableRandom random = blockRandom(block);
+        double[] row = new double[features];
+        TextBuffer text = new TextBuffer(count * (features + 1) * (image ? 3 : libsvm ? 10 : 7));
+        for (int r = 0; r < count; r++) {
+            int label = model.next(random, row);
+            if (libsvm) {
+                text.appendLong(label);
+                for (int j = 0; j < features; j++) {
+                    if (row[j] != 0) {
+                        text.append(' ').appendLong(j + 1).append(':');
+                        text.appendValue(row[j], image);
+                    }
+                }
+            } else {
+                if (image) {
+                    text.appendLong(label).append(',');
+                }
+                for (int j = 0; j < features; j++) {
+                    if (j > 0) text.append(',');
+                    text.appendValue(row[j], image);
+                }
+                if (!image) {
+                    text.append(',').appendLong(label);
+                }
+            }
+            text.append('\n');
+        }
+        return text;
+    }
+    
+    private byte[] csvHeader() {
+        StringBuilder header = new StringBuilder();
+        if (image) {
+            header.append("label");
+            for (int j = 0; j < features; j++) {
+                header.append(",pixel").append(j);
+            }
+        } else {
+            for (int j = 0; j < features; j++) {
+                header.append('f').append(j).append(',');
+            }
+            header.append("target");
+        }
+        return header.append('\n').toString().getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    }
+    
+    /**
+     * Generador de un bloque: solo depende de la semilla y del índice
+     */
+    private SplittableRandom blockRandom(int block) {
+        return new SplittableRandom(seed * 0x9E3779B97F4A7C15L + block);
+    }
+    
+    private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+    
+    /**
+     * Distribución de los datos, fijada por la semilla.
+     * Tabular: centro por clase (N(0, 1) por feature) + ruido N(0, 1); con
+     * sparsity cada feature es cero con esa probabilidad.
+     * Imagen: por clase, un mapa de probabilidad de tinta hecho con manchas
+     * gaussianas en el centro de la imagen, escalado para que la fracción
+     * media de píxeles a cero sea sparsity; los píxeles con tinta valen 64-255.
+     */
+    private class Model {
+        final double[][] centers = new double[classes][features];
+        final double[][] ink;
+        
+        Model() {
+            Random random = new Random(seed);
+            for (double[] center : centers) {
+                for (int j = 0; j < features; j++) {
+                    center[j] = random.nextGaussian();
+                }
+            }
+            ink = image ? inkMaps(random) : null;
+        }
+        
+        private double[][] inkMaps(Random random) {
+            int side = (int) Math.round(Math.sqrt(features));
+            double[][] maps = new double[classes][features];
+            for (double[] map : maps) {
+                double total = 0;
+                for (int blob = 0; blob < 4; blob++) {
+                    double cx = side * (0.25 + 0.5 * random.nextDouble());
+                    double cy = side * (0.25 + 0.5 * random.nextDouble());
+                    double sigma = side * (0.06 + 0.06 * random.nextDouble());
+                    for (int j = 0; j < features; j++) {
+                        double dx = j % side - cx;
+                        double dy = j / side - cy;
+                        map[j] += Math.exp(-(dx * dx + dy * dy) / (2 * sigma * sigma));
+                    }
+                }
+                for (double p : map) {
+                    total += Math.min(1.0, p);
+                }
+                // Escalar para que la densidad media sea 1 - sparsity
+                double factor = (1 - sparsity) * features / total;
+                for (int j = 0; j < features; j++) {
+                    map[j] = Math.min(1.0, Math.min(1.0, map[j]) * factor);
+                }
+            }
+            return maps;
+        }
+        
+        /**
+         * Rellena row con un ejemplo y devuelve su clase
+         */
+        int next(SplittableRandom random, double[] row) {
+            int label = random.nextInt(classes);
+            if (image) {
+                double[] map = ink[label];
+                for (int j = 0; j < features; j++) {
+                    row[j] = random.nextDouble() < map[j] ? 64 + random.nextInt(192) : 0;
+                }
+                return label;
+            }
+            double[] center = centers[label];
+            if (sparsity == 0) {
+                for (int j = 0; j < features; j++) {
+                    row[j] = center[j] + nextGaussian(random);
+                }
+                return label;
+            }
+            // Saltos geométricos entre no-ceros: coste proporcional a los no-ceros
+            java.util.Arrays.fill(row, 0.0);
+            double logSparsity = Math.log(sparsity);
+            int j = -1;
+            while (true) {
+                j += 1 + (int) (Math.log(1.0 - random.nextDouble()) / logSparsity);
+                if (j >= features || j < 0) break;
+                row[j] = center[j] + nextGaussian(random);
+            }
+            return label;
+        }
+    }
+    
+    /**
+     * N(0, 1) por Box-Muller (SplittableRandom no tiene nextGaussian en JDK 17)
+     */
+    private static double nextGaussian(SplittableRandom random) {
+        double u = 1.0 - random.nextDouble();
+        double v = random.nextDouble();
+        return Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+    }
+    
+    /**
+     * Buffer de texto ASCII sin pasar por String
+     */
+    private static class TextBuffer {
+        byte[] bytes;
+        int length;
+        
+        TextBuffer(int capacity) {
+            bytes = new byte[Math.max(64, capacity)];
+        }
+        
+        TextBuffer append(char c) {
+            ensure(1);
+            bytes[length++] = (byte) c;
+            return this;
+        }
+        
+        TextBuffer appendLong(long v) {
+            ensure(20);
+            if (v < 0) {
+                bytes[length++] = '-';
+                v = -v;
+            }
+            int start = length;
+            do {
+                bytes[length++] = (byte) ('0' + v % 10);
+                v /= 10;
+            } while (v > 0);
+            // Invertir los dígitos
+            for (int i = start, k = length - 1; i < k; i++, k--) {
+                byte tmp = bytes[i];
+                bytes[i] = bytes[k];
+                bytes[k] = tmp;
+            }
+            return this;
+        }
+        
+        /**
+         * Entero (píxeles) o 4 decimales (features tabulares)
+         */
+        TextBuffer appendValue(double v, boolean integer) {
+            if (integer || v == 0) {
+                return appendLong((long) v);
+            }
+            long scaled = Math.round(Math.abs(v) * 1e4);
+            if (v < 0 && scaled != 0) {
+                append('-');
+            }
+            appendLong(scaled / 10_000).append('.');
+            ensure(4);
+            int fraction = (int) (scaled % 10_000);
+            for (int div = 1000; div > 0; div /= 10) {
+                bytes[length++] = (byte) ('0' + fraction / div % 10);
+            }
+            return this;
+        }
+        
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = java.util.Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+    }
+    
+    /**
+     * Progreso cada ~10% de los bloques
+     */
+    private static class Progress {
+        private final int blocks;
+        private int done;
+        
+        Progress(int blocks) {
+            this.blocks = blocks;
+        }
+        
+        synchronized void blockDone() {
+            done++;
+            if (blocks >= 10 && done % (blocks / 10) == 0 && done < blocks) {
+                System.out.println("  Progreso: " + (100L * done / blocks) + "%");
+            }
+        }
+    }
+    
+    /**
+     * Filas y bytes escritos y tiempo total
+     */
+    public static class Result {
+        public final long rows;
+        public final long bytes;
+        public final double seconds;
+        
+        Result(long rows, long bytes, double seconds) {
+            this.rows = rows;
+            this.bytes = bytes;
+            this.seconds = seconds;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.ROOT, "%d filas, %.1f MB en %.2f s (%.1f MB/s)",
+                                 rows, bytes / 1e6, seconds, bytes / 1e6 / Math.max(seconds, 1e-9));
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package distributed;
+
+import concurrent.ComputeScheduler;
+import concurrent.MultiThreadTrainer;
+import concurrent.ParallelEvaluator;
+import concurrent.TrainingConfig;
+import nn.LearningRateSchedule;
+import nn.NeuralNetwork;
+import nn.Optimizer;
+import data.TrainingData;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Entrenamiento data-parallel entre varios procesos (uno por nodo).
+ *
+ * Cada epoch todos los procesos calculan la misma permutación del dataset
+ * (misma semilla) y cada uno entrena con su trozo: los ejemplos
+ * [rank * shard, (rank + 1) * shard) de la permutación. Cada syncEvery
+ * batches, y siempre al final del epoch, los parámetros se promedian con
+ * un all-reduce en anillo (promediado síncrono de parámetros, "local SGD").
+ * El estado del optimizador (momentum, momentos de Adam) es local a cada
+ * proceso.
+ *
+ * Con un GradientCompressor no se promedian los parámetros completos:
+ * cada proceso comprime su delta desde la última sincronización, los
+ * bloques comprimidos se reúnen con un all-gather en anillo y todos
+ * decodifican y suman los mismos bloques en el mismo orden (mismo
+ * resultado en todos los procesos).
+ *
+ * La validación también se reparte: cada proceso evalúa su parte y las
+ * sumas se combinan con el mismo all-reduce, así todos toman la misma
+ * decisión de early stopping sin coordinador.
+ */
+public class DistributedTrainer {
+    
+    private final NeuralNetwork network;
+    private final RingAllReduce ring;
+    private final int syncEvery;
+    private final GradientCompressor compressor;
+    
+    // Sincronización comprimida: últimos parámetros comunes y buffer de trabajo
+    private double[] synced;
+    private double[] delta;
+    
+    public DistributedTrainer(NeuralNetwork network, RingAllReduce ring, int syncEvery) {
+        this(network, ring, syncEvery, null);
+    }
+    
+    /**
+     * @param compressor compresión de la sincronización (null o none: vectores double completos)
+     */
+    public DistributedTrainer(NeuralNetwork network, RingAllReduce ring, int syncEvery,
+                              GradientCompressor compressor) {
+        if (syncEvery < 1) {
+            throw new IllegalArgumentException("sync-every debe ser >= 1");
+        }
+        this.network = network;
+        this.ring = ring;
+        this.syncEvery = syncEvery;
+        this.compressor = compressor != null && compressor.getMethod() != GradientCompressor.Method.NONE
+                ? compressor : null;
+    }
+    
+    public void train(TrainingData data, TrainingData validation, TrainingConfig config) throws IOException {
+        // Los GEMM de trainStep usan como mucho los threads de --threads
+        int previousLimit = ComputeScheduler.setThreadLimit(config.getThreads());
+        try {
+            trainLimited(data, validation, config);
+        } finally {
+            ComputeScheduler.setThreadLimit(previousLimit);
+        }
+    }
+    
+    private void trainLimited(TrainingData data, TrainingData validation, TrainingConfig config) throws IOException {
+        long startTime = System.currentTimeMillis();
+        int rank = ring.getRank();
+        int world = ring.getWorld();
+        int epochs = config.getEpochs();
+        int batchSize = config.getBatchSize();
+        
+        // Todos los trozos del mismo tamaño: mismo número de sincronizaciones en cada proceso
+        int shard = data.getSize() / world;
+        if (shard == 0) {
+            throw new IllegalArgumentException("Dataset demasiado pequeño para " + world + " procesos");
+        }
+        int numBatches = (shard + batchSize - 1) / batchSize;
+        
+        Optimizer optimizer = config.createOptimizer();
+        LearningRateSchedule schedule = config.createSchedule();
+        ParallelEvaluator evaluator = validation != null
+                ? new ParallelEvaluator(network, ComputeScheduler.shared(), config.getThreads()) : null;
+        
+        // Mismos pesos iniciales en todos los procesos: los del rank 0
+        double[] params = network.snapshotParameters(null);
+        ring.broadcast(params, 0);
+        network.restoreParameters(params);
+        if (compressor != null) {
+            synced = params.clone();
+            delta = new double[params.length];
+        }
+        
+        System.out.printf("[DIST] Rank %d/%d: %d ejemplos por proceso, %d batches por epoch, sincronización cada %d batches%n",
+                          rank, world, shard, numBatches, syncEvery);
+        
+        double[][] inputs = data.getInputs();
+        double[][] outputs = data.getOutputs();
+        int[] order = new int[data.getSize()];
+        double bestLoss = Double.POSITIVE_INFINITY;
+        int bestEpoch = 0;
+        int epochsWithoutImprovement = 0;
+        double[] bestParameters = null;
+        
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            MultiThreadTrainer.shuffleOrder(order, config.getSeed(), epoch);
+            optimizer.setLearningRate(schedule.rate(config.getLearningRate(), epoch, epochs));
+            int offset = rank * shard;
+            double lossSum = 0;
+            
+            for (int b = 0; b < numBatches; b++) {
+                int from = offset + b * batchSize;
+                int to = Math.min(from + batchSize, offset + shard);
+                for (int i = from; i < to; i++) {
+                    int idx = order[i];
+                    lossSum += network.trainStep(inputs[idx], outputs[idx], optimizer);
+                }
+                if ((b + 1) % syncEvery == 0 || b == numBatches - 1) {
+                    averageParameters(params);
+                }
+            }
+            
+            // Loss media global del epoch
+            double[] stats = {lossSum, shard};
+            ring.allReduceSum(stats);
+            double avgLoss = stats[0] / stats[1];
+            long elapsed = (System.currentTimeMillis() - startTime) / 1000;
+            
+            if (evaluator == null) {
+                System.out.printf("%d/%d - Loss: %.6f - Tiempo: %ds%n", epoch + 1, epochs, avgLoss, elapsed);
+                System.out.flush();
+                continue;
+            }
+            
+            double[] val = evaluateShard(evaluator, validation);
+            System.out.printf("%d/%d - Loss: %.6f - Val Loss: %.6f - Val Accuracy: %.4f - Tiempo: %ds%n",
+                              epoch + 1, epochs, avgLoss, val[0], val[1], elapsed);
+            System.out.flush();
+            
+            if (val[0] < bestLoss * (1 - config.getMinDelta())) {
+                bestLoss = val[0];
+                bestEpoch = epoch + 1;
+                bestParameters = network.snapshotParameters(bestParameters);
+                epochsWithoutImprovement = 0;
+            } else if (config.getPatience() > 0 && ++epochsWithoutImprovement >= config.getPatience()) {
+                System.out.println("Early stopping: sin mejora en " + config.getPatience() + " epochs");
+                break;
+            }
+        }
+        
+        if (bestParameters != null) {
+            network.restoreParameters(bestParameters);
+            System.out.printf("Restaurando pesos del mejor epoch (%d, Val Loss: %.6f)%n", bestEpoch, bestLoss);
+        }
+        
+        long totalTime = (System.currentTimeMillis() - startTime) / 1000;
+        System.out.printf("[DIST] Comunicación: %d all-reduce, %.1f MB enviados, %.2fs%n",
+                          ring.getOperations(), ring.getBytesSent() / 1e6, ring.getCommSeconds());
+        if (compressor != null) {
+            long syncs = Math.max(1, compressor.getSteps());
+            System.out.printf("[DIST] Compresión %s: %d bytes por sincronización (%.1f%% de %d), "
+                              + "comprimir %.2fms, descomprimir %.2fms por sincronización%n",
+                              compressor, compressor.getEncodedBytes() / syncs,
+                              100.0 * compressor.getEncodedBytes() / Math.max(1, compressor.getRawBytes()),
+                              compressor.getRawBytes() / syncs,
+                              compressor.getCompressSeconds() * 1e3 / syncs,
+                              compressor.getDecompressSeconds() * 1e3 / syncs);
+        }
+        System.out.println("Entrenamiento completado en " + totalTime + " segundos");
+    }
+    
+    /**
+     * Promedia los parámetros de todos los procesos (params es el buffer de trabajo)
+     */
+    private void averageParameters(double[] params) throws IOException {
+        network.snapshotParameters(params);
+        if (compressor == null) {
+            ring.allReduceMean(params);
+            network.restoreParameters(params);
+            return;
+        }
+        
+        // synced += media de los deltas comprimidos de todos los procesos
+        for (int i = 0; i < params.length; i++) {
+            delta[i] = params[i] - synced[i];
+        }
+        byte[][] blocks = ring.allGather(compressor.encode(delta));
+        Arrays.fill(delta, 0.0);
+        for (byte[] block : blocks) {
+            compressor.decodeAdd(block, delta);
+        }
+        double inv = 1.0 / blocks.length;
+        for (int i = 0; i < params.length; i++) {
+            synced[i] += delta[i] * inv;
+        }
+        network.restoreParameters(synced);
+    }
+    
+    /**
+     * Evalúa la parte de la validación de este proceso y combina con el resto:
+     * devuelve {loss media, accuracy} globales
+     */
+    private double[] evaluateShard(ParallelEvaluator evaluator, TrainingData validation) throws IOException {
+        int size = validation.getSize();
+        int world = ring.getWorld();
+        int rank = ring.getRank();
+        int from = (int) ((long) size * rank / world);
+        int to = (int) ((long) size * (rank + 1) / world);
+        
+        double[] sums = new double[3];
+        if (to > from) {
+            ParallelEvaluator.Result result = evaluator.evaluate(validation, from, to);
+            int count = to - from;
+            sums[0] = result.getLoss() * count;
+            sums[1] = result.getAccuracy() * count;
+            sums[2] = count;
+        }
+        ring.allReduceSum(sums);
+        return new double[]{sums[0] / sums[2], sums[1] / sums[2]};
+    }
+}
@@ -0,0 +1,375 @@
+package distributed;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Compresión de los vectores que se intercambian entre procesos
+ * (el delta de parámetros desde la última sincronización).
+ *
+ *   fp16   2 bytes por valor (half precision IEEE 754, redondeo al par)
+ *   bf16   2 bytes por valor (16 bits altos del float: mismo rango, menos mantisa)
+ *   int8   1 byte por valor + una escala float por bloque de INT8_BLOCK valores
+ *   topk   solo los k valores de mayor magnitud: índice int + valor float
+ *
+ * Todos los métodos usan error feedback: lo que se pierde al comprimir
+ * (valor - valor decodificado) se guarda y se suma al vector del siguiente
+ * paso, así el error no se acumula sino que se envía más tarde.
+ *
+ * Formato: [método (1 byte)][n (int)][datos del método]
+ */
+public class GradientCompressor {
+    
+    public enum Method { NONE, FP16, BF16, INT8, TOPK }
+    
+    /** Valores por escala en int8 */
+    static final int INT8_BLOCK = 256;
+    
+    private static final int HEADER_BYTES = 1 + Integer.BYTES;
+    
+    private final Method method;
+    private final double topkRatio;
+    private double[] residual;
+    
+    // Estadísticas
+    private long rawBytes;
+    private long encodedBytes;
+    private long compressNanos;
+    private long decompressNanos;
+    private long steps;
+    
+    public GradientCompressor(Method method, double topkRatio) {
+        if (method == Method.TOPK && (topkRatio <= 0 || topkRatio > 1)) {
+            throw new IllegalArgumentException("topk: la fracción debe estar en (0, 1]");
+        }
+        this.method = method;
+        this.topkRatio = topkRatio;
+    }
+    
+    /**
+     * "none", "fp16", "bf16", "int8", "topk" o "topk:fracción" (topk = topk:0.01)
+     */
+    public static GradientCompressor parse(String spec) {
+        String[] parts = spec.trim().toLowerCase(Locale.ROOT).split(":", 2);
+        Method method;
+        try {
+            method = Method.valueOf(parts[0].toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Compresión desconocida: " + spec
+                                               + " (usar none, fp16, bf16, int8, topk[:fracción])");
+        }
+        if (parts.length > 1 && method != Method.TOPK) {
+            throw new IllegalArgumentException("Solo topk acepta parámetro: " + spec);
+        }
+        double ratio = parts.length > 1 ? Double.parseDouble(parts[1]) : 0.01;
+        return new GradientCompressor(method, ratio);
+    }
+    
+    public Method getMethod() {
+        return method;
+    }
+    
+    /**
+     * Comprime values (más el error pendiente de pasos anteriores) y
+     * actualiza el error pendiente
+     */
+    public byte[] encode(double[] values) {
+        long start = System.nanoTime();
+        int n = values.length;
+        if (residual == null || residual.length != n) {
+            residual = new double[n];
+        }
+        // corrected = values + error pendiente; se reutiliza residual como buffer
+        for (int i = 0; i < n; i++) {
+            residual[i] += values[i];
+        }
+        
+        ByteBuffer out = ByteBuffer.allocate(encodedSize(n));
+        out.put((byte) method.ordinal());
+        out.putInt(n);
+        switch (method) {
+            case NONE:
+                for (int i = 0; i < n; i++) {
+                    out.putDouble(residual[i]);
+                    residual[i] = 0;
+                }
+                break;
+            case FP16:
+                for (int i = 0; i < n; i++) {
+                    short h = toHalf((float) residual[i]);
+                    out.putShort(h);
+                    residual[i] -= halfToFloat(h);
+                }
+                break;
+            case BF16:
+                for (int i = 0; i < n; i++) {
+                    short h = toBfloat16((float) residual[i]);
+                    out.putShort(h);
+                    residual[i] -= bfloat16ToFloat(h);
+                }
+                break;
+            case INT8:
+                encodeInt8(out, n);
+                break;
+            case TOPK:
+                encodeTopK(out, n);
+                break;
+        }
+        
+        byte[] bytes = out.position() == out.capacity() ? out.array()
+                : Arrays.copyOf(out.array(), out.position());
+        rawBytes += (long) n * Double.BYTES;
+        encodedBytes += bytes.length;
+        compressNanos += System.nanoTime() - start;
+        steps++;
+        return bytes;
+    }
+    
+    /**
+     * Suma a target el vector codificado en payload
+     */
+    public void decodeAdd(byte[] payload, double[] target) {
+        long start = System.nanoTime();
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        int ordinal = in.get();
+        int n = in.getInt();
+        if (ordinal != method.ordinal() || n != target.length) {
+            throw new IllegalStateException("Bloque comprimido incompatible (método "
+                                            + ordinal + ", " + n + " valores)");
+        }
+        switch (method) {
+            case NONE:
+                for (int i = 0; i < n; i++) {
+                    target[i] += in.getDouble();
+                }
+                break;
+            case FP16:
+                for (int i = 0; i < n; i++) {
+                    target[i] += halfToFloat(in.getShort());
+                }
+                break;
+            case BF16:
+                for (int i = 0; i < n; i++) {
+                    target[i] += bfloat16ToFloat(in.getShort());
+                }
+                break;
+            case INT8:
+                for (int from = 0; from < n; from += INT8_BLOCK) {
+                    int to = Math.min(from + INT8_BLOCK, n);
+                    float scale = in.getFloat();
+                    for (int i = from; i < to; i++) {
+                        target[i] += in.get() * scale;
+                    }
+                }
+                break;
+            case TOPK:
+                int count = in.getInt();
+                for (int j = 0; j < count; j++) {
+                    int idx = in.getInt();
+                    target[idx] += in.getFloat();
+                }
+                break;
+        }
+        decompressNanos += System.nanoTime() - start;
+    }
+    
+    /**
+     * Tamaño máximo del bloque codificado para n valores
+     */
+    int encodedSize(int n) {
+        switch (method) {
+            case FP16:
+            case BF16:
+                return HEADER_BYTES + 2 * n;
+            case INT8:
+                return HEADER_BYTES + n + Float.BYTES * ((n + INT8_BLOCK - 1) / INT8_BLOCK);
+            case TOPK:
+                return HEADER_BYTES + Integer.BYTES + topK(n) * (Integer.BYTES + Float.BYTES);
+            default:
+                return HEADER_BYTES + Double.BYTES * n;
+        }
+    }
+    
+    private int topK(int n) {
+        return Math.max(1, Math.min(n, (int) Math.ceil(n * topkRatio)));
+    }
+    
+    /**
+     * Escala simétrica por bloque: q = round(x / scale), scale = max|x| / 127
+     */
+    private void encodeInt8(ByteBuffer out, int n) {
+        for (int from = 0; from < n; from += INT8_BLOCK) {
+            int to = Math.min(from + INT8_BLOCK, n);
+            double maxAbs = 0;
+            for (int i = from; i < to; i++) {
+                maxAbs = Math.max(maxAbs, Math.abs(residual[i]));
+            }
+            float scale = (float) (maxAbs / 127);
+            out.putFloat(scale);
+            for (int i = from; i < to; i++) {
+                int q = scale == 0 ? 0 : (int) Math.round(residual[i] / scale);
+                q = Math.max(-127, Math.min(127, q));
+                out.put((byte) q);
+                residual[i] -= q * scale;
+            }
+        }
+    }
+    
+    /**
+     * Envía los k valores de mayor magnitud; el resto queda en el error pendiente
+     */
+    private void encodeTopK(ByteBuffer out, int n) {
+        int k = topK(n);
+        double[] magnitudes = new double[n];
+        for (int i = 0; i < n; i++) {
+            magnitudes[i] = Math.abs(residual[i]);
+        }
+        double threshold = select(magnitudes, n - k);
+        
+        int countPos = out.position();
+        out.putInt(0);
+        int count = 0;
+        // Primero los estrictamente mayores, luego empates hasta completar k
+        for (int pass = 0; pass < 2 && count < k; pass++) {
+            for (int i = 0; i < n && count < k; i++) {
+                double m = Math.abs(residual[i]);
+                if (pass == 0 ? m > threshold : m == threshold && m > 0) {
+                    float v = (float) residual[i];
+                    out.putInt(i);
+                    out.putFloat(v);
+                    residual[i] -= v;
+                    count++;
+                }
+            }
+        }
+        out.putInt(countPos, count);
+    }
+    
+    /**
+     * k-ésimo menor valor (0-based) de values; reordena el array (quickselect)
+     */
+    static double select(double[] values, int k) {
+        int lo = 0;
+        int hi = values.length - 1;
+        while (lo < hi) {
+            double pivot = values[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j) {
+                    double t = values[i];
+                    values[i] = values[j];
+                    values[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+    
+    /**
+     * float -> half precision con redondeo al par; fuera de rango satura
+     * al máximo finito (65504) para no enviar infinitos
+     */
+    static short toHalf(float f) {
+        int bits = Float.floatToRawIntBits(f);
+        int sign = (bits >>> 16) & 0x8000;
+        int exp = (bits >>> 23) & 0xff;
+        int mant = bits & 0x7fffff;
+        if (exp == 0xff) {
+            return (short) (sign | 0x7c00 | (mant != 0 ? 0x200 : 0));
+        }
+        int e = exp - 127 + 15;
+        if (e >= 0x1f) {
+            return (short) (sign | 0x7bff);
+        }
+        if (e <= 0) {
+            // Subnormal en half (o cero)
+            if (e < -10) {
+                return (short) sign;
+            }
+            mant |= 0x800000;
+            int shift = 14 - e;
+            int half = mant >> shift;
+            int rem = mant & ((1 << shift) - 1);
+            int mid = 1 << (shift - 1);
+            if (rem > mid || (rem == mid && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = (e << 10) | (mant >> 13);
+        int rem = mant & 0x1fff;
+        if (rem > 0x1000 || (rem == 0x1000 && (half & 1) != 0)) {
+            half++;
+        }
+        return (short) (sign | Math.min(half, 0x7bff));
+    }
+    
+    static float halfToFloat(short h) {
+        int sign = (h & 0x8000) << 16;
+        int exp = (h >>> 10) & 0x1f;
+        int mant = h & 0x3ff;
+        if (exp == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mant << 13));
+        }
+        if (exp == 0) {
+            float v = mant * 0x1p-24f;
+            return sign != 0 ? -v : v;
+        }
+        return Float.intBitsToFloat(sign | ((exp + 112) << 23) | (mant << 13));
+    }
+    
+    /**
+     * float -> bfloat16 con redondeo al par
+     */
+    static short toBfloat16(float f) {
+        int bits = Float.floatToRawIntBits(f);
+        if (Float.isNaN(f)) {
+            return (short) ((bits >>> 16) | 0x40);
+        }
+        return (short) ((bits + 0x7fff + ((bits >>> 16) & 1)) >>> 16);
+    }
+    
+    static float bfloat16ToFloat(short h) {
+        return Float.intBitsToFloat((h & 0xffff) << 16);
+    }
+    
+    public long getRawBytes() {
+        return rawBytes;
+    }
+    
+    public long getEncodedBytes() {
+        return encodedBytes;
+    }
+    
+    public double getCompressSeconds() {
+        return compressNanos / 1e9;
+    }
+    
+    public double getDecompressSeconds() {
+        return decompressNanos / 1e9;
+    }
+    
+    public long getSteps() {
+        return steps;
+    }
+    
+    @Override
+    public String toString() {
+        return method == Method.TOPK
+                ? String.format(Locale.ROOT, "topk:%s", topkRatio)
+                : method.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,329 @@
+package distributed;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * All-reduce en anillo sobre TCP entre los procesos de un entrenamiento
+ * distribuido. El proceso rank r escucha en peers[r], se conecta a
+ * peers[(r + 1) % world] y recibe de (r - 1 + world) % world.
+ *
+ * allReduceSum usa el algoritmo clásico en dos fases (reduce-scatter y
+ * all-gather), cada una de world - 1 pasos: cada proceso envía y recibe
+ * 2 (world - 1) / world veces el tamaño del vector, independientemente
+ * del número de nodos. Al terminar, todos los procesos tienen exactamente
+ * los mismos valores (el mismo orden de suma por trozo).
+ */
+public class RingAllReduce implements AutoCloseable {
+    
+    private static final int MAGIC = 0x52494E47; // "RING"
+    
+    private final int rank;
+    private final int world;
+    private final Socket nextSocket;
+    private final Socket prevSocket;
+    private final DataOutputStream toNext;
+    private final DataInputStream fromPrev;
+    private final ExecutorService sender;
+    
+    // Estadísticas de comunicación
+    private long bytesSent;
+    private long bytesReceived;
+    private long commNanos;
+    private long operations;
+    
+    private RingAllReduce(int rank, int world, Socket nextSocket, Socket prevSocket) throws IOException {
+        this.rank = rank;
+        this.world = world;
+        this.nextSocket = nextSocket;
+        this.prevSocket = prevSocket;
+        if (world > 1) {
+            this.toNext = new DataOutputStream(new BufferedOutputStream(nextSocket.getOutputStream(), 1 << 16));
+            this.fromPrev = new DataInputStream(new BufferedInputStream(prevSocket.getInputStream(), 1 << 16));
+            // Las escrituras van en otro thread: si todos escribieran a la vez
+            // un trozo mayor que el buffer del socket, el anillo se bloquearía
+            this.sender = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "ring-sender");
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            this.toNext = null;
+            this.fromPrev = null;
+            this.sender = null;
+        }
+    }
+    
+    /**
+     * Forma el anillo: escucha en peers[rank] y se conecta al siguiente,
+     * reintentando hasta timeoutMs (los procesos pueden arrancar en cualquier orden).
+     * jobId identifica el trabajo (arquitectura, dataset...): si dos procesos
+     * no coinciden, la conexión se rechaza.
+     */
+    public static RingAllReduce connect(int rank, int world, List<InetSocketAddress> peers,
+                                        long jobId, int timeoutMs) throws IOException {
+        if (world < 1 || rank < 0 || rank >= world) {
+            throw new IllegalArgumentException("rank/world inválidos: " + rank + "/" + world);
+        }
+        if (peers.size() != world) {
+            throw new IllegalArgumentException("Se esperaban " + world + " peers, recibidos " + peers.size());
+        }
+        if (world == 1) {
+            return new RingAllReduce(0, 1, null, null);
+        }
+        
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        try (ServerSocket server = new ServerSocket()) {
+            server.setReuseAddress(true);
+            server.bind(new InetSocketAddress(peers.get(rank).getPort()));
+            
+            // Conectar al siguiente en un thread mientras se acepta al anterior
+            InetSocketAddress nextAddress = peers.get((rank + 1) % world);
+            CompletableFuture<Socket> next = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return connectWithRetry(nextAddress, deadline, rank, world, jobId);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            });
+            
+            server.setSoTimeout((int) Math.max(1, deadline - System.currentTimeMillis()));
+            Socket prev = server.accept();
+            prev.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(prev.getInputStream());
+            int magic = in.readInt();
+            int prevRank = in.readInt();
+            int prevWorld = in.readInt();
+            long prevJob = in.readLong();
+            int expected = (rank - 1 + world) % world;
+            if (magic != MAGIC || prevRank != expected || prevWorld != world || prevJob != jobId) {
+                prev.close();
+                throw new IOException(String.format(
+                    "Peer incompatible en el anillo (rank %d/%d, esperado %d/%d o trabajo distinto)",
+                    prevRank, prevWorld, expected, world));
+            }
+            
+            try {
+                return new RingAllReduce(rank, world, next.join(), prev);
+            } catch (CompletionException e) {
+                prev.close();
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+    }
+    
+    private static Socket connectWithRetry(InetSocketAddress address, long deadline,
+                                           int rank, int world, long jobId) throws IOException {
+        IOException last = null;
+        while (System.currentTimeMillis() < deadline) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()), 2000);
+                socket.setTcpNoDelay(true);
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                out.writeInt(MAGIC);
+                out.writeInt(rank);
+                out.writeInt(world);
+                out.writeLong(jobId);
+                out.flush();
+                return socket;
+            } catch (IOException e) {
+                last = e;
+                socket.close();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrumpido conectando a " + address);
+                }
+            }
+        }
+        throw new IOException("No se pudo conectar a " + address + " antes del timeout"
+                              + (last != null ? ": " + last.getMessage() : ""));
+    }
+    
+    /**
+     * Suma elemento a elemento de data en todos los procesos; el resultado
+     * queda en data en cada uno de ellos
+     */
+    public synchronized void allReduceSum(double[] data) throws IOException {
+        if (world == 1) {
+            return;
+        }
+        long start = System.nanoTime();
+        double[] incoming = new double[(data.length + world - 1) / world];
+        
+        // Reduce-scatter: tras world - 1 pasos, el trozo (rank + 1) % world está completo aquí
+        for (int step = 0; step < world - 1; step++) {
+            int sendChunk = Math.floorMod(rank - step, world);
+            int recvChunk = Math.floorMod(rank - step - 1, world);
+            Future<?> pending = sendAsync(data, sendChunk);
+            int from = chunkStart(data.length, recvChunk);
+            int len = chunkEnd(data.length, recvChunk) - from;
+            receive(incoming, len);
+            for (int i = 0; i < len; i++) {
+                data[from + i] += incoming[i];
+            }
+            await(pending);
+        }
+        
+        // All-gather: se propagan los trozos completos por el anillo
+        for (int step = 0; step < world - 1; step++) {
+            int sendChunk = Math.floorMod(rank - step + 1, world);
+            int recvChunk = Math.floorMod(rank - step, world);
+            Future<?> pending = sendAsync(data, sendChunk);
+            int from = chunkStart(data.length, recvChunk);
+            int len = chunkEnd(data.length, recvChunk) - from;
+            receive(incoming, len);
+            System.arraycopy(incoming, 0, data, from, len);
+            await(pending);
+        }
+        
+        commNanos += System.nanoTime() - start;
+        operations++;
+    }
+    
+    /**
+     * Media elemento a elemento en todos los procesos
+     */
+    public void allReduceMean(double[] data) throws IOException {
+        allReduceSum(data);
+        if (world > 1) {
+            double inv = 1.0 / world;
+            for (int i = 0; i < data.length; i++) {
+                data[i] *= inv;
+            }
+        }
+    }
+    
+    /**
+     * Copia el vector del rank root a todos los procesos
+     */
+    public void broadcast(double[] data, int root) throws IOException {
+        if (rank != root) {
+            Arrays.fill(data, 0.0);
+        }
+        allReduceSum(data);
+    }
+    
+    /**
+     * Reúne un bloque de bytes de cada proceso (tamaños distintos permitidos):
+     * el resultado tiene en [r] el bloque del rank r, igual en todos los procesos.
+     * Se usa para intercambiar vectores comprimidos, que no se pueden sumar
+     * por el camino como en allReduceSum.
+     */
+    public synchronized byte[][] allGather(byte[] mine) throws IOException {
+        byte[][] all = new byte[world][];
+        all[rank] = mine;
+        if (world == 1) {
+            return all;
+        }
+        long start = System.nanoTime();
+        for (int step = 0; step < world - 1; step++) {
+            byte[] outgoing = all[Math.floorMod(rank - step, world)];
+            int recvFrom = Math.floorMod(rank - step - 1, world);
+            bytesSent += Integer.BYTES + outgoing.length;
+            Future<?> pending = sender.submit(() -> {
+                toNext.writeInt(outgoing.length);
+                toNext.write(outgoing);
+                toNext.flush();
+                return null;
+            });
+            byte[] incoming = new byte[fromPrev.readInt()];
+            fromPrev.readFully(incoming);
+            bytesReceived += Integer.BYTES + incoming.length;
+            all[recvFrom] = incoming;
+            await(pending);
+        }
+        commNanos += System.nanoTime() - start;
+        operations++;
+        return all;
+    }
+    
+    private int chunkStart(int n, int chunk) {
+        return (int) ((long) n * chunk / world);
+    }
+    
+    private int chunkEnd(int n, int chunk) {
+        return (int) ((long) n * (chunk + 1) / world);
+    }
+    
+    private Future<?> sendAsync(double[] data, int chunk) {
+        int from = chunkStart(data.length, chunk);
+        int len = chunkEnd(data.length, chunk) - from;
+        // Copia del trozo: data se modifica mientras se envía
+        ByteBuffer bytes = ByteBuffer.allocate(len * Double.BYTES);
+        bytes.asDoubleBuffer().put(data, from, len);
+        bytesSent += bytes.capacity();
+        return sender.submit(() -> {
+            toNext.write(bytes.array());
+            toNext.flush();
+            return null;
+        });
+    }
+    
+    private void receive(double[] target, int len) throws IOException {
+        byte[] bytes = new byte[len * Double.BYTES];
+        fromPrev.readFully(bytes);
+        ByteBuffer.wrap(bytes).asDoubleBuffer().get(target, 0, len);
+        bytesReceived += bytes.length;
+    }
+    
+    private static void await(Future<?> pending) throws IOException {
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrumpido enviando al anillo");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+    
+    public int getRank() {
+        return rank;
+    }
+    
+    public int getWorld() {
+        return world;
+    }
+    
+    public long getBytesSent() {
+        return bytesSent;
+    }
+    
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+    
+    public double getCommSeconds() {
+        return commNanos / 1e9;
+    }
+    
+    public long getOperations() {
+        return operations;
+    }
+    
+    @Override
+    public void close() {
+        if (sender != null) {
+            sender.shutdownNow();
+        }
+        for (Socket s : new Socket[]{nextSocket, prevSocket}) {
+            if (s != null) {
+                try {
+                    s.close();
+                } catch (IOException e) {
+                    // ignorar
+                }
+            }
+        }
+    }
+}
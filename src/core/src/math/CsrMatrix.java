@@ -0,0 +1,139 @@
+package math;
+
+import java.io.Serializable;
+
+/**
+ * Matriz dispersa en formato CSR (compressed sparse row): por cada fila,
+ * los índices de columna y los valores de sus no-ceros, en orden.
+ *
+ * Es la forma de guardar y multiplicar los pesos de una capa podada: el
+ * producto por un vector (GEMV) solo recorre los no-ceros (12 bytes cada
+ * uno con su índice) en lugar de los 8 bytes de cada peso de la fila.
+ */
+public final class CsrMatrix implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final int rows;
+    private final int cols;
+    private final int[] rowStart;   // rows + 1: no-ceros de la fila r en [rowStart[r], rowStart[r + 1])
+    private final int[] colIndex;
+    private final double[] values;
+    
+    private CsrMatrix(int rows, int cols, int[] rowStart, int[] colIndex, double[] values) {
+        this.rows = rows;
+        this.cols = cols;
+        this.rowStart = rowStart;
+        this.colIndex = colIndex;
+        this.values = values;
+    }
+    
+    /**
+     * Comprime un buffer row-major rows x cols guardando solo los no-ceros
+     */
+    public static CsrMatrix fromDense(double[] data, int rows, int cols) {
+        int nnz = 0;
+        for (double v : data) {
+            if (v != 0) nnz++;
+        }
+        int[] rowStart = new int[rows + 1];
+        int[] colIndex = new int[nnz];
+        double[] values = new double[nnz];
+        int k = 0;
+        for (int r = 0; r < rows; r++) {
+            int base = r * cols;
+            for (int c = 0; c < cols; c++) {
+                double v = data[base + c];
+                if (v != 0) {
+                    colIndex[k] = c;
+                    values[k++] = v;
+                }
+            }
+            rowStart[r + 1] = k;
+        }
+        return new CsrMatrix(rows, cols, rowStart, colIndex, values);
+    }
+    
+    /**
+     * Fracción de no-ceros de un buffer
+     */
+    public static double density(double[] data) {
+        int nnz = 0;
+        for (double v : data) {
+            if (v != 0) nnz++;
+        }
+        return data.length == 0 ? 1.0 : (double) nnz / data.length;
+    }
+    
+    /**
+     * Buffer row-major denso con los mismos valores
+     */
+    public double[] toDense() {
+        double[] data = new double[rows * cols];
+        for (int r = 0; r < rows; r++) {
+            int base = r * cols;
+            for (int k = rowStart[r]; k < rowStart[r + 1]; k++) {
+                data[base + colIndex[k]] = values[k];
+            }
+        }
+        return data;
+    }
+    
+    /**
+     * C += this * B (B: cols x n, C: rows x n, row-major). Con n = 1 es el
+     * GEMV de una predicción; con n > 1 cada no-cero escala una fila
+     * contigua de B (predictBatch).
+     */
+    public void multiplyAdd(double[] b, double[] c, int n) {
+        if (n == 1) {
+            for (int r = 0; r < rows; r++) {
+                double sum = 0.0;
+                for (int k = rowStart[r]; k < rowStart[r + 1]; k++) {
+                    sum += values[k] * b[colIndex[k]];
+                }
+                c[r] += sum;
+            }
+            return;
+        }
+        for (int r = 0; r < rows; r++) {
+            int cRow = r * n;
+            for (int k = rowStart[r]; k < rowStart[r + 1]; k++) {
+                double v = values[k];
+                int bRow = colIndex[k] * n;
+                for (int j = 0; j < n; j++) {
+                    c[cRow + j] += v * b[bRow + j];
+                }
+            }
+        }
+    }
+    
+    public int getRows() {
+        return rows;
+    }
+    
+    public int getCols() {
+        return cols;
+    }
+    
+    /**
+     * Número de valores distintos de cero
+     */
+    public int nnz() {
+        return values.length;
+    }
+    
+    /**
+     * Fracción de no-ceros
+     */
+    public double density() {
+        return rows * cols == 0 ? 1.0 : (double) values.length / ((long) rows * cols);
+    }
+    
+    /**
+     * true si en CSR ocupa menos que el buffer denso
+     * (12 bytes por no-cero + 4 por fila frente a 8 por elemento)
+     */
+    public static boolean smallerThanDense(int nnz, int rows, int cols) {
+        return 12L * nnz + 4L * (rows + 1) < 8L * rows * cols;
+    }
+}
@@ -0,0 +1,258 @@
+package math;
+
+import concurrent.ComputeScheduler;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Producto de matrices C += A * B sobre buffers planos row-major
+ * (A: m x k, B: k x n, C: m x n).
+ *
+ * Por debajo de PARALLEL_THRESHOLD multiplicaciones se ejecuta el kernel
+ * directamente en el thread que llama. Por encima se divide en tantas hojas
+ * como threads permitidos (fork/join en el scheduler compartido), partiendo
+ * en proporción la dimensión más grande: filas o columnas de C (bloques de
+ * salida disjuntos) o la dimensión de reducción k (la parte derecha
+ * acumula en un buffer propio que se suma al terminar). Con una hoja por
+ * thread, el límite de threads es también el de hojas en paralelo.
+ * Las hojas usan un kernel por bloques de k y columnas para que la porción
+ * de B que se recorre quepa en caché; con B de una sola columna (GEMV de una
+ * predicción) un producto escalar por fila.
+ *
+ * A también puede ser un DoubleBuffer fuera del heap (pesos de un modelo
+ * mapeado en memoria): el mismo reparto y el mismo kernel leyendo del buffer.
+ */
+public final class Gemm {
+    
+    /** Multiplicaciones a partir de las que se reparte entre threads */
+    static final long PARALLEL_THRESHOLD = 1L << 20;
+    
+    /** Multiplicaciones mínimas de una hoja del fork/join */
+    private static final long LEAF_WORK = 1L << 17;
+    
+    /** Filas/columnas mínimas de C para seguir partiendo la salida */
+    private static final int MIN_SPLIT = 16;
+    
+    // Bloques del kernel: KC filas de B por NC columnas (256 x 512 doubles = 1 MB máx.)
+    private static final int KC = 256;
+    private static final int NC = 512;
+    
+    private Gemm() {
+    }
+    
+    /**
+     * C += A * B usando los threads del scheduler compartido que permita el
+     * límite del thread actual (ver ComputeScheduler.setThreadLimit)
+     */
+    public static void multiply(double[] a, double[] b, double[] c, int m, int k, int n) {
+        multiply(a, b, c, m, k, n, 0);
+    }
+    
+    /**
+     * C += A * B con como mucho maxThreads hojas en paralelo (<= 0: todos)
+     */
+    public static void multiply(double[] a, double[] b, double[] c, int m, int k, int n, int maxThreads) {
+        ComputeScheduler scheduler = ComputeScheduler.shared();
+        int parts = leaves((long) m * k * n, scheduler.effectiveThreads(maxThreads));
+        if (parts == 1) {
+            kernel(a, k, b, n, c, n, 0, 0, 0, m, 0, n, 0, k);
+            return;
+        }
+        scheduler.invoke(new GemmTask(a, null, b, c, k, n, n, 0, 0, 0, m, 0, n, 0, k, parts));
+    }
+    
+    /**
+     * C += A * B con A fuera del heap (lecturas absolutas, sin copiar A)
+     */
+    public static void multiply(DoubleBuffer a, double[] b, double[] c, int m, int k, int n) {
+        multiply(a, b, c, m, k, n, 0);
+    }
+    
+    public static void multiply(DoubleBuffer a, double[] b, double[] c, int m, int k, int n, int maxThreads) {
+        ComputeScheduler scheduler = ComputeScheduler.shared();
+        int parts = leaves((long) m * k * n, scheduler.effectiveThreads(maxThreads));
+        if (parts == 1) {
+            kernel(a, k, b, n, c, n, 0, 0, 0, m, 0, n, 0, k);
+            return;
+        }
+        scheduler.invoke(new GemmTask(null, a, b, c, k, n, n, 0, 0, 0, m, 0, n, 0, k, parts));
+    }
+    
+    /**
+     * Hojas del fork/join para work multiplicaciones: una por thread, sin
+     * bajar de LEAF_WORK por hoja (1 = kernel secuencial)
+     */
+    private static int leaves(long work, int threads) {
+        if (work < PARALLEL_THRESHOLD || threads <= 1) {
+            return 1;
+        }
+        return (int) Math.max(1, Math.min(threads, work / LEAF_WORK));
+    }
+    
+    /**
+     * Kernel secuencial por bloques:
+     * C[i, j] += sum_p A[i, p] * B[p, j] para i en [i0, i1), j en [j0, j1), p en [p0, p1).
+     * lda/ldb/ldc son los anchos de fila de cada buffer; el elemento (i, j)
+     * de C está en c[(i - ci) * ldc + (j - cj)] (ci = cj = 0 salvo en los
+     * bloques temporales de la reducción partida).
+     */
+    static void kernel(double[] a, int lda, double[] b, int ldb, double[] c, int ldc, int ci, int cj,
+                       int i0, int i1, int j0, int j1, int p0, int p1) {
+        if (ldb == 1) {
+            // GEMV (B y C de una columna): un producto escalar por fila de A
+            for (int i = i0; i < i1; i++) {
+                int aRow = i * lda;
+                double sum = 0.0;
+                for (int p = p0; p < p1; p++) {
+                    sum += a[aRow + p] * b[p];
+                }
+                c[(i - ci) * ldc - cj] += sum;
+            }
+            return;
+        }
+        for (int jj = j0; jj < j1; jj += NC) {
+            int jEnd = Math.min(jj + NC, j1);
+            for (int pp = p0; pp < p1; pp += KC) {
+                int pEnd = Math.min(pp + KC, p1);
+                for (int i = i0; i < i1; i++) {
+                    int aRow = i * lda;
+                    int cRow = (i - ci) * ldc - cj;
+                    for (int p = pp; p < pEnd; p++) {
+                        double v = a[aRow + p];
+                        if (v == 0) continue;
+                        int bRow = p * ldb;
+                        for (int j = jj; j < jEnd; j++) {
+                            c[cRow + j] += v * b[bRow + j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Kernel secuencial con A en un DoubleBuffer (mismos bloques que el de arrays)
+     */
+    static void kernel(DoubleBuffer a, int lda, double[] b, int ldb, double[] c, int ldc, int ci, int cj,
+                       int i0, int i1, int j0, int j1, int p0, int p1) {
+        if (ldb == 1) {
+            for (int i = i0; i < i1; i++) {
+                int aRow = i * lda;
+                double sum = 0.0;
+                for (int p = p0; p < p1; p++) {
+                    sum += a.get(aRow + p) * b[p];
+                }
+                c[(i - ci) * ldc - cj] += sum;
+            }
+            return;
+        }
+        for (int jj = j0; jj < j1; jj += NC) {
+            int jEnd = Math.min(jj + NC, j1);
+            for (int pp = p0; pp < p1; pp += KC) {
+                int pEnd = Math.min(pp + KC, p1);
+                for (int i = i0; i < i1; i++) {
+                    int aRow = i * lda;
+                    int cRow = (i - ci) * ldc - cj;
+                    for (int p = pp; p < pEnd; p++) {
+                        double v = a.get(aRow + p);
+                        if (v == 0) continue;
+                        int bRow = p * ldb;
+                        for (int j = jj; j < jEnd; j++) {
+                            c[cRow + j] += v * b[bRow + j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Bloque [i0, i1) x [j0, j1) de C con la reducción en [p0, p1), repartido
+     * en parts hojas (A en a o, si es un buffer mapeado, en am)
+     */
+    private static class GemmTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final double[] a;
+        private final DoubleBuffer am;
+        private final double[] b;
+        private final double[] c;
+        private final int lda;
+        private final int ldb;
+        private final int ldc;
+        private final int ci;
+        private final int cj;
+        private final int i0, i1, j0, j1, p0, p1;
+        private final int parts;
+        
+        GemmTask(double[] a, DoubleBuffer am, double[] b, double[] c, int lda, int ldb, int ldc, int ci, int cj,
+                 int i0, int i1, int j0, int j1, int p0, int p1, int parts) {
+            this.a = a;
+            this.am = am;
+            this.b = b;
+            this.c = c;
+            this.lda = lda;
+            this.ldb = ldb;
+            this.ldc = ldc;
+            this.ci = ci;
+            this.cj = cj;
+            this.i0 = i0;
+            this.i1 = i1;
+            this.j0 = j0;
+            this.j1 = j1;
+            this.p0 = p0;
+            this.p1 = p1;
+            this.parts = parts;
+        }
+        
+        @Override
+        protected void compute() {
+            int rows = i1 - i0;
+            int cols = j1 - j0;
+            int depth = p1 - p0;
+            // Las hojas de cada lado en proporción a su parte del bloque
+            int left = parts / 2;
+            
+            // Preferir partir la salida (bloques disjuntos, mismo orden de suma);
+            // k solo cuando el bloque de salida ya es pequeño (p. ej. W * x)
+            if (parts > 1 && rows >= cols && rows >= MIN_SPLIT) {
+                int mid = i0 + (int) ((long) rows * left / parts);
+                invokeAll(block(i0, mid, j0, j1, left), block(mid, i1, j0, j1, parts - left));
+            } else if (parts > 1 && cols >= MIN_SPLIT) {
+                int mid = j0 + (int) ((long) cols * left / parts);
+                invokeAll(block(i0, i1, j0, mid, left), block(i0, i1, mid, j1, parts - left));
+            } else if (parts > 1 && depth >= parts) {
+                splitReduction(rows, cols, left);
+            } else if (am != null) {
+                kernel(am, lda, b, ldb, c, ldc, ci, cj, i0, i1, j0, j1, p0, p1);
+            } else {
+                kernel(a, lda, b, ldb, c, ldc, ci, cj, i0, i1, j0, j1, p0, p1);
+            }
+        }
+        
+        private GemmTask block(int bi0, int bi1, int bj0, int bj1, int blockParts) {
+            return new GemmTask(a, am, b, c, lda, ldb, ldc, ci, cj, bi0, bi1, bj0, bj1, p0, p1, blockParts);
+        }
+        
+        /**
+         * Divide k: la parte izquierda (leftParts hojas) acumula en C y la
+         * derecha en un bloque temporal (rows x cols) que se suma a C cuando
+         * terminan ambas
+         */
+        private void splitReduction(int rows, int cols, int leftParts) {
+            int mid = p0 + (int) ((long) (p1 - p0) * leftParts / parts);
+            double[] partial = new double[rows * cols];
+            GemmTask left = new GemmTask(a, am, b, c, lda, ldb, ldc, ci, cj, i0, i1, j0, j1, p0, mid, leftParts);
+            GemmTask right = new GemmTask(a, am, b, partial, lda, ldb, cols, i0, j0, i0, i1, j0, j1, mid, p1,
+                                          parts - leftParts);
+            invokeAll(left, right);
+            for (int r = 0; r < rows; r++) {
+                int cRow = (i0 + r - ci) * ldc + (j0 - cj);
+                int pRow = r * cols;
+                for (int col = 0; col < cols; col++) {
+                    c[cRow + col] += partial[pRow + col];
+                }
+            }
+        }
+    }
+}
@@ -1,20 +1,49 @@
 package math;
 
 import java.util.Random;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.nio.DoubleBuffer;
 
 /**
  * Clase Matrix para operaciones matriciales
- * Colaboración P3-P4: P3 define la lógica matemática, 
+ * Colaboración P3-P4: P3 define la lógica matemática,
  * P4 optimiza con multi-threading cuando sea necesario
+ *
+ * Los datos se guardan en un único buffer plano row-major
+ * (elemento (i, j) en data[i * cols + j]). La forma serializada sigue
+ * siendo double[][] para que los modelos .bin existentes se puedan cargar.
+ *
+ * Una matriz también puede leer sus datos de un DoubleBuffer fuera del heap
+ * (un archivo de modelo mapeado en memoria, ver {@link #mapped}): es de
+ * solo lectura y los productos la leen directamente, sin copiarla.
+ *
+ * Los pesos podados (mayoría de ceros) se guardan en el archivo en formato
+ * CSR y, con {@link #compress}, los productos usan un kernel disperso.
+ *
+ * Las operaciones elemento a elemento (add, subtract, hadamard, scale, map)
+ * crean una matriz por llamada; para encadenarlas sin intermedios usar
+ * {@link #lazy()}.
  */
 public class Matrix implements Serializable {
     
     private static final long serialVersionUID = 1L;
     
-    private final double[][] data;
-    private final int rows;
-    private final int cols;
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("data", double[][].class),
+        new ObjectStreamField("rows", int.class),
+        new ObjectStreamField("cols", int.class),
+        new ObjectStreamField("csr", CsrMatrix.class)
+    };
+    
+    private double[] data;
+    private int rows;
+    private int cols;
+    private transient DoubleBuffer mapped;   // datos fuera del heap (data es null)
+    private transient CsrMatrix sparse;      // copia CSR de data para los productos (ver compress)
     
     /**
      * Constructor con dimensiones
@@ -22,7 +51,7 @@ public class Matrix implements Serializable {
     public Matrix(int rows, int cols) {
         this.rows = rows;
         this.cols = cols;
-        this.data = new double[rows][cols];
+        this.data = new double[rows * cols];
     }
     
     /**
@@ -31,9 +60,9 @@ public class Matrix implements Serializable {
     public Matrix(double[][] data) {
         this.rows = data.length;
         this.cols = data[0].length;
-        this.data = new double[rows][cols];
+        this.data = new double[rows * cols];
         for (int i = 0; i < rows; i++) {
-            System.arraycopy(data[i], 0, this.data[i], 0, cols);
+            System.arraycopy(data[i], 0, this.data, i * cols, cols);
         }
     }
     
@@ -43,10 +72,82 @@ public class Matrix implements Serializable {
     public Matrix(double[] vector) {
         this.rows = vector.length;
         this.cols = 1;
-        this.data = new double[rows][1];
-        for (int i = 0; i < rows; i++) {
-            this.data[i][0] = vector[i];
+        this.data = vector.clone();
+    }
+    
+    /**
+     * Envuelve un buffer plano row-major existente (sin copiar)
+     */
+    public static Matrix wrap(double[] buffer, int rows, int cols) {
+        if (buffer.length != rows * cols) {
+            throw new IllegalArgumentException("Buffer de tamaño " + buffer.length
+                                               + " incompatible con [" + rows + "," + cols + "]");
         }
+        Matrix m = new Matrix(0, 0);
+        m.rows = rows;
+        m.cols = cols;
+        m.data = buffer;
+        return m;
+    }
+    
+    /**
+     * Matriz de solo lectura sobre un buffer fuera del heap (sin copiar):
+     * el elemento (i, j) es buffer.get(i * cols + j)
+     */
+    public static Matrix mapped(DoubleBuffer buffer, int rows, int cols) {
+        if (buffer.capacity() != rows * cols) {
+            throw new IllegalArgumentException("Buffer de tamaño " + buffer.capacity()
+                                               + " incompatible con [" + rows + "," + cols + "]");
+        }
+        Matrix m = new Matrix(0, 0);
+        m.rows = rows;
+        m.cols = cols;
+        m.data = null;
+        m.mapped = buffer;
+        return m;
+    }
+    
+    /**
+     * true si los datos están fuera del heap (solo lectura)
+     */
+    public boolean isMapped() {
+        return mapped != null;
+    }
+    
+    /**
+     * Si la fracción de no-ceros es como mucho maxDensity, los productos
+     * pasan a usar una copia CSR (pesos podados, solo inferencia). Cualquier
+     * escritura posterior (getBuffer, set) descarta la copia.
+     */
+    public boolean compress(double maxDensity) {
+        if (mapped != null || CsrMatrix.density(data) > maxDensity) {
+            return false;
+        }
+        sparse = CsrMatrix.fromDense(data, rows, cols);
+        return true;
+    }
+    
+    /**
+     * true si los productos usan el kernel disperso
+     */
+    public boolean isCompressed() {
+        return sparse != null;
+    }
+    
+    /**
+     * Construye una matriz cuyas columnas son vectors[from..to)
+     * (un batch de ejemplos, uno por columna)
+     */
+    public static Matrix fromColumns(double[][] vectors, int from, int to) {
+        int n = to - from;
+        Matrix result = new Matrix(vectors[from].length, n);
+        for (int j = 0; j < n; j++) {
+            double[] v = vectors[from + j];
+            for (int i = 0; i < result.rows; i++) {
+                result.data[i * n + j] = v[i];
+            }
+        }
+        return result;
     }
     
     /**
@@ -56,15 +157,15 @@ public class Matrix implements Serializable {
         Random rand = new Random();
         double scale = Math.sqrt(2.0 / inputSize);
         
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                data[i][j] = rand.nextGaussian() * scale;
-            }
+        for (int i = 0; i < data.length; i++) {
+            data[i] = rand.nextGaussian() * scale;
         }
     }
     
     /**
      * Multiplicación matricial
+     * Las matrices grandes se reparten entre los núcleos que permita el
+     * límite de threads del trabajo (ver {@link Gemm})
      */
     public Matrix multiply(Matrix other) {
         if (this.cols != other.rows) {
@@ -74,17 +175,59 @@ public class Matrix implements Serializable {
         }
         
         Matrix result = new Matrix(this.rows, other.cols);
+        if (sparse != null) {
+            sparse.multiplyAdd(other.heap(), result.data, other.cols);
+        } else if (mapped != null) {
+            Gemm.multiply(mapped, other.heap(), result.data, this.rows, this.cols, other.cols);
+        } else {
+            Gemm.multiply(this.data, other.heap(), result.data, this.rows, this.cols, other.cols);
+        }
+        return result;
+    }
+    
+    /**
+     * C += this * B sobre buffers planos (B: cols x n, C: rows x n), con
+     * como mucho maxThreads hojas en paralelo; lee los pesos mapeados sin copiarlos
+     */
+    public void multiplyAdd(double[] b, double[] c, int n, int maxThreads) {
+        if (sparse != null) {
+            sparse.multiplyAdd(b, c, n);
+        } else if (mapped != null) {
+            Gemm.multiply(mapped, b, c, rows, cols, n, maxThreads);
+        } else {
+            Gemm.multiply(data, b, c, rows, cols, n, maxThreads);
+        }
+    }
+    
+    /**
+     * Multiplicación por un vector disperso: this * x como vector columna.
+     * Solo se recorren las columnas de los no-ceros de x (coste rows * nnz).
+     */
+    public Matrix multiply(SparseVector x) {
+        if (this.cols != x.size()) {
+            throw new IllegalArgumentException(
+                String.format("Dimensiones incompatibles: [%d,%d] x [%d] disperso",
+                              this.rows, this.cols, x.size()));
+        }
         
-        for (int i = 0; i < result.rows; i++) {
-            for (int j = 0; j < result.cols; j++) {
-                double sum = 0;
-                for (int k = 0; k < this.cols; k++) {
-                    sum += this.data[i][k] * other.data[k][j];
+        Matrix result = new Matrix(this.rows, 1);
+        int[] indices = x.getIndices();
+        double[] values = x.getValues();
+        int nnz = indices.length;
+        for (int i = 0; i < rows; i++) {
+            int row = i * cols;
+            double sum = 0.0;
+            if (mapped != null) {
+                for (int k = 0; k < nnz; k++) {
+                    sum += mapped.get(row + indices[k]) * values[k];
+                }
+            } else {
+                for (int k = 0; k < nnz; k++) {
+                    sum += data[row + indices[k]] * values[k];
                 }
-                result.data[i][j] = sum;
             }
+            result.data[i] = sum;
         }
-        
         return result;
     }
     
@@ -97,14 +240,26 @@ public class Matrix implements Serializable {
         }
         
         Matrix result = new Matrix(rows, cols);
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                result.data[i][j] = this.data[i][j] + other.data[i][j];
+        if (mapped != null || other.mapped != null) {
+            // Bias de un modelo mapeado
+            for (int i = 0; i < result.data.length; i++) {
+                result.data[i] = this.at(i) + other.at(i);
             }
+            return result;
+        }
+        for (int i = 0; i < data.length; i++) {
+            result.data[i] = this.data[i] + other.data[i];
         }
         return result;
     }
     
+    /**
+     * Suma un vector columna [rows x 1] a cada columna (broadcast de bias)
+     */
+    public Matrix addColumnVector(Matrix vector) {
+        return lazy().addColumnVector(vector).eval();
+    }
+    
     /**
      * Resta de matrices
      */
@@ -114,10 +269,10 @@ public class Matrix implements Serializable {
         }
         
         Matrix result = new Matrix(rows, cols);
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                result.data[i][j] = this.data[i][j] - other.data[i][j];
-            }
+        double[] a = heap();
+        double[] b = other.heap();
+        for (int i = 0; i < a.length; i++) {
+            result.data[i] = a[i] - b[i];
         }
         return result;
     }
@@ -131,10 +286,10 @@ public class Matrix implements Serializable {
         }
         
         Matrix result = new Matrix(rows, cols);
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                result.data[i][j] = this.data[i][j] * other.data[i][j];
-            }
+        double[] a = heap();
+        double[] b = other.heap();
+        for (int i = 0; i < a.length; i++) {
+            result.data[i] = a[i] * b[i];
         }
         return result;
     }
@@ -144,14 +299,22 @@ public class Matrix implements Serializable {
      */
     public Matrix scale(double scalar) {
         Matrix result = new Matrix(rows, cols);
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                result.data[i][j] = this.data[i][j] * scalar;
-            }
+        double[] a = heap();
+        for (int i = 0; i < a.length; i++) {
+            result.data[i] = a[i] * scalar;
         }
         return result;
     }
     
+    /**
+     * Vista sin evaluar para encadenar operaciones elemento a elemento
+     * fusionadas: m.lazy().add(b).scale(k).into(m) hace una sola pasada y no
+     * crea matrices intermedias (ver {@link MatrixExpr})
+     */
+    public MatrixExpr lazy() {
+        return new MatrixExpr.Leaf(this);
+    }
+    
     /**
      * Transpuesta
      */
@@ -159,7 +322,7 @@ public class Matrix implements Serializable {
         Matrix result = new Matrix(cols, rows);
         for (int i = 0; i < rows; i++) {
             for (int j = 0; j < cols; j++) {
-                result.data[j][i] = this.data[i][j];
+                result.data[j * rows + i] = at(i * cols + j);
             }
         }
         return result;
@@ -170,10 +333,9 @@ public class Matrix implements Serializable {
      */
     public Matrix map(java.util.function.DoubleUnaryOperator function) {
         Matrix result = new Matrix(rows, cols);
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                result.data[i][j] = function.applyAsDouble(this.data[i][j]);
-            }
+        double[] a = heap();
+        for (int i = 0; i < a.length; i++) {
+            result.data[i] = function.applyAsDouble(a[i]);
         }
         return result;
     }
@@ -185,25 +347,33 @@ public class Matrix implements Serializable {
         if (cols != 1) {
             throw new IllegalStateException("Solo se puede convertir matriz columna a array");
         }
-        double[] array = new double[rows];
+        return mapped != null ? getColumn(0) : data.clone();
+    }
+    
+    /**
+     * Copia la columna j a un array
+     */
+    public double[] getColumn(int j) {
+        double[] column = new double[rows];
         for (int i = 0; i < rows; i++) {
-            array[i] = data[i][0];
+            column[i] = at(i * cols + j);
         }
-        return array;
+        return column;
     }
     
     /**
      * Obtiene un elemento
      */
     public double get(int row, int col) {
-        return data[row][col];
+        return at(row * cols + col);
     }
     
     /**
      * Establece un elemento
      */
     public void set(int row, int col, double value) {
-        data[row][col] = value;
+        sparse = null;
+        heap()[row * cols + col] = value;
     }
     
     /**
@@ -217,15 +387,63 @@ public class Matrix implements Serializable {
         return cols;
     }
     
+    /**
+     * Copia de los datos como double[][]
+     */
     public double[][] getData() {
-        return data;
+        double[][] copy = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            if (mapped != null) {
+                mapped.get(i * cols, copy[i], 0, cols);
+            } else {
+                System.arraycopy(data, i * cols, copy[i], 0, cols);
+            }
+        }
+        return copy;
+    }
+    
+    /**
+     * Buffer plano row-major (sin copiar): las escrituras modifican la matriz
+     * (y descartan la copia CSR de {@link #compress})
+     */
+    public double[] getBuffer() {
+        sparse = null;
+        return heap();
     }
     
     /**
-     * Crea una copia de la matriz
+     * Crea una copia de la matriz (en el heap también si es mapeada)
      */
     public Matrix copy() {
-        return new Matrix(this.data);
+        if (mapped != null) {
+            double[] buffer = new double[rows * cols];
+            mapped.get(0, buffer);
+            return wrap(buffer, rows, cols);
+        }
+        return wrap(data.clone(), rows, cols);
+    }
+    
+    /**
+     * Copia los elementos [from, from + len) del buffer plano a dst
+     */
+    void read(int from, double[] dst, int offset, int len) {
+        if (mapped != null) {
+            mapped.get(from, dst, offset, len);
+        } else {
+            System.arraycopy(data, from, dst, offset, len);
+        }
+    }
+    
+    private double at(int i) {
+        return mapped != null ? mapped.get(i) : data[i];
+    }
+    
+    private double[] heap() {
+        if (data == null) {
+            throw new UnsupportedOperationException(
+                "Matriz mapeada desde un archivo (solo lectura): usar copy() para modificarla");
+        }
+        return data;
     }
     
     /**
@@ -235,7 +453,7 @@ public class Matrix implements Serializable {
         System.out.println("Matrix [" + rows + "x" + cols + "]:");
         for (int i = 0; i < Math.min(rows, 5); i++) {
             for (int j = 0; j < Math.min(cols, 5); j++) {
-                System.out.printf("%8.4f ", data[i][j]);
+                System.out.printf("%8.4f ", get(i, j));
             }
             if (cols > 5) System.out.print("...");
             System.out.println();
@@ -248,11 +466,45 @@ public class Matrix implements Serializable {
      */
     public double sum() {
         double total = 0;
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                total += data[i][j];
-            }
+        for (int i = 0; i < rows * cols; i++) {
+            total += at(i);
         }
         return total;
     }
+    
+    /**
+     * Si la matriz es mayoritariamente ceros (pesos podados) y en CSR ocupa
+     * menos, se escribe en CSR y data queda en null
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        CsrMatrix csr = null;
+        if (data != null) {
+            int nnz = (int) Math.round(CsrMatrix.density(data) * data.length);
+            if (CsrMatrix.smallerThanDense(nnz, rows, cols)) {
+                csr = sparse != null ? sparse : CsrMatrix.fromDense(data, rows, cols);
+            }
+        }
+        fields.put("data", csr == null ? getData() : null);
+        fields.put("rows", rows);
+        fields.put("cols", cols);
+        fields.put("csr", csr);
+        out.writeFields();
+    }
+    
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        double[][] rowsData = (double[][]) fields.get("data", null);
+        CsrMatrix csr = (CsrMatrix) fields.get("csr", null);   // null en modelos antiguos
+        this.rows = fields.get("rows", 0);
+        this.cols = fields.get("cols", 0);
+        if (rowsData == null && csr != null) {
+            this.data = csr.toDense();
+            return;
+        }
+        this.data = new double[rows * cols];
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(rowsData[i], 0, data, i * cols, cols);
+        }
+    }
 }
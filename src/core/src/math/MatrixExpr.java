@@ -0,0 +1,381 @@
+package math;
+
+import concurrent.ComputeScheduler;
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Expresión elemento a elemento sin evaluar sobre matrices de la misma forma.
+ *
+ * m.lazy().add(b).hadamard(c).scale(k) no calcula nada: construye un árbol
+ * pequeño. Se evalúa de una vez con {@link #eval()} (matriz nueva) o
+ * {@link #into(Matrix)} (sobre un destino existente, que puede ser una de las
+ * hojas), en una sola pasada por la memoria y sin matrices intermedias.
+ *
+ * La evaluación recorre la salida por bloques de BLOCK elementos: cada nodo
+ * calcula su bloque con un bucle simple sobre arrays (los intermedios son
+ * buffers de un bloque que caben en L1) y las hojas se leen directamente de
+ * la matriz. Las salidas grandes se reparten entre los threads del scheduler
+ * compartido. Cualquier operación nueva expresable con map o zip se fusiona
+ * igual, sin escribir un kernel propio.
+ */
+public abstract class MatrixExpr {
+    
+    /** Elementos por bloque de evaluación (4 KB por buffer) */
+    static final int BLOCK = 512;
+    
+    /** Elementos a partir de los que se reparte la evaluación entre threads */
+    static final int PARALLEL_ELEMENTS = 1 << 16;
+    
+    final int rows;
+    final int cols;
+    
+    MatrixExpr(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+    }
+    
+    public int getRows() {
+        return rows;
+    }
+    
+    public int getCols() {
+        return cols;
+    }
+    
+    /**
+     * this + other
+     */
+    public MatrixExpr add(Matrix other) {
+        return add(other.lazy());
+    }
+    
+    public MatrixExpr add(MatrixExpr other) {
+        return new Binary(this, other, Op.ADD, "suma");
+    }
+    
+    /**
+     * this + vector en cada columna (vector [rows x 1]: broadcast de bias)
+     */
+    public MatrixExpr addColumnVector(Matrix vector) {
+        if (vector.getRows() != rows || vector.getCols() != 1) {
+            throw new IllegalArgumentException("Dimensiones incompatibles para suma por columnas");
+        }
+        return add(new ColumnBroadcast(vector, cols));
+    }
+    
+    /**
+     * this - other
+     */
+    public MatrixExpr subtract(Matrix other) {
+        return subtract(other.lazy());
+    }
+    
+    public MatrixExpr subtract(MatrixExpr other) {
+        return new Binary(this, other, Op.SUBTRACT, "resta");
+    }
+    
+    /**
+     * Producto elemento a elemento (Hadamard)
+     */
+    public MatrixExpr hadamard(Matrix other) {
+        return hadamard(other.lazy());
+    }
+    
+    public MatrixExpr hadamard(MatrixExpr other) {
+        return new Binary(this, other, Op.HADAMARD, "Hadamard");
+    }
+    
+    /**
+     * Combina elemento a elemento con una función de dos argumentos
+     */
+    public MatrixExpr zip(MatrixExpr other, DoubleBinaryOperator function) {
+        return new Zip(this, other, function);
+    }
+    
+    /**
+     * Multiplicación por escalar
+     */
+    public MatrixExpr scale(double scalar) {
+        return new Scale(this, scalar);
+    }
+    
+    /**
+     * Aplica una función a cada elemento
+     */
+    public MatrixExpr map(DoubleUnaryOperator function) {
+        return new Map(this, function);
+    }
+    
+    /**
+     * Evalúa en una matriz nueva
+     */
+    public Matrix eval() {
+        return into(new Matrix(rows, cols));
+    }
+    
+    /**
+     * Evalúa sobre dest (misma forma, en el heap) y lo devuelve. dest puede
+     * aparecer en la propia expresión: cada bloque se calcula completo antes
+     * de escribirlo.
+     */
+    public Matrix into(Matrix dest) {
+        if (dest.getRows() != rows || dest.getCols() != cols) {
+            throw new IllegalArgumentException(String.format(
+                "Destino [%d,%d] incompatible con la expresión [%d,%d]",
+                dest.getRows(), dest.getCols(), rows, cols));
+        }
+        double[] out = dest.getBuffer();
+        int size = out.length;
+        if (size < PARALLEL_ELEMENTS) {
+            evalRange(out, 0, size);
+        } else {
+            ComputeScheduler.shared().parallelFor(0, size, PARALLEL_ELEMENTS / 2,
+                                                  (from, to) -> evalRange(out, from, to));
+        }
+        return dest;
+    }
+    
+    private void evalRange(double[] out, int from, int to) {
+        double[][] scratch = new double[scratchBuffers() + 1][BLOCK];
+        double[] block = scratch[scratch.length - 1];
+        for (int start = from; start < to; start += BLOCK) {
+            int len = Math.min(BLOCK, to - start);
+            evalBlock(start, len, block, scratch, 0);
+            System.arraycopy(block, 0, out, start, len);
+        }
+    }
+    
+    /**
+     * Escribe los elementos [from, from + len) de la expresión en out[0..len).
+     * Los nodos usan scratch[level..] para sus hijos.
+     */
+    abstract void evalBlock(int from, int len, double[] out, double[][] scratch, int level);
+    
+    /**
+     * Buffers de un bloque que necesita la evaluación del subárbol
+     */
+    abstract int scratchBuffers();
+    
+    /**
+     * Array del heap de la hoja (null si no es una hoja o está mapeada):
+     * los nodos binarios lo leen sin copiarlo a un buffer
+     */
+    double[] direct() {
+        return null;
+    }
+    
+    static void checkShape(MatrixExpr a, MatrixExpr b, String operation) {
+        if (a.rows != b.rows || a.cols != b.cols) {
+            throw new IllegalArgumentException(String.format(
+                "Dimensiones incompatibles para %s: [%d,%d] y [%d,%d]",
+                operation, a.rows, a.cols, b.rows, b.cols));
+        }
+    }
+    
+    /**
+     * Hoja: una matriz existente (también mapeada)
+     */
+    static final class Leaf extends MatrixExpr {
+        private final Matrix matrix;
+        
+        Leaf(Matrix matrix) {
+            super(matrix.getRows(), matrix.getCols());
+            this.matrix = matrix;
+        }
+        
+        @Override
+        void evalBlock(int from, int len, double[] out, double[][] scratch, int level) {
+            matrix.read(from, out, 0, len);
+        }
+        
+        @Override
+        int scratchBuffers() {
+            return 0;
+        }
+        
+        @Override
+        double[] direct() {
+            return matrix.isMapped() ? null : matrix.getBuffer();
+        }
+    }
+    
+    /**
+     * Hoja: un vector columna repetido en cols columnas, sin materializarlo
+     */
+    static final class ColumnBroadcast extends MatrixExpr {
+        private final Matrix vector;
+        
+        ColumnBroadcast(Matrix vector, int cols) {
+            super(vector.getRows(), cols);
+            this.vector = vector;
+        }
+        
+        @Override
+        void evalBlock(int from, int len, double[] out, double[][] scratch, int level) {
+            int i = 0;
+            while (i < len) {
+                int row = (from + i) / cols;
+                int end = Math.min(len, (row + 1) * cols - from);
+                Arrays.fill(out, i, end, vector.get(row, 0));
+                i = end;
+            }
+        }
+        
+        @Override
+        int scratchBuffers() {
+            return 0;
+        }
+    }
+    
+    /**
+     * Operaciones binarias con bucle propio sobre el bloque
+     */
+    enum Op {
+        ADD {
+            @Override
+            void apply(double[] a, double[] b, int offset, int len) {
+                for (int i = 0; i < len; i++) {
+                    a[i] += b[offset + i];
+                }
+            }
+        },
+        SUBTRACT {
+            @Override
+            void apply(double[] a, double[] b, int offset, int len) {
+                for (int i = 0; i < len; i++) {
+                    a[i] -= b[offset + i];
+                }
+            }
+        },
+        HADAMARD {
+            @Override
+            void apply(double[] a, double[] b, int offset, int len) {
+                for (int i = 0; i < len; i++) {
+                    a[i] *= b[offset + i];
+                }
+            }
+        };
+        
+        /**
+         * a[i] = a[i] op b[offset + i] para i en [0, len)
+         */
+        abstract void apply(double[] a, double[] b, int offset, int len);
+    }
+    
+    /**
+     * Nodo con dos hijos: el izquierdo se evalúa en la salida y el derecho
+     * en un buffer de scratch (o se lee directamente si es una hoja del heap)
+     */
+    abstract static class TwoChildren extends MatrixExpr {
+        final MatrixExpr left;
+        final MatrixExpr right;
+        
+        TwoChildren(MatrixExpr left, MatrixExpr right, String operation) {
+            super(left.rows, left.cols);
+            checkShape(left, right, operation);
+            this.left = left;
+            this.right = right;
+        }
+        
+        @Override
+        void evalBlock(int from, int len, double[] out, double[][] scratch, int level) {
+            left.evalBlock(from, len, out, scratch, level);
+            double[] b = right.direct();
+            if (b != null) {
+                combine(out, b, from, len);
+            } else {
+                double[] buffer = scratch[level];
+                right.evalBlock(from, len, buffer, scratch, level + 1);
+                combine(out, buffer, 0, len);
+            }
+        }
+        
+        @Override
+        int scratchBuffers() {
+            int rightBuffers = right.direct() != null ? 0 : 1 + right.scratchBuffers();
+            return Math.max(left.scratchBuffers(), rightBuffers);
+        }
+        
+        abstract void combine(double[] a, double[] b, int offset, int len);
+    }
+    
+    static final class Binary extends TwoChildren {
+        private final Op op;
+        
+        Binary(MatrixExpr left, MatrixExpr right, Op op, String operation) {
+            super(left, right, operation);
+            this.op = op;
+        }
+        
+        @Override
+        void combine(double[] a, double[] b, int offset, int len) {
+            op.apply(a, b, offset, len);
+        }
+    }
+    
+    static final class Zip extends TwoChildren {
+        private final DoubleBinaryOperator function;
+        
+        Zip(MatrixExpr left, MatrixExpr right, DoubleBinaryOperator function) {
+            super(left, right, "zip");
+            this.function = function;
+        }
+        
+        @Override
+        void combine(double[] a, double[] b, int offset, int len) {
+            for (int i = 0; i < len; i++) {
+                a[i] = function.applyAsDouble(a[i], b[offset + i]);
+            }
+        }
+    }
+    
+    static final class Scale extends MatrixExpr {
+        private final MatrixExpr child;
+        private final double scalar;
+        
+        Scale(MatrixExpr child, double scalar) {
+            super(child.rows, child.cols);
+            this.child = child;
+            this.scalar = scalar;
+        }
+        
+        @Override
+        void evalBlock(int from, int len, double[] out, double[][] scratch, int level) {
+            child.evalBlock(from, len, out, scratch, level);
+            for (int i = 0; i < len; i++) {
+                out[i] *= scalar;
+            }
+        }
+        
+        @Override
+        int scratchBuffers() {
+            return child.scratchBuffers();
+        }
+    }
+    
+    static final class Map extends MatrixExpr {
+        private final MatrixExpr child;
+        private final DoubleUnaryOperator function;
+        
+        Map(MatrixExpr child, DoubleUnaryOperator function) {
+            super(child.rows, child.cols);
+            this.child = child;
+            this.function = function;
+        }
+        
+        @Override
+        void evalBlock(int from, int len, double[] out, double[][] scratch, int level) {
+            child.evalBlock(from, len, out, scratch, level);
+            for (int i = 0; i < len; i++) {
+                out[i] = function.applyAsDouble(out[i]);
+            }
+        }
+        
+        @Override
+        int scratchBuffers() {
+            return child.scratchBuffers();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package math;
+
+import java.io.Serializable;
+
+/**
+ * Vector disperso: solo los valores distintos de cero con sus índices
+ * (una fila CSR). Los índices están ordenados de forma creciente y sin
+ * repetir, así los kernels recorren la fila en orden de memoria.
+ *
+ * Para datasets con la mayoría de ceros (bag-of-words, tabulares con
+ * one-hot, bordes de MNIST) el coste de la primera capa pasa a depender
+ * de los no-ceros y no del número de features.
+ */
+public final class SparseVector implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final int size;
+    private final int[] indices;
+    private final double[] values;
+    
+    /**
+     * indices y values se usan sin copiar
+     */
+    public SparseVector(int size, int[] indices, double[] values) {
+        if (indices.length != values.length) {
+            throw new IllegalArgumentException("indices y values deben tener el mismo tamaño");
+        }
+        for (int k = 0; k < indices.length; k++) {
+            if (indices[k] < 0 || indices[k] >= size || (k > 0 && indices[k] <= indices[k - 1])) {
+                throw new IllegalArgumentException(String.format(
+                    "Índice disperso inválido %d en la posición %d (tamaño %d, deben ser crecientes)",
+                    indices[k], k, size));
+            }
+        }
+        this.size = size;
+        this.indices = indices;
+        this.values = values;
+    }
+    
+    /**
+     * Convierte un vector denso guardando solo los no-ceros
+     */
+    public static SparseVector fromDense(double[] dense) {
+        int nnz = 0;
+        for (double v : dense) {
+            if (v != 0) nnz++;
+        }
+        int[] indices = new int[nnz];
+        double[] values = new double[nnz];
+        int k = 0;
+        for (int j = 0; j < dense.length; j++) {
+            if (dense[j] != 0) {
+                indices[k] = j;
+                values[k++] = dense[j];
+            }
+        }
+        return new SparseVector(dense.length, indices, values);
+    }
+    
+    public double[] toDense() {
+        double[] dense = new double[size];
+        for (int k = 0; k < indices.length; k++) {
+            dense[indices[k]] = values[k];
+        }
+        return dense;
+    }
+    
+    /**
+     * Dimensión del vector (número de features)
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Número de valores distintos de cero
+     */
+    public int nnz() {
+        return indices.length;
+    }
+    
+    /**
+     * Índices de los no-ceros (sin copia, no modificar)
+     */
+    public int[] getIndices() {
+        return indices;
+    }
+    
+    /**
+     * Valores de los no-ceros (sin copia; el preprocesamiento los escala en el lugar)
+     */
+    public double[] getValues() {
+        return values;
+    }
+}
@@ -0,0 +1,108 @@
+package nn;
+
+/**
+ * Activación de una capa oculta.
+ * Cada constante implementa sus kernels sobre arrays completos, así la
+ * elección se resuelve una vez por capa (al construir la red) y los bucles
+ * internos no pasan por un DoubleUnaryOperator por elemento.
+ */
+public enum Activation {
+    
+    RELU {
+        @Override
+        public void apply(double[] z, double[] out) {
+            for (int i = 0; i < z.length; i++) {
+                out[i] = z[i] > 0 ? z[i] : 0.0;
+            }
+        }
+        
+        @Override
+        public void backward(double[] z, double[] a, double[] delta) {
+            for (int i = 0; i < delta.length; i++) {
+                if (z[i] <= 0) delta[i] = 0.0;
+            }
+        }
+    },
+    
+    LEAKY_RELU {
+        @Override
+        public void apply(double[] z, double[] out) {
+            for (int i = 0; i < z.length; i++) {
+                out[i] = z[i] > 0 ? z[i] : LEAKY_ALPHA * z[i];
+            }
+        }
+        
+        @Override
+        public void backward(double[] z, double[] a, double[] delta) {
+            for (int i = 0; i < delta.length; i++) {
+                if (z[i] <= 0) delta[i] *= LEAKY_ALPHA;
+            }
+        }
+    },
+    
+    TANH {
+        @Override
+        public void apply(double[] z, double[] out) {
+            for (int i = 0; i < z.length; i++) {
+                out[i] = Math.tanh(z[i]);
+            }
+        }
+        
+        @Override
+        public void backward(double[] z, double[] a, double[] delta) {
+            // tanh'(z) = 1 - a²
+            for (int i = 0; i < delta.length; i++) {
+                delta[i] *= 1.0 - a[i] * a[i];
+            }
+        }
+    },
+    
+    SIGMOID {
+        @Override
+        public void apply(double[] z, double[] out) {
+            for (int i = 0; i < z.length; i++) {
+                out[i] = 1.0 / (1.0 + Math.exp(-z[i]));
+            }
+        }
+        
+        @Override
+        public void backward(double[] z, double[] a, double[] delta) {
+            // sigmoid'(z) = a (1 - a)
+            for (int i = 0; i < delta.length; i++) {
+                delta[i] *= a[i] * (1.0 - a[i]);
+            }
+        }
+    };
+    
+    /** Pendiente de LeakyReLU para z <= 0 (igual que en ActivationFunction) */
+    public static final double LEAKY_ALPHA = 0.01;
+    
+    /**
+     * out = f(z); out puede ser el mismo array que z
+     */
+    public abstract void apply(double[] z, double[] out);
+    
+    /**
+     * delta *= f'(z), usando z o la activación a = f(z) según convenga
+     */
+    public abstract void backward(double[] z, double[] a, double[] delta);
+    
+    /**
+     * Parsea el nombre usado en el CLI (relu, leakyrelu, tanh, sigmoid)
+     */
+    public static Activation parse(String name) {
+        switch (name.toLowerCase().replace("_", "").replace("-", "")) {
+            case "relu":
+                return RELU;
+            case "leakyrelu":
+                return LEAKY_RELU;
+            case "tanh":
+                return TANH;
+            case "sigmoid":
+                return SIGMOID;
+            default:
+                throw new IllegalArgumentException("Activación desconocida: " + name
+                                                   + " (relu, leakyrelu, tanh, sigmoid)");
+        }
+    }
+}
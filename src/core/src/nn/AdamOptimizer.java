@@ -0,0 +1,52 @@
+package nn;
+
+/**
+ * Adam, y AdamW cuando weightDecay > 0 (weight decay desacoplado,
+ * aplicado solo a los bloques marcados con decay, es decir a los pesos).
+ */
+public class AdamOptimizer extends Optimizer {
+    
+    private final double beta1;
+    private final double beta2;
+    private final double epsilon;
+    private final double weightDecay;
+    
+    public AdamOptimizer(double learningRate, double beta1, double beta2, double epsilon, double weightDecay) {
+        super(learningRate);
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+        this.weightDecay = weightDecay;
+    }
+    
+    @Override
+    protected int stateBuffers() {
+        return 2;
+    }
+    
+    @Override
+    public void update(int slot, double[] param, double[] grad, boolean decay) {
+        double[][] buffers = slotState(slot, param.length);
+        double[] m = buffers[0];
+        double[] v = buffers[1];
+        
+        // Corrección de sesgo incorporada al paso: lr_t = lr * sqrt(1 - b2^t) / (1 - b1^t)
+        double t = Math.max(1, step);
+        double stepSize = learningRate * Math.sqrt(1 - Math.pow(beta2, t)) / (1 - Math.pow(beta1, t));
+        double decayFactor = decay ? 1 - learningRate * weightDecay : 1.0;
+        double b1 = beta1;
+        double b2 = beta2;
+        double oneMinusB1 = 1 - beta1;
+        double oneMinusB2 = 1 - beta2;
+        double eps = epsilon;
+        
+        for (int i = 0; i < param.length; i++) {
+            double g = grad[i];
+            double mi = b1 * m[i] + oneMinusB1 * g;
+            double vi = b2 * v[i] + oneMinusB2 * g * g;
+            m[i] = mi;
+            v[i] = vi;
+            param[i] = param[i] * decayFactor - stepSize * mi / (Math.sqrt(vi) + eps);
+        }
+    }
+}
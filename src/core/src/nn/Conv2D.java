@@ -0,0 +1,233 @@
+package nn;
+
+import math.Matrix;
+
+/**
+ * Convolución 2D con filtros cuadrados, stride y padding con ceros,
+ * seguida de una activación.
+ *
+ * Se reduce a un producto de matrices (im2col): cada columna de la matriz
+ * cols es un parche de entrada desplegado (canales x kernel x kernel) y
+ * cada fila de los pesos un filtro, así
+ *
+ *   forward:  Z  = W * cols + b          (filtros x posiciones)
+ *   backward: dW = dZ * cols^T
+ *             dX = col2im(W^T * dZ)
+ *
+ * y todo el coste va al GEMM por bloques de Matrix (repartido entre threads
+ * cuando es grande). Con n ejemplos las posiciones de todos van en columnas
+ * de la misma matriz: un solo GEMM por capa para el batch completo.
+ */
+class Conv2D extends ConvLayer {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final int filters;
+    private final int kernel;
+    private final int stride;
+    private final int padding;
+    private final Activation activation;
+    private final int outHeight;
+    private final int outWidth;
+    
+    private final Matrix weights;   // filtros x (canales * kernel * kernel)
+    private final Matrix bias;      // filtros x 1
+    
+    // Cache del último forward de entrenamiento y gradientes
+    private transient double[] cols;
+    private transient double[] z;
+    private transient double[] a;
+    private transient double[] weightGradient;
+    private transient double[] biasGradient;
+    
+    Conv2D(int channels, int height, int width, int filters, int kernel, int stride, int padding,
+           Activation activation) {
+        super(channels, height, width);
+        if (filters <= 0 || kernel <= 0 || stride <= 0 || padding < 0) {
+            throw new IllegalArgumentException(String.format(
+                "Convolución inválida: %d filtros, kernel %d, stride %d, padding %d", filters, kernel, stride, padding));
+        }
+        this.filters = filters;
+        this.kernel = kernel;
+        this.stride = stride;
+        this.padding = padding;
+        this.activation = activation;
+        this.outHeight = (height + 2 * padding - kernel) / stride + 1;
+        this.outWidth = (width + 2 * padding - kernel) / stride + 1;
+        if (height + 2 * padding < kernel || width + 2 * padding < kernel) {
+            throw new IllegalArgumentException(String.format(
+                "Kernel %d mayor que la entrada %dx%d (padding %d)", kernel, height, width, padding));
+        }
+        
+        int patch = channels * kernel * kernel;
+        this.weights = new Matrix(filters, patch);
+        weights.randomize(patch);
+        this.bias = new Matrix(filters, 1);
+    }
+    
+    @Override
+    int outChannels() {
+        return filters;
+    }
+    
+    @Override
+    int outHeight() {
+        return outHeight;
+    }
+    
+    @Override
+    int outWidth() {
+        return outWidth;
+    }
+    
+    @Override
+    double[] forward(double[] input, int n, boolean train) {
+        int positions = n * outHeight * outWidth;
+        double[] patches = im2col(input, n);
+        double[] out = weights.multiply(Matrix.wrap(patches, weights.getCols(), positions)).getBuffer();
+        double[] b = bias.getBuffer();
+        for (int f = 0; f < filters; f++) {
+            int row = f * positions;
+            for (int j = 0; j < positions; j++) {
+                out[row + j] += b[f];
+            }
+        }
+        if (!train) {
+            activation.apply(out, out);
+            return out;
+        }
+        cols = patches;
+        z = out;
+        a = new double[out.length];
+        activation.apply(z, a);
+        return a;
+    }
+    
+    @Override
+    double[] backward(double[] delta, int n, boolean inputGradient) {
+        int positions = n * outHeight * outWidth;
+        int patch = weights.getCols();
+        activation.backward(z, a, delta);
+        
+        if (biasGradient == null) {
+            biasGradient = new double[filters];
+        }
+        for (int f = 0; f < filters; f++) {
+            double sum = 0;
+            int row = f * positions;
+            for (int j = 0; j < positions; j++) {
+                sum += delta[row + j];
+            }
+            biasGradient[f] = sum;
+        }
+        
+        Matrix dZ = Matrix.wrap(delta, filters, positions);
+        weightGradient = dZ.multiply(Matrix.wrap(cols, patch, positions).transpose()).getBuffer();
+        if (!inputGradient) {
+            return null;
+        }
+        return col2im(weights.transpose().multiply(dZ).getBuffer(), n);
+    }
+    
+    /**
+     * Despliega los parches: fila (c, kh, kw), columna (ejemplo, oh, ow);
+     * las posiciones fuera de la imagen (padding) quedan a cero
+     */
+    private double[] im2col(double[] input, int n) {
+        int plane = height * width;
+        int outPlane = outHeight * outWidth;
+        int positions = n * outPlane;
+        double[] patches = new double[channels * kernel * kernel * positions];
+        for (int c = 0; c < channels; c++) {
+            for (int kh = 0; kh < kernel; kh++) {
+                for (int kw = 0; kw < kernel; kw++) {
+                    int row = ((c * kernel + kh) * kernel + kw) * positions;
+                    for (int e = 0; e < n; e++) {
+                        int in = (c * n + e) * plane;
+                        int out = row + e * outPlane;
+                        for (int oh = 0; oh < outHeight; oh++) {
+                            int ih = oh * stride - padding + kh;
+                            if (ih < 0 || ih >= height) continue;
+                            int inRow = in + ih * width;
+                            int outRow = out + oh * outWidth;
+                            for (int ow = 0; ow < outWidth; ow++) {
+                                int iw = ow * stride - padding + kw;
+                                if (iw >= 0 && iw < width) {
+                                    patches[outRow + ow] = input[inRow + iw];
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return patches;
+    }
+    
+    /**
+     * Inversa de im2col para gradientes: suma cada elemento de los parches
+     * en la posición de entrada de la que salió
+     */
+    private double[] col2im(double[] patches, int n) {
+        int plane = height * width;
+        int outPlane = outHeight * outWidth;
+        int positions = n * outPlane;
+        double[] grad = new double[channels * n * plane];
+        for (int c = 0; c < channels; c++) {
+            for (int kh = 0; kh < kernel; kh++) {
+                for (int kw = 0; kw < kernel; kw++) {
+                    int row = ((c * kernel + kh) * kernel + kw) * positions;
+                    for (int e = 0; e < n; e++) {
+                        int in = (c * n + e) * plane;
+                        int out = row + e * outPlane;
+                        for (int oh = 0; oh < outHeight; oh++) {
+                            int ih = oh * stride - padding + kh;
+                            if (ih < 0 || ih >= height) continue;
+                            int inRow = in + ih * width;
+                            int outRow = out + oh * outWidth;
+                            for (int ow = 0; ow < outWidth; ow++) {
+                                int iw = ow * stride - padding + kw;
+                                if (iw >= 0 && iw < width) {
+                                    grad[inRow + iw] += patches[outRow + ow];
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return grad;
+    }
+    
+    @Override
+    Matrix[] parameters() {
+        return new Matrix[]{weights, bias};
+    }
+    
+    @Override
+    double[][] gradients() {
+        return new double[][]{weightGradient, biasGradient};
+    }
+    
+    /**
+     * Multiplica los pesos por s: plegar una escala uniforme de la entrada
+     * (el padding con ceros sigue siendo cero después de escalar)
+     */
+    void scaleWeights(double s) {
+        double[] w = weights.getBuffer();
+        for (int i = 0; i < w.length; i++) {
+            w[i] *= s;
+        }
+    }
+    
+    @Override
+    ConvLayer untrainedCopy() {
+        return new Conv2D(channels, height, width, filters, kernel, stride, padding, activation);
+    }
+    
+    @Override
+    public String toString() {
+        String options = (stride != 1 ? "s" + stride : "") + (padding != 0 ? "p" + padding : "");
+        return filters + "x" + kernel + options + ":" + activation.name().toLowerCase();
+    }
+}
@@ -0,0 +1,84 @@
+package nn;
+
+import math.Matrix;
+import java.io.Serializable;
+
+/**
+ * Capa de la parte convolucional de la red (ver {@link ConvStack}).
+ *
+ * Trabaja sobre n ejemplos a la vez con el layout [canal][ejemplo][fila][columna]:
+ * así la salida del GEMM de una convolución (filtros x posiciones de todos
+ * los ejemplos) es directamente la entrada de la capa siguiente. Con n = 1
+ * coincide con el orden CHW de las features de un ejemplo.
+ */
+abstract class ConvLayer implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private static final Matrix[] NO_PARAMETERS = new Matrix[0];
+    
+    // Forma de la entrada de un ejemplo
+    final int channels;
+    final int height;
+    final int width;
+    
+    ConvLayer(int channels, int height, int width) {
+        if (channels <= 0 || height <= 0 || width <= 0) {
+            throw new IllegalArgumentException(String.format(
+                "Forma de entrada inválida: %dx%dx%d", height, width, channels));
+        }
+        this.channels = channels;
+        this.height = height;
+        this.width = width;
+    }
+    
+    abstract int outChannels();
+    
+    abstract int outHeight();
+    
+    abstract int outWidth();
+    
+    /**
+     * Features de salida de un ejemplo
+     */
+    int outputSize() {
+        return outChannels() * outHeight() * outWidth();
+    }
+    
+    /**
+     * Salida de n ejemplos. Con train se guarda lo necesario para
+     * {@link #backward}; sin train la capa no cambia de estado (se puede
+     * llamar desde varios threads a la vez).
+     */
+    abstract double[] forward(double[] input, int n, boolean train);
+    
+    /**
+     * Backward del último forward con train: delta es dL/dsalida (se puede
+     * modificar), los gradientes de los parámetros se dejan en la capa y se
+     * devuelve dL/dentrada si inputGradient (si no, null)
+     */
+    abstract double[] backward(double[] delta, int n, boolean inputGradient);
+    
+    /**
+     * Parámetros entrenables (pesos y bias alternados)
+     */
+    Matrix[] parameters() {
+        return NO_PARAMETERS;
+    }
+    
+    /**
+     * Gradientes del último backward, en el orden de {@link #parameters()}
+     */
+    double[][] gradients() {
+        return new double[0][];
+    }
+    
+    /**
+     * Capa con la misma forma y parámetros nuevos
+     */
+    abstract ConvLayer untrainedCopy();
+    
+    String shape() {
+        return outHeight() + "x" + outWidth() + "x" + outChannels();
+    }
+}
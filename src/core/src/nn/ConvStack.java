@@ -0,0 +1,272 @@
+package nn;
+
+import math.Matrix;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parte convolucional de una red: capas Conv2D y MaxPool2D delante de las
+ * capas densas. Recibe la imagen como vector de features en orden
+ * canal, fila, columna (para imágenes de un canal, el orden de píxeles del
+ * CSV) y entrega a la primera capa densa el mapa de la última capa aplanado.
+ *
+ * Formato de texto (CLI --conv): "8x5:relu,pool2,16x3p1:relu"
+ *   FxK[sS][pP][:activación]  F filtros de KxK, stride S (1), padding P (0)
+ *   poolK[sS]                 max pooling KxK, stride S (K)
+ */
+public final class ConvStack implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private static final Pattern CONV = Pattern.compile("(\\d+)x(\\d+)(?:s(\\d+))?(?:p(\\d+))?");
+    private static final Pattern POOL = Pattern.compile("pool(\\d+)(?:s(\\d+))?");
+    
+    private final ConvLayer[] layers;
+    
+    private ConvStack(ConvLayer[] layers) {
+        if (layers.length == 0) {
+            throw new IllegalArgumentException("La parte convolucional necesita al menos una capa");
+        }
+        this.layers = layers;
+    }
+    
+    /**
+     * Parsea la especificación para imágenes de forma shape ("28x28" o
+     * "32x32x3"; null = cuadradas de un canal con features píxeles)
+     */
+    public static ConvStack parse(String spec, String shape, int features, Activation defaultActivation) {
+        int[] input = parseShape(shape, features);
+        int channels = input[2];
+        int height = input[0];
+        int width = input[1];
+        
+        List<ConvLayer> layers = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            String[] token = part.trim().toLowerCase().split(":");
+            if (token.length > 2) {
+                throw new IllegalArgumentException("Capa convolucional inválida: " + part);
+            }
+            Matcher conv = CONV.matcher(token[0]);
+            Matcher pool = POOL.matcher(token[0]);
+            ConvLayer layer;
+            if (conv.matches()) {
+                Activation activation = token.length == 2 ? Activation.parse(token[1]) : defaultActivation;
+                layer = new Conv2D(channels, height, width, Integer.parseInt(conv.group(1)),
+                                   Integer.parseInt(conv.group(2)), optional(conv.group(3), 1),
+                                   optional(conv.group(4), 0), activation);
+            } else if (pool.matches() && token.length == 1) {
+                int size = Integer.parseInt(pool.group(1));
+                layer = new MaxPool2D(channels, height, width, size, optional(pool.group(2), size));
+            } else {
+                throw new IllegalArgumentException("Capa convolucional inválida: " + part
+                                                   + " (formato FxK[sS][pP][:activación] o poolK[sS])");
+            }
+            layers.add(layer);
+            channels = layer.outChannels();
+            height = layer.outHeight();
+            width = layer.outWidth();
+        }
+        return new ConvStack(layers.toArray(new ConvLayer[0]));
+    }
+    
+    private static int optional(String group, int fallback) {
+        return group != null ? Integer.parseInt(group) : fallback;
+    }
+    
+    private static int[] parseShape(String shape, int features) {
+        if (shape == null) {
+            int side = (int) Math.round(Math.sqrt(features));
+            if (side * side != features) {
+                throw new IllegalArgumentException(features
+                    + " features no forman una imagen cuadrada: indicar --input-shape AltoxAnchoxCanales");
+            }
+            return new int[]{side, side, 1};
+        }
+        String[] parts = shape.toLowerCase().split("x");
+        if (parts.length < 2 || parts.length > 3) {
+            throw new IllegalArgumentException("Forma de entrada inválida: " + shape + " (AltoxAncho[xCanales])");
+        }
+        int[] dims = new int[]{0, 0, 1};
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                dims[i] = Integer.parseInt(parts[i].trim());
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Forma de entrada inválida: " + shape + " (AltoxAncho[xCanales])");
+        }
+        if ((long) dims[0] * dims[1] * dims[2] != features) {
+            throw new IllegalArgumentException(String.format(
+                "La forma %s tiene %d valores y el dataset %d features", shape,
+                (long) dims[0] * dims[1] * dims[2], features));
+        }
+        return dims;
+    }
+    
+    /**
+     * Features de entrada (píxeles x canales)
+     */
+    public int getInputSize() {
+        return layers[0].channels * layers[0].height * layers[0].width;
+    }
+    
+    /**
+     * Features que recibe la primera capa densa
+     */
+    public int getOutputSize() {
+        return layers[layers.length - 1].outputSize();
+    }
+    
+    /**
+     * Forward de un ejemplo (con train se guarda la cache para backward)
+     */
+    double[] forward(double[] input, boolean train) {
+        double[] x = input;
+        for (ConvLayer layer : layers) {
+            x = layer.forward(x, 1, train);
+        }
+        return x;
+    }
+    
+    /**
+     * Forward de inputs[from..to) a la vez (un GEMM por convolución).
+     * Devuelve las features como columnas (features x ejemplos), la entrada
+     * de predictBatch en la parte densa. No cambia el estado de las capas.
+     */
+    Matrix forwardBatch(double[][] inputs, int from, int to) {
+        int n = to - from;
+        int channels = layers[0].channels;
+        int plane = layers[0].height * layers[0].width;
+        // De un vector por ejemplo a [canal][ejemplo][píxel]
+        double[] x = new double[channels * n * plane];
+        for (int e = 0; e < n; e++) {
+            double[] row = inputs[from + e];
+            for (int c = 0; c < channels; c++) {
+                System.arraycopy(row, c * plane, x, (c * n + e) * plane, plane);
+            }
+        }
+        for (ConvLayer layer : layers) {
+            x = layer.forward(x, n, false);
+        }
+        
+        ConvLayer last = layers[layers.length - 1];
+        int outChannels = last.outChannels();
+        int outPlane = last.outHeight() * last.outWidth();
+        Matrix features = new Matrix(outChannels * outPlane, n);
+        double[] out = features.getBuffer();
+        for (int c = 0; c < outChannels; c++) {
+            for (int e = 0; e < n; e++) {
+                int src = (c * n + e) * outPlane;
+                for (int p = 0; p < outPlane; p++) {
+                    out[(c * outPlane + p) * n + e] = x[src + p];
+                }
+            }
+        }
+        return features;
+    }
+    
+    /**
+     * Backward del último forward de entrenamiento a partir de dL/dfeatures;
+     * los gradientes quedan en las capas hasta {@link #update}
+     */
+    void backward(double[] delta) {
+        for (int i = layers.length - 1; i >= 0; i--) {
+            delta = layers[i].backward(delta, 1, i > 0);
+        }
+    }
+    
+    /**
+     * Aplica los gradientes del último backward. Usa los slots del
+     * optimizador a partir de firstSlot (uno por matriz de parámetros).
+     */
+    void update(Optimizer optimizer, int firstSlot) {
+        int slot = firstSlot;
+        for (ConvLayer layer : layers) {
+            Matrix[] params = layer.parameters();
+            double[][] grads = layer.gradients();
+            for (int p = 0; p < params.length; p++) {
+                // Pesos (posiciones pares) con weight decay, bias sin él
+                optimizer.update(slot++, params[p].getBuffer(), grads[p], p % 2 == 0);
+            }
+        }
+    }
+    
+    /**
+     * Número de parámetros entrenables
+     */
+    public int getParameterCount() {
+        int count = 0;
+        for (ConvLayer layer : layers) {
+            for (Matrix m : layer.parameters()) {
+                count += m.getRows() * m.getCols();
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Copia los parámetros a target desde offset; devuelve el offset siguiente
+     */
+    int copyOut(double[] target, int offset) {
+        for (ConvLayer layer : layers) {
+            for (Matrix m : layer.parameters()) {
+                double[] buffer = m.getBuffer();
+                System.arraycopy(buffer, 0, target, offset, buffer.length);
+                offset += buffer.length;
+            }
+        }
+        return offset;
+    }
+    
+    /**
+     * Restaura los parámetros desde source[offset..]; devuelve el offset siguiente
+     */
+    int copyIn(double[] source, int offset) {
+        for (ConvLayer layer : layers) {
+            for (Matrix m : layer.parameters()) {
+                double[] buffer = m.getBuffer();
+                System.arraycopy(source, offset, buffer, 0, buffer.length);
+                offset += buffer.length;
+            }
+        }
+        return offset;
+    }
+    
+    /**
+     * Pliega una escala uniforme de la entrada (x' = x * s, s > 0) en la
+     * primera convolución. El max pooling conmuta con una escala positiva,
+     * así que puede haber pooling antes.
+     */
+    void foldInputScale(double s) {
+        for (ConvLayer layer : layers) {
+            if (layer instanceof Conv2D) {
+                ((Conv2D) layer).scaleWeights(s);
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Misma arquitectura con parámetros nuevos
+     */
+    ConvStack untrainedCopy() {
+        ConvLayer[] copy = new ConvLayer[layers.length];
+        for (int i = 0; i < layers.length; i++) {
+            copy[i] = layers[i].untrainedCopy();
+        }
+        return new ConvStack(copy);
+    }
+    
+    @Override
+    public String toString() {
+        ConvLayer first = layers[0];
+        StringBuilder sb = new StringBuilder();
+        sb.append(first.height).append("x").append(first.width).append("x").append(first.channels);
+        for (ConvLayer layer : layers) {
+            sb.append(" -> ").append(layer).append(" (").append(layer.shape()).append(")");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package nn;
+
+/**
+ * Especificación de las capas ocultas: tamaño y activación de cada una.
+ * Formato de texto (CLI): "128:relu,64:tanh"; si una capa no indica
+ * activación se usa la activación por defecto.
+ * Las capas de entrada y salida las fija el dataset.
+ */
+public class LayerSpec {
+    
+    /** Arquitectura histórica: dos capas ocultas ReLU de 64 y 32 neuronas */
+    public static final String DEFAULT = "64,32";
+    
+    private final int[] sizes;
+    private final Activation[] activations;
+    
+    public LayerSpec(int[] sizes, Activation[] activations) {
+        if (sizes.length != activations.length) {
+            throw new IllegalArgumentException("Cada capa oculta necesita una activación");
+        }
+        for (int size : sizes) {
+            if (size <= 0) {
+                throw new IllegalArgumentException("Tamaño de capa inválido: " + size);
+            }
+        }
+        this.sizes = sizes.clone();
+        this.activations = activations.clone();
+    }
+    
+    /**
+     * Parsea "128:relu,64:tanh" (o "128,64" con la activación por defecto).
+     * Una cadena vacía o "none" produce una red sin capas ocultas.
+     */
+    public static LayerSpec parse(String spec, Activation defaultActivation) {
+        String trimmed = spec.trim();
+        if (trimmed.isEmpty() || trimmed.equalsIgnoreCase("none")) {
+            return new LayerSpec(new int[0], new Activation[0]);
+        }
+        
+        String[] parts = trimmed.split(",");
+        int[] sizes = new int[parts.length];
+        Activation[] activations = new Activation[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String[] layer = parts[i].trim().split(":");
+            if (layer.length > 2) {
+                throw new IllegalArgumentException("Capa inválida: " + parts[i] + " (formato tamaño[:activación])");
+            }
+            try {
+                sizes[i] = Integer.parseInt(layer[0].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Tamaño de capa inválido: " + layer[0]);
+            }
+            activations[i] = layer.length == 2 ? Activation.parse(layer[1].trim()) : defaultActivation;
+        }
+        return new LayerSpec(sizes, activations);
+    }
+    
+    /**
+     * Arquitectura completa: entrada, capas ocultas y salida
+     */
+    public int[] toLayers(int inputSize, int outputSize) {
+        int[] layers = new int[sizes.length + 2];
+        layers[0] = inputSize;
+        System.arraycopy(sizes, 0, layers, 1, sizes.length);
+        layers[layers.length - 1] = outputSize;
+        return layers;
+    }
+    
+    /**
+     * Crea la red descrita por esta especificación
+     */
+    public NeuralNetwork build(int inputSize, int outputSize, OutputHead head) {
+        return new NeuralNetwork(toLayers(inputSize, outputSize), activations, head);
+    }
+    
+    /**
+     * Crea la red con la parte convolucional conv delante: la entrada de
+     * las capas densas es la salida de conv
+     */
+    public NeuralNetwork build(ConvStack conv, int outputSize, OutputHead head) {
+        return new NeuralNetwork(conv, toLayers(conv.getOutputSize(), outputSize), activations, head);
+    }
+    
+    public int[] getSizes() {
+        return sizes.clone();
+    }
+    
+    public Activation[] getActivations() {
+        return activations.clone();
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < sizes.length; i++) {
+            if (i > 0) sb.append(",");
+            sb.append(sizes[i]).append(":").append(activations[i].name().toLowerCase());
+        }
+        return sizes.length == 0 ? "none" : sb.toString();
+    }
+}
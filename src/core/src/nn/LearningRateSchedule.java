@@ -0,0 +1,49 @@
+package nn;
+
+/**
+ * Planificación del learning rate por epoch
+ */
+public abstract class LearningRateSchedule {
+    
+    /**
+     * Learning rate para el epoch dado (0-based) de un total de epochs
+     */
+    public abstract double rate(double baseRate, int epoch, int totalEpochs);
+    
+    /**
+     * Crea una planificación por nombre: constant, step, cosine.
+     * step multiplica el learning rate por gamma cada stepEpochs epochs;
+     * cosine decae de baseRate a 0 siguiendo medio coseno.
+     */
+    public static LearningRateSchedule create(String name, int stepEpochs, double gamma) {
+        switch (name.toLowerCase()) {
+            case "constant":
+                return new LearningRateSchedule() {
+                    @Override
+                    public double rate(double baseRate, int epoch, int totalEpochs) {
+                        return baseRate;
+                    }
+                };
+            case "step":
+                if (stepEpochs < 1) {
+                    throw new IllegalArgumentException("step del learning rate debe ser >= 1");
+                }
+                return new LearningRateSchedule() {
+                    @Override
+                    public double rate(double baseRate, int epoch, int totalEpochs) {
+                        return baseRate * Math.pow(gamma, epoch / stepEpochs);
+                    }
+                };
+            case "cosine":
+                return new LearningRateSchedule() {
+                    @Override
+                    public double rate(double baseRate, int epoch, int totalEpochs) {
+                        return 0.5 * baseRate * (1 + Math.cos(Math.PI * epoch / Math.max(1, totalEpochs)));
+                    }
+                };
+            default:
+                throw new IllegalArgumentException("Planificación de learning rate desconocida: " + name
+                                                   + " (constant, step, cosine)");
+        }
+    }
+}
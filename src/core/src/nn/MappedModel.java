@@ -0,0 +1,215 @@
+package nn;
+
+import math.Matrix;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Modelo con los pesos en un archivo mapeado en memoria (.wmap).
+ *
+ * Los pesos no se deserializan: cada matriz es una vista de solo lectura
+ * sobre el archivo (FileChannel.map) y los productos la leen directamente.
+ * Todos los procesos del nodo que cargan el mismo archivo comparten sus
+ * páginas en la caché del sistema operativo: un proceso más no copia el
+ * modelo en su heap y apenas tarda en cargarlo.
+ *
+ * Formato (little-endian): magic "CMAP", versión, offset de los datos
+ * (long), número de capas y sus tamaños, capa de salida y activaciones
+ * ocultas (longitud + nombre UTF-8). Desde el offset de datos (múltiplo de
+ * 4096), los pesos y el bias de cada capa como double, cada bloque alineado
+ * a 64 bytes. La normalización del modelo va plegada en la primera capa.
+ */
+public final class MappedModel {
+    
+    public static final String EXTENSION = ".wmap";
+    
+    static final int MAGIC = 0x50414d43; // "CMAP" en little-endian
+    static final int VERSION = 1;
+    private static final int PREFIX_BYTES = 4 + 4 + 8;
+    private static final int DATA_ALIGN = 4096;
+    private static final int BLOCK_ALIGN = 64;
+    
+    private MappedModel() {
+    }
+    
+    /**
+     * Ruta del archivo mapeado que acompaña a un modelo .bin
+     */
+    public static String pathFor(String modelPath) {
+        String base = modelPath.endsWith(".bin") ? modelPath.substring(0, modelPath.length() - 4) : modelPath;
+        return base + EXTENSION;
+    }
+    
+    /**
+     * Escribe los parámetros de la red (sin normalización pendiente) en
+     * formato mapeable. Se escribe a un .tmp y se mueve de forma atómica:
+     * los procesos que ya tienen mapeado el archivo anterior lo siguen viendo
+     * entero.
+     */
+    public static void export(NeuralNetwork network, String filePath) throws IOException {
+        if (network.getConvolution() != null) {
+            throw new IllegalArgumentException("El formato mapeable no admite capas convolucionales");
+        }
+        if (network.getPreprocessor() != null) {
+            throw new IllegalArgumentException("La normalización debe estar plegada antes de exportar (foldPreprocessor)");
+        }
+        int[] layers = network.getLayers();
+        Matrix[] weights = network.getWeights();
+        Matrix[] biases = network.getBiases();
+        
+        ByteBuffer header = ByteBuffer.allocate(headerBytes(network)).order(ByteOrder.LITTLE_ENDIAN);
+        long dataOffset = align(header.capacity(), DATA_ALIGN);
+        header.putInt(MAGIC).putInt(VERSION).putLong(dataOffset);
+        header.putInt(layers.length);
+        for (int size : layers) {
+            header.putInt(size);
+        }
+        putName(header, network.getOutputHead().name());
+        for (Activation activation : network.getHiddenActivations()) {
+            putName(header, activation.name());
+        }
+        header.flip();
+        
+        Path path = Paths.get(filePath);
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header, 0);
+            long offset = dataOffset;
+            for (int i = 0; i < weights.length; i++) {
+                offset = writeBlock(channel, weights[i], offset);
+                offset = writeBlock(channel, biases[i], offset);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * Carga la red mapeando cada matriz del archivo (solo lectura: sirve
+     * para predecir, no para entrenar)
+     */
+    public static NeuralNetwork load(String filePath) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            throw new NoSuchFileException("Archivo no encontrado: " + filePath);
+        }
+        try (channel) {
+            ByteBuffer prefix = readFully(channel, 0, PREFIX_BYTES);
+            if (prefix.getInt() != MAGIC) {
+                throw new IOException("No es un modelo mapeable: " + filePath);
+            }
+            int version = prefix.getInt();
+            if (version != VERSION) {
+                throw new IOException("Versión de modelo mapeable no soportada: " + version);
+            }
+            long dataOffset = prefix.getLong();
+            if (dataOffset < PREFIX_BYTES || dataOffset > channel.size()) {
+                throw new IOException("Cabecera de modelo mapeable inválida: " + filePath);
+            }
+            
+            ByteBuffer header = readFully(channel, PREFIX_BYTES, (int) dataOffset - PREFIX_BYTES);
+            int[] layers = new int[header.getInt()];
+            for (int i = 0; i < layers.length; i++) {
+                layers[i] = header.getInt();
+            }
+            OutputHead head = OutputHead.valueOf(getName(header));
+            Activation[] hidden = new Activation[layers.length - 2];
+            for (int i = 0; i < hidden.length; i++) {
+                hidden[i] = Activation.valueOf(getName(header));
+            }
+            
+            Matrix[] weights = new Matrix[layers.length - 1];
+            Matrix[] biases = new Matrix[layers.length - 1];
+            long offset = dataOffset;
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = map(channel, offset, layers[i + 1], layers[i]);
+                offset = align(offset + (long) layers[i + 1] * layers[i] * Double.BYTES, BLOCK_ALIGN);
+                biases[i] = map(channel, offset, layers[i + 1], 1);
+                offset = align(offset + (long) layers[i + 1] * Double.BYTES, BLOCK_ALIGN);
+            }
+            // El mapeo sigue siendo válido después de cerrar el canal
+            return new NeuralNetwork(layers, hidden, head, weights, biases);
+        }
+    }
+    
+    private static Matrix map(FileChannel channel, long offset, int rows, int cols) throws IOException {
+        long bytes = (long) rows * cols * Double.BYTES;
+        if (offset + bytes > channel.size()) {
+            throw new IOException("Modelo mapeable truncado");
+        }
+        DoubleBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes)
+                                     .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        return Matrix.mapped(buffer, rows, cols);
+    }
+    
+    private static long writeBlock(FileChannel channel, Matrix matrix, long offset) throws IOException {
+        double[] values = matrix.isMapped() ? matrix.copy().getBuffer() : matrix.getBuffer();
+        ByteBuffer bytes = ByteBuffer.allocate(values.length * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asDoubleBuffer().put(values);
+        writeFully(channel, bytes, offset);
+        return align(offset + bytes.capacity(), BLOCK_ALIGN);
+    }
+    
+    private static int headerBytes(NeuralNetwork network) {
+        int bytes = PREFIX_BYTES + 4 + 4 * network.getLayers().length
+                    + 4 + network.getOutputHead().name().length();
+        for (Activation activation : network.getHiddenActivations()) {
+            bytes += 4 + activation.name().length();
+        }
+        return bytes;
+    }
+    
+    private static void putName(ByteBuffer buffer, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length).put(bytes);
+    }
+    
+    private static String getName(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Cabecera de modelo mapeable inválida");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private static long align(long value, int alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+    
+    private static ByteBuffer readFully(FileChannel channel, long position, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Modelo mapeable truncado");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,105 @@
+package nn;
+
+/**
+ * Max pooling 2D por canal con ventanas cuadradas (sin padding; las filas
+ * y columnas que no llenan una ventana se descartan).
+ *
+ * El forward de entrenamiento guarda de qué posición de entrada salió cada
+ * máximo: el backward solo reparte cada gradiente a esa posición.
+ */
+class MaxPool2D extends ConvLayer {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final int size;
+    private final int stride;
+    private final int outHeight;
+    private final int outWidth;
+    
+    private transient int[] argmax;
+    private transient int inputLength;
+    
+    MaxPool2D(int channels, int height, int width, int size, int stride) {
+        super(channels, height, width);
+        if (size <= 0 || stride <= 0 || size > height || size > width) {
+            throw new IllegalArgumentException(String.format(
+                "Pooling %d (stride %d) inválido para una entrada %dx%d", size, stride, height, width));
+        }
+        this.size = size;
+        this.stride = stride;
+        this.outHeight = (height - size) / stride + 1;
+        this.outWidth = (width - size) / stride + 1;
+    }
+    
+    @Override
+    int outChannels() {
+        return channels;
+    }
+    
+    @Override
+    int outHeight() {
+        return outHeight;
+    }
+    
+    @Override
+    int outWidth() {
+        return outWidth;
+    }
+    
+    @Override
+    double[] forward(double[] input, int n, boolean train) {
+        int planes = channels * n;
+        int plane = height * width;
+        int outPlane = outHeight * outWidth;
+        double[] out = new double[planes * outPlane];
+        int[] index = train ? new int[out.length] : null;
+        for (int p = 0; p < planes; p++) {
+            int in = p * plane;
+            for (int oh = 0; oh < outHeight; oh++) {
+                for (int ow = 0; ow < outWidth; ow++) {
+                    int best = in + oh * stride * width + ow * stride;
+                    for (int kh = 0; kh < size; kh++) {
+                        int row = in + (oh * stride + kh) * width + ow * stride;
+                        for (int kw = 0; kw < size; kw++) {
+                            if (input[row + kw] > input[best]) {
+                                best = row + kw;
+                            }
+                        }
+                    }
+                    int o = p * outPlane + oh * outWidth + ow;
+                    out[o] = input[best];
+                    if (train) {
+                        index[o] = best;
+                    }
+                }
+            }
+        }
+        if (train) {
+            argmax = index;
+            inputLength = input.length;
+        }
+        return out;
+    }
+    
+    @Override
+    double[] backward(double[] delta, int n, boolean inputGradient) {
+        if (!inputGradient) {
+            return null;
+        }
+        double[] grad = new double[inputLength];
+        for (int o = 0; o < delta.length; o++) {
+            grad[argmax[o]] += delta[o];
+        }
+        return grad;
+    }
+    
+    @Override
+    ConvLayer untrainedCopy() {
+        return new MaxPool2D(channels, height, width, size, stride);
+    }
+    
+    @Override
+    public String toString() {
+        return "pool" + size + (stride != size ? "s" + stride : "");
+    }
+}
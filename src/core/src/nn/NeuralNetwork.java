@@ -1,9 +1,14 @@
 package nn;
 
 import math.Matrix;
-import math.ActivationFunction;
+import math.SparseVector;
+import data.Preprocessor;
 import data.TrainingData;
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 /**
  * Red Neuronal Multi-Capa
@@ -17,17 +22,56 @@ public class NeuralNetwork implements Serializable {
     private final int[] layers;
     private Matrix[] weights;
     private Matrix[] biases;
+    private Activation[] hiddenActivations;   // null en modelos antiguos = ReLU
+    private OutputHead outputHead;   // null en modelos antiguos = SIGMOID
+    private Preprocessor preprocessor;   // normalización del entrenamiento; null en modelos antiguos
+    private ConvStack convolution;   // capas convolucionales delante de las densas; null = solo densas
     
     // Cache para backpropagation
     private transient Matrix[] activations;
     private transient Matrix[] zValues;
     
+    // Buffers de gradientes reutilizados entre pasos
+    private transient double[][] weightGradients;
+    private transient double[][] deltas;
+    private transient double[] outputBuffer;
+    private transient SgdOptimizer sgd;
+    private transient boolean sparseGradientClean;   // gradiente de la capa 0 a cero (entrada dispersa)
+    private transient double[] inputDelta;   // dL/dentrada de la capa 0 (salida de la parte convolucional)
+    private transient int[][] prunedWeights;   // índices podados por capa: siguen a cero al entrenar
+    
     /**
      * Constructor: crea una red con las capas especificadas
      * Ejemplo: [784, 128, 64, 10] = 784 inputs, 2 capas ocultas, 10 outputs
      */
     public NeuralNetwork(int[] layers) {
+        this(layers, OutputHead.SIGMOID);
+    }
+    
+    /**
+     * Constructor con capa de salida configurable (sigmoid+MSE o softmax+cross-entropy)
+     * y ReLU en todas las capas ocultas
+     */
+    public NeuralNetwork(int[] layers, OutputHead outputHead) {
+        this(layers, reluPlan(layers.length - 2), outputHead);
+    }
+    
+    /**
+     * Constructor con una activación por capa oculta
+     * (hiddenActivations[i] se aplica a la salida de la capa i + 1)
+     */
+    public NeuralNetwork(int[] layers, Activation[] hiddenActivations, OutputHead outputHead) {
+        if (layers.length < 2) {
+            throw new IllegalArgumentException("La red necesita al menos una capa de entrada y una de salida");
+        }
+        if (hiddenActivations.length != layers.length - 2) {
+            throw new IllegalArgumentException(String.format(
+                "Se esperaban %d activaciones ocultas, recibidas %d",
+                layers.length - 2, hiddenActivations.length));
+        }
         this.layers = layers;
+        this.hiddenActivations = hiddenActivations.clone();
+        this.outputHead = outputHead;
         this.weights = new Matrix[layers.length - 1];
         this.biases = new Matrix[layers.length - 1];
         
@@ -35,6 +79,32 @@ public class NeuralNetwork implements Serializable {
         initializeParameters();
     }
     
+    /**
+     * Red con una parte convolucional delante de las capas densas:
+     * layers[0] es el número de features que entrega la última capa convolucional
+     */
+    public NeuralNetwork(ConvStack convolution, int[] layers, Activation[] hiddenActivations, OutputHead outputHead) {
+        this(layers, hiddenActivations, outputHead);
+        if (convolution.getOutputSize() != layers[0]) {
+            throw new IllegalArgumentException(String.format(
+                "La parte convolucional entrega %d features, la primera capa densa espera %d",
+                convolution.getOutputSize(), layers[0]));
+        }
+        this.convolution = convolution;
+    }
+    
+    /**
+     * Red con parámetros ya construidos (pesos mapeados, ver MappedModel)
+     */
+    NeuralNetwork(int[] layers, Activation[] hiddenActivations, OutputHead outputHead,
+                  Matrix[] weights, Matrix[] biases) {
+        this.layers = layers;
+        this.hiddenActivations = hiddenActivations.clone();
+        this.outputHead = outputHead;
+        this.weights = weights;
+        this.biases = biases;
+    }
+    
     /**
      * Inicializa pesos con Xavier initialization y biases con ceros
      */
@@ -56,137 +126,451 @@ public class NeuralNetwork implements Serializable {
      * Calcula la salida de la red dada una entrada
      */
     public double[] predict(double[] input) {
-        if (input.length != layers[0]) {
+        if (input.length != getInputSize()) {
             throw new IllegalArgumentException(
                 String.format("Input size mismatch: esperado %d, recibido %d",
-                              layers[0], input.length));
+                              getInputSize(), input.length));
         }
         
-        Matrix activation = new Matrix(input);
+        Matrix activation = new Matrix(convolution != null ? convolution.forward(input, false) : input);
+        Activation[] plan = getHiddenActivations();
+        int last = weights.length - 1;
         
-        // Propagar hacia adelante
-        for (int i = 0; i < weights.length; i++) {
-            Matrix z = weights[i].multiply(activation).add(biases[i]);
-            
-            // Aplicar función de activación
-            if (i < weights.length - 1) {
-                // Capas ocultas: ReLU
-                activation = ActivationFunction.applyReLU(z);
-            } else {
-                // Capa de salida: Sigmoid
-                activation = ActivationFunction.applySigmoid(z);
+        // Propagar hacia adelante: capas ocultas con su activación (en el lugar)
+        for (int i = 0; i < last; i++) {
+            activation = withBias(weights[i].multiply(activation), i);
+            plan[i].apply(activation.getBuffer(), activation.getBuffer());
+        }
+        
+        // Capa de salida: sigmoid o softmax según el modelo
+        Matrix output = withBias(weights[last].multiply(activation), last);
+        getOutputHead().activate(output.getBuffer(), 0, output.getRows(), 1);
+        return output.toArray();
+    }
+    
+    /**
+     * Forward Propagation con una entrada dispersa: la primera capa solo
+     * recorre los no-ceros de la entrada, el resto de capas es igual que en
+     * {@link #predict(double[])}
+     */
+    public double[] predict(SparseVector input) {
+        if (convolution != null) {
+            // Las convoluciones trabajan sobre la imagen completa
+            return predict(input.toDense());
+        }
+        checkSparseInput(input);
+        Matrix activation = withBias(weights[0].multiply(input), 0);
+        Activation[] plan = getHiddenActivations();
+        int last = weights.length - 1;
+        
+        for (int i = 0; i < last; i++) {
+            if (i > 0) {
+                activation = withBias(weights[i].multiply(activation), i);
             }
+            plan[i].apply(activation.getBuffer(), activation.getBuffer());
         }
         
-        return activation.toArray();
+        Matrix output = last > 0 ? withBias(weights[last].multiply(activation), last) : activation;
+        getOutputHead().activate(output.getBuffer(), 0, output.getRows(), 1);
+        return output.toArray();
     }
     
     /**
-     * Forward Propagation con cache para backpropagation
+     * z + b_layer (en cada columna si z es un batch) escrito sobre z (z es el
+     * producto recién creado, así no se reserva otra matriz por capa)
      */
-    private Matrix forwardWithCache(Matrix input) {
-        int numLayers = layers.length;
-        activations = new Matrix[numLayers];
-        zValues = new Matrix[numLayers - 1];
+    private Matrix withBias(Matrix z, int layer) {
+        return z.lazy().addColumnVector(biases[layer]).into(z);
+    }
+    
+    private void checkSparseInput(SparseVector input) {
+        if (input.size() != layers[0]) {
+            throw new IllegalArgumentException(
+                String.format("Input size mismatch: esperado %d, recibido %d",
+                              layers[0], input.size()));
+        }
+    }
+    
+    /**
+     * Forward Propagation de un batch: inputs[from..to) en una sola pasada,
+     * apilando los ejemplos como columnas. No modifica el estado de la red,
+     * así que puede llamarse desde varios threads a la vez.
+     */
+    public double[][] predictBatch(double[][] inputs, int from, int to) {
+        if (inputs[from].length != getInputSize()) {
+            throw new IllegalArgumentException(
+                String.format("Input size mismatch: esperado %d, recibido %d",
+                              getInputSize(), inputs[from].length));
+        }
         
-        activations[0] = input;
+        // Con convoluciones, un GEMM por capa para todo el batch
+        Matrix activation = convolution != null ? convolution.forwardBatch(inputs, from, to)
+                                                : Matrix.fromColumns(inputs, from, to);
+        Activation[] plan = getHiddenActivations();
+        int last = weights.length - 1;
         
-        for (int i = 0; i < weights.length; i++) {
-            // z = W * a + b
-            zValues[i] = weights[i].multiply(activations[i]).add(biases[i]);
-            
-            // Aplicar función de activación
-            if (i < weights.length - 1) {
-                activations[i + 1] = ActivationFunction.applyReLU(zValues[i]);
-            } else {
-                activations[i + 1] = ActivationFunction.applySigmoid(zValues[i]);
+        for (int i = 0; i < last; i++) {
+            activation = withBias(weights[i].multiply(activation), i);
+            plan[i].apply(activation.getBuffer(), activation.getBuffer());
+        }
+        
+        Matrix output = withBias(weights[last].multiply(activation), last);
+        getOutputHead().activateColumns(output.getBuffer(), output.getRows(), output.getCols());
+        
+        double[][] outputs = new double[to - from][];
+        for (int j = 0; j < outputs.length; j++) {
+            outputs[j] = output.getColumn(j);
+        }
+        return outputs;
+    }
+    
+    /**
+     * Predice la clase de una entrada (ver {@link #classIndex(double[])})
+     */
+    public int predictClass(double[] input) {
+        return classIndex(predict(input));
+    }
+    
+    /**
+     * Convierte un vector de salida (o un target one-hot) en un índice de clase.
+     * Con una sola salida se interpreta como clasificación binaria (umbral 0.5),
+     * con varias salidas se toma el argmax.
+     */
+    public static int classIndex(double[] output) {
+        if (output.length == 1) {
+            return output[0] >= 0.5 ? 1 : 0;
+        }
+        int best = 0;
+        for (int i = 1; i < output.length; i++) {
+            if (output[i] > output[best]) {
+                best = i;
             }
         }
+        return best;
+    }
+    
+    /**
+     * Confianza de la clase elegida con {@link #classIndex(double[])}: su
+     * salida, o con una sola salida p o 1 - p. predict, score y serve la
+     * calculan igual.
+     */
+    public static double confidence(double[] output, int predicted) {
+        if (output.length == 1) {
+            return predicted == 1 ? output[0] : 1 - output[0];
+        }
+        return output[predicted];
+    }
+    
+    /**
+     * Forward Propagation con cache para backpropagation.
+     * La capa de salida se deja en logits (zValues); la activa trainStep
+     * junto con la pérdida.
+     */
+    private void forwardWithCache(Matrix input) {
+        activations = new Matrix[layers.length];
+        activations[0] = input;
+        forwardFromFirstLayer(withBias(weights[0].multiply(input), 0));
+    }
+    
+    /**
+     * Forward con cache para una entrada dispersa: la entrada no se
+     * densifica (activations[0] queda en null) y el backward usa los
+     * no-ceros directamente
+     */
+    private void forwardWithCache(SparseVector input) {
+        activations = new Matrix[layers.length];
+        forwardFromFirstLayer(withBias(weights[0].multiply(input), 0));
+    }
+    
+    /**
+     * Resto del forward con cache a partir de z de la primera capa
+     */
+    private void forwardFromFirstLayer(Matrix firstZ) {
+        zValues = new Matrix[layers.length - 1];
+        zValues[0] = firstZ;
+        Activation[] plan = getHiddenActivations();
+        int last = weights.length - 1;
         
-        return activations[numLayers - 1];
+        for (int i = 0; i < last; i++) {
+            // z = W * a + b, a = f(z)
+            if (i > 0) {
+                zValues[i] = withBias(weights[i].multiply(activations[i]), i);
+            }
+            activations[i + 1] = new Matrix(zValues[i].getRows(), 1);
+            plan[i].apply(zValues[i].getBuffer(), activations[i + 1].getBuffer());
+        }
+        if (last > 0) {
+            zValues[last] = withBias(weights[last].multiply(activations[last]), last);
+        }
     }
     
     /**
      * Backpropagation (P3: Tarea 3.3)
-     * Calcula gradientes y actualiza pesos
+     * Calcula gradientes y actualiza pesos con SGD plano
      */
     public double trainStep(double[] input, double[] target, double learningRate) {
-        if (input.length != layers[0]) {
+        if (sgd == null) {
+            sgd = new SgdOptimizer(learningRate, 0.0, false);
+        }
+        sgd.setLearningRate(learningRate);
+        return trainStep(input, target, sgd);
+    }
+    
+    /**
+     * Backpropagation con un optimizador configurable.
+     * Los gradientes se escriben en buffers reutilizados y el optimizador
+     * actualiza los pesos en el lugar, sin crear matrices nuevas.
+     */
+    public double trainStep(double[] input, double[] target, Optimizer optimizer) {
+        if (input.length != getInputSize()) {
             throw new IllegalArgumentException("Input size mismatch");
         }
         if (target.length != layers[layers.length - 1]) {
             throw new IllegalArgumentException("Target size mismatch");
         }
         
-        // Forward pass con cache
-        Matrix inputMatrix = new Matrix(input);
-        Matrix output = forwardWithCache(inputMatrix);
-        Matrix targetMatrix = new Matrix(target);
-        
-        // Calcular error (loss)
-        Matrix error = output.subtract(targetMatrix);
-        double loss = calculateMSE(output, targetMatrix);
+        // Forward pass con cache (la parte convolucional guarda la suya)
+        forwardWithCache(new Matrix(convolution != null ? convolution.forward(input, true) : input));
+        return backpropagate(target, null, optimizer);
+    }
+    
+    /**
+     * Backpropagation con una entrada dispersa. La primera capa se calcula
+     * como disperso x denso y su gradiente como el producto exterior delta * x^T
+     * solo en las columnas de los no-ceros, así el coste de esa capa escala
+     * con los no-ceros y no con el número de features (con SGD plano también
+     * la actualización; momentum y Adam actualizan la capa completa).
+     */
+    public double trainStep(SparseVector input, double[] target, Optimizer optimizer) {
+        if (convolution != null) {
+            return trainStep(input.toDense(), target, optimizer);
+        }
+        checkSparseInput(input);
+        if (target.length != layers[layers.length - 1]) {
+            throw new IllegalArgumentException("Target size mismatch");
+        }
         
-        // Backward pass
-        Matrix[] weightGradients = new Matrix[weights.length];
-        Matrix[] biasGradients = new Matrix[weights.length];
+        forwardWithCache(input);
+        return backpropagate(target, input, optimizer);
+    }
+    
+    /**
+     * Backward y actualización tras forwardWithCache.
+     * sparseInput es la entrada de la primera capa si es dispersa (si no, null).
+     */
+    private double backpropagate(double[] target, SparseVector sparseInput, Optimizer optimizer) {
+        ensureGradientBuffers();
         
-        // Última capa
+        // Última capa: activación, pérdida y delta en un solo paso
+        // (softmax + cross-entropy: delta = p - y)
         int lastLayer = weights.length - 1;
-        Matrix delta = error.hadamard(
-            ActivationFunction.applySigmoidDerivative(zValues[lastLayer])
-        );
+        double[] delta = deltas[lastLayer];
+        double loss = getOutputHead().lossAndDelta(zValues[lastLayer].getBuffer(), target,
+                                                   outputBuffer, delta);
         
-        weightGradients[lastLayer] = delta.multiply(activations[lastLayer].transpose());
-        biasGradients[lastLayer] = delta;
-        
-        // Capas anteriores (propagación hacia atrás)
-        for (int i = lastLayer - 1; i >= 0; i--) {
-            delta = weights[i + 1].transpose().multiply(delta)
-                    .hadamard(ActivationFunction.applyReLUDerivative(zValues[i]));
+        // Propagación hacia atrás: gradW_i = delta_i * a_i^T, gradB_i = delta_i
+        Activation[] plan = getHiddenActivations();
+        for (int i = lastLayer; i >= 0; i--) {
+            delta = deltas[i];
+            double[] gradW = weightGradients[i];
+            if (i == 0 && sparseInput != null) {
+                sparseOuterProduct(delta, sparseInput, gradW);
+                continue;
+            }
+            if (i == 0) {
+                sparseGradientClean = false;
+            }
+            double[] aPrev = activations[i].getBuffer();
+            int cols = aPrev.length;
+            for (int r = 0; r < delta.length; r++) {
+                double d = delta[r];
+                int base = r * cols;
+                for (int c = 0; c < cols; c++) {
+                    gradW[base + c] = d * aPrev[c];
+                }
+            }
             
-            weightGradients[i] = delta.multiply(activations[i].transpose());
-            biasGradients[i] = delta;
+            if (i > 0 || convolution != null) {
+                // delta_{i-1} = (W_i^T * delta_i) ∘ f'(z_{i-1}); en la capa 0, dL/dentrada
+                // para el backward de la parte convolucional
+                double[] w = weights[i].getBuffer();
+                double[] prev = i > 0 ? deltas[i - 1] : inputDelta;
+                java.util.Arrays.fill(prev, 0.0);
+                for (int r = 0; r < delta.length; r++) {
+                    double d = delta[r];
+                    if (d == 0) continue;
+                    int base = r * cols;
+                    for (int c = 0; c < cols; c++) {
+                        prev[c] += w[base + c] * d;
+                    }
+                }
+                if (i > 0) {
+                    plan[i - 1].backward(zValues[i - 1].getBuffer(), aPrev, prev);
+                }
+            }
+        }
+        if (convolution != null) {
+            convolution.backward(inputDelta);
         }
         
-        // Actualizar pesos y biases
+        // Actualizar pesos y biases (slot 2i = pesos, 2i+1 = bias)
+        optimizer.beginStep();
         for (int i = 0; i < weights.length; i++) {
-            weights[i] = weights[i].subtract(weightGradients[i].scale(learningRate));
-            biases[i] = biases[i].subtract(biasGradients[i].scale(learningRate));
+            if (i == 0 && sparseInput != null) {
+                optimizer.updateColumns(0, weights[0].getBuffer(), weightGradients[0], layers[0],
+                                        sparseInput.getIndices(), sparseInput.nnz(), true);
+            } else {
+                optimizer.update(2 * i, weights[i].getBuffer(), weightGradients[i], true);
+            }
+            optimizer.update(2 * i + 1, biases[i].getBuffer(), deltas[i], false);
+        }
+        if (convolution != null) {
+            // Slots siguientes a los de las capas densas
+            convolution.update(optimizer, 2 * weights.length);
+        }
+        if (prunedWeights != null) {
+            applyPruning();
+        }
+        if (sparseInput != null) {
+            // Dejar a cero las columnas escritas para el siguiente paso disperso
+            clearColumns(weightGradients[0], layers[0], sparseInput);
         }
         
         return loss;
     }
     
     /**
-     * Calcula Mean Squared Error
+     * Devuelve a cero los pesos podados que el optimizador haya movido
+     */
+    private void applyPruning() {
+        for (int i = 0; i < weights.length; i++) {
+            int[] pruned = prunedWeights[i];
+            if (pruned == null) continue;
+            double[] w = weights[i].getBuffer();
+            for (int k : pruned) {
+                w[k] = 0.0;
+            }
+        }
+    }
+    
+    /**
+     * Marca los pesos podados de una capa (ver {@link Pruning})
+     */
+    void setPrunedWeights(int layer, int[] indices) {
+        if (prunedWeights == null) {
+            prunedWeights = new int[weights.length][];
+        }
+        prunedWeights[layer] = indices;
+    }
+    
+    int[] getPrunedWeights(int layer) {
+        return prunedWeights != null && prunedWeights[layer] != null ? prunedWeights[layer] : new int[0];
+    }
+    
+    /**
+     * Pasa al producto disperso (CSR) las capas con como mucho maxDensity
+     * no-ceros (pesos podados). Solo para inferencia: entrenar la red
+     * vuelve al producto denso. Devuelve el número de capas comprimidas.
      */
-    private double calculateMSE(Matrix output, Matrix target) {
-        Matrix diff = output.subtract(target);
-        double sum = 0;
-        for (int i = 0; i < diff.getRows(); i++) {
-            double val = diff.get(i, 0);
-            sum += val * val;
+    public int compressSparseLayers(double maxDensity) {
+        int compressed = 0;
+        for (Matrix w : weights) {
+            if (w.compress(maxDensity)) {
+                compressed++;
+            }
+        }
+        return compressed;
+    }
+    
+    /**
+     * gradW = delta * x^T con x disperso: solo se escriben las columnas de
+     * los no-ceros; el resto del buffer se mantiene a cero entre pasos
+     */
+    private void sparseOuterProduct(double[] delta, SparseVector x, double[] gradW) {
+        int cols = layers[0];
+        if (!sparseGradientClean) {
+            // El último paso denso escribió el buffer completo
+            java.util.Arrays.fill(gradW, 0.0);
+            sparseGradientClean = true;
+        }
+        int[] indices = x.getIndices();
+        double[] values = x.getValues();
+        int nnz = indices.length;
+        for (int r = 0; r < delta.length; r++) {
+            double d = delta[r];
+            int base = r * cols;
+            for (int k = 0; k < nnz; k++) {
+                gradW[base + indices[k]] = d * values[k];
+            }
+        }
+    }
+    
+    private static void clearColumns(double[] gradW, int cols, SparseVector x) {
+        int[] indices = x.getIndices();
+        for (int base = 0; base < gradW.length; base += cols) {
+            for (int index : indices) {
+                gradW[base + index] = 0.0;
+            }
+        }
+    }
+    
+    /**
+     * Reserva (una vez) los buffers de gradientes
+     */
+    private void ensureGradientBuffers() {
+        if (weightGradients != null) {
+            return;
+        }
+        weightGradients = new double[weights.length][];
+        deltas = new double[weights.length][];
+        outputBuffer = new double[layers[layers.length - 1]];
+        inputDelta = new double[layers[0]];
+        for (int i = 0; i < weights.length; i++) {
+            weightGradients[i] = new double[layers[i + 1] * layers[i]];
+            deltas[i] = new double[layers[i + 1]];
         }
-        return sum / diff.getRows();
+    }
+    
+    /**
+     * Pérdida de una predicción frente a su target
+     * (MSE con salida sigmoid, cross-entropy con salida softmax)
+     */
+    public double computeLoss(double[] prediction, double[] target) {
+        return getOutputHead().loss(prediction, target);
     }
     
     /**
      * P3: Tarea 3.4 - Guarda el modelo en disco
      * P4: Optimiza la escritura de archivos
+     * Escritura atómica (archivo temporal + rename): quien carga el modelo
+     * mientras se reemplaza ve el archivo anterior o el nuevo, nunca uno a medias.
      */
     public void saveModel(String filePath) throws IOException {
+        saveModel(filePath, System.out);
+    }
+    
+    /**
+     * Guarda el modelo escribiendo los mensajes de progreso en log
+     */
+    public void saveModel(String filePath, java.io.PrintStream log) throws IOException {
         File file = new File(filePath);
         file.getParentFile().mkdirs();
+        Path path = file.toPath();
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
         
-        System.out.println("Guardando modelo en: " + filePath);
+        log.println("Guardando modelo en: " + filePath);
         
         try (ObjectOutputStream oos = new ObjectOutputStream(
-                new BufferedOutputStream(new FileOutputStream(file)))) {
+                new BufferedOutputStream(Files.newOutputStream(tmp)))) {
             oos.writeObject(this);
         }
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
         
-        System.out.println("Modelo guardado exitosamente");
+        log.println("Modelo guardado exitosamente");
     }
     
     /**
@@ -200,6 +584,79 @@ public class NeuralNetwork implements Serializable {
         }
     }
     
+    /**
+     * Carga un modelo para inferencia: la normalización guardada queda
+     * plegada en la primera capa, así predict recibe los datos crudos.
+     * Si junto al .bin hay un .wmap al día (comando mmap) se mapea en lugar
+     * de deserializar: los pesos se comparten con los demás procesos.
+     * Las capas podadas usan el producto disperso (ver {@link Pruning}).
+     * No usar para seguir entrenando (finetune usa loadModel).
+     */
+    public static NeuralNetwork loadForInference(String filePath) throws IOException, ClassNotFoundException {
+        File file = new File(filePath);
+        File mappedFile = new File(MappedModel.pathFor(filePath));
+        if (mappedFile.exists()) {
+            if (mappedFile.lastModified() >= file.lastModified()) {
+                return MappedModel.load(mappedFile.getPath());
+            }
+            System.err.println("WARNING: " + mappedFile + " es anterior al modelo; se ignora (regenerar con mmap)");
+        }
+        NeuralNetwork nn = loadModel(filePath);
+        nn.foldPreprocessor();
+        nn.compressSparseLayers(Pruning.SPARSE_KERNEL_DENSITY);
+        return nn;
+    }
+    
+    /**
+     * Pliega la normalización afín x' = x * scale + shift en la primera capa:
+     *
+     *   W0 (x * scale + shift) + b0 = (W0 diag(scale)) x + (b0 + W0 shift)
+     *
+     * Después la red espera entradas sin normalizar y no tiene
+     * preprocesamiento. Devuelve false si no había nada que plegar.
+     * Con capas convolucionales la escala (uniforme) se pliega en la primera
+     * convolución.
+     */
+    public boolean foldPreprocessor() {
+        if (preprocessor == null) {
+            return false;
+        }
+        double[] scale = preprocessor.getScale();
+        double[] shift = preprocessor.getShift();
+        if (convolution != null) {
+            convolution.foldInputScale(scale[0]);
+            preprocessor = null;
+            return true;
+        }
+        double[] w = weights[0].getBuffer();
+        double[] b = biases[0].getBuffer();
+        int rows = weights[0].getRows();
+        int cols = weights[0].getCols();
+        for (int r = 0; r < rows; r++) {
+            int base = r * cols;
+            double offset = 0;
+            for (int c = 0; c < cols; c++) {
+                offset += w[base + c] * shift[c];
+                w[base + c] *= scale[c];
+            }
+            b[r] += offset;
+        }
+        preprocessor = null;
+        return true;
+    }
+    
+    /**
+     * Arquitectura en una línea (capas densas, activaciones, salida y parte
+     * convolucional): dos redes con la misma descripción intercambian
+     * parámetros con snapshotParameters/restoreParameters
+     */
+    public String describeArchitecture() {
+        return java.util.Arrays.toString(layers)
+               + " " + java.util.Arrays.toString(getHiddenActivations()).toLowerCase()
+               + " " + getOutputHead().name().toLowerCase()
+               + (convolution != null ? " conv " + convolution : "");
+    }
+    
     /**
      * Obtiene información del modelo
      */
@@ -212,13 +669,20 @@ public class NeuralNetwork implements Serializable {
             if (i < layers.length - 1) sb.append(" -> ");
         }
         sb.append("]\n");
-        
-        int totalParams = 0;
-        for (int i = 0; i < weights.length; i++) {
-            int layerParams = weights[i].getRows() * weights[i].getCols() + biases[i].getRows();
-            totalParams += layerParams;
+        sb.append("Hidden Activations: ").append(java.util.Arrays.toString(getHiddenActivations()).toLowerCase()).append("\n");
+        sb.append("Output: ").append(getOutputHead().name().toLowerCase()).append("\n");
+        if (preprocessor != null) {
+            sb.append("Preprocessing: ").append(preprocessor).append("\n");
+        }
+        if (convolution != null) {
+            sb.append("Convolution: ").append(convolution).append("\n");
         }
-        sb.append("Total Parameters: ").append(totalParams);
+        double[] densities = Pruning.densities(this);
+        if (java.util.Arrays.stream(densities).anyMatch(d -> d < 1.0)) {
+            sb.append("Weight Density: ").append(Pruning.format(densities)).append("\n");
+        }
+        
+        sb.append("Total Parameters: ").append(getParameterCount());
         
         return sb.toString();
     }
@@ -233,20 +697,169 @@ public class NeuralNetwork implements Serializable {
         for (int i = 0; i < size; i++) {
             TrainingData.DataPair example = testData.getExample(i);
             double[] prediction = predict(example.input);
-            
-            // Calcular error
-            double loss = 0;
-            for (int j = 0; j < prediction.length; j++) {
-                double diff = prediction[j] - example.output[j];
-                loss += diff * diff;
-            }
-            totalLoss += loss / prediction.length;
+            totalLoss += computeLoss(prediction, example.output);
         }
         
         return totalLoss / size;
     }
     
+    /**
+     * Número total de parámetros entrenables (pesos + biases)
+     */
+    public int getParameterCount() {
+        int count = 0;
+        for (int i = 0; i < weights.length; i++) {
+            count += weights[i].getRows() * weights[i].getCols() + biases[i].getRows();
+        }
+        if (convolution != null) {
+            count += convolution.getParameterCount();
+        }
+        return count;
+    }
+    
+    /**
+     * Copia todos los parámetros a un buffer plano (capa a capa: pesos, bias).
+     * Reutiliza target si tiene el tamaño correcto.
+     */
+    public double[] snapshotParameters(double[] target) {
+        if (target == null || target.length != getParameterCount()) {
+            target = new double[getParameterCount()];
+        }
+        int offset = 0;
+        for (int i = 0; i < weights.length; i++) {
+            offset = copyOut(weights[i].getBuffer(), target, offset);
+            offset = copyOut(biases[i].getBuffer(), target, offset);
+        }
+        if (convolution != null) {
+            convolution.copyOut(target, offset);
+        }
+        return target;
+    }
+    
+    /**
+     * Restaura los parámetros desde un buffer creado con snapshotParameters
+     */
+    public void restoreParameters(double[] source) {
+        if (source.length != getParameterCount()) {
+            throw new IllegalArgumentException("Tamaño de parámetros incompatible: esperado "
+                                               + getParameterCount() + ", recibido " + source.length);
+        }
+        int offset = 0;
+        for (int i = 0; i < weights.length; i++) {
+            offset = copyIn(source, offset, weights[i].getBuffer());
+            offset = copyIn(source, offset, biases[i].getBuffer());
+        }
+        if (convolution != null) {
+            convolution.copyIn(source, offset);
+        }
+    }
+    
+    private static int copyOut(double[] buffer, double[] target, int offset) {
+        System.arraycopy(buffer, 0, target, offset, buffer.length);
+        return offset + buffer.length;
+    }
+    
+    private static int copyIn(double[] source, int offset, double[] buffer) {
+        System.arraycopy(source, offset, buffer, 0, buffer.length);
+        return offset + buffer.length;
+    }
+    
+    /**
+     * Tamaño de las capas densas; con convoluciones layers[0] es la salida
+     * de la parte convolucional (ver {@link #getInputSize()})
+     */
     public int[] getLayers() {
         return layers;
     }
+    
+    /**
+     * Features que recibe predict
+     */
+    public int getInputSize() {
+        return convolution != null ? convolution.getInputSize() : layers[0];
+    }
+    
+    /**
+     * Capas convolucionales delante de las densas (null si no tiene)
+     */
+    public ConvStack getConvolution() {
+        return convolution;
+    }
+    
+    /**
+     * Red con la misma arquitectura y parámetros nuevos
+     */
+    NeuralNetwork untrainedCopy() {
+        if (convolution != null) {
+            return new NeuralNetwork(convolution.untrainedCopy(), layers.clone(), getHiddenActivations(),
+                                     getOutputHead());
+        }
+        return new NeuralNetwork(layers.clone(), getHiddenActivations(), getOutputHead());
+    }
+    
+    /**
+     * Activación de cada capa oculta
+     */
+    public Activation[] getHiddenActivations() {
+        if (hiddenActivations == null) {
+            hiddenActivations = reluPlan(layers.length - 2);
+        }
+        return hiddenActivations;
+    }
+    
+    private static Activation[] reluPlan(int hiddenLayers) {
+        Activation[] plan = new Activation[Math.max(0, hiddenLayers)];
+        java.util.Arrays.fill(plan, Activation.RELU);
+        return plan;
+    }
+    
+    /**
+     * Normalización de entradas con la que se entrenó el modelo (null si no se guardó)
+     */
+    public Preprocessor getPreprocessor() {
+        return preprocessor;
+    }
+    
+    public void setPreprocessor(Preprocessor preprocessor) {
+        if (preprocessor != null && preprocessor.getFeatures() != getInputSize()) {
+            throw new IllegalArgumentException(String.format(
+                "Preprocesamiento para %d features, el modelo espera %d", preprocessor.getFeatures(), getInputSize()));
+        }
+        if (preprocessor != null && convolution != null && !isUniformScale(preprocessor)) {
+            // Los filtros se comparten entre posiciones: solo se puede plegar una escala común
+            throw new IllegalArgumentException("Las capas convolucionales requieren una normalización uniforme "
+                                               + "sin desplazamiento (auto en imágenes o none), no " + preprocessor);
+        }
+        this.preprocessor = preprocessor;
+    }
+    
+    private static boolean isUniformScale(Preprocessor preprocessor) {
+        double[] scale = preprocessor.getScale();
+        double[] shift = preprocessor.getShift();
+        for (int j = 0; j < scale.length; j++) {
+            if (scale[j] != scale[0] || scale[0] <= 0 || shift[j] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public OutputHead getOutputHead() {
+        return outputHead != null ? outputHead : OutputHead.SIGMOID;
+    }
+    
+    /**
+     * true si los pesos se leen de un archivo mapeado (solo inferencia)
+     */
+    public boolean isMapped() {
+        return weights[0].isMapped();
+    }
+    
+    Matrix[] getWeights() {
+        return weights;
+    }
+    
+    Matrix[] getBiases() {
+        return biases;
+    }
 }
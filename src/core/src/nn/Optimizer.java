@@ -0,0 +1,142 @@
+package nn;
+
+/**
+ * Optimizador de parámetros.
+ * La red entrega cada bloque de parámetros (los pesos y el bias de cada
+ * capa, identificados por un slot) junto con su gradiente como buffers
+ * planos; el optimizador los actualiza en el mismo lugar. El estado interno
+ * (velocidad, momentos) también vive en arrays planos por slot que se
+ * reservan una sola vez, en la primera actualización.
+ */
+public abstract class Optimizer {
+    
+    protected double learningRate;
+    protected long step;
+    protected double[][][] state = new double[0][][];   // [slot][buffer][i]
+    
+    protected Optimizer(double learningRate) {
+        this.learningRate = learningRate;
+    }
+    
+    /**
+     * Crea un optimizador por nombre: sgd, momentum, nesterov, adam, adamw
+     */
+    public static Optimizer create(String name, double learningRate, double momentum, double weightDecay) {
+        switch (name.toLowerCase()) {
+            case "sgd":
+                return new SgdOptimizer(learningRate, 0.0, false);
+            case "momentum":
+                return new SgdOptimizer(learningRate, momentum, false);
+            case "nesterov":
+                return new SgdOptimizer(learningRate, momentum, true);
+            case "adam":
+                return new AdamOptimizer(learningRate, 0.9, 0.999, 1e-8, 0.0);
+            case "adamw":
+                return new AdamOptimizer(learningRate, 0.9, 0.999, 1e-8, weightDecay);
+            default:
+                throw new IllegalArgumentException("Optimizador desconocido: " + name
+                                                   + " (sgd, momentum, nesterov, adam, adamw)");
+        }
+    }
+    
+    /**
+     * Marca el inicio de un paso de actualización (una llamada por trainStep)
+     */
+    public void beginStep() {
+        step++;
+    }
+    
+    /**
+     * Actualiza param en el lugar a partir de grad.
+     * decay indica si al bloque se le aplica weight decay (pesos sí, bias no).
+     */
+    public abstract void update(int slot, double[] param, double[] grad, boolean decay);
+    
+    /**
+     * Actualiza una matriz de pesos (cols columnas) cuyo gradiente solo es
+     * distinto de cero en las columnas columns[0..count): la primera capa
+     * con una entrada dispersa. Por defecto actualiza el bloque completo,
+     * porque el estado de momentum y Adam cambia también donde el gradiente
+     * es cero; SGD plano lo limita a esas columnas.
+     */
+    public void updateColumns(int slot, double[] param, double[] grad, int cols,
+                              int[] columns, int count, boolean decay) {
+        update(slot, param, grad, decay);
+    }
+    
+    /**
+     * Número de buffers de estado por slot (0 para SGD plano, 1 momentum, 2 Adam)
+     */
+    protected abstract int stateBuffers();
+    
+    /**
+     * Buffers de estado de un slot, reservados en el primer uso
+     */
+    protected double[][] slotState(int slot, int size) {
+        if (slot >= state.length) {
+            state = java.util.Arrays.copyOf(state, slot + 1);
+        }
+        if (state[slot] == null) {
+            state[slot] = new double[stateBuffers()][size];
+        }
+        return state[slot];
+    }
+    
+    public double getLearningRate() {
+        return learningRate;
+    }
+    
+    public void setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+    }
+    
+    /**
+     * Estado completo en un array plano (para checkpoints):
+     * [step, slots, (tamaño, buffers...) por slot]
+     */
+    public double[] exportState() {
+        int total = 2;
+        for (double[][] buffers : state) {
+            total += 1 + Math.max(0, bufferSize(buffers)) * (buffers == null ? 0 : buffers.length);
+        }
+        double[] out = new double[total];
+        out[0] = step;
+        out[1] = state.length;
+        int offset = 2;
+        for (double[][] buffers : state) {
+            int size = bufferSize(buffers);
+            out[offset++] = size;
+            if (size < 0) continue;
+            for (double[] buffer : buffers) {
+                System.arraycopy(buffer, 0, out, offset, size);
+                offset += size;
+            }
+        }
+        return out;
+    }
+    
+    private static int bufferSize(double[][] buffers) {
+        return buffers == null || buffers.length == 0 ? -1 : buffers[0].length;
+    }
+    
+    /**
+     * Restaura el estado exportado con {@link #exportState()}
+     */
+    public void importState(double[] in) {
+        if (in.length < 2) {
+            return;
+        }
+        step = (long) in[0];
+        state = new double[(int) in[1]][][];
+        int offset = 2;
+        for (int slot = 0; slot < state.length; slot++) {
+            int size = (int) in[offset++];
+            if (size < 0) continue;
+            state[slot] = new double[stateBuffers()][size];
+            for (double[] buffer : state[slot]) {
+                System.arraycopy(in, offset, buffer, 0, size);
+                offset += size;
+            }
+        }
+    }
+}
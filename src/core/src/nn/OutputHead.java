@@ -0,0 +1,147 @@
+package nn;
+
+import math.ActivationFunction;
+
+/**
+ * Capa de salida de la red: activación + función de pérdida.
+ * SIGMOID: sigmoid por neurona con MSE (comportamiento histórico).
+ * SOFTMAX: softmax con cross-entropy; el gradiente respecto a los logits
+ * se reduce a p - y, sin pasar por la derivada de la activación.
+ */
+public enum OutputHead {
+    
+    SIGMOID {
+        @Override
+        public void activate(double[] z, int offset, int length, int stride) {
+            for (int i = 0; i < length; i++) {
+                int idx = offset + i * stride;
+                z[idx] = ActivationFunction.sigmoid(z[idx]);
+            }
+        }
+        
+        @Override
+        public double loss(double[] prediction, double[] target) {
+            double loss = 0;
+            for (int j = 0; j < prediction.length; j++) {
+                double diff = prediction[j] - target[j];
+                loss += diff * diff;
+            }
+            return loss / prediction.length;
+        }
+        
+        @Override
+        public double lossAndDelta(double[] z, double[] target, double[] out, double[] delta) {
+            double loss = 0;
+            for (int r = 0; r < z.length; r++) {
+                double p = ActivationFunction.sigmoid(z[r]);
+                double diff = p - target[r];
+                out[r] = p;
+                loss += diff * diff;
+                // MSE: dL/dz = (p - y) * sigmoid'(z), con sigmoid'(z) = p (1 - p)
+                delta[r] = diff * p * (1.0 - p);
+            }
+            return loss / z.length;
+        }
+    },
+    
+    SOFTMAX {
+        @Override
+        public void activate(double[] z, int offset, int length, int stride) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < length; i++) {
+                max = Math.max(max, z[offset + i * stride]);
+            }
+            double sum = 0;
+            for (int i = 0; i < length; i++) {
+                int idx = offset + i * stride;
+                double e = Math.exp(z[idx] - max);
+                z[idx] = e;
+                sum += e;
+            }
+            for (int i = 0; i < length; i++) {
+                z[offset + i * stride] /= sum;
+            }
+        }
+        
+        @Override
+        public double loss(double[] prediction, double[] target) {
+            double loss = 0;
+            for (int j = 0; j < prediction.length; j++) {
+                if (target[j] != 0) {
+                    loss -= target[j] * Math.log(Math.max(prediction[j], 1e-15));
+                }
+            }
+            return loss;
+        }
+        
+        @Override
+        public double lossAndDelta(double[] z, double[] target, double[] out, double[] delta) {
+            // log-sum-exp estable: log p_j = z_j - max - log(sum)
+            double max = Double.NEGATIVE_INFINITY;
+            for (double v : z) {
+                max = Math.max(max, v);
+            }
+            double sum = 0;
+            for (int r = 0; r < z.length; r++) {
+                double e = Math.exp(z[r] - max);
+                out[r] = e;
+                sum += e;
+            }
+            double logSum = Math.log(sum);
+            double targetSum = 0;
+            double loss = 0;
+            for (int r = 0; r < z.length; r++) {
+                double y = target[r];
+                targetSum += y;
+                loss += y * (max + logSum - z[r]);
+            }
+            for (int r = 0; r < z.length; r++) {
+                double p = out[r] / sum;
+                out[r] = p;
+                delta[r] = p * targetSum - target[r];
+            }
+            return loss;
+        }
+    };
+    
+    /**
+     * Aplica la activación en el lugar sobre length valores de z,
+     * empezando en offset y separados por stride (stride > 1 para columnas
+     * de una matriz row-major)
+     */
+    public abstract void activate(double[] z, int offset, int length, int stride);
+    
+    /**
+     * Pérdida de una predicción ya activada frente a su target
+     */
+    public abstract double loss(double[] prediction, double[] target);
+    
+    /**
+     * Paso fusionado para entrenamiento: a partir de los logits z calcula la
+     * salida activada (out), la pérdida (retorno) y dL/dz (delta)
+     */
+    public abstract double lossAndDelta(double[] z, double[] target, double[] out, double[] delta);
+    
+    /**
+     * Aplica la activación a cada columna de una matriz [salidas x batch]
+     */
+    public void activateColumns(double[] data, int rows, int cols) {
+        for (int j = 0; j < cols; j++) {
+            activate(data, j, rows, cols);
+        }
+    }
+    
+    /**
+     * Parsea el nombre usado en el CLI (sigmoid, softmax)
+     */
+    public static OutputHead parse(String name) {
+        switch (name.toLowerCase()) {
+            case "sigmoid":
+                return SIGMOID;
+            case "softmax":
+                return SOFTMAX;
+            default:
+                throw new IllegalArgumentException("Capa de salida desconocida: " + name + " (sigmoid, softmax)");
+        }
+    }
+}
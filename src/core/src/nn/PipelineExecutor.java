@@ -0,0 +1,514 @@
+package nn;
+
+import math.Gemm;
+import math.Matrix;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Ejecución por etapas (pipeline) de una red: las capas consecutivas se
+ * reparten entre varias etapas, cada una con su propio thread, y los
+ * micro-batches pasan de una etapa a la siguiente por colas acotadas. Así
+ * la etapa s + 1 procesa el micro-batch n mientras la etapa s procesa el
+ * n + 1 (estilo GPipe), sin réplicas de los pesos.
+ *
+ * Entrenamiento: el batch se divide en micro-batches; la última etapa
+ * calcula pérdida y delta y el backward recorre las etapas en sentido
+ * inverso acumulando gradientes. Cuando todos los micro-batches han vuelto
+ * a la primera etapa (flush) se aplica el optimizador una vez con el
+ * gradiente sumado del batch: las actualizaciones son síncronas y ningún
+ * micro-batch ve pesos de otro paso.
+ *
+ * Cada etapa admite QUEUE_CAPACITY micro-batches en espera hacia delante
+ * (backpressure). Los mensajes de vuelta nunca bloquean, así las dos
+ * direcciones no pueden bloquearse mutuamente. Dentro de una etapa las
+ * multiplicaciones son secuenciales: el paralelismo es entre etapas.
+ */
+public class PipelineExecutor implements AutoCloseable {
+    
+    /** Micro-batches en espera hacia delante por etapa */
+    static final int QUEUE_CAPACITY = 2;
+    
+    private final NeuralNetwork network;
+    private final int[] layers;
+    private final Stage[] stages;
+    
+    // Gradientes acumulados del batch en curso, por capa (los escribe la etapa dueña)
+    private final double[][] weightGradients;
+    private final double[][] biasGradients;
+    
+    /**
+     * @param numStages etapas pedidas; como mucho una por capa
+     */
+    public PipelineExecutor(NeuralNetwork network, int numStages) {
+        if (numStages < 1) {
+            throw new IllegalArgumentException("pipeline: se necesita al menos una etapa");
+        }
+        if (network.getConvolution() != null) {
+            throw new IllegalArgumentException("pipeline: no admite capas convolucionales");
+        }
+        this.network = network;
+        this.layers = network.getLayers();
+        int numLayers = layers.length - 1;
+        this.weightGradients = new double[numLayers][];
+        this.biasGradients = new double[numLayers][];
+        for (int l = 0; l < numLayers; l++) {
+            weightGradients[l] = new double[layers[l + 1] * layers[l]];
+            biasGradients[l] = new double[layers[l + 1]];
+        }
+        
+        int[] bounds = partition(layers, numStages);
+        this.stages = new Stage[bounds.length - 1];
+        for (int s = 0; s < stages.length; s++) {
+            stages[s] = new Stage(s, bounds[s], bounds[s + 1]);
+        }
+        for (Stage stage : stages) {
+            stage.thread.start();
+        }
+    }
+    
+    /**
+     * Reparte las capas en etapas contiguas de coste (multiplicaciones por
+     * ejemplo) parecido. Devuelve los límites: la etapa s tiene las capas
+     * [bounds[s], bounds[s + 1]).
+     */
+    static int[] partition(int[] layers, int numStages) {
+        int numLayers = layers.length - 1;
+        int count = Math.min(numStages, numLayers);
+        long[] prefix = new long[numLayers + 1];
+        for (int l = 0; l < numLayers; l++) {
+            prefix[l + 1] = prefix[l] + (long) layers[l] * layers[l + 1];
+        }
+        
+        int[] bounds = new int[count + 1];
+        bounds[count] = numLayers;
+        for (int s = 1; s < count; s++) {
+            double target = (double) prefix[numLayers] * s / count;
+            // Al menos una capa por etapa a cada lado del corte
+            int best = bounds[s - 1] + 1;
+            for (int l = best + 1; l <= numLayers - (count - s); l++) {
+                if (Math.abs(prefix[l] - target) < Math.abs(prefix[best] - target)) {
+                    best = l;
+                }
+            }
+            bounds[s] = best;
+        }
+        return bounds;
+    }
+    
+    /**
+     * Forward de inputs en micro-batches de microBatch ejemplos
+     */
+    public double[][] predict(double[][] inputs, int microBatch) {
+        if (inputs.length == 0) {
+            return new double[0][];
+        }
+        checkInputSize(inputs[0]);
+        int size = Math.max(1, microBatch);
+        Job job = new Job(false, inputs, null, null, 0, inputs.length, size);
+        run(job);
+        return job.outputs;
+    }
+    
+    /**
+     * Un paso de entrenamiento con los ejemplos order[from..to) divididos en
+     * microBatches micro-batches. Devuelve la suma de las pérdidas del batch.
+     */
+    public double trainBatch(double[][] inputs, double[][] targets, int[] order, int from, int to,
+                             int microBatches, Optimizer optimizer) {
+        checkInputSize(inputs[order[from]]);
+        int size = Math.max(1, (to - from + microBatches - 1) / Math.max(1, microBatches));
+        Job job = new Job(true, inputs, targets, order, from, to, size);
+        run(job);
+        
+        // Flush completo: todas las etapas terminaron el backward del batch
+        Matrix[] weights = network.getWeights();
+        Matrix[] biases = network.getBiases();
+        optimizer.beginStep();
+        for (int l = 0; l < weights.length; l++) {
+            optimizer.update(2 * l, weights[l].getBuffer(), weightGradients[l], true);
+            optimizer.update(2 * l + 1, biases[l].getBuffer(), biasGradients[l], false);
+            Arrays.fill(weightGradients[l], 0.0);
+            Arrays.fill(biasGradients[l], 0.0);
+        }
+        
+        double loss = 0;
+        for (double l : job.losses) {
+            loss += l;
+        }
+        return loss;
+    }
+    
+    private void checkInputSize(double[] input) {
+        if (input.length != layers[0]) {
+            throw new IllegalArgumentException(
+                String.format("Input size mismatch: esperado %d, recibido %d", layers[0], input.length));
+        }
+    }
+    
+    /**
+     * Envía los micro-batches a la primera etapa (bloqueando si su cola está
+     * llena) y espera a que terminen todos
+     */
+    private void run(Job job) {
+        Stage first = stages[0];
+        try {
+            for (int m = 0; m < job.microBatches && job.error == null; m++) {
+                int start = job.from + m * job.microSize;
+                int cols = Math.min(job.microSize, job.to - start);
+                double[] block = new double[layers[0] * cols];
+                for (int j = 0; j < cols; j++) {
+                    double[] x = job.inputs[job.row(start + j)];
+                    for (int f = 0; f < x.length; f++) {
+                        block[f * cols + j] = x[f];
+                    }
+                }
+                first.sendForward(new Message(job, m, false, block, cols));
+            }
+            job.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Pipeline interrumpido");
+        }
+        if (job.error != null) {
+            throw new IllegalStateException("Error en el pipeline: " + job.error.getMessage(), job.error);
+        }
+    }
+    
+    public int getStageCount() {
+        return stages.length;
+    }
+    
+    /**
+     * Capas de cada etapa, p. ej. "[0-1] [2] [3]"
+     */
+    public String describeStages() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : stages) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append('[').append(stage.firstLayer);
+            if (stage.endLayer - stage.firstLayer > 1) {
+                sb.append('-').append(stage.endLayer - 1);
+            }
+            sb.append(']');
+        }
+        return sb.toString();
+    }
+    
+    @Override
+    public void close() {
+        for (Stage stage : stages) {
+            stage.inbox.add(Message.STOP);
+        }
+        for (Stage stage : stages) {
+            try {
+                stage.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Un forward (inferencia) o un paso de entrenamiento dividido en micro-batches
+     */
+    private static final class Job {
+        final boolean training;
+        final double[][] inputs;
+        final double[][] targets;
+        final int[] order;
+        final int from;
+        final int to;
+        final int microSize;
+        final int microBatches;
+        final double[][] outputs;
+        final double[] losses;
+        final CountDownLatch done;
+        volatile Throwable error;
+        
+        Job(boolean training, double[][] inputs, double[][] targets, int[] order, int from, int to, int microSize) {
+            this.training = training;
+            this.inputs = inputs;
+            this.targets = targets;
+            this.order = order;
+            this.from = from;
+            this.to = to;
+            this.microSize = microSize;
+            this.microBatches = (to - from + microSize - 1) / microSize;
+            this.outputs = training ? null : new double[to - from][];
+            this.losses = training ? new double[microBatches] : null;
+            this.done = new CountDownLatch(microBatches);
+        }
+        
+        int row(int position) {
+            return order != null ? order[position] : position;
+        }
+        
+        void fail(Throwable t) {
+            error = t;
+            while (done.getCount() > 0) {
+                done.countDown();
+            }
+        }
+    }
+    
+    /**
+     * Micro-batch en tránsito: activaciones [filas x cols] hacia delante o
+     * dL/da de la salida de la etapa hacia atrás
+     */
+    private static final class Message {
+        static final Message STOP = new Message(null, -1, false, null, 0);
+        
+        final Job job;
+        final int micro;
+        final boolean backward;
+        final double[] data;
+        final int cols;
+        
+        Message(Job job, int micro, boolean backward, double[] data, int cols) {
+            this.job = job;
+            this.micro = micro;
+            this.backward = backward;
+            this.data = data;
+            this.cols = cols;
+        }
+    }
+    
+    /**
+     * Capas [firstLayer, endLayer) ejecutadas por un thread propio
+     */
+    private final class Stage implements Runnable {
+        final int index;
+        final int firstLayer;
+        final int endLayer;
+        final LinkedBlockingQueue<Message> inbox = new LinkedBlockingQueue<>();
+        final Semaphore forwardSlots = new Semaphore(QUEUE_CAPACITY);
+        final Thread thread;
+        
+        // Entrenamiento: por micro-batch, activaciones (entrada de cada capa
+        // y salida de la etapa) y z de cada capa, hasta su backward
+        private Job cacheJob;
+        private double[][][] activations;
+        private double[][][] zValues;
+        // W^T de cada capa, calculado una vez por paso
+        private double[][] transposed;
+        private Job transposedJob;
+        
+        Stage(int index, int firstLayer, int endLayer) {
+            this.index = index;
+            this.firstLayer = firstLayer;
+            this.endLayer = endLayer;
+            this.transposed = new double[endLayer - firstLayer][];
+            this.thread = new Thread(this, "pipeline-stage-" + index);
+            this.thread.setDaemon(true);
+        }
+        
+        void sendForward(Message message) throws InterruptedException {
+            forwardSlots.acquire();
+            inbox.add(message);
+        }
+        
+        @Override
+        public void run() {
+            while (true) {
+                Message message;
+                try {
+                    message = inbox.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (message == Message.STOP) {
+                    return;
+                }
+                if (!message.backward) {
+                    forwardSlots.release();
+                }
+                Job job = message.job;
+                if (job.error != null) {
+                    continue;
+                }
+                try {
+                    if (message.backward) {
+                        backward(job, message.micro, message.data, message.cols);
+                    } else {
+                        forward(job, message.micro, message.data, message.cols);
+                    }
+                } catch (InterruptedException e) {
+                    job.fail(e);
+                    return;
+                } catch (Throwable t) {
+                    job.fail(t);
+                }
+            }
+        }
+        
+        private void forward(Job job, int micro, double[] input, int cols) throws InterruptedException {
+            Matrix[] weights = network.getWeights();
+            Matrix[] biases = network.getBiases();
+            Activation[] plan = network.getHiddenActivations();
+            int outputLayer = weights.length - 1;
+            int count = endLayer - firstLayer;
+            if (job.training) {
+                prepareCache(job);
+                activations[micro] = new double[count + 1][];
+                zValues[micro] = new double[count][];
+                activations[micro][0] = input;
+            }
+            
+            double[] a = input;
+            for (int k = 0; k < count; k++) {
+                int l = firstLayer + k;
+                int rows = layers[l + 1];
+                double[] z = new double[rows * cols];
+                for (int r = 0; r < rows; r++) {
+                    Arrays.fill(z, r * cols, (r + 1) * cols, biases[l].get(r, 0));
+                }
+                // Los pesos pueden estar mapeados (inferencia con MappedModel)
+                weights[l].multiplyAdd(a, z, cols, 1);
+                
+                if (l == outputLayer) {
+                    if (job.training) {
+                        zValues[micro][k] = z;
+                        backward(job, micro, outputDelta(job, micro, z, cols), cols);
+                    } else {
+                        network.getOutputHead().activateColumns(z, rows, cols);
+                        int start = micro * job.microSize;
+                        for (int j = 0; j < cols; j++) {
+                            double[] out = new double[rows];
+                            for (int r = 0; r < rows; r++) {
+                                out[r] = z[r * cols + j];
+                            }
+                            job.outputs[start + j] = out;
+                        }
+                        job.done.countDown();
+                    }
+                    return;
+                }
+                
+                double[] next = new double[rows * cols];
+                plan[l].apply(z, next);
+                if (job.training) {
+                    zValues[micro][k] = z;
+                    activations[micro][k + 1] = next;
+                }
+                a = next;
+            }
+            stages[index + 1].sendForward(new Message(job, micro, false, a, cols));
+        }
+        
+        /**
+         * Pérdida del micro-batch y dL/dz de la capa de salida, columna a columna
+         */
+        private double[] outputDelta(Job job, int micro, double[] z, int cols) {
+            OutputHead head = network.getOutputHead();
+            int rows = layers[layers.length - 1];
+            double[] delta = new double[rows * cols];
+            double[] zCol = new double[rows];
+            double[] out = new double[rows];
+            double[] dCol = new double[rows];
+            int start = job.from + micro * job.microSize;
+            double loss = 0;
+            for (int j = 0; j < cols; j++) {
+                for (int r = 0; r < rows; r++) {
+                    zCol[r] = z[r * cols + j];
+                }
+                loss += head.lossAndDelta(zCol, job.targets[job.row(start + j)], out, dCol);
+                for (int r = 0; r < rows; r++) {
+                    delta[r * cols + j] = dCol[r];
+                }
+            }
+            job.losses[micro] = loss;
+            return delta;
+        }
+        
+        /**
+         * Backward de las capas de la etapa. En la última etapa grad es dL/dz
+         * de la capa de salida; en el resto, dL/da de la salida de la etapa.
+         */
+        private void backward(Job job, int micro, double[] grad, int cols) {
+            Matrix[] weights = network.getWeights();
+            Activation[] plan = network.getHiddenActivations();
+            int count = endLayer - firstLayer;
+            double[][] acts = activations[micro];
+            double[][] zs = zValues[micro];
+            ensureTransposed(job, weights);
+            
+            double[] delta = grad;
+            if (endLayer < layers.length - 1) {
+                plan[endLayer - 1].backward(zs[count - 1], acts[count], delta);
+            }
+            for (int k = count - 1; k >= 0; k--) {
+                int l = firstLayer + k;
+                int rows = layers[l + 1];
+                int inDim = layers[l];
+                double[] a = acts[k];
+                
+                // gradW += delta * a^T, gradB += suma de las columnas de delta
+                double[] aT = new double[cols * inDim];
+                for (int f = 0; f < inDim; f++) {
+                    for (int j = 0; j < cols; j++) {
+                        aT[j * inDim + f] = a[f * cols + j];
+                    }
+                }
+                Gemm.multiply(delta, aT, weightGradients[l], rows, cols, inDim, 1);
+                double[] gradB = biasGradients[l];
+                for (int r = 0; r < rows; r++) {
+                    double sum = 0;
+                    for (int j = 0; j < cols; j++) {
+                        sum += delta[r * cols + j];
+                    }
+                    gradB[r] += sum;
+                }
+                
+                if (l == 0) {
+                    break;
+                }
+                // dL/da de la entrada de la capa = W^T * delta
+                double[] prev = new double[inDim * cols];
+                Gemm.multiply(transposed[k], delta, prev, inDim, rows, cols, 1);
+                if (k == 0) {
+                    stages[index - 1].inbox.add(new Message(job, micro, true, prev, cols));
+                    break;
+                }
+                plan[l - 1].backward(zs[k - 1], acts[k], prev);
+                delta = prev;
+            }
+            activations[micro] = null;
+            zValues[micro] = null;
+            if (index == 0) {
+                job.done.countDown();
+            }
+        }
+        
+        private void prepareCache(Job job) {
+            if (cacheJob != job) {
+                cacheJob = job;
+                activations = new double[job.microBatches][][];
+                zValues = new double[job.microBatches][][];
+            }
+        }
+        
+        private void ensureTransposed(Job job, Matrix[] weights) {
+            if (transposedJob == job) {
+                return;
+            }
+            transposedJob = job;
+            for (int k = 0; k < transposed.length; k++) {
+                int l = firstLayer + k;
+                int rows = layers[l + 1];
+                int inDim = layers[l];
+                double[] w = weights[l].getBuffer();
+                double[] t = transposed[k] != null ? transposed[k] : new double[w.length];
+                for (int r = 0; r < rows; r++) {
+                    for (int c = 0; c < inDim; c++) {
+                        t[c * rows + r] = w[r * inDim + c];
+                    }
+                }
+                transposed[k] = t;
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package nn;
+
+import math.CsrMatrix;
+import math.Matrix;
+import java.util.Arrays;
+
+/**
+ * Poda por magnitud de los pesos de las capas densas.
+ *
+ * Pone a cero la fracción sparsity de pesos con menor valor absoluto, en
+ * todas las capas juntas (global: cada capa queda con la densidad que le
+ * corresponda, la de salida suele conservar más) o capa a capa (todas con
+ * la misma). Los bias y las capas convolucionales no se podan.
+ *
+ * Los pesos podados quedan marcados en la red: mientras se siga
+ * entrenando vuelven a cero después de cada paso del optimizador. Con la
+ * poda gradual (ver {@link #gradualSparsity}) la fracción sube por epochs
+ * hasta el objetivo y el resto del entrenamiento recupera la accuracy.
+ * Al guardar, las capas con mayoría de ceros se escriben en CSR y al
+ * cargar para inferencia usan el producto disperso.
+ */
+public final class Pruning {
+    
+    /**
+     * Densidad máxima con la que una capa usa el kernel disperso en
+     * inferencia. Medido con una capa 64x784: el GEMV en CSR empata con el
+     * denso hacia 0.9 y es 2x más rápido a 0.5; por encima de 0.5 la
+     * ganancia no compensa tener los pesos en dos formatos.
+     */
+    public static final double SPARSE_KERNEL_DENSITY = 0.5;
+    
+    // Fracción de los epochs durante la que sube la poda gradual
+    private static final double RAMP_FRACTION = 0.75;
+    
+    private Pruning() {
+    }
+    
+    /**
+     * Poda la red hasta sparsity (fracción de pesos a cero en [0, 1)).
+     * Devuelve la densidad resultante de cada capa densa.
+     */
+    public static double[] prune(NeuralNetwork network, double sparsity, boolean global) {
+        if (sparsity < 0 || sparsity >= 1) {
+            throw new IllegalArgumentException("La fracción de poda debe estar en [0, 1)");
+        }
+        if (network.isMapped()) {
+            throw new IllegalArgumentException("No se puede podar un modelo mapeado (solo lectura)");
+        }
+        double[][] weights = new double[network.getWeights().length][];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = network.getWeights()[i].getBuffer();
+        }
+        
+        if (global) {
+            int total = 0;
+            for (double[] w : weights) {
+                total += w.length;
+            }
+            double[] magnitudes = new double[total];
+            int offset = 0;
+            for (double[] w : weights) {
+                for (double v : w) {
+                    magnitudes[offset++] = Math.abs(v);
+                }
+            }
+            int count = (int) (sparsity * total);
+            double threshold = threshold(magnitudes, count);
+            // Los empates en el umbral se podan en orden hasta completar count
+            int below = 0;
+            for (double m : magnitudes) {
+                if (m < threshold) below++;
+            }
+            int ties = count - below;
+            for (double[] w : weights) {
+                ties = zero(w, threshold, ties);
+            }
+        } else {
+            for (double[] w : weights) {
+                double[] magnitudes = new double[w.length];
+                for (int k = 0; k < w.length; k++) {
+                    magnitudes[k] = Math.abs(w[k]);
+                }
+                int count = (int) (sparsity * w.length);
+                double threshold = threshold(magnitudes, count);
+                int below = 0;
+                for (double m : magnitudes) {
+                    if (m < threshold) below++;
+                }
+                zero(w, threshold, count - below);
+            }
+        }
+        
+        double[] densities = new double[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            network.setPrunedWeights(i, zeroIndices(weights[i]));
+            densities[i] = 1.0 - (double) network.getPrunedWeights(i).length / weights[i].length;
+        }
+        return densities;
+    }
+    
+    /**
+     * Fracción de poda al terminar el epoch (1..epochs) de una poda gradual
+     * hacia target: crece como 1 - (1 - t)^3 (rápido al principio, cuando
+     * sobran pesos redundantes) y alcanza target al 75% de los epochs
+     */
+    public static double gradualSparsity(double target, int epoch, int epochs) {
+        int ramp = Math.max(1, (int) Math.round(epochs * RAMP_FRACTION));
+        double progress = Math.min(1.0, (double) epoch / ramp);
+        double remaining = 1.0 - progress;
+        return target * (1.0 - remaining * remaining * remaining);
+    }
+    
+    /**
+     * Fracción de no-ceros de los pesos de cada capa densa
+     */
+    public static double[] densities(NeuralNetwork network) {
+        Matrix[] weights = network.getWeights();
+        double[] densities = new double[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            // copy: sin escribir en la matriz (conserva el kernel disperso y los mapeos)
+            densities[i] = CsrMatrix.density(weights[i].copy().getBuffer());
+        }
+        return densities;
+    }
+    
+    /**
+     * Densidades por capa como "[0.20, 0.20, 0.95]"
+     */
+    public static String format(double[] densities) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < densities.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(String.format(java.util.Locale.ROOT, "%.2f", densities[i]));
+        }
+        return sb.append("]").toString();
+    }
+    
+    /**
+     * Valor absoluto del count-ésimo peso más pequeño: se poda todo lo que
+     * está por debajo (0 si count es 0)
+     */
+    private static double threshold(double[] magnitudes, int count) {
+        if (count == 0) {
+            return 0.0;
+        }
+        double[] sorted = magnitudes.clone();
+        Arrays.sort(sorted);
+        return sorted[count - 1];
+    }
+    
+    /**
+     * Pone a cero los pesos por debajo del umbral y hasta ties de los que
+     * lo igualan; devuelve los empates que quedan por podar
+     */
+    private static int zero(double[] w, double threshold, int ties) {
+        for (int k = 0; k < w.length; k++) {
+            double m = Math.abs(w[k]);
+            if (m < threshold) {
+                w[k] = 0.0;
+            } else if (m == threshold && ties > 0) {
+                w[k] = 0.0;
+                ties--;
+            }
+        }
+        return ties;
+    }
+    
+    private static int[] zeroIndices(double[] w) {
+        int count = 0;
+        for (double v : w) {
+            if (v == 0) count++;
+        }
+        int[] indices = new int[count];
+        int j = 0;
+        for (int k = 0; k < w.length; k++) {
+            if (w[k] == 0) indices[j++] = k;
+        }
+        return indices;
+    }
+}
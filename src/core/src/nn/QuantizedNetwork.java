@@ -0,0 +1,337 @@
+package nn;
+
+import math.Matrix;
+import data.Preprocessor;
+import data.TrainingData;
+import java.io.*;
+
+/**
+ * Versión cuantizada (int8) de una red entrenada, solo para inferencia.
+ *
+ * Pesos: int8 simétrico con una escala por fila (w ≈ q * rowScale[fila]).
+ * Activaciones: se cuantizan a la entrada de cada capa con una escala
+ * calibrada sobre una muestra del dataset de entrenamiento. Si en la
+ * calibración la entrada nunca es negativa (píxeles, salida de ReLU) se usa
+ * el rango sin signo [0, 255], en otro caso el simétrico [-127, 127].
+ * El producto se acumula en int32 y se re-escala a double antes de sumar
+ * el bias y aplicar la activación.
+ *
+ * La normalización del modelo (x * scale + shift) se guarda con él y se
+ * aplica dentro del mismo bucle que cuantiza la entrada de la primera capa:
+ * predict recibe datos crudos sin una pasada extra. No se pliega en los
+ * pesos int8 porque la escala de entrada es una sola para todo el vector
+ * y las features crudas pueden tener rangos muy distintos.
+ */
+public class QuantizedNetwork {
+    
+    private static final int MAGIC = 0x514E4E38; // "QNN8"
+    private static final int VERSION = 4;   // v2 capa de salida, v3 activaciones ocultas, v4 normalización
+    
+    private final int[] layers;
+    private final byte[][] weights;      // [capa][fila * cols + col]
+    private final float[][] rowScales;   // [capa][fila]
+    private final float[][] biases;      // [capa][fila]
+    private final float[] inputScales;   // escala de la activación de entrada a cada capa
+    private final boolean[] unsignedInputs;
+    private final Activation[] hiddenActivations;
+    private final OutputHead outputHead;
+    private final double[] inputScale;   // normalización de la entrada; null = datos ya normalizados
+    private final double[] inputShift;
+    
+    private QuantizedNetwork(int[] layers, byte[][] weights, float[][] rowScales,
+                             float[][] biases, float[] inputScales, boolean[] unsignedInputs,
+                             Activation[] hiddenActivations, OutputHead outputHead,
+                             double[] inputScale, double[] inputShift) {
+        this.layers = layers;
+        this.inputScale = inputScale;
+        this.inputShift = inputShift;
+        this.hiddenActivations = hiddenActivations;
+        this.outputHead = outputHead;
+        this.weights = weights;
+        this.rowScales = rowScales;
+        this.biases = biases;
+        this.inputScales = inputScales;
+        this.unsignedInputs = unsignedInputs;
+    }
+    
+    /**
+     * Cuantización post-entrenamiento.
+     * Usa hasta maxSamples ejemplos (equiespaciados) de calibration para
+     * estimar el rango de las activaciones de cada capa. calibration tiene
+     * las entradas tal como llegan a predict: si el modelo guarda su
+     * normalización, sin normalizar (se aplica aquí y se copia al modelo
+     * cuantizado).
+     */
+    public static QuantizedNetwork quantize(NeuralNetwork network, TrainingData calibration, int maxSamples) {
+        if (network.getConvolution() != null) {
+            throw new IllegalArgumentException("La cuantización int8 no admite capas convolucionales");
+        }
+        Matrix[] w = network.getWeights();
+        Matrix[] b = network.getBiases();
+        Activation[] plan = network.getHiddenActivations();
+        int numLayers = w.length;
+        
+        // 1. Calibrar rangos de activación con el modelo en punto flotante
+        double[] maxAbs = new double[numLayers];
+        boolean[] unsigned = new boolean[numLayers];
+        java.util.Arrays.fill(unsigned, true);
+        
+        Preprocessor pre = network.getPreprocessor();
+        int size = calibration.getSize();
+        int samples = Math.max(1, Math.min(maxSamples, size));
+        double stride = (double) size / samples;
+        for (int s = 0; s < samples; s++) {
+            double[] activation = calibration.getExample((int) (s * stride)).input;
+            if (pre != null) {
+                activation = activation.clone();
+                pre.apply(activation);
+            }
+            for (int i = 0; i < numLayers; i++) {
+                for (double v : activation) {
+                    if (v < 0) unsigned[i] = false;
+                    maxAbs[i] = Math.max(maxAbs[i], Math.abs(v));
+                }
+                activation = floatLayer(w[i], b[i], activation,
+                                        i < numLayers - 1 ? plan[i] : null, network.getOutputHead());
+            }
+        }
+        
+        // 2. Cuantizar pesos por fila
+        byte[][] qWeights = new byte[numLayers][];
+        float[][] qScales = new float[numLayers][];
+        float[][] qBiases = new float[numLayers][];
+        float[] inScales = new float[numLayers];
+        
+        for (int i = 0; i < numLayers; i++) {
+            int rows = w[i].getRows();
+            int cols = w[i].getCols();
+            qWeights[i] = new byte[rows * cols];
+            qScales[i] = new float[rows];
+            qBiases[i] = new float[rows];
+            
+            for (int r = 0; r < rows; r++) {
+                double rowMax = 0;
+                for (int c = 0; c < cols; c++) {
+                    rowMax = Math.max(rowMax, Math.abs(w[i].get(r, c)));
+                }
+                double scale = rowMax > 0 ? rowMax / 127.0 : 1.0;
+                qScales[i][r] = (float) scale;
+                for (int c = 0; c < cols; c++) {
+                    qWeights[i][r * cols + c] = (byte) clamp(Math.round(w[i].get(r, c) / scale), -127, 127);
+                }
+                qBiases[i][r] = (float) b[i].get(r, 0);
+            }
+            
+            double levels = unsigned[i] ? 255.0 : 127.0;
+            inScales[i] = (float) (maxAbs[i] > 0 ? maxAbs[i] / levels : 1.0);
+        }
+        
+        return new QuantizedNetwork(network.getLayers().clone(), qWeights, qScales, qBiases, inScales, unsigned,
+                                    plan.clone(), network.getOutputHead(),
+                                    pre != null ? pre.getScale() : null, pre != null ? pre.getShift() : null);
+    }
+    
+    /**
+     * Capa en punto flotante usada solo durante la calibración
+     * (activation == null en la capa de salida, que usa head)
+     */
+    private static double[] floatLayer(Matrix w, Matrix b, double[] input, Activation activation, OutputHead head) {
+        double[] out = new double[w.getRows()];
+        for (int r = 0; r < out.length; r++) {
+            double sum = b.get(r, 0);
+            for (int c = 0; c < input.length; c++) {
+                sum += w.get(r, c) * input[c];
+            }
+            out[r] = sum;
+        }
+        if (activation != null) {
+            activation.apply(out, out);
+        } else {
+            head.activate(out, 0, out.length, 1);
+        }
+        return out;
+    }
+    
+    /**
+     * Forward con aritmética entera (acumulación int32)
+     */
+    public double[] predict(double[] input) {
+        if (input.length != layers[0]) {
+            throw new IllegalArgumentException(
+                String.format("Input size mismatch: esperado %d, recibido %d",
+                              layers[0], input.length));
+        }
+        
+        double[] activation = input;
+        int[] q = new int[maxWidth()];
+        
+        for (int i = 0; i < weights.length; i++) {
+            int cols = layers[i];
+            int rows = layers[i + 1];
+            
+            // Cuantizar la entrada de la capa (normalizándola en la primera)
+            float inScale = inputScales[i];
+            int lo = unsignedInputs[i] ? 0 : -127;
+            int hi = unsignedInputs[i] ? 255 : 127;
+            if (i == 0 && inputScale != null) {
+                for (int c = 0; c < cols; c++) {
+                    q[c] = clamp(Math.round((activation[c] * inputScale[c] + inputShift[c]) / inScale), lo, hi);
+                }
+            } else {
+                for (int c = 0; c < cols; c++) {
+                    q[c] = clamp(Math.round(activation[c] / inScale), lo, hi);
+                }
+            }
+            
+            byte[] w = weights[i];
+            float[] scales = rowScales[i];
+            float[] bias = biases[i];
+            double[] out = new double[rows];
+            
+            for (int r = 0; r < rows; r++) {
+                int acc = 0;
+                int base = r * cols;
+                for (int c = 0; c < cols; c++) {
+                    acc += w[base + c] * q[c];
+                }
+                out[r] = acc * ((double) scales[r] * inScale) + bias[r];
+            }
+            if (i < hiddenActivations.length) {
+                hiddenActivations[i].apply(out, out);
+            } else {
+                outputHead.activate(out, 0, rows, 1);
+            }
+            activation = out;
+        }
+        
+        return activation;
+    }
+    
+    public int predictClass(double[] input) {
+        return NeuralNetwork.classIndex(predict(input));
+    }
+    
+    private int maxWidth() {
+        int max = 0;
+        for (int size : layers) {
+            max = Math.max(max, size);
+        }
+        return max;
+    }
+    
+    private static int clamp(long value, int lo, int hi) {
+        return (int) Math.max(lo, Math.min(hi, value));
+    }
+    
+    /**
+     * Guarda el modelo cuantizado en formato binario propio (.q8)
+     */
+    public void save(String filePath) throws IOException {
+        File file = new File(filePath);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(outputHead.name());
+            out.writeInt(layers.length);
+            for (int size : layers) {
+                out.writeInt(size);
+            }
+            for (Activation activation : hiddenActivations) {
+                out.writeUTF(activation.name());
+            }
+            for (int i = 0; i < weights.length; i++) {
+                out.writeFloat(inputScales[i]);
+                out.writeBoolean(unsignedInputs[i]);
+                for (float s : rowScales[i]) out.writeFloat(s);
+                for (float v : biases[i]) out.writeFloat(v);
+                out.write(weights[i]);
+            }
+            out.writeBoolean(inputScale != null);
+            if (inputScale != null) {
+                for (int c = 0; c < inputScale.length; c++) {
+                    out.writeDouble(inputScale[c]);
+                    out.writeDouble(inputShift[c]);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Carga un modelo cuantizado guardado con {@link #save(String)}
+     */
+    public static QuantizedNetwork load(String filePath) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(filePath)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Formato de modelo cuantizado inválido: " + filePath);
+            }
+            int version = in.readInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Versión de modelo cuantizado no soportada: " + version);
+            }
+            OutputHead head = version >= 2 ? OutputHead.valueOf(in.readUTF()) : OutputHead.SIGMOID;
+            
+            int[] layers = new int[in.readInt()];
+            for (int i = 0; i < layers.length; i++) {
+                layers[i] = in.readInt();
+            }
+            
+            int numLayers = layers.length - 1;
+            Activation[] plan = new Activation[numLayers - 1];
+            for (int i = 0; i < plan.length; i++) {
+                plan[i] = version >= 3 ? Activation.valueOf(in.readUTF()) : Activation.RELU;
+            }
+            byte[][] weights = new byte[numLayers][];
+            float[][] scales = new float[numLayers][];
+            float[][] biases = new float[numLayers][];
+            float[] inScales = new float[numLayers];
+            boolean[] unsigned = new boolean[numLayers];
+            
+            for (int i = 0; i < numLayers; i++) {
+                int rows = layers[i + 1];
+                inScales[i] = in.readFloat();
+                unsigned[i] = in.readBoolean();
+                scales[i] = new float[rows];
+                biases[i] = new float[rows];
+                for (int r = 0; r < rows; r++) scales[i][r] = in.readFloat();
+                for (int r = 0; r < rows; r++) biases[i][r] = in.readFloat();
+                weights[i] = new byte[rows * layers[i]];
+                in.readFully(weights[i]);
+            }
+            
+            double[] inputScale = null;
+            double[] inputShift = null;
+            if (version >= 4 && in.readBoolean()) {
+                inputScale = new double[layers[0]];
+                inputShift = new double[layers[0]];
+                for (int c = 0; c < layers[0]; c++) {
+                    inputScale[c] = in.readDouble();
+                    inputShift[c] = in.readDouble();
+                }
+            }
+            
+            return new QuantizedNetwork(layers, weights, scales, biases, inScales, unsigned, plan, head,
+                                        inputScale, inputShift);
+        }
+    }
+    
+    /**
+     * Tamaño de los parámetros en memoria (bytes)
+     */
+    public long getSizeBytes() {
+        long total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += weights[i].length + 4L * (rowScales[i].length + biases[i].length) + 4;
+        }
+        return total;
+    }
+    
+    public int[] getLayers() {
+        return layers;
+    }
+}
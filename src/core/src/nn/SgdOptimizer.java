@@ -0,0 +1,72 @@
+package nn;
+
+/**
+ * SGD con momentum opcional (clásico o Nesterov).
+ * momentum = 0 equivale al SGD plano histórico: p -= lr * g
+ */
+public class SgdOptimizer extends Optimizer {
+    
+    private final double momentum;
+    private final boolean nesterov;
+    
+    public SgdOptimizer(double learningRate, double momentum, boolean nesterov) {
+        super(learningRate);
+        if (momentum < 0 || momentum >= 1) {
+            throw new IllegalArgumentException("momentum debe estar en [0, 1)");
+        }
+        this.momentum = momentum;
+        this.nesterov = nesterov;
+    }
+    
+    @Override
+    protected int stateBuffers() {
+        return momentum > 0 ? 1 : 0;
+    }
+    
+    @Override
+    public void update(int slot, double[] param, double[] grad, boolean decay) {
+        double lr = learningRate;
+        
+        if (momentum == 0) {
+            for (int i = 0; i < param.length; i++) {
+                param[i] -= lr * grad[i];
+            }
+            return;
+        }
+        
+        // v = mu * v + g
+        // clásico:  p -= lr * v
+        // Nesterov: p -= lr * (g + mu * v)
+        double[] velocity = slotState(slot, param.length)[0];
+        double mu = momentum;
+        if (nesterov) {
+            for (int i = 0; i < param.length; i++) {
+                double v = mu * velocity[i] + grad[i];
+                velocity[i] = v;
+                param[i] -= lr * (grad[i] + mu * v);
+            }
+        } else {
+            for (int i = 0; i < param.length; i++) {
+                double v = mu * velocity[i] + grad[i];
+                velocity[i] = v;
+                param[i] -= lr * v;
+            }
+        }
+    }
+    
+    @Override
+    public void updateColumns(int slot, double[] param, double[] grad, int cols,
+                              int[] columns, int count, boolean decay) {
+        if (momentum > 0) {
+            super.updateColumns(slot, param, grad, cols, columns, count, decay);
+            return;
+        }
+        double lr = learningRate;
+        for (int row = 0; row < param.length; row += cols) {
+            for (int k = 0; k < count; k++) {
+                int i = row + columns[k];
+                param[i] -= lr * grad[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package nn;
+
+import java.util.Random;
+
+/**
+ * Calentamiento del JIT antes de atender peticiones reales.
+ *
+ * Ejecuta forward (predict y predictBatch) y backward (trainStep) sobre una
+ * red sintética con la misma forma que el modelo: mismas capas, activaciones
+ * y capa de salida (y convoluciones), así se compilan exactamente los
+ * kernels (GEMM, GEMV, activaciones, im2col) que usará el modelo real.
+ * La red del modelo no se toca.
+ */
+public final class Warmup {
+    
+    // Ejemplos por batch sintético
+    private static final int BATCH = 32;
+    
+    private Warmup() {
+    }
+    
+    /**
+     * Calienta con la forma de model durante aproximadamente millis ms
+     */
+    public static Result run(NeuralNetwork model, long millis) {
+        return runOn(model.untrainedCopy(), millis);
+    }
+    
+    public static Result run(int[] layers, Activation[] hiddenActivations, OutputHead head, long millis) {
+        return runOn(new NeuralNetwork(layers.clone(), hiddenActivations, head), millis);
+    }
+    
+    private static Result runOn(NeuralNetwork network, long millis) {
+        int[] layers = network.getLayers();
+        int inputSize = network.getInputSize();
+        int outputSize = layers[layers.length - 1];
+        
+        Random random = new Random(42);
+        double[][] inputs = new double[BATCH][inputSize];
+        double[][] targets = new double[BATCH][outputSize];
+        for (int i = 0; i < BATCH; i++) {
+            for (int j = 0; j < inputSize; j++) {
+                inputs[i][j] = random.nextGaussian();
+            }
+            targets[i][random.nextInt(outputSize)] = 1.0;
+        }
+        // Paso pequeño: solo interesa ejecutar el código, no entrenar
+        Optimizer optimizer = Optimizer.create("sgd", 1e-4, 0, 0);
+        
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+        long first = 0;
+        long last = 0;
+        int iterations = 0;
+        do {
+            long start = System.nanoTime();
+            network.predictBatch(inputs, 0, BATCH);
+            network.predict(inputs[iterations % BATCH]);
+            for (int i = 0; i < BATCH; i++) {
+                network.trainStep(inputs[i], targets[i], optimizer);
+            }
+            last = System.nanoTime() - start;
+            if (iterations == 0) {
+                first = last;
+            }
+            iterations++;
+        } while (System.nanoTime() < deadline);
+        
+        return new Result(iterations, first, last);
+    }
+    
+    /**
+     * Iteraciones hechas y duración de la primera y la última
+     * (la diferencia es lo que el JIT ahorra a la primera petición real)
+     */
+    public static class Result {
+        public final int iterations;
+        public final long firstNanos;
+        public final long lastNanos;
+        
+        Result(int iterations, long firstNanos, long lastNanos) {
+            this.iterations = iterations;
+            this.firstNanos = firstNanos;
+            this.lastNanos = lastNanos;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.ROOT, "%d iteraciones, primera %.2f ms, última %.2f ms",
+                                 iterations, firstNanos / 1e6, lastNanos / 1e6);
+        }
+    }
+}
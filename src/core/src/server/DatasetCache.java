@@ -0,0 +1,115 @@
+package server;
+
+import data.TrainingData;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Datasets ya parseados y normalizados del daemon de entrenamiento, por
+ * ruta y variante (normalización, formato disperso).
+ *
+ * Una entrada vale mientras el archivo no cambie (tamaño y fecha). Los
+ * trabajos comparten la instancia: el entrenamiento solo la lee. Si dos
+ * trabajos piden a la vez el mismo dataset, uno lo carga y el otro espera
+ * ese resultado. Se conservan los maxEntries usados más recientemente.
+ */
+public class DatasetCache {
+    
+    /**
+     * Carga de un dataset que no está en la caché
+     */
+    @FunctionalInterface
+    public interface Loader {
+        TrainingData load() throws IOException;
+    }
+    
+    private final int maxEntries;
+    private final LinkedHashMap<String, CompletableFuture<TrainingData>> entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+    private long hits;
+    private long misses;
+    
+    public DatasetCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("datasets debe ser >= 1");
+        }
+        this.maxEntries = maxEntries;
+    }
+    
+    /**
+     * Dataset de path con la variante dada (p. ej. "minmax"), cargado con
+     * loader si no está o el archivo cambió
+     */
+    public TrainingData get(String path, String variant, Loader loader) throws IOException {
+        File file = new File(path);
+        if (!file.exists()) {
+            throw new IOException("Archivo no encontrado: " + path);
+        }
+        String key = file.getCanonicalPath() + "|" + file.length() + "|" + file.lastModified() + "|" + variant;
+        
+        CompletableFuture<TrainingData> future;
+        boolean load = false;
+        synchronized (this) {
+            future = entries.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                entries.put(key, future);
+                load = true;
+                misses++;
+                evict();
+            } else {
+                hits++;
+            }
+        }
+        
+        if (load) {
+            try {
+                future.complete(loader.load());
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    entries.remove(key);
+                }
+                future.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+        }
+    }
+    
+    /**
+     * Descarta los menos usados por encima de maxEntries (los trabajos que
+     * ya los tienen siguen usándolos)
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, CompletableFuture<TrainingData>>> it = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+    
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    public synchronized long getHits() {
+        return hits;
+    }
+    
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
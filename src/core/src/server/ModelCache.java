@@ -0,0 +1,69 @@
+package server;
+
+import nn.NeuralNetwork;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Modelos cargados en memoria por el servidor, por model_id.
+ * Un modelo se vuelve a leer si su archivo .bin cambia (re-entrenamiento);
+ * las predicciones en curso siguen usando la instancia anterior.
+ */
+public class ModelCache {
+    
+    private final String modelsDir;
+    private final ConcurrentHashMap<String, Entry> models = new ConcurrentHashMap<>();
+    
+    public ModelCache(String modelsDir) {
+        this.modelsDir = modelsDir;
+    }
+    
+    /**
+     * Modelo listo para predecir con entradas crudas (normalización plegada;
+     * NeuralNetwork.predict no modifica la red, así que una instancia se
+     * comparte entre todas las conexiones)
+     */
+    public NeuralNetwork get(String modelId) throws IOException {
+        if (!modelId.matches("[A-Za-z0-9_.-]+") || modelId.contains("..")) {
+            throw new IllegalArgumentException("model_id inválido: " + modelId);
+        }
+        File file = new File(modelsDir, modelId + ".bin");
+        if (!file.exists()) {
+            throw new IOException("Modelo no encontrado: " + modelId);
+        }
+        long modified = file.lastModified();
+        
+        Entry entry = models.get(modelId);
+        if (entry != null && entry.modified == modified) {
+            return entry.network;
+        }
+        
+        // Un solo thread carga cada versión; el resto espera a ese resultado
+        Entry loaded = models.compute(modelId, (id, current) -> {
+            if (current != null && current.modified == modified) {
+                return current;
+            }
+            try {
+                return new Entry(NeuralNetwork.loadForInference(file.getPath()), modified);
+            } catch (IOException | ClassNotFoundException e) {
+                throw new IllegalStateException("No se pudo cargar el modelo " + id + ": " + e.getMessage(), e);
+            }
+        });
+        return loaded.network;
+    }
+    
+    public int size() {
+        return models.size();
+    }
+    
+    private static class Entry {
+        final NeuralNetwork network;
+        final long modified;
+        
+        Entry(NeuralNetwork network, long modified) {
+            this.network = network;
+            this.modified = modified;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package server;
+
+import concurrent.ComputeScheduler;
+import data.DataLoader;
+import nn.NeuralNetwork;
+import nn.Warmup;
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Servidor de predicción de larga vida (comando serve).
+ *
+ * Protocolo de texto, una petición por línea sobre una conexión persistente:
+ *   PREDICT <model_id> <v1,v2,...>  ->  OK <clase> <confianza> <s1,s2,...>
+ *   PING                            ->  PONG
+ *   STATS                           ->  STATS conexiones=.. en_curso=.. ...
+ *   QUIT                            ->  cierra la conexión
+ * Los errores se responden con "ERROR <mensaje>" y la sobrecarga con
+ * "BUSY <mensaje>" (el cliente debe reintentar más tarde).
+ *
+ * Cada conexión la atiende un thread virtual (JDK 21+; en JVMs anteriores
+ * un thread de plataforma por conexión), así el I/O bloqueante es barato y
+ * miles de conexiones inactivas no ocupan threads de cómputo. El forward
+ * pass se ejecuta en el scheduler de cómputo compartido, con un número
+ * acotado de predicciones admitidas a la vez (en ejecución + en cola).
+ */
+public class PredictionServer implements AutoCloseable {
+    
+    private final int port;
+    private final int maxConnections;
+    private final int maxPending;
+    private final int idleTimeoutMs;
+    private final long queueTimeoutMs;
+    private final String modelsDir;
+    private final ModelCache models;
+    private final ComputeScheduler scheduler;
+    private final Semaphore connections;
+    private final Semaphore computeSlots;
+    private final ExecutorService connectionExecutor;
+    private final boolean virtualThreads;
+    
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    
+    private volatile ServerSocket serverSocket;
+    private volatile boolean running;
+    
+    /**
+     * @param maxConnections conexiones abiertas a la vez; las siguientes reciben BUSY
+     * @param maxPending     predicciones admitidas a la vez (ejecutándose o en cola)
+     * @param queueTimeoutMs espera máxima por un hueco de cómputo antes de responder BUSY
+     * @param idleTimeoutMs  una conexión sin peticiones durante este tiempo se cierra
+     */
+    public PredictionServer(int port, String modelsDir, int maxConnections, int maxPending,
+                            long queueTimeoutMs, int idleTimeoutMs) {
+        if (maxConnections < 1 || maxPending < 1) {
+            throw new IllegalArgumentException("max-connections y queue deben ser >= 1");
+        }
+        this.port = port;
+        this.maxConnections = maxConnections;
+        this.maxPending = maxPending;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.queueTimeoutMs = queueTimeoutMs;
+        this.modelsDir = modelsDir;
+        this.models = new ModelCache(modelsDir);
+        this.scheduler = ComputeScheduler.shared();
+        this.connections = new Semaphore(maxConnections);
+        this.computeSlots = new Semaphore(maxPending);
+        
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.connectionExecutor = virtual != null ? virtual : Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "conn");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+    
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() si la JVM lo soporta (JDK 21+).
+     * Se resuelve por reflexión para que el core siga compilando y
+     * ejecutándose en JDKs anteriores.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Antes de aceptar conexiones: carga en la caché los maxModels modelos
+     * más recientes y calienta el JIT durante millisPerShape ms con cada
+     * forma de red distinta, así la primera petición real no paga la carga
+     * del modelo ni la ejecución interpretada de los kernels.
+     */
+    public void warmup(long millisPerShape, int maxModels) {
+        File[] files = new File(modelsDir).listFiles((dir, name) -> name.endsWith(".bin"));
+        if (files == null || files.length == 0 || millisPerShape <= 0) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        
+        Set<String> shapes = new HashSet<>();
+        for (File file : Arrays.copyOf(files, Math.min(files.length, maxModels))) {
+            String modelId = file.getName().substring(0, file.getName().length() - ".bin".length());
+            try {
+                NeuralNetwork network = models.get(modelId);
+                String shape = Arrays.toString(network.getLayers()) + " "
+                               + Arrays.toString(network.getHiddenActivations()).toLowerCase() + " "
+                               + network.getOutputHead().name().toLowerCase();
+                if (shapes.add(shape)) {
+                    System.out.println("[SERVE] Warm-up " + shape + ": " + Warmup.run(network, millisPerShape));
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("WARNING: warm-up de " + modelId + " omitido: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Acepta conexiones hasta que se llama a close() (bloquea al thread que llama)
+     */
+    public void serve() throws IOException {
+        serverSocket = new ServerSocket(port, Math.min(maxConnections, 4096));
+        running = true;
+        System.out.println("[SERVE] Escuchando en puerto " + serverSocket.getLocalPort()
+                           + " (threads " + (virtualThreads ? "virtuales" : "de plataforma")
+                           + ", máx. " + maxConnections + " conexiones, cómputo: "
+                           + scheduler.getParallelism() + " threads)");
+        System.out.flush();
+        
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (!running) break;
+                throw e;
+            }
+            
+            // Límite de conexiones: las que exceden se rechazan sin crear thread
+            if (!connections.tryAcquire()) {
+                rejected.incrementAndGet();
+                rejectConnection(socket);
+                continue;
+            }
+            try {
+                connectionExecutor.execute(() -> {
+                    try {
+                        handleConnection(socket);
+                    } finally {
+                        connections.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                connections.release();
+                closeQuietly(socket);
+            }
+        }
+    }
+    
+    private void rejectConnection(Socket socket) {
+        try (Socket s = socket) {
+            s.setSoTimeout(1000);
+            OutputStream out = s.getOutputStream();
+            out.write("BUSY máximo de conexiones alcanzado\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            // el cliente ya cerró
+        }
+    }
+    
+    /**
+     * Atiende una conexión: lee peticiones línea a línea hasta QUIT, EOF o inactividad
+     */
+    private void handleConnection(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(
+                 new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(
+                 new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            s.setTcpNoDelay(true);
+            s.setSoTimeout(idleTimeoutMs);
+            
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                if (line.equalsIgnoreCase("QUIT")) break;
+                
+                out.write(handleRequest(line));
+                out.write('\n');
+                out.flush();
+            }
+        } catch (SocketTimeoutException e) {
+            // conexión inactiva: se libera el hueco
+        } catch (IOException e) {
+            // el cliente cerró la conexión
+        }
+    }
+    
+    /**
+     * Procesa una línea de petición y devuelve la respuesta (sin salto de línea)
+     */
+    String handleRequest(String line) {
+        String[] parts = line.split("\\s+", 3);
+        String command = parts[0].toUpperCase();
+        try {
+            switch (command) {
+                case "PING":
+                    return "PONG";
+                case "STATS":
+                    return String.format(Locale.ROOT, "STATS conexiones=%d en_curso=%d atendidas=%d rechazadas=%d modelos=%d",
+                                         maxConnections - connections.availablePermits(),
+                                         activePredictions(), served.get(), rejected.get(), models.size());
+                case "PREDICT":
+                    if (parts.length < 3) {
+                        return "ERROR uso: PREDICT <model_id> <v1,v2,...>";
+                    }
+                    return predict(parts[1], parts[2]);
+                default:
+                    return "ERROR comando desconocido: " + parts[0];
+            }
+        } catch (IllegalArgumentException | IllegalStateException | IOException e) {
+            return "ERROR " + e.getMessage();
+        }
+    }
+    
+    private int activePredictions() {
+        return maxPending - computeSlots.availablePermits();
+    }
+    
+    private String predict(String modelId, String inputData) throws IOException {
+        NeuralNetwork network = models.get(modelId);
+        double[] input = new DataLoader().parseInputVector(inputData);
+        
+        // Backpressure: si no hay hueco de cómputo en queueTimeoutMs se responde BUSY
+        boolean admitted;
+        try {
+            admitted = computeSlots.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "BUSY servidor cerrándose";
+        }
+        if (!admitted) {
+            rejected.incrementAndGet();
+            return "BUSY cola de predicción llena";
+        }
+        
+        double[] output;
+        try {
+            // El forward pass corre en el pool de cómputo acotado; el thread
+            // de la conexión solo espera el resultado
+            output = CompletableFuture.supplyAsync(() -> network.predict(input), scheduler.getPool()).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw cause instanceof IllegalArgumentException
+                    ? (IllegalArgumentException) cause
+                    : new IllegalStateException(cause.getMessage(), cause);
+        } finally {
+            computeSlots.release();
+        }
+        served.incrementAndGet();
+        
+        int predicted = NeuralNetwork.classIndex(output);
+        double confidence = NeuralNetwork.confidence(output, predicted);
+        StringBuilder sb = new StringBuilder("OK ").append(predicted).append(' ')
+            .append(String.format(Locale.ROOT, "%.4f", confidence)).append(' ');
+        for (int i = 0; i < output.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(String.format(Locale.ROOT, "%.6f", output[i]));
+        }
+        return sb.toString();
+    }
+    
+    public int getPort() {
+        ServerSocket s = serverSocket;
+        return s != null ? s.getLocalPort() : port;
+    }
+    
+    @Override
+    public void close() {
+        running = false;
+        ServerSocket s = serverSocket;
+        if (s != null) {
+            closeQuietly(s);
+        }
+        connectionExecutor.shutdownNow();
+    }
+    
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException e) {
+            // ignorar
+        }
+    }
+}
@@ -0,0 +1,544 @@
+package server;
+
+import concurrent.ComputeScheduler;
+import concurrent.ParallelEvaluator;
+import concurrent.TrainingListener;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Daemon de entrenamiento de larga vida (comando daemon): una sola JVM
+ * recibe los trabajos por un socket local en lugar de lanzar un proceso
+ * por entrenamiento, así cada trabajo reutiliza el código ya compilado por
+ * el JIT y los datasets ya parseados (ver {@link DatasetCache}).
+ *
+ * Protocolo de texto, una petición por línea (solo conexiones locales):
+ *   SUBMIT <prioridad> train <input_path> <model_id> [opciones]
+ *       -> QUEUED <job_id> <posición>, y después los eventos del trabajo:
+ *          EVENT <job_id> STARTED threads=..
+ *          EVENT <job_id> EPOCH n/N loss=.. val_loss=.. val_accuracy=..
+ *          EVENT <job_id> DONE|FAILED|CANCELLED ...   (último evento)
+ *       Cerrar la conexión no afecta al trabajo.
+ *   WATCH <job_id>    -> todos los eventos del trabajo hasta el último
+ *   CANCEL <job_id>   -> OK <job_id> (sale de la cola o se detiene en el
+ *                        siguiente batch; el checkpoint queda para --resume)
+ *   JOBS | STATS | PING | QUIT
+ *
+ * Planificación: cola por prioridad (mayor primero, en orden de llegada
+ * con la misma) y un presupuesto global de núcleos; cada trabajo reserva
+ * sus threads (--threads, 1 por defecto) y arranca cuando caben.
+ */
+public class TrainingDaemon implements AutoCloseable {
+    
+    // Trabajos terminados que se recuerdan para WATCH/JOBS
+    private static final int FINISHED_HISTORY = 100;
+    
+    /**
+     * Ejecuta un trabajo en el thread que llama. Devuelve el resumen del
+     * evento DONE; lanza CancellationException si el trabajo se canceló.
+     */
+    @FunctionalInterface
+    public interface JobRunner {
+        String run(Job job) throws Exception;
+    }
+    
+    /**
+     * Un trabajo: argumentos del comando, estado y eventos emitidos.
+     * Como TrainingListener emite un evento EPOCH por epoch y detiene el
+     * entrenamiento cuando se cancela.
+     */
+    public final class Job implements TrainingListener {
+        private final String id;
+        private final int priority;
+        private final long sequence;
+        private final String[] args;
+        private final int threads;
+        private final List<String> events = new ArrayList<>();
+        private volatile String state = "queued";
+        private volatile boolean cancelled;
+        private final PrintStream log;
+        
+        private Job(String id, int priority, long sequence, String[] args, int threads) {
+            this.id = id;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.args = args;
+            this.threads = threads;
+            this.log = new PrintStream(new JobOutput(id), true);
+        }
+        
+        public String getId() {
+            return id;
+        }
+        
+        /**
+         * Comando y argumentos, como en la línea de comandos ("train", input, model_id, ...)
+         */
+        public String[] getArgs() {
+            return args;
+        }
+        
+        /**
+         * Threads reservados del presupuesto del daemon
+         */
+        public int getThreads() {
+            return threads;
+        }
+        
+        public DatasetCache getDatasets() {
+            return datasets;
+        }
+        
+        /**
+         * Salida de consola del trabajo (carga del dataset, guardado del
+         * modelo): cada línea va al log del daemon precedida del id del trabajo
+         */
+        public PrintStream getLog() {
+            return log;
+        }
+        
+        public boolean isCancelled() {
+            return cancelled;
+        }
+        
+        @Override
+        public boolean onEpoch(int epoch, int epochs, double loss, ParallelEvaluator.Result validation) {
+            String event = String.format(Locale.ROOT, "EPOCH %d/%d loss=%.6f", epoch, epochs, loss);
+            if (validation != null) {
+                event += String.format(Locale.ROOT, " val_loss=%.6f val_accuracy=%.4f",
+                                       validation.getLoss(), validation.getAccuracy());
+            }
+            emit(event);
+            return !cancelled;
+        }
+        
+        @Override
+        public boolean stopRequested() {
+            return cancelled;
+        }
+        
+        private void emit(String event) {
+            finish(null, event);
+        }
+        
+        /**
+         * Emite el último evento y pasa al estado final (finalState null:
+         * un evento intermedio)
+         */
+        private void finish(String finalState, String event) {
+            String line = "EVENT " + id + " " + event;
+            synchronized (this) {
+                events.add(line);
+                if (finalState != null) {
+                    state = finalState;
+                }
+                notifyAll();
+            }
+            System.out.println("[DAEMON] " + line);
+        }
+        
+        private boolean isFinished() {
+            return state.equals("done") || state.equals("failed") || state.equals("cancelled");
+        }
+        
+        /**
+         * Evento index (esperando a que se emita); null después del último
+         */
+        private synchronized String awaitEvent(int index) throws InterruptedException {
+            while (index >= events.size() && !isFinished()) {
+                wait();
+            }
+            return index < events.size() ? events.get(index) : null;
+        }
+        
+        @Override
+        public String toString() {
+            return id + ":" + state + ":" + args[0] + (args.length > 2 ? ":" + args[2] : "");
+        }
+    }
+    
+    /**
+     * Salida de un trabajo por líneas completas, con el id del trabajo delante
+     */
+    private static final class JobOutput extends OutputStream {
+        private final String prefix;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        
+        JobOutput(String id) {
+            this.prefix = "[DAEMON] " + id + " ";
+        }
+        
+        @Override
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                System.out.println(prefix + line.toString().replace("\r", ""));
+                line.reset();
+            } else {
+                line.write(b);
+            }
+        }
+    }
+    
+    private final int port;
+    private final int budget;
+    private final JobRunner runner;
+    private final DatasetCache datasets;
+    private final Object lock = new Object();
+    private final PriorityQueue<Job> queue = new PriorityQueue<>((a, b) -> a.priority != b.priority
+            ? Integer.compare(b.priority, a.priority) : Long.compare(a.sequence, b.sequence));
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private final ExecutorService jobExecutor;
+    private final ExecutorService connectionExecutor;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private int freeThreads;
+    
+    private volatile ServerSocket serverSocket;
+    private volatile boolean open;
+    
+    /**
+     * @param budget     núcleos repartidos entre los trabajos en ejecución
+     * @param maxDatasets datasets parseados que se conservan en memoria
+     */
+    public TrainingDaemon(int port, int budget, int maxDatasets, JobRunner runner) {
+        if (budget < 1) {
+            throw new IllegalArgumentException("cores debe ser >= 1");
+        }
+        this.port = port;
+        this.budget = budget;
+        this.freeThreads = budget;
+        this.runner = runner;
+        this.datasets = new DatasetCache(maxDatasets);
+        this.jobExecutor = Executors.newCachedThreadPool(daemonThreads("daemon-job"));
+        this.connectionExecutor = Executors.newCachedThreadPool(daemonThreads("daemon-conn"));
+    }
+    
+    private static java.util.concurrent.ThreadFactory daemonThreads(String name) {
+        AtomicInteger ids = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + ids.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+    
+    /**
+     * Acepta conexiones en 127.0.0.1 hasta que se llama a close() (bloquea
+     * al thread que llama); los trabajos arrancan desde otro thread
+     */
+    public void serve() throws IOException {
+        serverSocket = new ServerSocket(port, 64, InetAddress.getLoopbackAddress());
+        open = true;
+        Thread dispatcher = new Thread(this::dispatch, "daemon-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        System.out.println("[DAEMON] Escuchando en 127.0.0.1:" + serverSocket.getLocalPort()
+                           + " (presupuesto: " + budget + " núcleos, cómputo: "
+                           + ComputeScheduler.shared().getParallelism() + " threads)");
+        System.out.flush();
+        
+        while (open) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (!open) break;
+                throw e;
+            }
+            connectionExecutor.execute(() -> handleConnection(socket));
+        }
+    }
+    
+    /**
+     * Arranca el trabajo de mayor prioridad en cuanto caben sus threads
+     */
+    private void dispatch() {
+        synchronized (lock) {
+            while (open) {
+                Job next = queue.peek();
+                if (next == null || next.threads > freeThreads) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    continue;
+                }
+                queue.poll();
+                freeThreads -= next.threads;
+                next.state = "running";
+                running.incrementAndGet();
+                jobExecutor.execute(() -> runJob(next));
+            }
+        }
+    }
+    
+    private void runJob(Job job) {
+        job.emit("STARTED threads=" + job.threads);
+        long start = System.nanoTime();
+        String finalState;
+        String terminal;
+        try {
+            String summary = runner.run(job);
+            finalState = "done";
+            terminal = String.format(Locale.ROOT, "DONE %s seconds=%.1f", summary, (System.nanoTime() - start) / 1e9);
+        } catch (CancellationException e) {
+            finalState = "cancelled";
+            terminal = "CANCELLED";
+        } catch (Exception | OutOfMemoryError e) {
+            // Un trabajo que falla (incluso sin memoria) no tumba el daemon
+            finalState = "failed";
+            terminal = "FAILED " + (e.getMessage() != null ? e.getMessage() : e.toString());
+        } finally {
+            synchronized (lock) {
+                freeThreads += job.threads;
+                running.decrementAndGet();
+                completed.incrementAndGet();
+                lock.notifyAll();
+            }
+        }
+        job.finish(finalState, terminal);
+        synchronized (lock) {
+            forgetOldJobs();
+        }
+    }
+    
+    /**
+     * Encola un trabajo con threads reservados (entre 1 y el presupuesto);
+     * null si el mismo modelo ya tiene un trabajo sin terminar (los dos
+     * escribirían el mismo .bin y el mismo checkpoint)
+     */
+    Job submit(int priority, String[] args, int threads) {
+        synchronized (lock) {
+            for (Job other : jobs.values()) {
+                if (!other.isFinished() && other.args[2].equals(args[2])) {
+                    return null;
+                }
+            }
+            long seq = sequence.incrementAndGet();
+            Job job = new Job("job-" + seq, priority, seq, args, Math.max(1, Math.min(threads, budget)));
+            jobs.put(job.id, job);
+            queue.add(job);
+            lock.notifyAll();
+            return job;
+        }
+    }
+    
+    /**
+     * Cancela un trabajo en cola o en ejecución; false si ya terminó o no existe
+     */
+    boolean cancel(String jobId) {
+        Job job;
+        boolean queued;
+        synchronized (lock) {
+            job = jobs.get(jobId);
+            if (job == null || job.isFinished()) {
+                return false;
+            }
+            job.cancelled = true;
+            queued = queue.remove(job);
+        }
+        if (queued) {
+            job.finish("cancelled", "CANCELLED");
+        }
+        return true;
+    }
+    
+    /**
+     * Deja como mucho FINISHED_HISTORY trabajos terminados en la tabla
+     */
+    private void forgetOldJobs() {
+        int finished = 0;
+        for (Job job : jobs.values()) {
+            if (job.isFinished()) finished++;
+        }
+        Iterator<Job> it = jobs.values().iterator();
+        while (finished > FINISHED_HISTORY && it.hasNext()) {
+            if (it.next().isFinished()) {
+                it.remove();
+                finished--;
+            }
+        }
+    }
+    
+    private void handleConnection(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(
+                 new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(
+                 new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            s.setTcpNoDelay(true);
+            
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                if (line.equalsIgnoreCase("QUIT")) break;
+                handleRequest(line, out);
+            }
+        } catch (IOException e) {
+            // el cliente cerró la conexión; sus trabajos siguen
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Procesa una línea de petición y escribe la respuesta (y los eventos
+     * con SUBMIT/WATCH)
+     */
+    void handleRequest(String line, BufferedWriter out) throws IOException, InterruptedException {
+        String[] parts = line.split("\\s+");
+        String command = parts[0].toUpperCase();
+        switch (command) {
+            case "PING":
+                respond(out, "PONG");
+                break;
+            case "STATS":
+                synchronized (lock) {
+                    respond(out, String.format(Locale.ROOT,
+                        "STATS nucleos=%d libres=%d en_cola=%d en_curso=%d terminados=%d datasets=%d aciertos_cache=%d",
+                        budget, freeThreads, queue.size(), running.get(), completed.get(),
+                        datasets.size(), datasets.getHits()));
+                }
+                break;
+            case "JOBS":
+                synchronized (lock) {
+                    StringBuilder sb = new StringBuilder("JOBS");
+                    for (Job job : jobs.values()) {
+                        sb.append(' ').append(job);
+                    }
+                    respond(out, sb.toString());
+                }
+                break;
+            case "SUBMIT":
+                submitAndWatch(parts, out);
+                break;
+            case "WATCH":
+                Job job;
+                synchronized (lock) {
+                    job = parts.length > 1 ? jobs.get(parts[1]) : null;
+                }
+                if (job == null) {
+                    respond(out, "ERROR trabajo desconocido");
+                } else {
+                    streamEvents(job, out);
+                }
+                break;
+            case "CANCEL":
+                if (parts.length < 2) {
+                    respond(out, "ERROR uso: CANCEL <job_id>");
+                } else if (cancel(parts[1])) {
+                    respond(out, "OK " + parts[1]);
+                } else {
+                    respond(out, "ERROR trabajo desconocido o terminado: " + parts[1]);
+                }
+                break;
+            default:
+                respond(out, "ERROR comando desconocido: " + parts[0]);
+        }
+    }
+    
+    private void submitAndWatch(String[] parts, BufferedWriter out) throws IOException, InterruptedException {
+        if (parts.length < 5 || !parts[2].equalsIgnoreCase("train")) {
+            respond(out, "ERROR uso: SUBMIT <prioridad> train <input_path> <model_id> [opciones]");
+            return;
+        }
+        int priority;
+        try {
+            priority = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            respond(out, "ERROR prioridad inválida: " + parts[1]);
+            return;
+        }
+        String[] args = Arrays.copyOfRange(parts, 2, parts.length);
+        args[0] = args[0].toLowerCase();
+        int threads = 1;
+        for (int i = 3; i + 1 < args.length; i++) {
+            if (args[i].equals("--threads")) {
+                try {
+                    threads = Integer.parseInt(args[i + 1]);
+                } catch (NumberFormatException e) {
+                    respond(out, "ERROR threads inválido: " + args[i + 1]);
+                    return;
+                }
+            }
+        }
+        // --threads 0 = todo el presupuesto
+        Job job = submit(priority, args, threads <= 0 ? budget : threads);
+        if (job == null) {
+            respond(out, "ERROR el modelo " + args[2] + " ya tiene un trabajo en cola o en curso");
+            return;
+        }
+        int position;
+        synchronized (lock) {
+            position = queue.size();
+        }
+        respond(out, "QUEUED " + job.id + " " + position);
+        streamEvents(job, out);
+    }
+    
+    /**
+     * Escribe los eventos del trabajo (desde el primero) hasta el último
+     */
+    private void streamEvents(Job job, BufferedWriter out) throws IOException, InterruptedException {
+        String event;
+        for (int i = 0; (event = job.awaitEvent(i)) != null; i++) {
+            respond(out, event);
+        }
+    }
+    
+    private static void respond(BufferedWriter out, String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+        out.flush();
+    }
+    
+    public int getPort() {
+        ServerSocket s = serverSocket;
+        return s != null ? s.getLocalPort() : port;
+    }
+    
+    /**
+     * Deja de aceptar conexiones y trabajos; los que están en ejecución se
+     * cancelan (sus checkpoints quedan para --resume)
+     */
+    @Override
+    public void close() {
+        open = false;
+        synchronized (lock) {
+            for (Job job : jobs.values()) {
+                job.cancelled = true;
+            }
+            lock.notifyAll();
+        }
+        ServerSocket s = serverSocket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                // ignorar
+            }
+        }
+        connectionExecutor.shutdownNow();
+        jobExecutor.shutdown();
+    }
+}
@@ -115,6 +115,87 @@ run_test "Entrenar modelo Linear" \
 run_test "Verificar multi-threading activado" \
     "java -jar core.jar train datasets/circles.csv test_circles 2>&1 | grep -E 'Threads: [0-9]+'"
 
+run_test "Entrenar con validación y early stopping" \
+    "java -jar core.jar train datasets/circles.csv test_circles_val --epochs 50 --val 0.2 --patience 2 2>&1 | grep 'Val Loss'"
+
+run_test "Optimizador Adam con learning rate coseno" \
+    "java -jar core.jar train datasets/circles.csv test_adam --epochs 3 --optimizer adam --schedule cosine 2>&1 | grep 'optimizer=adam, schedule=cosine' && test -f models/test_adam.bin"
+
+run_test "Momentum con learning rate por escalones" \
+    "java -jar core.jar train datasets/circles.csv test_momentum --epochs 3 --optimizer momentum --schedule step --lr-step 1 --lr-gamma 0.5 2>&1 | grep 'Status: SUCCESS'"
+
+run_test "Optimizador desconocido se rechaza" \
+    "java -jar core.jar train datasets/circles.csv test_bad_opt --optimizer rmsprop 2>&1 | grep 'Optimizador desconocido'"
+
+run_test "Salida única usa sigmoid por defecto" \
+    "java -jar core.jar train datasets/circles.csv test_head --epochs 3 2>&1 | grep 'Capa de salida: sigmoid'"
+
+run_test "Entrenar con arquitectura y activaciones propias" \
+    "java -jar core.jar train datasets/circles.csv test_layers --epochs 3 --layers 16:tanh,8:leakyrelu 2>&1 | grep 'Capas ocultas: 16:tanh,8:leaky_relu'"
+
+run_test "Entrenar con pipeline de capas" \
+    "java -jar core.jar train datasets/circles.csv test_pipeline --epochs 3 --layers 16,8 --pipeline 2 2>&1 | grep 'PIPELINE. Etapas: 2' && test -f models/test_pipeline.bin"
+
+run_test "Entrenar con capas convolucionales (im2col + GEMM)" \
+    "java -jar core.jar generate /tmp/mnist_conv_test.csv --rows 600 --mnist > /dev/null 2>&1 && java -jar core.jar train /tmp/mnist_conv_test.csv test_conv --conv 4x5,pool2 --layers 16 --epochs 1 2>&1 | grep 'Status: SUCCESS' && java -jar core.jar score test_conv /tmp/mnist_conv_test.csv /tmp/test_conv_scores.csv 2>&1 | grep 'SCORE. Accuracy'"
+
+run_test "Fine-tuning de un modelo convolucional" \
+    "java -jar core.jar finetune test_conv /tmp/mnist_conv_test.csv --epochs 1 2>&1 | grep 'Datos nuevos - Loss' && test -f models/test_conv.bin"
+
+# GEMM paralelo (por encima de PARALLEL_THRESHOLD) frente al kernel secuencial:
+# score --threads 1 multiplica en un thread, --threads 4 reparte cada GEMM
+run_test "GEMM paralelo igual al kernel secuencial" \
+    "java -jar core.jar generate /tmp/mnist_gemm_test.csv --rows 300 --mnist > /dev/null 2>&1 && java -jar core.jar train /tmp/mnist_gemm_test.csv test_gemm --layers 128 --epochs 1 2>&1 | grep 'Status: SUCCESS' && java -Dcore.threads=4 -jar core.jar score test_gemm /tmp/mnist_gemm_test.csv /tmp/test_gemm_t1.csv --full --threads 1 && java -Dcore.threads=4 -jar core.jar score test_gemm /tmp/mnist_gemm_test.csv /tmp/test_gemm_t4.csv --full --threads 4 && cmp /tmp/test_gemm_t1.csv /tmp/test_gemm_t4.csv"
+
+# El bias de cada capa se suma con la expresión fusionada (lazy) sobre el
+# producto, con broadcast por columnas en el forward por batches de score:
+# debe coincidir con predict fila a fila
+run_test "Bias fusionado: score por batches igual a predict" \
+    "ROW=\$(sed -n 2p /tmp/mnist_gemm_test.csv | cut -d, -f2-) && EXPECTED=\$(sed -n 2p /tmp/test_gemm_t1.csv | awk -F, '{printf \"Prediccion: %d (%.2f%%\", \$1, \$2 * 100}') && java -jar core.jar predict test_gemm \$ROW | grep -F \"\$EXPECTED\""
+
+run_test "Búsqueda de hiperparámetros con ASHA" \
+    "java -jar core.jar tune datasets/circles.csv test_tune --trials 4 --parallel 2 --layers '8|16' 2>&1 | grep 'Mejor configur' && test -f models/test_tune.bin"
+
+run_test "ASHA corta los trials con mala loss" \
+    "java -jar core.jar tune datasets/circles.csv test_tune_cut --trials 4 --parallel 1 --layers 8 --lr '0.05|1e6' 2>&1 | grep 'cortado en el epoch'"
+
+# El nivel 0 de prune debe dar la misma accuracy que score (misma normalización)
+run_test "Poda gradual y modelo podado en CSR" \
+    "java -jar core.jar train /tmp/mnist_conv_test.csv test_prune --layers 32 --epochs 4 --prune 0.8 2>&1 | grep 'PRUNE. Sparsity: 0.800' && ACC=\$(java -jar core.jar score test_prune /tmp/mnist_conv_test.csv /tmp/test_prune_scores.csv 2>&1 | grep -o 'Accuracy: [0-9.]*' | cut -d' ' -f2) && java -jar core.jar prune test_prune /tmp/mnist_conv_test.csv --sparsity 0.9 --levels 0,0.9 2>&1 | grep -E \"PRUNE. +0\\.00 +\$ACC \" && test -f models/test_prune_pruned.bin"
+
+run_test "Poda con normalización standard guardada en el modelo" \
+    "java -jar core.jar train datasets/circles.csv test_prune_std --epochs 20 --normalize standard 2>&1 | grep 'Status: SUCCESS' && ACC=\$(java -jar core.jar score test_prune_std datasets/circles.csv /tmp/test_prune_std_scores.csv 2>&1 | grep -o 'Accuracy: [0-9.]*' | cut -d' ' -f2) && java -jar core.jar prune test_prune_std datasets/circles.csv --sparsity 0.5 --levels 0 2>&1 | grep -E \"PRUNE. +0\\.00 +\$ACC \""
+
+run_test "Fine-tuning con datos nuevos y muestra del dataset anterior" \
+    "java -jar core.jar finetune test_circles datasets/circles.csv --epochs 2 --replay datasets/circles.csv --replay-size 100 2>&1 | grep 'Datos nuevos - Loss' && test -f models/test_circles.bin"
+
+run_test "Normalización guardada en el modelo (datos crudos al predecir)" \
+    "java -jar core.jar train datasets/circles.csv test_standard --epochs 3 --normalize standard 2>&1 | grep 'Status: SUCCESS' && java -jar core.jar score test_standard datasets/circles.csv /tmp/score_standard.csv 2>&1 | grep 'Accuracy'"
+
+# Dataset libsvm: 3 features, índices desde 1
+printf '1 1:0.5 3:1\n0 2:1\n1 1:1 3:0.5\n0 2:0.5\n1 1:0.8 3:0.9\n0 2:0.7 3:0.1\n' > datasets/test_sparse.libsvm
+
+run_test "Entrenar con entradas dispersas (libsvm)" \
+    "java -jar core.jar train datasets/test_sparse.libsvm test_sparse --epochs 3 --val 0 2>&1 | grep 'Datos dispersos: .* de 3 features' && test -f models/test_sparse.bin"
+
+run_test "Reanudar entrenamiento sin checkpoint previo" \
+    "java -jar core.jar train datasets/circles.csv test_resume --resume 2>&1 | grep 'Status: SUCCESS' && test ! -f models/checkpoints/test_resume.ckpt"
+
+# Entrenamiento distribuido: dos procesos locales en anillo
+java -jar core.jar train-dist datasets/circles.csv test_dist --rank 1 --world 2 \
+    --peers 127.0.0.1:7191,127.0.0.1:7192 --epochs 3 > /tmp/dist_rank1.log 2>&1 &
+DIST_PID=$!
+
+run_test "Entrenamiento distribuido (2 procesos)" \
+    "java -jar core.jar train-dist datasets/circles.csv test_dist --rank 0 --world 2 --peers 127.0.0.1:7191,127.0.0.1:7192 --epochs 3 2>&1 | grep 'Status: SUCCESS' && wait $DIST_PID && test -f models/test_dist.bin"
+
+java -jar core.jar train-dist datasets/circles.csv test_dist_fp16 --rank 1 --world 2 --compress fp16 \
+    --peers 127.0.0.1:7193,127.0.0.1:7194 --epochs 3 > /tmp/dist_rank1.log 2>&1 &
+DIST_PID=$!
+
+run_test "Entrenamiento distribuido con compresión fp16" \
+    "java -jar core.jar train-dist datasets/circles.csv test_dist_fp16 --rank 0 --world 2 --compress fp16 --peers 127.0.0.1:7193,127.0.0.1:7194 --epochs 3 2>&1 | grep 'fp16: [0-9]* bytes por' && wait $DIST_PID"
+
 echo ""
 
 # ============================================
@@ -139,6 +220,47 @@ run_test "Predecir con espacios" \
 run_test "Verificar status SUCCESS en predicción" \
     "java -jar core.jar predict test_predict '1,1' 2>&1 | grep 'Status: SUCCESS'"
 
+run_test "Cuantizar modelo a int8" \
+    "java -jar core.jar quantize test_predict datasets/xor.csv 2>&1 | grep 'Accuracy int8' && test -f models/test_predict.q8"
+
+run_test "Predecir con modelo int8" \
+    "java -jar core.jar predict test_predict '0,1' --int8 2>&1 | grep 'Status: SUCCESS'"
+
+run_test "Scoring masivo de un CSV" \
+    "java -jar core.jar score test_predict datasets/xor.csv /tmp/score_test.csv --full 2>&1 | grep 'Filas: 4 ' && test \$(wc -l < /tmp/score_test.csv) -eq 5"
+
+run_test "Scoring desde formato binario" \
+    "java -jar core.jar convert datasets/xor.csv /tmp/score_test.bin > /dev/null 2>&1 && java -jar core.jar score test_predict /tmp/score_test.bin /tmp/score_test_bin.csv --label last 2>&1 | grep 'Accuracy'"
+
+run_test "Modelo mapeado en memoria (mmap)" \
+    "java -jar core.jar mmap test_predict 2>&1 | grep 'MMAP. Carga' && java -jar core.jar predict test_predict '0,1' 2>&1 | grep 'Status: SUCCESS' && rm models/test_predict.wmap"
+
+run_test "Warm-up del JIT con la forma del modelo" \
+    "java -jar core.jar warmup test_predict --millis 200 2>&1 | grep 'WARMUP. [0-9]* iteraciones'"
+
+run_test "Generar archivo CDS y medir el arranque" \
+    "java -jar core.jar cds /tmp/core_test.jsa --millis 200 2>&1 | grep 'con archivo' && java -XX:SharedArchiveFile=/tmp/core_test.jsa -jar core.jar info 2>&1 | grep 'Java Version'"
+
+# Servidor de predicción: una conexión persistente con varias peticiones
+java -jar core.jar serve --port 7099 --warmup 0 > /tmp/serve_test.log 2>&1 &
+SERVE_PID=$!
+sleep 2
+
+run_test "Servidor: predicción por socket" \
+    "exec 3<>/dev/tcp/127.0.0.1/7099 && printf 'PING\nPREDICT test_predict 0,1\nQUIT\n' >&3 && cat <&3 | grep '^OK '"
+
+kill $SERVE_PID 2>/dev/null
+
+# Daemon de entrenamiento: el trabajo envía sus eventos por el socket
+java -jar core.jar daemon --port 7299 --warmup 0 > /tmp/daemon_test.log 2>&1 &
+DAEMON_PID=$!
+sleep 2
+
+run_test "Daemon: entrenamiento por socket con eventos" \
+    "exec 4<>/dev/tcp/127.0.0.1/7299 && printf 'SUBMIT 0 train datasets/circles.csv test_daemon --epochs 2\n' >&4 && grep -m1 -E 'EVENT job-1 (DONE|FAILED)' <&4 | grep 'DONE' && test -f models/test_daemon.bin"
+
+kill $DAEMON_PID 2>/dev/null
+
 echo ""
 
 # ============================================
@@ -202,6 +324,16 @@ else
     echo -e "${YELLOW}[SKIP]${NC} Prueba de estrés (no se pudo generar dataset)"
 fi
 
+run_test "Generador sintético paralelo y reproducible" \
+    "java -Dcore.threads=4 -jar core.jar generate /tmp/mnist_workload_a.bin --rows 20k --mnist > /dev/null 2>&1 && java -Dcore.threads=1 -jar core.jar generate /tmp/mnist_workload_b.bin --rows 20k --mnist 2>&1 | grep 'Status: SUCCESS' && cmp /tmp/mnist_workload_a.bin /tmp/mnist_workload_b.bin"
+
+# generate -> train: 4 clases en CSV y en .bin (salida one-hot), e imágenes en .bin
+run_test "Dataset generado con 4 clases se entrena (CSV y .bin)" \
+    "java -jar core.jar generate /tmp/workload_k4.csv --rows 2000 --features 10 --classes 4 > /dev/null 2>&1 && java -jar core.jar train /tmp/workload_k4.csv test_gen_k4 --epochs 5 2>&1 | grep 'Capa de salida: softmax' && java -jar core.jar generate /tmp/workload_k4.bin --rows 2000 --features 10 --classes 4 > /dev/null 2>&1 && java -jar core.jar train /tmp/workload_k4.bin test_gen_k4_bin --epochs 5 2>&1 | grep 'Status: SUCCESS' && java -jar core.jar score test_gen_k4_bin /tmp/workload_k4.bin /tmp/test_gen_k4_scores.csv 2>&1 | grep -E 'Accuracy: 0\.[89]'"
+
+run_test "Dataset MNIST generado en .bin se entrena" \
+    "java -jar core.jar generate /tmp/mnist_workload_c.bin --rows 1000 --mnist > /dev/null 2>&1 && java -jar core.jar train /tmp/mnist_workload_c.bin test_gen_mnist --epochs 1 2>&1 | grep 'Status: SUCCESS' && test -f models/test_gen_mnist.bin"
+
 echo ""
 
 # ============================================
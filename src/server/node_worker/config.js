@@ -11,9 +11,9 @@ const offset = nodeOffsets[nodeId] || 0;
 
 // Configuración de todos los nodos (para peers)
 const allNodes = {
-    'Node_A': { host: '127.0.0.1', clientPort: 5000, peerPort: 6000, httpPort: 8080 },
-    'Node_B': { host: '127.0.0.1', clientPort: 5001, peerPort: 6001, httpPort: 8081 },
-    'Node_C': { host: '127.0.0.1', clientPort: 5002, peerPort: 6002, httpPort: 8082 }
+    'Node_A': { host: '127.0.0.1', clientPort: 5000, peerPort: 6000, httpPort: 8080, ringPort: 7100 },
+    'Node_B': { host: '127.0.0.1', clientPort: 5001, peerPort: 6001, httpPort: 8081, ringPort: 7101 },
+    'Node_C': { host: '127.0.0.1', clientPort: 5002, peerPort: 6002, httpPort: 8082, ringPort: 7102 }
 };
 
 // Obtener peers (todos menos yo)
@@ -22,7 +22,8 @@ const peers = Object.entries(allNodes)
     .map(([id, config]) => ({
         id,
         host: config.host,
-        port: config.peerPort
+        port: config.peerPort,
+        ringPort: config.ringPort
     }));
 
 module.exports = {
@@ -30,6 +31,13 @@ module.exports = {
     clientPort: allNodes[nodeId].clientPort,
     peerPort: allNodes[nodeId].peerPort,
     httpPort: allNodes[nodeId].httpPort,
+    // Puerto del anillo all-reduce de `core.jar train-dist`
+    ringPort: allNodes[nodeId].ringPort,
+    host: allNodes[nodeId].host,
     peers,
-    javaJar: 'src/core/core.jar'
+    javaJar: 'src/core/core.jar',
+    // Puerto de `java -jar core.jar serve` (null = lanzar un proceso por predicción)
+    javaServePort: process.env.CORE_SERVE_PORT ? parseInt(process.env.CORE_SERVE_PORT, 10) : null,
+    // Entrenamiento distribuido entre todos los nodos (CORE_DIST_TRAIN=1)
+    distributedTraining: process.env.CORE_DIST_TRAIN === '1'
 };
\ No newline at end of file
@@ -1,27 +1,60 @@
 // java/executor.js
 const { spawn } = require('child_process');
+const fs = require('fs');
+const net = require('net');
 const path = require('path');
 const config = require('../config');
 
 const JAR_PATH = path.resolve(config.javaJar);
 const MODELS_PATH = path.join(__dirname, '../disk/models');
+// Archivo CDS generado con `java -jar core.jar cds`: clases ya parseadas y
+// verificadas, reduce el arranque en frío de cada JVM lanzada
+const CDS_ARCHIVE = path.join(path.dirname(JAR_PATH), 'core.jsa');
 
 // Timeout para entrenamientos largos (30 minutos)
 const TRAIN_TIMEOUT = 30 * 60 * 1000; // 30 minutos
 const PREDICT_TIMEOUT = 30 * 1000;    // 30 segundos
 
+// Opciones de la JVM comunes a todos los procesos lanzados
+function jvmArgs() {
+    return fs.existsSync(CDS_ARCHIVE) ? [`-XX:SharedArchiveFile=${CDS_ARCHIVE}`] : [];
+}
+
 // Ejecutar entrenamiento
 function trainModel(inputPath, modelId) {
+    // --resume: si un entrenamiento previo del mismo modelo fue interrumpido
+    // (timeout, cambio de líder) continúa desde su último checkpoint; core.jar
+    // lo descarta si era de otro dataset, arquitectura u optimizador
+    return runTraining(['train', inputPath, modelId, '--resume'], modelId, true);
+}
+
+// Ejecutar una parte de un entrenamiento distribuido (core.jar train-dist)
+// peers: direcciones "host:puerto" del anillo en orden de rank; solo el rank 0 guarda el modelo
+function trainDistributed(inputPath, modelId, rank, peers) {
+    return runTraining([
+        'train-dist', inputPath, modelId,
+        '--rank', String(rank),
+        '--world', String(peers.length),
+        '--peers', peers.join(',')
+    ], modelId, rank === 0);
+}
+
+// Continuar el entrenamiento de un modelo existente con las filas nuevas
+// (core.jar finetune); replayPath: dataset anterior del que se mezcla una muestra
+function finetuneModel(deltaPath, modelId, replayPath) {
+    const args = ['finetune', modelId, deltaPath];
+    if (replayPath) {
+        args.push('--replay', replayPath);
+    }
+    return runTraining(args, modelId, true);
+}
+
+function runTraining(args, modelId, savesModel) {
     return new Promise((resolve, reject) => {
         console.log(`[JAVA] Iniciando entrenamiento: ${modelId}`);
         const startTime = Date.now();
         
-        const process = spawn('java', [
-            '-jar', JAR_PATH,
-            'train',
-            inputPath,
-            modelId
-        ], {
+        const process = spawn('java', [...jvmArgs(), '-jar', JAR_PATH, ...args], {
             cwd: path.dirname(JAR_PATH)
         });
         
@@ -69,6 +102,10 @@ function trainModel(inputPath, modelId) {
             if (code === 0) {
                 const modelPath = path.join(path.dirname(JAR_PATH), 'models', `${modelId}.bin`);
                 console.log(`[JAVA] Entrenamiento completado en ${elapsed}s`);
+                if (!savesModel) {
+                    resolve({ success: true, modelId, output: stdout, duration: elapsed });
+                    return;
+                }
                 console.log(`[JAVA] Modelo guardado en: ${modelPath}`);
                 
                 // Verificar si el archivo existe
@@ -98,8 +135,55 @@ function trainModel(inputPath, modelId) {
     });
 }
 
+// Predicción contra el servidor Java de larga vida (core.jar serve)
+// Respuesta: "OK <clase> <confianza> <salidas>" | "BUSY ..." | "ERROR ..."
+function predictViaServer(modelId, inputStr) {
+    return new Promise((resolve, reject) => {
+        const socket = net.createConnection({ host: '127.0.0.1', port: config.javaServePort });
+        let buffer = '';
+        
+        socket.setTimeout(PREDICT_TIMEOUT, () => {
+            socket.destroy();
+            reject(new Error(`Timeout: Predicción excedió ${PREDICT_TIMEOUT/1000}s`));
+        });
+        socket.on('connect', () => {
+            socket.write(`PREDICT ${modelId} ${inputStr}\n`);
+        });
+        socket.on('data', (data) => {
+            buffer += data.toString();
+            const newlineIndex = buffer.indexOf('\n');
+            if (newlineIndex === -1) return;
+            
+            const line = buffer.substring(0, newlineIndex).trim();
+            socket.end('QUIT\n');
+            const [status, predictedClass, confidence] = line.split(' ');
+            if (status === 'OK') {
+                // Mismo formato que la salida del comando predict
+                const percent = (parseFloat(confidence) * 100).toFixed(2);
+                resolve({ success: true, prediction: `Prediccion: ${predictedClass} (${percent}% confianza)` });
+            } else {
+                reject(new Error(`Servidor Java: ${line}`));
+            }
+        });
+        socket.on('error', (err) => reject(err));
+    });
+}
+
 // Ejecutar predicción
 function predict(modelId, inputVector) {
+    if (config.javaServePort) {
+        const inputStr = Array.isArray(inputVector) ? inputVector.join(',') : inputVector;
+        return predictViaServer(modelId, inputStr).catch((err) => {
+            // Servidor caído o saturado: lanzar un proceso como antes
+            console.error(`[JAVA] Servidor no disponible (${err.message}), usando proceso`);
+            return predictWithProcess(modelId, inputVector);
+        });
+    }
+    return predictWithProcess(modelId, inputVector);
+}
+
+// Ejecutar predicción lanzando un proceso java
+function predictWithProcess(modelId, inputVector) {
     return new Promise((resolve, reject) => {
         console.log(`[JAVA] Predicción con modelo: ${modelId}`);
         
@@ -115,6 +199,7 @@ function predict(modelId, inputVector) {
         }
         
         const process = spawn('java', [
+            ...jvmArgs(),
             '-jar', JAR_PATH,
             'predict',
             modelId,
@@ -160,4 +245,55 @@ function predict(modelId, inputVector) {
     });
 }
 
-module.exports = { trainModel, predict };
\ No newline at end of file
+// Scoring masivo de un archivo con un solo proceso (core.jar score):
+// evita lanzar una JVM por fila. outputPath: CSV o .bin
+function scoreFile(modelId, inputPath, outputPath, extraArgs = []) {
+    return new Promise((resolve, reject) => {
+        console.log(`[JAVA] Scoring de ${inputPath} con modelo: ${modelId}`);
+        
+        const process = spawn('java', [
+            ...jvmArgs(),
+            '-jar', JAR_PATH,
+            'score', modelId, inputPath, outputPath,
+            ...extraArgs
+        ], {
+            cwd: path.dirname(JAR_PATH)
+        });
+        
+        const timeout = setTimeout(() => {
+            process.kill('SIGTERM');
+            reject(new Error(`Timeout: Scoring excedió ${TRAIN_TIMEOUT/60000} minutos`));
+        }, TRAIN_TIMEOUT);
+        
+        let stdout = '';
+        let stderr = '';
+        
+        process.stdout.on('data', (data) => {
+            stdout += data.toString();
+        });
+        
+        process.stderr.on('data', (data) => {
+            stderr += data.toString();
+        });
+        
+        process.on('close', (code) => {
+            clearTimeout(timeout);
+            
+            if (code === 0) {
+                const rows = stdout.match(/Filas: (\d+)/);
+                const accuracy = stdout.match(/Accuracy: ([\d.]+)/);
+                console.log(`[JAVA] Scoring completado: ${rows ? rows[1] : '?'} filas`);
+                resolve({
+                    success: true,
+                    outputPath,
+                    rows: rows ? parseInt(rows[1], 10) : null,
+                    accuracy: accuracy ? parseFloat(accuracy[1]) : null
+                });
+            } else {
+                reject(new Error(`Scoring falló con código ${code}: ${stderr}`));
+            }
+        });
+    });
+}
+
+module.exports = { trainModel, trainDistributed, finetuneModel, predict, scoreFile };
\ No newline at end of file
@@ -1,14 +1,20 @@
 // server.js
 const config = require('./config');
 const { createClientServer, sendResponse } = require('./tcp/tcpServer');
-const { createPeerServer, connectToAllPeers, sendToPeer } = require('./tcp/peerSocket');
+const { createPeerServer, connectToAllPeers, sendToPeer, peerConnections } = require('./tcp/peerSocket');
 const RaftNode = require('./raft/RaftNode');
 const { createMonitorServer, updateMetrics } = require('./http/monitor');
-const { trainModel, predict } = require('./java/executor');
+const { trainModel, trainDistributed, predict } = require('./java/executor');
 const path = require('path');
 
 console.log(`\nNODO ${config.nodeId}\n`);
 
+// Usar dataset predefinido en lugar de subir archivo
+const datasetPaths = {
+    'mnist': path.resolve(__dirname, '../../core/datasets/mnist.csv'),
+    'fashionmnist': path.resolve(__dirname, '../../core/datasets/fashionmnist.csv')
+};
+
 // Manejar mensajes de clientes
 function handleClientMessage(socket, message) {
     console.log(`[CLIENT] Recibido: ${message.type}`);
@@ -84,12 +90,6 @@ function handleListModels(socket) {
 async function handleTrainRequest(socket, payload) {
     const { dataset, model_name } = payload;
     
-    // Usar dataset predefinido en lugar de subir archivo
-    const datasetPaths = {
-        'mnist': path.resolve(__dirname, '../../core/datasets/mnist.csv'),
-        'fashionmnist': path.resolve(__dirname, '../../core/datasets/fashionmnist.csv')
-    };
-    
     const inputPath = datasetPaths[dataset];
     if (!inputPath) {
         sendResponse(socket, { success: false, error: 'Dataset no válido' });
@@ -99,7 +99,7 @@ async function handleTrainRequest(socket, payload) {
     try {
         // Ejecutar entrenamiento y esperar resultado
         console.log(`[TRAIN] Modelo: ${model_name}, Dataset: ${dataset}`);
-        const result = await trainModel(inputPath, model_name);
+        const result = await runTraining(dataset, inputPath, model_name);
         
         // Guardar metadatos del modelo
         const fs = require('fs');
@@ -137,6 +137,48 @@ async function handleTrainRequest(socket, payload) {
     }
 }
 
+// Entrenar entre todos los nodos (CORE_DIST_TRAIN=1 y todos conectados) o solo en el líder
+async function runTraining(dataset, inputPath, modelId) {
+    if (config.distributedTraining && peerConnections.size === config.peers.length) {
+        // El líder es el rank 0 del anillo; el resto, en el orden de config
+        const ring = [`${config.host}:${config.ringPort}`,
+                      ...config.peers.map(peer => `${peer.host}:${peer.ringPort}`)];
+        config.peers.forEach((peer, i) => sendToPeer(peer.id, {
+            type: 'TRAIN_SHARD',
+            dataset,
+            model_name: modelId,
+            rank: i + 1,
+            peers: ring
+        }));
+        
+        try {
+            return await trainDistributed(inputPath, modelId, 0, ring);
+        } catch (error) {
+            console.error(`[TRAIN] Entrenamiento distribuido falló: ${error.message}`);
+            console.log('[TRAIN] Reintentando solo en este nodo');
+        }
+    }
+    return trainModel(inputPath, modelId);
+}
+
+// Parte de un entrenamiento distribuido pedida por el líder
+async function handleTrainShard(message) {
+    const { dataset, model_name, rank, peers } = message;
+    const inputPath = datasetPaths[dataset];
+    if (!inputPath) {
+        console.error(`[TRAIN] Dataset no válido para TRAIN_SHARD: ${dataset}`);
+        return;
+    }
+    
+    try {
+        console.log(`[TRAIN] Rank ${rank}/${peers.length} de ${model_name}`);
+        await trainDistributed(inputPath, model_name, rank, peers);
+    } catch (error) {
+        // El líder detecta el fallo por el anillo y reentrena solo
+        console.error(`[TRAIN] Parte distribuida falló: ${error.message}`);
+    }
+}
+
 // Procesar solicitud de predicción
 async function handlePredictRequest(socket, payload) {
     const { model_id, input_vector } = payload;
@@ -190,6 +232,10 @@ function handlePeerMessage(socket, message) {
         case 'APPEND_ENTRIES_RESPONSE':
             RaftNode.handleAppendEntriesResponse(message);
             break;
+            
+        case 'TRAIN_SHARD':
+            handleTrainShard(message);
+            break;
     }
 }
 